@@ -0,0 +1,257 @@
+package de.lmu.ifi.dbs.elki.benchmarks;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compare JMH results (CSV format, {@code -rf csv}) to a committed baseline.
+ *
+ * Usage:
+ * <pre>
+ * java -jar target/benchmarks.jar -rf csv -rff current.csv
+ * java -cp target/benchmarks.jar de.lmu.ifi.dbs.elki.benchmarks.BaselineComparison baseline.csv current.csv [tolerance]
+ * </pre>
+ *
+ * A benchmark is reported as regression if it is slower than the baseline by
+ * more than the relative tolerance (default 0.25), and the difference is larger
+ * than the combined error estimates. The exit code is 1 if any regression was
+ * found. Benchmarks missing from either file are reported, but do not fail.
+ *
+ * Baselines are machine dependent; regenerate them on the machine used for
+ * comparison when upgrading hardware or JVM.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class BaselineComparison {
+  /**
+   * Single result row.
+   *
+   * @apiviz.exclude
+   */
+  static class Result {
+    /**
+     * Benchmark mode.
+     */
+    String mode;
+
+    /**
+     * Score and score error.
+     */
+    double score, error;
+
+    /**
+     * Unit.
+     */
+    String unit;
+
+    /**
+     * Constructor.
+     *
+     * @param mode Benchmark mode
+     * @param score Score
+     * @param error Score error
+     * @param unit Unit
+     */
+    Result(String mode, double score, double error, String unit) {
+      this.mode = mode;
+      this.score = score;
+      this.error = error;
+      this.unit = unit;
+    }
+
+    /**
+     * For throughput, higher is better. For all time modes, lower is better.
+     *
+     * @return {@code true} when larger scores are better.
+     */
+    boolean higherIsBetter() {
+      return "thrpt".equals(mode);
+    }
+  }
+
+  /**
+   * Read a JMH result file in CSV format.
+   *
+   * @param filename File name
+   * @return Results, keyed by benchmark name and parameters
+   * @throws IOException on read errors
+   */
+  static Map<String, Result> read(String filename) throws IOException {
+    Map<String, Result> results = new LinkedHashMap<>();
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8))) {
+      List<String> header = splitLine(in.readLine());
+      final int ibench = header.indexOf("Benchmark"), imode = header.indexOf("Mode");
+      final int iscore = header.indexOf("Score"), iunit = header.indexOf("Unit");
+      int ierror = -1;
+      for(int i = 0; i < header.size(); i++) {
+        if(header.get(i).startsWith("Score Error")) {
+          ierror = i;
+        }
+      }
+      if(ibench < 0 || imode < 0 || iscore < 0 || ierror < 0 || iunit < 0) {
+        throw new IOException("Not a JMH CSV result file: " + filename);
+      }
+      for(String line; (line = in.readLine()) != null;) {
+        if(line.isEmpty()) {
+          continue;
+        }
+        List<String> row = splitLine(line);
+        StringBuilder key = new StringBuilder(row.get(ibench));
+        for(int i = 0; i < header.size(); i++) {
+          if(header.get(i).startsWith("Param: ") && i < row.size() && !row.get(i).isEmpty()) {
+            key.append(' ').append(header.get(i).substring(7)).append('=').append(row.get(i));
+          }
+        }
+        results.put(key.toString(), new Result(row.get(imode), parseDouble(row.get(iscore)), parseDouble(row.get(ierror)), row.get(iunit)));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Parse a number, accepting a decimal comma as written in some locales.
+   *
+   * @param s String
+   * @return Value, or NaN
+   */
+  private static double parseDouble(String s) {
+    if(s.isEmpty() || "NaN".equals(s)) {
+      return Double.NaN;
+    }
+    return Double.parseDouble(s.replace(',', '.'));
+  }
+
+  /**
+   * Split a CSV line, handling quoted fields.
+   *
+   * @param line Input line
+   * @return Fields
+   */
+  static List<String> splitLine(String line) {
+    List<String> fields = new ArrayList<>();
+    if(line == null) {
+      return fields;
+    }
+    StringBuilder buf = new StringBuilder();
+    boolean quoted = false;
+    for(int i = 0; i < line.length(); i++) {
+      final char c = line.charAt(i);
+      if(c == '"') {
+        if(quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          buf.append('"');
+          ++i;
+          continue;
+        }
+        quoted = !quoted;
+      }
+      else if(c == ',' && !quoted) {
+        fields.add(buf.toString());
+        buf.setLength(0);
+      }
+      else {
+        buf.append(c);
+      }
+    }
+    fields.add(buf.toString());
+    return fields;
+  }
+
+  /**
+   * Compare two result sets.
+   *
+   * @param baseline Baseline results
+   * @param current Current results
+   * @param tolerance Relative tolerance
+   * @return Number of regressions
+   */
+  static int compare(Map<String, Result> baseline, Map<String, Result> current, double tolerance) {
+    int regressions = 0;
+    for(Map.Entry<String, Result> e : current.entrySet()) {
+      final Result cur = e.getValue(), base = baseline.get(e.getKey());
+      if(base == null) {
+        System.out.println(String.format(Locale.ROOT, "NEW        %s: %.4g %s", e.getKey(), cur.score, cur.unit));
+        continue;
+      }
+      if(!base.unit.equals(cur.unit) || !base.mode.equals(cur.mode)) {
+        System.out.println(String.format(Locale.ROOT, "CHANGED    %s: %s %s vs. %s %s", e.getKey(), base.mode, base.unit, cur.mode, cur.unit));
+        continue;
+      }
+      // Relative slowdown, positive values are worse:
+      final double slowdown = cur.higherIsBetter() ? base.score / cur.score - 1. : cur.score / base.score - 1.;
+      final double margin = (Double.isNaN(base.error) ? 0. : base.error) + (Double.isNaN(cur.error) ? 0. : cur.error);
+      final boolean significant = Math.abs(cur.score - base.score) > margin;
+      String tag = "OK        ";
+      if(slowdown > tolerance && significant) {
+        tag = "REGRESSION";
+        ++regressions;
+      }
+      else if(slowdown < -tolerance && significant) {
+        tag = "IMPROVED  ";
+      }
+      System.out.println(String.format(Locale.ROOT, "%s %s: %.4g -> %.4g %s (%+.1f%%)", tag, e.getKey(), base.score, cur.score, cur.unit, slowdown * 100.));
+    }
+    for(String key : baseline.keySet()) {
+      if(!current.containsKey(key)) {
+        System.out.println("MISSING    " + key);
+      }
+    }
+    return regressions;
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args Baseline file, current result file, optional tolerance
+   */
+  public static void main(String[] args) {
+    if(args.length < 2 || args.length > 3) {
+      System.err.println("Usage: " + BaselineComparison.class.getName() + " baseline.csv current.csv [tolerance]");
+      System.exit(2);
+    }
+    try {
+      final double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 0.25;
+      int regressions = compare(read(args[0]), read(args[1]), tolerance);
+      if(regressions > 0) {
+        System.out.println(regressions + " benchmark(s) regressed by more than " + (int) (tolerance * 100) + "%.");
+        System.exit(1);
+      }
+    }
+    catch(IOException | NumberFormatException e) {
+      System.err.println(e.getMessage());
+      System.exit(2);
+    }
+  }
+}
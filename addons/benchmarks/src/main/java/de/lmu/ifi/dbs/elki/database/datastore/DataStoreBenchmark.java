@@ -0,0 +1,129 @@
+package de.lmu.ifi.dbs.elki.database.datastore;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+
+/**
+ * Micro benchmark for data store access. With a static DBID range, the memory
+ * factory produces array stores; with other DBIDs, hash map based stores.
+ * Scores are per accessed element.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataStoreBenchmark {
+  /**
+   * Number of objects.
+   */
+  static final int SIZE = 100000;
+
+  /**
+   * Storage type: "array" or "map".
+   */
+  @Param({ "array", "map" })
+  String storage;
+
+  /**
+   * Iteration order (always the range).
+   */
+  DBIDRange range;
+
+  /**
+   * Double storage.
+   */
+  WritableDoubleDataStore doubles;
+
+  /**
+   * Object storage.
+   */
+  WritableDataStore<double[]> objects;
+
+  /**
+   * Allocate the stores.
+   */
+  @Setup
+  public void setup() {
+    range = DBIDUtil.generateStaticDBIDRange(SIZE);
+    DBIDs ids = "array".equals(storage) ? range : DBIDUtil.newHashSet(range);
+    doubles = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_DB, 1.);
+    objects = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, double[].class);
+    for(DBIDIter it = range.iter(); it.valid(); it.advance()) {
+      objects.put(it, new double[] { 1. });
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double readDouble() {
+    double sum = 0.;
+    for(DBIDIter it = range.iter(); it.valid(); it.advance()) {
+      sum += doubles.doubleValue(it);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public void incrementDouble() {
+    for(DBIDIter it = range.iter(); it.valid(); it.advance()) {
+      doubles.increment(it, 1.);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double readObject() {
+    double sum = 0.;
+    for(DBIDIter it = range.iter(); it.valid(); it.advance()) {
+      sum += objects.get(it)[0];
+    }
+    return sum;
+  }
+}
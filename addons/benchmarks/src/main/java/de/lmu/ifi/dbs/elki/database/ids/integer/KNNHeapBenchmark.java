@@ -0,0 +1,134 @@
+package de.lmu.ifi.dbs.elki.database.ids.integer;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+
+/**
+ * Micro benchmark for the integer kNN heap implementations: insert a stream of
+ * candidates, then produce the kNN list. Scores are per inserted candidate.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KNNHeapBenchmark {
+  /**
+   * Number of candidates per invocation.
+   */
+  static final int CANDIDATES = 10000;
+
+  /**
+   * Heap size.
+   */
+  @Param({ "10", "100" })
+  int k;
+
+  /**
+   * Candidate distances.
+   */
+  double[] dists;
+
+  /**
+   * Candidate ids.
+   */
+  DBIDRange ids;
+
+  /**
+   * Generate the candidates.
+   */
+  @Setup
+  public void setup() {
+    Random rnd = new Random(0L);
+    dists = new double[CANDIDATES];
+    for(int i = 0; i < CANDIDATES; i++) {
+      dists[i] = rnd.nextDouble();
+    }
+    ids = DBIDUtil.generateStaticDBIDRange(CANDIDATES);
+  }
+
+  /**
+   * Fill a heap with all candidates.
+   *
+   * @param heap Heap
+   * @return kNN list
+   */
+  private KNNList fill(KNNHeap heap) {
+    DBIDArrayIter it = ids.iter();
+    for(int i = 0; i < CANDIDATES; i++, it.advance()) {
+      heap.insert(dists[i], it);
+    }
+    return heap.toKNNList();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(CANDIDATES)
+  public KNNList doubleIntegerHeap() {
+    return fill(new DoubleIntegerDBIDKNNHeap(k));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(CANDIDATES)
+  public KNNList doubleIntegerListHeap() {
+    return fill(new DoubleIntegerDBIDListKNNHeap(k));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(CANDIDATES)
+  public KNNList doubleIntegerPairListHeap() {
+    return fill(new DoubleIntegerDBIDPairKNNListHeap(k));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(CANDIDATES)
+  public KNNList dbidUtilHeap() {
+    return fill(DBIDUtil.newHeap(k));
+  }
+}
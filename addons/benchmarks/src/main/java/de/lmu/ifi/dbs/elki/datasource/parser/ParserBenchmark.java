@@ -0,0 +1,119 @@
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+
+/**
+ * Micro benchmark for the text parsers, on the same labeled data set in CSV and
+ * ARFF format. Scores are per parsed line.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+  /**
+   * Number of lines.
+   */
+  static final int LINES = 10000;
+
+  /**
+   * Number of numerical columns.
+   */
+  static final int DIM = 10;
+
+  /**
+   * Whitespace separated input.
+   */
+  byte[] csv;
+
+  /**
+   * ARFF input.
+   */
+  byte[] arff;
+
+  /**
+   * Generate the input files.
+   */
+  @Setup
+  public void setup() {
+    Random rnd = new Random(0L);
+    StringBuilder csvbuf = new StringBuilder();
+    StringBuilder arffbuf = new StringBuilder();
+    arffbuf.append("@relation benchmark\n");
+    for(int d = 0; d < DIM; d++) {
+      arffbuf.append("@attribute a").append(d).append(" numeric\n");
+    }
+    arffbuf.append("@attribute class {a,b,c}\n@data\n");
+    for(int i = 0; i < LINES; i++) {
+      for(int d = 0; d < DIM; d++) {
+        String v = Double.toString(rnd.nextGaussian());
+        csvbuf.append(v).append(' ');
+        arffbuf.append(v).append(',');
+      }
+      char label = (char) ('a' + rnd.nextInt(3));
+      csvbuf.append(label).append('\n');
+      arffbuf.append(label).append('\n');
+    }
+    csv = csvbuf.toString().getBytes(StandardCharsets.UTF_8);
+    arff = arffbuf.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LINES)
+  public MultipleObjectsBundle numberVectorLabelParser() {
+    return new NumberVectorLabelParser<>(DoubleVector.FACTORY).parse(new ByteArrayInputStream(csv));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LINES)
+  public MultipleObjectsBundle arffParser() {
+    return new ArffParser(ArffParser.DEFAULT_ARFF_MAGIC_EID, ArffParser.DEFAULT_ARFF_MAGIC_CLASS).parse(new ByteArrayInputStream(arff));
+  }
+}
@@ -0,0 +1,169 @@
+package de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+
+/**
+ * Micro benchmark for Minkowski distance functions.
+ *
+ * Each invocation computes the distances of one query vector to a block of
+ * {@link #BLOCK} data vectors; scores are per distance computation.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MinkowskiDistanceBenchmark {
+  /**
+   * Number of vectors per invocation.
+   */
+  static final int BLOCK = 256;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "8", "32", "128" })
+  int dim;
+
+  /**
+   * Data vectors.
+   */
+  DoubleVector[] data;
+
+  /**
+   * Query vector.
+   */
+  DoubleVector query;
+
+  /**
+   * Generic L_p norm, for p=3.
+   */
+  LPNormDistanceFunction lp3 = new LPNormDistanceFunction(3.);
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    Random rnd = new Random(0L);
+    data = new DoubleVector[BLOCK];
+    for(int i = 0; i < BLOCK; i++) {
+      data[i] = randomVector(rnd, dim);
+    }
+    query = randomVector(rnd, dim);
+  }
+
+  /**
+   * Generate a random vector.
+   *
+   * @param rnd Random generator
+   * @param dim Dimensionality
+   * @return Vector
+   */
+  static DoubleVector randomVector(Random rnd, int dim) {
+    double[] v = new double[dim];
+    for(int d = 0; d < dim; d++) {
+      v[d] = rnd.nextDouble();
+    }
+    return DoubleVector.wrap(v);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BLOCK)
+  public double euclidean() {
+    final EuclideanDistanceFunction df = EuclideanDistanceFunction.STATIC;
+    double sum = 0.;
+    for(DoubleVector v : data) {
+      sum += df.distance(query, v);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BLOCK)
+  public double squaredEuclidean() {
+    final SquaredEuclideanDistanceFunction df = SquaredEuclideanDistanceFunction.STATIC;
+    double sum = 0.;
+    for(DoubleVector v : data) {
+      sum += df.distance(query, v);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BLOCK)
+  public double manhattan() {
+    final ManhattanDistanceFunction df = ManhattanDistanceFunction.STATIC;
+    double sum = 0.;
+    for(DoubleVector v : data) {
+      sum += df.distance(query, v);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BLOCK)
+  public double maximum() {
+    final MaximumDistanceFunction df = MaximumDistanceFunction.STATIC;
+    double sum = 0.;
+    for(DoubleVector v : data) {
+      sum += df.distance(query, v);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BLOCK)
+  public double lpNorm3() {
+    final LPNormDistanceFunction df = lp3;
+    double sum = 0.;
+    for(DoubleVector v : data) {
+      sum += df.distance(query, v);
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,137 @@
+package de.lmu.ifi.dbs.elki.distance.distancefunction.timeseries;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+
+/**
+ * Micro benchmark for dynamic-programming time series distances.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeSeriesDistanceBenchmark {
+  /**
+   * Series length.
+   */
+  @Param({ "64", "512" })
+  int length;
+
+  /**
+   * Relative band size.
+   */
+  @Param({ "0.1", "1.0" })
+  double band;
+
+  /**
+   * First series.
+   */
+  DoubleVector a;
+
+  /**
+   * Second series.
+   */
+  DoubleVector b;
+
+  /**
+   * Dynamic time warping.
+   */
+  DTWDistanceFunction dtw;
+
+  /**
+   * Derivative dynamic time warping.
+   */
+  DerivativeDTWDistanceFunction ddtw;
+
+  /**
+   * Edit distance with real penalty.
+   */
+  ERPDistanceFunction erp;
+
+  /**
+   * Generate random walks.
+   */
+  @Setup
+  public void setup() {
+    Random rnd = new Random(0L);
+    a = randomWalk(rnd, length);
+    b = randomWalk(rnd, length);
+    dtw = new DTWDistanceFunction(band);
+    ddtw = new DerivativeDTWDistanceFunction(band);
+    erp = new ERPDistanceFunction(band, 0.);
+  }
+
+  /**
+   * Generate a random walk.
+   *
+   * @param rnd Random generator
+   * @param len Length
+   * @return Series
+   */
+  static DoubleVector randomWalk(Random rnd, int len) {
+    double[] v = new double[len];
+    double cur = 0.;
+    for(int i = 0; i < len; i++) {
+      v[i] = cur += rnd.nextGaussian();
+    }
+    return DoubleVector.wrap(v);
+  }
+
+  @Benchmark
+  public double dtw() {
+    return dtw.distance(a, b);
+  }
+
+  @Benchmark
+  public double derivativeDTW() {
+    return ddtw.distance(a, b);
+  }
+
+  @Benchmark
+  public double erp() {
+    return erp.distance(a, b);
+  }
+}
@@ -0,0 +1,181 @@
+package de.lmu.ifi.dbs.elki.index;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.covertree.CoverTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.kd.SmallMemoryKDTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Micro benchmark for Euclidean kNN and range queries on the main in-memory
+ * index structures, compared to the linear scan. Scores are per query.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexQueryBenchmark {
+  /**
+   * Data set size.
+   */
+  static final int SIZE = 20000;
+
+  /**
+   * Dimensionality.
+   */
+  static final int DIM = 8;
+
+  /**
+   * Number of queries per invocation.
+   */
+  static final int QUERIES = 100;
+
+  /**
+   * Number of neighbors.
+   */
+  static final int K = 10;
+
+  /**
+   * Query radius, chosen to return about 10 neighbors on average.
+   */
+  static final double RADIUS = 0.3;
+
+  /**
+   * Index: "linear", "kdtree", "covertree" or "rstar".
+   */
+  @Param({ "linear", "kdtree", "covertree", "rstar" })
+  String index;
+
+  /**
+   * Query points.
+   */
+  DoubleVector[] queries;
+
+  /**
+   * kNN query.
+   */
+  KNNQuery<DoubleVector> knnq;
+
+  /**
+   * Range query.
+   */
+  RangeQuery<DoubleVector> rangeq;
+
+  /**
+   * Build the database and index.
+   */
+  @Setup
+  public void setup() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[SIZE][DIM];
+    for(double[] row : data) {
+      for(int d = 0; d < DIM; d++) {
+        row[d] = rnd.nextDouble();
+      }
+    }
+    queries = new DoubleVector[QUERIES];
+    for(int i = 0; i < QUERIES; i++) {
+      double[] q = new double[DIM];
+      for(int d = 0; d < DIM; d++) {
+        q[d] = rnd.nextDouble();
+      }
+      queries[i] = DoubleVector.wrap(q);
+    }
+    Collection<IndexFactory<?, ?>> factories = new ArrayList<>();
+    if("kdtree".equals(index)) {
+      factories.add(new SmallMemoryKDTree.Factory<DoubleVector>());
+    }
+    else if("covertree".equals(index)) {
+      factories.add(new CoverTree.Factory<DoubleVector>(EuclideanDistanceFunction.STATIC, 1.3, 10));
+    }
+    else if("rstar".equals(index)) {
+      factories.add(ClassGenericsUtil.parameterizeOrAbort(RStarTreeFactory.class, new ListParameterization()));
+    }
+    else if(!"linear".equals(index)) {
+      throw new IllegalArgumentException("Unknown index: " + index);
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), factories);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    knnq = db.getKNNQuery(dq, K);
+    rangeq = db.getRangeQuery(dq, RADIUS);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public int knn() {
+    int sum = 0;
+    for(DoubleVector q : queries) {
+      sum += knnq.getKNNForObject(q, K).size();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public int range() {
+    int sum = 0;
+    for(DoubleVector q : queries) {
+      sum += rangeq.getRangeForObject(q, RADIUS).size();
+    }
+    return sum;
+  }
+}
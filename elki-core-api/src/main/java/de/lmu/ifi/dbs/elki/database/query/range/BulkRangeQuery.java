@@ -0,0 +1,82 @@
+package de.lmu.ifi.dbs.elki.database.query.range;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+
+/**
+ * Range queries that can process many query objects at once.
+ *
+ * Implementations can share the work of scanning the data or traversing an
+ * index across all queries of a batch, instead of performing one traversal per
+ * query object.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses DoubleDBIDList oneway - - «create»
+ *
+ * @param <O> Object type
+ */
+public interface BulkRangeQuery<O> extends RangeQuery<O> {
+  /**
+   * Bulk query method.
+   *
+   * @param ids query object IDs
+   * @param range Query range
+   * @return Neighbors, one sorted list per query object
+   */
+  default List<? extends DoubleDBIDList> getRangeForBulkDBIDs(ArrayDBIDs ids, double range) {
+    final int size = ids.size();
+    ModifiableDoubleDBIDList[] results = new ModifiableDoubleDBIDList[size];
+    for(int i = 0; i < size; i++) {
+      results[i] = DBIDUtil.newDistanceDBIDList();
+    }
+    getRangeForBulkDBIDs(ids, range, results);
+    List<ModifiableDoubleDBIDList> ret = new ArrayList<>(size);
+    for(ModifiableDoubleDBIDList result : results) {
+      result.sort();
+      ret.add(result);
+    }
+    return ret;
+  }
+
+  /**
+   * Bulk query method. The neighbors are appended to the output lists, which
+   * are not sorted.
+   *
+   * @param ids query object IDs
+   * @param range Query range
+   * @param results Output lists, one for each query object, in the same order
+   *        as the query ids.
+   */
+  void getRangeForBulkDBIDs(ArrayDBIDs ids, double range, ModifiableDoubleDBIDList[] results);
+}
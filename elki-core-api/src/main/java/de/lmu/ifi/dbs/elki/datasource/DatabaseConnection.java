@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.datasource;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
 
 /**
@@ -38,6 +39,7 @@ import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
  * 
  * @apiviz.landmark
  * @apiviz.has MultipleObjectsBundle
+ * @apiviz.has BundleStreamSource
  */
 public interface DatabaseConnection {
   /**
@@ -45,6 +47,17 @@ public interface DatabaseConnection {
    * 
    * @return a database object bundle
    */
-  // TODO: streaming load?
   MultipleObjectsBundle loadData();
+
+  /**
+   * Returns the initial data for a database as stream, so that the consumer
+   * does not need to keep all objects in memory.
+   * 
+   * The default implementation loads the full bundle.
+   * 
+   * @return a stream of objects
+   */
+  default BundleStreamSource loadStream() {
+    return loadData().asStream();
+  }
 }
\ No newline at end of file
@@ -0,0 +1,253 @@
+package de.lmu.ifi.dbs.elki.utilities.io;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read primitive values from an existing ByteBuffer, as written by
+ * {@link ByteBufferObjectOutput}.
+ * <p>
+ * Only the primitive methods of {@link java.io.DataInput} are supported,
+ * {@link #readObject} will fail with an {@link InvalidClassException}.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.has ByteBuffer
+ */
+public class ByteBufferObjectInput implements ObjectInput {
+  /**
+   * The actual buffer we're using.
+   */
+  final ByteBuffer buffer;
+
+  /**
+   * Constructor.
+   * 
+   * @param buffer ByteBuffer to wrap.
+   */
+  public ByteBufferObjectInput(ByteBuffer buffer) {
+    super();
+    this.buffer = buffer;
+  }
+
+  @Override
+  public int read() {
+    return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+  }
+
+  @Override
+  public int read(byte[] b) {
+    return read(b, 0, b.length);
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    if(len == 0) {
+      return 0;
+    }
+    if(!buffer.hasRemaining()) {
+      return -1;
+    }
+    len = Math.min(len, buffer.remaining());
+    buffer.get(b, off, len);
+    return len;
+  }
+
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    readFully(b, 0, b.length);
+  }
+
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    try {
+      buffer.get(b, off, len);
+    }
+    catch(BufferUnderflowException e) {
+      throw underflow(e);
+    }
+  }
+
+  @Override
+  public long skip(long n) {
+    int s = (int) Math.max(0, Math.min(n, buffer.remaining()));
+    buffer.position(buffer.position() + s);
+    return s;
+  }
+
+  @Override
+  public int skipBytes(int n) {
+    return (int) skip(n);
+  }
+
+  @Override
+  public int available() {
+    return buffer.remaining();
+  }
+
+  @Override
+  public boolean readBoolean() throws IOException {
+    return readByte() != 0;
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    try {
+      return buffer.get();
+    }
+    catch(BufferUnderflowException e) {
+      throw underflow(e);
+    }
+  }
+
+  @Override
+  public int readUnsignedByte() throws IOException {
+    return readByte() & 0xFF;
+  }
+
+  @Override
+  public short readShort() throws IOException {
+    try {
+      return buffer.getShort();
+    }
+    catch(BufferUnderflowException e) {
+      throw underflow(e);
+    }
+  }
+
+  @Override
+  public int readUnsignedShort() throws IOException {
+    return readShort() & 0xFFFF;
+  }
+
+  @Override
+  public char readChar() throws IOException {
+    try {
+      return buffer.getChar();
+    }
+    catch(BufferUnderflowException e) {
+      throw underflow(e);
+    }
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    try {
+      return buffer.getInt();
+    }
+    catch(BufferUnderflowException e) {
+      throw underflow(e);
+    }
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    try {
+      return buffer.getLong();
+    }
+    catch(BufferUnderflowException e) {
+      throw underflow(e);
+    }
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    try {
+      return buffer.getFloat();
+    }
+    catch(BufferUnderflowException e) {
+      throw underflow(e);
+    }
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    try {
+      return buffer.getDouble();
+    }
+    catch(BufferUnderflowException e) {
+      throw underflow(e);
+    }
+  }
+
+  @Override
+  public String readLine() {
+    if(!buffer.hasRemaining()) {
+      return null;
+    }
+    StringBuilder buf = new StringBuilder();
+    while(buffer.hasRemaining()) {
+      char c = (char) (buffer.get() & 0xFF);
+      if(c == '\n') {
+        break;
+      }
+      if(c == '\r') {
+        if(buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') {
+          buffer.get();
+        }
+        break;
+      }
+      buf.append(c);
+    }
+    return buf.toString();
+  }
+
+  @Override
+  public String readUTF() throws IOException {
+    byte[] bytes = new byte[readUnsignedShort()];
+    readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public Object readObject() throws IOException {
+    throw new InvalidClassException("Objects cannot be read from a fixed-layout buffer.");
+  }
+
+  @Override
+  public void close() {
+    // Nothing to do.
+  }
+
+  /**
+   * Produce an exception for buffer underflows.
+   * 
+   * @param e Cause
+   * @return Exception
+   */
+  private EOFException underflow(BufferUnderflowException e) {
+    EOFException ex = new EOFException("Unexpected end of buffer.");
+    ex.initCause(e);
+    return ex;
+  }
+}
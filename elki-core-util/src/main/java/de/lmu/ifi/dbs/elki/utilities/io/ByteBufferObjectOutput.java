@@ -0,0 +1,211 @@
+package de.lmu.ifi.dbs.elki.utilities.io;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutput;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Write primitive values to an existing ByteBuffer, with a fixed binary
+ * layout.
+ * <p>
+ * This allows classes implementing {@link java.io.Externalizable} to be written
+ * without the overhead of an {@link java.io.ObjectOutputStream} (stream
+ * headers, block data markers, intermediate byte arrays).
+ * <p>
+ * Only the primitive methods of {@link java.io.DataOutput} are supported,
+ * {@link #writeObject} will fail with a {@link NotSerializableException}.
+ * Strings written with {@link #writeUTF} are stored as UTF-8 with a short
+ * length prefix, and must be read with {@link ByteBufferObjectInput}.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.has ByteBuffer
+ */
+public class ByteBufferObjectOutput implements ObjectOutput {
+  /**
+   * The actual buffer we're using.
+   */
+  final ByteBuffer buffer;
+
+  /**
+   * Constructor.
+   * 
+   * @param buffer ByteBuffer to wrap.
+   */
+  public ByteBufferObjectOutput(ByteBuffer buffer) {
+    super();
+    this.buffer = buffer;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    try {
+      buffer.put((byte) b);
+    }
+    catch(BufferOverflowException e) {
+      throw overflow(e);
+    }
+  }
+
+  @Override
+  public void write(byte[] b) throws IOException {
+    write(b, 0, b.length);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    try {
+      buffer.put(b, off, len);
+    }
+    catch(BufferOverflowException e) {
+      throw overflow(e);
+    }
+  }
+
+  @Override
+  public void writeBoolean(boolean v) throws IOException {
+    write(v ? 1 : 0);
+  }
+
+  @Override
+  public void writeByte(int v) throws IOException {
+    write(v);
+  }
+
+  @Override
+  public void writeShort(int v) throws IOException {
+    try {
+      buffer.putShort((short) v);
+    }
+    catch(BufferOverflowException e) {
+      throw overflow(e);
+    }
+  }
+
+  @Override
+  public void writeChar(int v) throws IOException {
+    try {
+      buffer.putChar((char) v);
+    }
+    catch(BufferOverflowException e) {
+      throw overflow(e);
+    }
+  }
+
+  @Override
+  public void writeInt(int v) throws IOException {
+    try {
+      buffer.putInt(v);
+    }
+    catch(BufferOverflowException e) {
+      throw overflow(e);
+    }
+  }
+
+  @Override
+  public void writeLong(long v) throws IOException {
+    try {
+      buffer.putLong(v);
+    }
+    catch(BufferOverflowException e) {
+      throw overflow(e);
+    }
+  }
+
+  @Override
+  public void writeFloat(float v) throws IOException {
+    try {
+      buffer.putFloat(v);
+    }
+    catch(BufferOverflowException e) {
+      throw overflow(e);
+    }
+  }
+
+  @Override
+  public void writeDouble(double v) throws IOException {
+    try {
+      buffer.putDouble(v);
+    }
+    catch(BufferOverflowException e) {
+      throw overflow(e);
+    }
+  }
+
+  @Override
+  public void writeBytes(String s) throws IOException {
+    for(int i = 0, l = s.length(); i < l; i++) {
+      write(s.charAt(i));
+    }
+  }
+
+  @Override
+  public void writeChars(String s) throws IOException {
+    for(int i = 0, l = s.length(); i < l; i++) {
+      writeChar(s.charAt(i));
+    }
+  }
+
+  @Override
+  public void writeUTF(String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    if(bytes.length > 0xFFFF) {
+      throw new IOException("String too long: " + bytes.length + " bytes.");
+    }
+    writeShort(bytes.length);
+    write(bytes);
+  }
+
+  @Override
+  public void writeObject(Object obj) throws IOException {
+    throw new NotSerializableException("Only primitive values can be written to a fixed-layout buffer: " + (obj != null ? obj.getClass().getName() : "null"));
+  }
+
+  @Override
+  public void flush() {
+    // Nothing to do.
+  }
+
+  @Override
+  public void close() {
+    // Nothing to do.
+  }
+
+  /**
+   * Produce an exception for buffer overflows.
+   * 
+   * @param e Cause
+   * @return Exception
+   */
+  private IOException overflow(BufferOverflowException e) {
+    return new IOException("Buffer capacity of " + buffer.capacity() + " bytes exceeded.", e);
+  }
+}
@@ -42,7 +42,8 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.WrongParameterValueException
 public class FileParameter extends AbstractParameter<FileParameter, File> {
   /**
    * Available file types: {@link #INPUT_FILE} denotes an input file,
-   * {@link #OUTPUT_FILE} denotes an output file.
+   * {@link #OUTPUT_FILE} denotes an output file, {@link #OUTPUT_DIRECTORY}
+   * denotes an output directory.
    * 
    * @apiviz.exclude
    */
@@ -54,7 +55,11 @@ public class FileParameter extends AbstractParameter<FileParameter, File> {
     /**
      * Output files
      */
-    OUTPUT_FILE
+    OUTPUT_FILE,
+    /**
+     * Output directory (created on demand, must be a directory if it exists)
+     */
+    OUTPUT_DIRECTORY
   }
 
   /**
@@ -127,6 +132,16 @@ public class FileParameter extends AbstractParameter<FileParameter, File> {
         throw new WrongParameterValueException("Given file \"" + obj.getPath() + "\" cannot be read, access denied!\n" + e.getMessage());
       }
     }
+    if(fileType.equals(FileType.OUTPUT_DIRECTORY)) {
+      try {
+        if(obj.exists() && !obj.isDirectory()) {
+          throw new WrongParameterValueException("Given file " + obj.getPath() + " for parameter \"" + getName() + "\" is not a directory!\n");
+        }
+      }
+      catch(SecurityException e) {
+        throw new WrongParameterValueException("Given directory \"" + obj.getPath() + "\" cannot be accessed, access denied!\n" + e.getMessage());
+      }
+    }
     return true;
   }
 
@@ -137,11 +152,11 @@ public class FileParameter extends AbstractParameter<FileParameter, File> {
    */
   @Override
   public String getSyntax() {
-    return "<file>";
+    return fileType.equals(FileType.OUTPUT_DIRECTORY) ? "<directory>" : "<file>";
   }
 
   /**
-   * Get the file type (input / output)
+   * Get the file type (input / output / output directory)
    * 
    * @return file type
    */
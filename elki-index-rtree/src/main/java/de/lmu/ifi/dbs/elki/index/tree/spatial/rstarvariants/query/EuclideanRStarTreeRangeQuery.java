@@ -24,6 +24,7 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query;
  */
 
 import java.util.Arrays;
+import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
@@ -114,4 +115,39 @@ public class EuclideanRStarTreeRangeQuery<O extends NumberVector> extends RStarT
       }
     }
   }
+
+  @Override
+  protected void bulkRangeSearch(int nodeID, List<O> queries, int[] active, int nactive, double range, ModifiableDoubleDBIDList[] results) {
+    final double sqepsilon = range * range;
+    AbstractRStarTreeNode<?, ?> node = tree.getNode(nodeID);
+    final int numEntries = node.getNumEntries();
+
+    if(node.isLeaf()) {
+      for(int i = 0; i < numEntries; i++) {
+        SpatialPointLeafEntry entry = (SpatialPointLeafEntry) node.getEntry(i);
+        for(int j = 0; j < nactive; j++) {
+          final int q = active[j];
+          double distance = SQUARED.minDist(queries.get(q), entry);
+          tree.statistics.countDistanceCalculation();
+          if(distance <= sqepsilon) {
+            results[q].add(FastMath.sqrt(distance), entry.getDBID());
+          }
+        }
+      }
+      return;
+    }
+    int[] sub = new int[nactive];
+    for(int i = 0; i < numEntries; i++) {
+      SpatialDirectoryEntry entry = (SpatialDirectoryEntry) node.getEntry(i);
+      int nsub = 0;
+      for(int j = 0; j < nactive; j++) {
+        if(SQUARED.minDist(queries.get(active[j]), entry) <= sqepsilon) {
+          sub[nsub++] = active[j];
+        }
+      }
+      if(nsub > 0) {
+        bulkRangeSearch(entry.getEntryID(), queries, sub, nsub, range, results);
+      }
+    }
+  }
 }
\ No newline at end of file
@@ -23,14 +23,18 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
-import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.BulkRangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
@@ -57,7 +61,7 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * @apiviz.uses SpatialPrimitiveDistanceFunction
  */
 @Reference(authors = "J. Kuan, P. Lewis", title = "Fast k nearest neighbour search for R-tree family", booktitle = "Proc. Int. Conf Information, Communications and Signal Processing, ICICS 1997", url = "http://dx.doi.org/10.1109/ICICS.1997.652114")
-public class RStarTreeRangeQuery<O extends SpatialComparable> implements RangeQuery<O> {
+public class RStarTreeRangeQuery<O extends SpatialComparable> implements BulkRangeQuery<O> {
   /**
    * The index to use
    */
@@ -147,4 +151,63 @@ public class RStarTreeRangeQuery<O extends SpatialComparable> implements RangeQu
       }
     }
   }
+
+  @Override
+  public void getRangeForBulkDBIDs(ArrayDBIDs ids, double range, ModifiableDoubleDBIDList[] results) {
+    final int size = ids.size();
+    List<O> queries = new ArrayList<>(size);
+    int[] active = new int[size];
+    int i = 0;
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance(), i++) {
+      queries.add(relation.get(iter));
+      active[i] = i;
+      tree.statistics.countRangeQuery();
+    }
+    if(size > 0) {
+      bulkRangeSearch(tree.getRootID(), queries, active, size, range, results);
+    }
+  }
+
+  /**
+   * Range search for many queries at once, reading every node only once.
+   *
+   * @param nodeID Node to process
+   * @param queries Query objects
+   * @param active Indexes of the queries that need to visit this node
+   * @param nactive Number of active queries
+   * @param range Query radius
+   * @param results Output lists
+   */
+  protected void bulkRangeSearch(int nodeID, List<O> queries, int[] active, int nactive, double range, ModifiableDoubleDBIDList[] results) {
+    AbstractRStarTreeNode<?, ?> node = tree.getNode(nodeID);
+    final int numEntries = node.getNumEntries();
+
+    if(node.isLeaf()) {
+      for(int i = 0; i < numEntries; i++) {
+        SpatialPointLeafEntry entry = (SpatialPointLeafEntry) node.getEntry(i);
+        for(int j = 0; j < nactive; j++) {
+          final int q = active[j];
+          double distance = distanceFunction.minDist(queries.get(q), entry);
+          tree.statistics.countDistanceCalculation();
+          if(distance <= range) {
+            results[q].add(distance, entry.getDBID());
+          }
+        }
+      }
+      return;
+    }
+    int[] sub = new int[nactive];
+    for(int i = 0; i < numEntries; i++) {
+      SpatialDirectoryEntry entry = (SpatialDirectoryEntry) node.getEntry(i);
+      int nsub = 0;
+      for(int j = 0; j < nactive; j++) {
+        if(distanceFunction.minDist(queries.get(active[j]), entry) <= range) {
+          sub[nsub++] = active[j];
+        }
+      }
+      if(nsub > 0) {
+        bulkRangeSearch(entry.getEntryID(), queries, sub, nsub, range, results);
+      }
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+package de.lmu.ifi.dbs.elki.index;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+
+import de.lmu.ifi.dbs.elki.persistent.SnapshotInput;
+import de.lmu.ifi.dbs.elki.persistent.SnapshotOutput;
+
+/**
+ * Index that can be written to a binary snapshot, and be restored from such a
+ * snapshot instead of being rebuilt when the same data is loaded again.
+ * 
+ * Snapshots only contain the index structure; the data itself is not stored.
+ * Object references are stored relative to the DBIDs of the indexed relation.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.uses SnapshotInput
+ * @apiviz.uses SnapshotOutput
+ */
+public interface SnapshotIndex extends Index {
+  /**
+   * Write the index contents to a snapshot.
+   * 
+   * @param out Snapshot output
+   * @throws IOException on IO errors
+   */
+  void writeSnapshot(SnapshotOutput out) throws IOException;
+
+  /**
+   * Restore the index from a snapshot, as an alternative to
+   * {@link #initialize()}.
+   * 
+   * Implementations must verify that the snapshot was built with the same
+   * settings as the current instance, and must not modify the index unless the
+   * snapshot is accepted.
+   * 
+   * @param in Snapshot input
+   * @return {@code true} if the index was restored, {@code false} if the
+   *         snapshot does not match and the index needs to be initialized.
+   * @throws IOException on IO errors
+   */
+  boolean readSnapshot(SnapshotInput in) throws IOException;
+}
@@ -0,0 +1,167 @@
+package de.lmu.ifi.dbs.elki.index;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.persistent.SnapshotInput;
+import de.lmu.ifi.dbs.elki.persistent.SnapshotOutput;
+
+/**
+ * Utility functions for storing and restoring {@link SnapshotIndex} instances.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.uses SnapshotIndex
+ */
+public final class SnapshotUtil {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(SnapshotUtil.class);
+
+  /**
+   * Multiplier used for hashing.
+   */
+  private static final long MULT = 0x9E3779B97F4A7C15L;
+
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private SnapshotUtil() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Compute a fingerprint of the data in a relation.
+   * 
+   * For numerical vectors, this hashes the exact bit patterns of all values.
+   * For other objects, their {@link Object#hashCode()} is used, so objects
+   * without a value-based hash code will never match a previous fingerprint.
+   * 
+   * @param relation Relation
+   * @return Fingerprint
+   */
+  public static long fingerprint(Relation<?> relation) {
+    long h = mix(relation.size(), relation.getDataTypeInformation().toString().hashCode());
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      final Object o = relation.get(it);
+      if(o instanceof SparseNumberVector) {
+        final SparseNumberVector v = (SparseNumberVector) o;
+        h = mix(h, v.getDimensionality());
+        for(int j = v.iter(); v.iterValid(j); j = v.iterAdvance(j)) {
+          h = mix(mix(h, v.iterDim(j)), Double.doubleToLongBits(v.iterDoubleValue(j)));
+        }
+      }
+      else if(o instanceof NumberVector) {
+        final NumberVector v = (NumberVector) o;
+        final int dim = v.getDimensionality();
+        h = mix(h, dim);
+        for(int j = 0; j < dim; j++) {
+          h = mix(h, Double.doubleToLongBits(v.doubleValue(j)));
+        }
+      }
+      else {
+        h = mix(h, o != null ? o.hashCode() : 0);
+      }
+    }
+    return h;
+  }
+
+  /**
+   * Mix a value into a hash code.
+   * 
+   * @param h Previous hash code
+   * @param v Value
+   * @return New hash code
+   */
+  private static long mix(long h, long v) {
+    h = (h ^ v) * MULT;
+    return h ^ (h >>> 29);
+  }
+
+  /**
+   * Restore an index from a snapshot file, if the file exists and matches.
+   * 
+   * @param index Index to restore
+   * @param ids DBIDs of the indexed relation
+   * @param fingerprint Data set fingerprint, see {@link #fingerprint}
+   * @param file Snapshot file
+   * @return {@code true} if the index was restored.
+   */
+  public static boolean load(SnapshotIndex index, DBIDRange ids, long fingerprint, File file) {
+    try (SnapshotInput in = SnapshotInput.open(file, index.getClass().getName(), fingerprint, ids)) {
+      if(in == null) {
+        if(file.exists()) {
+          LOG.verbose("Snapshot " + file + " does not match the current data, rebuilding index.");
+        }
+        return false;
+      }
+      if(!index.readSnapshot(in)) {
+        LOG.verbose("Snapshot " + file + " does not match the index settings, rebuilding index.");
+        return false;
+      }
+      LOG.verbose("Restored index from snapshot " + file);
+      return true;
+    }
+    catch(IOException e) {
+      LOG.warning("Could not read index snapshot " + file + ", rebuilding index.", e);
+      return false;
+    }
+  }
+
+  /**
+   * Write an index snapshot.
+   * 
+   * Errors are logged, but not fatal, as the index itself is still usable.
+   * 
+   * @param index Index to store
+   * @param ids DBIDs of the indexed relation
+   * @param fingerprint Data set fingerprint, see {@link #fingerprint}
+   * @param file Snapshot file
+   */
+  public static void save(SnapshotIndex index, DBIDRange ids, long fingerprint, File file) {
+    final File dir = file.getAbsoluteFile().getParentFile();
+    if(dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+      LOG.warning("Could not create the snapshot directory " + dir);
+      return;
+    }
+    try (SnapshotOutput out = new SnapshotOutput(file, index.getClass().getName(), fingerprint, ids)) {
+      index.writeSnapshot(out);
+      out.commit();
+    }
+    catch(IOException e) {
+      LOG.warning("Could not write index snapshot " + file, e);
+    }
+  }
+}
@@ -32,6 +32,7 @@ import java.io.RandomAccessFile;
 import java.util.Stack;
 
 import de.lmu.ifi.dbs.elki.persistent.DefaultPageHeader;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
 
 /**
  * Encapsulates the header information of a tree-like index structure. This
@@ -42,11 +43,11 @@ import de.lmu.ifi.dbs.elki.persistent.DefaultPageHeader;
  */
 public class TreeIndexHeader extends DefaultPageHeader {
   /**
-   * The size of this header in Bytes, which is 20 Bytes ( 4 Bytes for
+   * The size of this header in Bytes, which is 24 Bytes ( 4 Bytes for
    * {@link #dirCapacity}, {@link #leafCapacity}, {@link #dirMinimum},
-   * {@link #leafMinimum}, and {@link #emptyPagesSize}).
+   * {@link #leafMinimum}, {@link #emptyPagesSize} and {@link #largestPageID}).
    */
-  private static int SIZE = 20;
+  private static final int SIZE = 24;
 
   /**
    * The capacity of a directory node (= 1 + maximum number of entries in a
@@ -121,6 +122,25 @@ public class TreeIndexHeader extends DefaultPageHeader {
     this.largestPageID = file.readInt();
   }
 
+  /**
+   * Initializes this header from the given byte array. Calls
+   * {@link de.lmu.ifi.dbs.elki.persistent.DefaultPageHeader#readHeader(byte[])
+   * DefaultPageHeader#readHeader(data)} and reads the integer values of
+   * {@link #dirCapacity}, {@link #leafCapacity}, {@link #dirMinimum},
+   * {@link #leafMinimum}, {@link #emptyPagesSize} and {@link #largestPageID}.
+   */
+  @Override
+  public void readHeader(byte[] data) {
+    super.readHeader(data);
+    int off = super.size();
+    this.dirCapacity = ByteArrayUtil.readInt(data, off);
+    this.leafCapacity = ByteArrayUtil.readInt(data, off + 4);
+    this.dirMinimum = ByteArrayUtil.readInt(data, off + 8);
+    this.leafMinimum = ByteArrayUtil.readInt(data, off + 12);
+    this.emptyPagesSize = ByteArrayUtil.readInt(data, off + 16);
+    this.largestPageID = ByteArrayUtil.readInt(data, off + 20);
+  }
+
   /**
    * Writes this header to the specified file. Writes the integer values of
    * {@link #dirCapacity}, {@link #leafCapacity}, {@link #dirMinimum},
@@ -137,6 +157,21 @@ public class TreeIndexHeader extends DefaultPageHeader {
     file.writeInt(this.largestPageID);
   }
 
+  @Override
+  public byte[] asByteArray() {
+    byte[] header = new byte[size()];
+    byte[] base = super.asByteArray();
+    System.arraycopy(base, 0, header, 0, base.length);
+    int off = base.length;
+    ByteArrayUtil.writeInt(header, off, this.dirCapacity);
+    ByteArrayUtil.writeInt(header, off + 4, this.leafCapacity);
+    ByteArrayUtil.writeInt(header, off + 8, this.dirMinimum);
+    ByteArrayUtil.writeInt(header, off + 12, this.leafMinimum);
+    ByteArrayUtil.writeInt(header, off + 16, this.emptyPagesSize);
+    ByteArrayUtil.writeInt(header, off + 20, this.largestPageID);
+    return header;
+  }
+
   /**
    * Returns the capacity of a directory node (= 1 + maximum number of entries
    * in a directory node).
@@ -635,6 +635,18 @@ public class Logging {
     }
   }
 
+  /**
+   * Increment a progress by a given amount (unless {@code null}).
+   * 
+   * @param prog Progress to increment, may be {@code null}.
+   * @param amount Number of newly processed items
+   */
+  public void incrementProcessed(AbstractProgress prog, int amount) {
+    if(prog != null) {
+      prog.incrementProcessed(amount, this);
+    }
+  }
+
   /**
    * Increment a progress (unless {@code null}).
    * 
@@ -145,6 +145,19 @@ public abstract class AbstractProgress implements Progress {
     }
   }
 
+  /**
+   * Increment the processed counter by a given amount.
+   * 
+   * @param amount Number of newly processed items
+   * @param logger Logger to report to.
+   */
+  public void incrementProcessed(int amount, Logging logger) {
+    this.processed.addAndGet(amount);
+    if(testLoggingRate()) {
+      logger.progress(this);
+    }
+  }
+
   /**
    * Logging rate control.
    * 
@@ -0,0 +1,261 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+
+/**
+ * Reader for binary index snapshots written by {@link SnapshotOutput}.
+ * 
+ * The file is memory-mapped in windows of up to 1 GB, so that snapshots larger
+ * than the maximum {@link ByteBuffer} size can be read sequentially, and the
+ * operating system page cache is used instead of Java heap buffers.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.uses DBIDRange
+ */
+public class SnapshotInput implements AutoCloseable {
+  /**
+   * Maximum size of a mapped window.
+   */
+  private static final int WINDOW_SIZE = 1 << 30;
+
+  /**
+   * Input channel.
+   */
+  private FileChannel channel;
+
+  /**
+   * File size.
+   */
+  private final long size;
+
+  /**
+   * File position of the current window.
+   */
+  private long base = 0;
+
+  /**
+   * Currently mapped window.
+   */
+  private MappedByteBuffer buffer;
+
+  /**
+   * DBIDs of the indexed relation.
+   */
+  private final DBIDRange ids;
+
+  /**
+   * Iterator used to return DBID references.
+   */
+  private final DBIDArrayIter iter;
+
+  /**
+   * Constructor.
+   * 
+   * @param channel Input channel
+   * @param ids DBIDs of the indexed relation
+   * @throws IOException on IO errors
+   */
+  private SnapshotInput(FileChannel channel, DBIDRange ids) throws IOException {
+    super();
+    this.channel = channel;
+    this.size = channel.size();
+    this.ids = ids;
+    this.iter = ids.iter();
+    this.buffer = channel.map(MapMode.READ_ONLY, 0, Math.min(size, WINDOW_SIZE));
+  }
+
+  /**
+   * Open a snapshot file, and verify its header.
+   * 
+   * @param file Input file name
+   * @param type Expected type of the stored structure
+   * @param fingerprint Expected data set fingerprint
+   * @param ids DBIDs of the indexed relation
+   * @return Snapshot reader, or {@code null} if the file does not exist or
+   *         does not match.
+   * @throws IOException on IO errors
+   */
+  public static SnapshotInput open(File file, String type, long fingerprint, DBIDRange ids) throws IOException {
+    if(!file.isFile()) {
+      return null;
+    }
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    boolean valid = false;
+    try {
+      // Check the trailer, to detect truncated files.
+      final long size = channel.size();
+      ByteBuffer trailer = ByteBuffer.allocate(ByteArrayUtil.SIZE_INT);
+      if(size < 5 * ByteArrayUtil.SIZE_INT + ByteArrayUtil.SIZE_LONG || channel.read(trailer, size - ByteArrayUtil.SIZE_INT) != ByteArrayUtil.SIZE_INT || trailer.getInt(0) != SnapshotOutput.MAGIC) {
+        return null;
+      }
+      SnapshotInput in = new SnapshotInput(channel, ids);
+      if(in.readInt() != SnapshotOutput.MAGIC || in.readInt() != SnapshotOutput.VERSION //
+          || in.readLong() != fingerprint || in.readInt() != ids.size() //
+          || !type.equals(in.readString())) {
+        return null;
+      }
+      valid = true;
+      return in;
+    }
+    finally {
+      if(!valid) {
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * Ensure there are enough bytes in the current window.
+   * 
+   * @param n Number of bytes needed
+   * @throws IOException on IO errors
+   */
+  private void ensure(int n) throws IOException {
+    if(buffer.remaining() >= n) {
+      return;
+    }
+    base += buffer.position();
+    final long len = Math.min(size - base, WINDOW_SIZE);
+    if(len < n) {
+      throw new EOFException("Unexpected end of snapshot file.");
+    }
+    buffer = channel.map(MapMode.READ_ONLY, base, len);
+  }
+
+  /**
+   * Read an integer.
+   * 
+   * @return Value
+   * @throws IOException on IO errors
+   */
+  public int readInt() throws IOException {
+    ensure(ByteArrayUtil.SIZE_INT);
+    return buffer.getInt();
+  }
+
+  /**
+   * Read a long.
+   * 
+   * @return Value
+   * @throws IOException on IO errors
+   */
+  public long readLong() throws IOException {
+    ensure(ByteArrayUtil.SIZE_LONG);
+    return buffer.getLong();
+  }
+
+  /**
+   * Read a double.
+   * 
+   * @return Value
+   * @throws IOException on IO errors
+   */
+  public double readDouble() throws IOException {
+    ensure(ByteArrayUtil.SIZE_DOUBLE);
+    return buffer.getDouble();
+  }
+
+  /**
+   * Read into a range of a double array.
+   * 
+   * @param v Output array
+   * @param off Start offset
+   * @param len Number of values
+   * @throws IOException on IO errors
+   */
+  public void readDoubles(double[] v, int off, int len) throws IOException {
+    while(len > 0) {
+      ensure(ByteArrayUtil.SIZE_DOUBLE);
+      final int n = Math.min(len, buffer.remaining() / ByteArrayUtil.SIZE_DOUBLE);
+      buffer.asDoubleBuffer().get(v, off, n);
+      buffer.position(buffer.position() + n * ByteArrayUtil.SIZE_DOUBLE);
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * Read a string.
+   * 
+   * @return String
+   * @throws IOException on IO errors
+   */
+  public String readString() throws IOException {
+    final int len = readInt();
+    if(len < 0 || len > size) {
+      throw new IOException("Corrupt snapshot file: invalid string length.");
+    }
+    byte[] bytes = new byte[len];
+    for(int off = 0; off < len;) {
+      ensure(1);
+      final int n = Math.min(len - off, buffer.remaining());
+      buffer.get(bytes, off, n);
+      off += n;
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Read an object reference.
+   * 
+   * Note: the returned reference is only valid until the next call.
+   * 
+   * @return Object reference
+   * @throws IOException on IO errors
+   */
+  public DBIDRef readDBID() throws IOException {
+    final int off = readInt();
+    if(off < 0 || off >= ids.size()) {
+      throw new IOException("Corrupt snapshot file: object offset out of range.");
+    }
+    return iter.seek(off);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if(channel != null) {
+      channel.close();
+      channel = null;
+      buffer = null;
+    }
+  }
+}
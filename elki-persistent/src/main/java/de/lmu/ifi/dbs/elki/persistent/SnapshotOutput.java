@@ -0,0 +1,261 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+
+/**
+ * Writer for binary index snapshots.
+ * 
+ * A snapshot file consists of a fixed header (magic, format version, data set
+ * fingerprint, number of objects and the type of the stored structure),
+ * followed by a payload written by the index itself. Object references are
+ * stored as offsets into the {@link DBIDRange} of the indexed relation, so a
+ * snapshot can be loaded into a different database instance of the same data.
+ * 
+ * The data is first written to a temporary file, which is only moved to the
+ * final location by {@link #commit()}. Incomplete snapshots (e.g. after
+ * exceptions or crashes) are therefore never visible to {@link SnapshotInput}.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.uses DBIDRange
+ */
+public class SnapshotOutput implements AutoCloseable {
+  /**
+   * Magic number used to identify snapshot files: "ELKS".
+   */
+  public static final int MAGIC = 0x454C4B53;
+
+  /**
+   * File format version.
+   * 
+   * NOTE: Change this version whenever the file structure is changed in an
+   * incompatible way.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * Size of the write buffer.
+   */
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  /**
+   * Final file name.
+   */
+  private final File file;
+
+  /**
+   * Temporary file name.
+   */
+  private final File tmp;
+
+  /**
+   * Output channel.
+   */
+  private FileChannel channel;
+
+  /**
+   * Write buffer.
+   */
+  private final ByteBuffer buffer;
+
+  /**
+   * DBIDs of the indexed relation.
+   */
+  private final DBIDRange ids;
+
+  /**
+   * Constructor, writes the file header.
+   * 
+   * @param file Output file name
+   * @param type Type of the stored structure (usually the class name)
+   * @param fingerprint Data set fingerprint
+   * @param ids DBIDs of the indexed relation
+   * @throws IOException on IO errors
+   */
+  public SnapshotOutput(File file, String type, long fingerprint, DBIDRange ids) throws IOException {
+    super();
+    this.file = file;
+    this.tmp = new File(file.getPath() + ".tmp");
+    this.ids = ids;
+    this.channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    writeInt(MAGIC);
+    writeInt(VERSION);
+    writeLong(fingerprint);
+    writeInt(ids.size());
+    writeString(type);
+  }
+
+  /**
+   * Ensure there is enough space in the buffer.
+   * 
+   * @param n Number of bytes needed
+   * @throws IOException on IO errors
+   */
+  private void ensure(int n) throws IOException {
+    if(buffer.remaining() < n) {
+      flush();
+    }
+  }
+
+  /**
+   * Flush the write buffer to the file.
+   * 
+   * @throws IOException on IO errors
+   */
+  private void flush() throws IOException {
+    buffer.flip();
+    while(buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Write an integer.
+   * 
+   * @param v Value
+   * @throws IOException on IO errors
+   */
+  public void writeInt(int v) throws IOException {
+    ensure(ByteArrayUtil.SIZE_INT);
+    buffer.putInt(v);
+  }
+
+  /**
+   * Write a long.
+   * 
+   * @param v Value
+   * @throws IOException on IO errors
+   */
+  public void writeLong(long v) throws IOException {
+    ensure(ByteArrayUtil.SIZE_LONG);
+    buffer.putLong(v);
+  }
+
+  /**
+   * Write a double.
+   * 
+   * @param v Value
+   * @throws IOException on IO errors
+   */
+  public void writeDouble(double v) throws IOException {
+    ensure(ByteArrayUtil.SIZE_DOUBLE);
+    buffer.putDouble(v);
+  }
+
+  /**
+   * Write a range of a double array.
+   * 
+   * @param v Values
+   * @param off Start offset
+   * @param len Number of values
+   * @throws IOException on IO errors
+   */
+  public void writeDoubles(double[] v, int off, int len) throws IOException {
+    while(len > 0) {
+      ensure(ByteArrayUtil.SIZE_DOUBLE);
+      final int n = Math.min(len, buffer.remaining() / ByteArrayUtil.SIZE_DOUBLE);
+      DoubleBuffer dbuf = buffer.asDoubleBuffer();
+      dbuf.put(v, off, n);
+      buffer.position(buffer.position() + n * ByteArrayUtil.SIZE_DOUBLE);
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * Write a string.
+   * 
+   * @param s String
+   * @throws IOException on IO errors
+   */
+  public void writeString(String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    writeInt(bytes.length);
+    for(int off = 0; off < bytes.length;) {
+      ensure(1);
+      final int n = Math.min(bytes.length - off, buffer.remaining());
+      buffer.put(bytes, off, n);
+      off += n;
+    }
+  }
+
+  /**
+   * Write an object reference.
+   * 
+   * @param id Object reference, must be part of the indexed relation.
+   * @throws IOException on IO errors
+   */
+  public void writeDBID(DBIDRef id) throws IOException {
+    final int off = ids.getOffset(id);
+    assert (off >= 0 && off < ids.size()) : "DBID not in relation.";
+    writeInt(off);
+  }
+
+  /**
+   * Complete the snapshot, and move it to its final location.
+   * 
+   * @throws IOException on IO errors
+   */
+  public void commit() throws IOException {
+    writeInt(MAGIC); // Trailer
+    flush();
+    channel.force(false);
+    channel.close();
+    channel = null;
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Close the output. If the snapshot was not committed, the partial file is
+   * removed.
+   * 
+   * @throws IOException on IO errors
+   */
+  @Override
+  public void close() throws IOException {
+    if(channel != null) {
+      channel.close();
+      channel = null;
+      Files.deleteIfExists(tmp.toPath());
+    }
+  }
+}
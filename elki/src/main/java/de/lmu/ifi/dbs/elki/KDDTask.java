@@ -27,12 +27,16 @@ import java.util.Collection;
 
 import de.lmu.ifi.dbs.elki.application.KDDCLIApplication;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.ResultHierarchy;
 import de.lmu.ifi.dbs.elki.result.SettingsResult;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.TrackParameters;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.TrackedParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.workflow.AlgorithmStep;
 import de.lmu.ifi.dbs.elki.workflow.EvaluationStep;
 import de.lmu.ifi.dbs.elki.workflow.InputStep;
@@ -81,6 +85,11 @@ public class KDDTask {
    */
   private ResultHierarchy hier;
 
+  /**
+   * Parallel processing core for this task, {@code null} for the default.
+   */
+  private ParallelCore core;
+
   /**
    * Constructor.
    *
@@ -91,12 +100,27 @@ public class KDDTask {
    * @param settings
    */
   public KDDTask(InputStep inputStep, AlgorithmStep algorithmStep, EvaluationStep evaluationStep, OutputStep outputStep, Collection<TrackedParameter> settings) {
+    this(inputStep, algorithmStep, evaluationStep, outputStep, settings, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param inputStep
+   * @param algorithmStep
+   * @param evaluationStep
+   * @param outputStep
+   * @param settings
+   * @param core Parallel processing core, {@code null} for the default core
+   */
+  public KDDTask(InputStep inputStep, AlgorithmStep algorithmStep, EvaluationStep evaluationStep, OutputStep outputStep, Collection<TrackedParameter> settings, ParallelCore core) {
     super();
     this.inputStep = inputStep;
     this.algorithmStep = algorithmStep;
     this.evaluationStep = evaluationStep;
     this.outputStep = outputStep;
     this.settings = settings;
+    this.core = core;
   }
 
   /**
@@ -104,6 +128,24 @@ public class KDDTask {
    * connection.
    */
   public void run() {
+    if(core == null) {
+      runSteps();
+      return;
+    }
+    ParallelCore prev = ParallelCore.setCore(core);
+    try {
+      runSteps();
+    }
+    finally {
+      ParallelCore.setCore(prev);
+      core.shutdown();
+    }
+  }
+
+  /**
+   * Run the workflow steps.
+   */
+  private void runSteps() {
     // Input step
     Database db = inputStep.getDatabase();
     hier = db.getHierarchy();
@@ -138,6 +180,14 @@ public class KDDTask {
    * @apiviz.exclude
    */
   public static class Parameterizer extends AbstractParameterizer {
+    /**
+     * Number of threads to use for parallel processing in this task.
+     * <p>
+     * Key: {@code -parallel.processors}
+     * </p>
+     */
+    public static final OptionID PARALLELISM_ID = new OptionID("parallel.processors", "Number of threads to use for parallel processing in this task (default: all processors).");
+
     InputStep inputStep = null;
 
     AlgorithmStep algorithmStep = null;
@@ -148,12 +198,21 @@ public class KDDTask {
 
     OutputStep outputStep = null;
 
+    ParallelCore core = null;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
       // Track the key parameters for reporting the settings.
       TrackParameters track = new TrackParameters(config);
 
+      IntParameter parallelP = new IntParameter(PARALLELISM_ID) //
+      .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      parallelP.setOptional(true);
+      if(track.grab(parallelP)) {
+        core = new ParallelCore(parallelP.intValue());
+      }
+
       inputStep = track.tryInstantiate(InputStep.class);
       algorithmStep = track.tryInstantiate(AlgorithmStep.class);
       evaluationStep = track.tryInstantiate(EvaluationStep.class);
@@ -166,7 +225,7 @@ public class KDDTask {
 
     @Override
     protected KDDTask makeInstance() {
-      return new KDDTask(inputStep, algorithmStep, evaluationStep, outputStep, settings);
+      return new KDDTask(inputStep, algorithmStep, evaluationStep, outputStep, settings, core);
     }
   }
 
@@ -0,0 +1,212 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.BlockedEuclideanScan;
+import de.lmu.ifi.dbs.elki.database.query.range.BulkRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.LinearScanEuclideanDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * DBSCAN variant that expands clusters by processing the seed frontier in
+ * batches. If the range query supports {@link BulkRangeQuery}, each batch is
+ * answered with a single bulk query, such that the scan of the data or the
+ * traversal of the index is shared by all seeds of the batch. For the
+ * Euclidean linear scan, the dense copy of the data is obtained once per
+ * cluster, and shared by all batches.
+ *
+ * The result is the same as with {@link DBSCAN}: clusters are expanded in the
+ * same order, only the neighborhoods of a batch of seeds are retrieved at once.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses BulkRangeQuery
+ * @apiviz.uses BlockedEuclideanScan
+ *
+ * @param <O> the type of Object the algorithm is applied to
+ */
+public class BatchedDBSCAN<O> extends DBSCAN<O> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(BatchedDBSCAN.class);
+
+  /**
+   * Maximum number of seeds to query at once.
+   */
+  protected int batchsize;
+
+  /**
+   * Constructor with parameters.
+   *
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts parameter
+   * @param batchsize Maximum number of seeds to query at once
+   */
+  public BatchedDBSCAN(DistanceFunction<? super O> distanceFunction, double epsilon, int minpts, int batchsize) {
+    super(distanceFunction, epsilon, minpts);
+    this.batchsize = batchsize;
+  }
+
+  @Override
+  protected void expandCluster(Relation<O> relation, RangeQuery<O> rangeQuery, DBIDRef startObjectID, ArrayModifiableDBIDs seeds, FiniteProgress objprog, IndefiniteProgress clusprog) {
+    DoubleDBIDList neighbors = rangeQuery.getRangeForDBID(startObjectID, epsilon);
+    ncounter += neighbors.size();
+
+    // startObject is no core-object
+    if(neighbors.size() < minpts) {
+      noise.add(startObjectID);
+      processedIDs.add(startObjectID);
+      if(objprog != null) {
+        objprog.incrementProcessed(LOG);
+      }
+      return;
+    }
+
+    ModifiableDBIDs currentCluster = DBIDUtil.newArray();
+    currentCluster.add(startObjectID);
+    processedIDs.add(startObjectID);
+
+    // try to expand the cluster
+    assert(seeds.size() == 0);
+    seeds.clear();
+    processNeighbors(neighbors.iter(), currentCluster, seeds);
+
+    final BulkRangeQuery<O> bulkQuery = (rangeQuery instanceof BulkRangeQuery) ? (BulkRangeQuery<O>) rangeQuery : null;
+    // Blocked Euclidean scan: obtain the dense data once, not per batch.
+    final BlockedEuclideanScan scan = (rangeQuery instanceof LinearScanEuclideanDistanceRangeQuery) ? ((LinearScanEuclideanDistanceRangeQuery<?>) rangeQuery).getBlockedScan() : null;
+    final ArrayList<NumberVector> objs = scan != null ? new ArrayList<NumberVector>(batchsize) : null;
+    ArrayModifiableDBIDs batch = DBIDUtil.newArray(batchsize);
+    ModifiableDoubleDBIDList[] results = new ModifiableDoubleDBIDList[batchsize];
+    for(int i = 0; i < batchsize; i++) {
+      results[i] = DBIDUtil.newDistanceDBIDList();
+    }
+    DBIDVar o = DBIDUtil.newVar();
+    while(!seeds.isEmpty()) {
+      batch.clear();
+      while(batch.size() < batchsize && !seeds.isEmpty()) {
+        batch.add(seeds.pop(o));
+      }
+      final int size = batch.size();
+      for(int i = 0; i < size; i++) {
+        results[i].clear();
+      }
+      if(scan != null && size > 1) {
+        objs.clear();
+        for(DBIDArrayIter it = batch.iter(); it.valid(); it.advance()) {
+          objs.add((NumberVector) relation.get(it));
+        }
+        scan.range(objs, epsilon, results);
+      }
+      else if(bulkQuery != null && size > 1) {
+        bulkQuery.getRangeForBulkDBIDs(batch, epsilon, results);
+      }
+      else {
+        DBIDArrayIter it = batch.iter();
+        for(int i = 0; i < size; i++) {
+          rangeQuery.getRangeForDBID(it.seek(i), epsilon, results[i]);
+        }
+      }
+
+      for(int i = 0; i < size; i++) {
+        ncounter += results[i].size();
+        if(results[i].size() >= minpts) {
+          processNeighbors(results[i].iter(), currentCluster, seeds);
+        }
+        if(objprog != null) {
+          objprog.incrementProcessed(LOG);
+        }
+      }
+    }
+    resultList.add(currentCluster);
+    if(clusprog != null) {
+      clusprog.setProcessed(resultList.size(), LOG);
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<O> extends DBSCAN.Parameterizer<O> {
+    /**
+     * Maximum number of seeds to query at once.
+     * <p>
+     * Key: {@code -dbscan.batchsize}
+     * </p>
+     */
+    public static final OptionID BATCHSIZE_ID = new OptionID("dbscan.batchsize", "Maximum number of seeds to query at once.");
+
+    /**
+     * Maximum number of seeds to query at once.
+     */
+    protected int batchsize;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter batchsizeP = new IntParameter(BATCHSIZE_ID, 1000) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(batchsizeP)) {
+        batchsize = batchsizeP.intValue();
+      }
+    }
+
+    @Override
+    protected BatchedDBSCAN<O> makeInstance() {
+      return new BatchedDBSCAN<>(distanceFunction, epsilon, minpts, batchsize);
+    }
+  }
+}
@@ -254,7 +254,7 @@ public class DBSCAN<O> extends AbstractDistanceBasedAlgorithm<O, Clustering<Mode
    * @param currentCluster Current cluster
    * @param seeds Seed set
    */
-  private void processNeighbors(DoubleDBIDListIter neighbor, ModifiableDBIDs currentCluster, ArrayModifiableDBIDs seeds) {
+  protected void processNeighbors(DoubleDBIDListIter neighbor, ModifiableDBIDs currentCluster, ArrayModifiableDBIDs seeds) {
     final boolean ismetric = getDistanceFunction().isMetric();
     for(; neighbor.valid(); neighbor.advance()) {
       if(processedIDs.add(neighbor)) {
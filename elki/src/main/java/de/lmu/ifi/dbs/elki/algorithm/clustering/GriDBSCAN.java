@@ -159,7 +159,17 @@ public class GriDBSCAN<V extends NumberVector> extends AbstractDistanceBasedAlgo
       LOG.warning("Invalid grid width (less than 2*epsilon, recommended 10*epsilon). Increasing grid width automatically.");
       gridwidth = 2. * epsilon;
     }
-    return new Instance<V>(getDistanceFunction(), epsilon, minpts, gridwidth).run(relation);
+    return newInstance(gridwidth).run(relation);
+  }
+
+  /**
+   * Create the instance for a single run.
+   *
+   * @param gridwidth Grid width (validated)
+   * @return Instance
+   */
+  protected Instance<V> newInstance(double gridwidth) {
+    return new Instance<V>(getDistanceFunction(), epsilon, minpts, gridwidth);
   }
 
   /**
@@ -274,28 +284,11 @@ public class GriDBSCAN<V extends NumberVector> extends AbstractDistanceBasedAlgo
       final DBIDs ids = relation.getDBIDs();
       final int size = ids.size();
 
-      // Domain of the database
-      this.domain = RelationUtil.computeMinMax(relation);
-      this.dim = domain[0].length;
-      this.offset = new double[dim];
-      this.cells = new int[dim];
-      // Compute the grid start, and the number of cells in each dimension.
-      long numcells = computeGridBaseOffsets();
-      if(numcells > size) {
-        LOG.warning("The generated grid has more cells than data points. This may need excessive amounts of memory.");
-      }
-      else if(numcells == 1) {
-        LOG.warning("All data is in a single cell. This has degenerated to a non-indexed DBSCAN!");
-      }
-      else if(numcells <= dim * dim) {
-        LOG.warning("There are only " + numcells + " cells. This will likely be slower than regular DBSCAN!");
-      }
+      // Domain of the database and grid layout.
+      long numcells = initializeGrid(relation);
 
       // Build the data grid.
       buildGrid(relation, (int) numcells, offset);
-      if(grid.size() <= dim) {
-        LOG.warning("There are only " + grid.size() + " occupied cells. This will likely be slower than regular DBSCAN!");
-      }
 
       // Check grid cell counts:
       int mincells = checkGridCellSizes(size, numcells);
@@ -407,6 +400,32 @@ public class GriDBSCAN<V extends NumberVector> extends AbstractDistanceBasedAlgo
       }
     }
 
+    /**
+     * Compute the value domain and the grid layout.
+     *
+     * @param relation Data relation
+     * @return Total number of grid cells
+     */
+    protected long initializeGrid(Relation<V> relation) {
+      final int size = relation.size();
+      this.domain = RelationUtil.computeMinMax(relation);
+      this.dim = domain[0].length;
+      this.offset = new double[dim];
+      this.cells = new int[dim];
+      // Compute the grid start, and the number of cells in each dimension.
+      long numcells = computeGridBaseOffsets();
+      if(numcells > size) {
+        LOG.warning("The generated grid has more cells than data points. This may need excessive amounts of memory.");
+      }
+      else if(numcells == 1) {
+        LOG.warning("All data is in a single cell. This has degenerated to a non-indexed DBSCAN!");
+      }
+      else if(numcells <= dim * dim) {
+        LOG.warning("There are only " + numcells + " cells. This will likely be slower than regular DBSCAN!");
+      }
+      return numcells;
+    }
+
     /**
      * Compute the grid base offset.
      *
@@ -473,7 +492,7 @@ public class GriDBSCAN<V extends NumberVector> extends AbstractDistanceBasedAlgo
      * @param d Current dimension
      * @param v Current cell value
      */
-    private void insertIntoGrid(DBIDRef id, V obj, int d, int v) {
+    protected void insertIntoGrid(DBIDRef id, V obj, int d, int v) {
       final int cn = cells[d]; // Number of cells in this dimension
       final int nd = d + 1; // Next dimension
       int mi = Math.max(0, (int) FastMath.floor((obj.doubleValue(d) - offset[d] - epsilon) / gridwidth));
@@ -482,11 +501,7 @@ public class GriDBSCAN<V extends NumberVector> extends AbstractDistanceBasedAlgo
       for(int i = mi; i <= ma; i++) {
         int c = v * cn + i;
         if(nd == cells.length) {
-          ModifiableDBIDs ids = grid.get(c);
-          if(ids == null) {
-            grid.put(c, ids = DBIDUtil.newArray());
-          }
-          ids.add(id);
+          insertIntoCell(c, id);
         }
         else {
           insertIntoGrid(id, obj, nd, c);
@@ -494,6 +509,20 @@ public class GriDBSCAN<V extends NumberVector> extends AbstractDistanceBasedAlgo
       }
     }
 
+    /**
+     * Add an object to a single grid cell.
+     *
+     * @param c Cell number
+     * @param id Object ID
+     */
+    protected void insertIntoCell(int c, DBIDRef id) {
+      ModifiableDBIDs ids = grid.get(c);
+      if(ids == null) {
+        grid.put(c, ids = DBIDUtil.newArray());
+      }
+      ids.add(id);
+    }
+
     /**
      * Perform some sanity checks on the grid cells.
      *
@@ -502,12 +531,31 @@ public class GriDBSCAN<V extends NumberVector> extends AbstractDistanceBasedAlgo
      * @return Number of cells with minPts points
      */
     protected int checkGridCellSizes(int size, long numcell) {
+      int[] sizes = new int[grid.size()];
+      int i = 0;
+      for(TLongObjectIterator<ModifiableDBIDs> it = grid.iterator(); it.hasNext();) {
+        it.advance();
+        sizes[i++] = it.value().size();
+      }
+      return checkGridCellSizes(size, numcell, sizes);
+    }
+
+    /**
+     * Perform some sanity checks on the grid cells.
+     *
+     * @param size Relation size
+     * @param numcell Number of cells
+     * @param sizes Sizes of the occupied cells
+     * @return Number of cells with minPts points
+     */
+    protected int checkGridCellSizes(int size, long numcell, int[] sizes) {
+      if(sizes.length <= dim) {
+        LOG.warning("There are only " + sizes.length + " occupied cells. This will likely be slower than regular DBSCAN!");
+      }
       int tcount = 0;
       int hasmin = 0;
       double sqcount = 0;
-      for(TLongObjectIterator<ModifiableDBIDs> it = grid.iterator(); it.hasNext();) {
-        it.advance();
-        final int s = it.value().size();
+      for(int s : sizes) {
         if(s >= size >> 1) {
           LOG.warning("A single cell contains half of the database (" + s//
           + " objects). This will not scale very well.");
@@ -527,7 +575,7 @@ public class GriDBSCAN<V extends NumberVector> extends AbstractDistanceBasedAlgo
       } else {
         LOG.statistics(new LongStatistic(GriDBSCAN.class.getName() + ".all-cells", numcell));
       }
-      LOG.statistics(new LongStatistic(GriDBSCAN.class.getName() + ".used-cells", grid.size()));
+      LOG.statistics(new LongStatistic(GriDBSCAN.class.getName() + ".used-cells", sizes.length));
       LOG.statistics(new LongStatistic(GriDBSCAN.class.getName() + ".minpts-cells", hasmin));
       LOG.statistics(new DoubleStatistic(GriDBSCAN.class.getName() + ".redundancy", tcount / (double) size));
       LOG.statistics(new DoubleStatistic(GriDBSCAN.class.getName() + ".relative-cost", savings));
@@ -0,0 +1,612 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.model.ClusterModel;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.UpdatableDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreEvent;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreListener;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.result.BasicResult;
+import de.lmu.ifi.dbs.elki.result.Result;
+import de.lmu.ifi.dbs.elki.result.ResultListener;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * Incremental DBSCAN, which keeps the clustering up to date when objects are
+ * inserted into or removed from an {@link UpdatableDatabase}.
+ *
+ * The epsilon-neighborhoods of all objects are materialized. On insertion,
+ * only the new objects are queried; objects that become core objects merge the
+ * clusters of their core neighbors. On removal, the stored neighborhoods are
+ * updated without any query, and only the clusters that lost a core object are
+ * recomputed from the stored neighborhoods, which handles cluster splits.
+ *
+ * The current state is attached to the returned clustering as child result
+ * ({@link Instance}); use {@link Instance#getClustering()} to obtain an
+ * up-to-date clustering after updates. The instance stops listening to the
+ * database when it is removed from the database result hierarchy, or when
+ * {@link Instance#detach()} is called.
+ *
+ * Reference:
+ * <p>
+ * M. Ester, H.-P. Kriegel, J. Sander, M. Wimmer, X. Xu:<br />
+ * Incremental Clustering for Mining in a Data Warehousing Environment.<br />
+ * In Proc. 24th Int. Conf. on Very Large Data Bases (VLDB '98).
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has Instance
+ *
+ * @param <O> the type of Object the algorithm is applied to
+ */
+@Reference(authors = "M. Ester, H.-P. Kriegel, J. Sander, M. Wimmer, X. Xu", //
+title = "Incremental Clustering for Mining in a Data Warehousing Environment", //
+booktitle = "Proc. 24th Int. Conf. on Very Large Data Bases (VLDB '98)", //
+url = "http://www.vldb.org/conf/1998/p323.pdf")
+public class IncrementalDBSCAN<O> extends AbstractDistanceBasedAlgorithm<O, Clustering<Model>> implements ClusteringAlgorithm<Clustering<Model>> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(IncrementalDBSCAN.class);
+
+  /**
+   * Holds the epsilon radius threshold.
+   */
+  protected double epsilon;
+
+  /**
+   * Holds the minimum cluster size.
+   */
+  protected int minpts;
+
+  /**
+   * Constructor with parameters.
+   *
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts parameter
+   */
+  public IncrementalDBSCAN(DistanceFunction<? super O> distanceFunction, double epsilon, int minpts) {
+    super(distanceFunction);
+    this.epsilon = epsilon;
+    this.minpts = minpts;
+  }
+
+  /**
+   * Run the initial clustering, and start listening for database updates.
+   *
+   * @param database Database
+   * @param relation Relation
+   * @return Current clustering
+   */
+  public Clustering<Model> run(Database database, Relation<O> relation) {
+    if(!(database instanceof UpdatableDatabase)) {
+      LOG.warning("The database is not updatable, incremental DBSCAN will only compute a static result.");
+    }
+    DistanceQuery<O> dq = database.getDistanceQuery(relation, getDistanceFunction());
+    RangeQuery<O> rq = database.getRangeQuery(dq, epsilon, DatabaseQuery.HINT_HEAVY_USE);
+    Instance<O> instance = new Instance<>(relation, rq, epsilon, minpts);
+    instance.initialize();
+    instance.attach(database);
+    Clustering<Model> result = instance.getClustering();
+    result.addChildResult(instance);
+    return result;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(getDistanceFunction().getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Clustering state of a single run, updated on database changes.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  public static class Instance<O> extends BasicResult implements DataStoreListener, ResultListener {
+    /**
+     * Label of noise objects.
+     */
+    private static final int NOISE = 0;
+
+    /**
+     * Data relation.
+     */
+    private Relation<O> relation;
+
+    /**
+     * Range query.
+     */
+    private RangeQuery<O> rangeQuery;
+
+    /**
+     * Holds the epsilon radius threshold.
+     */
+    private double epsilon;
+
+    /**
+     * Holds the minimum cluster size.
+     */
+    private int minpts;
+
+    /**
+     * Materialized neighborhoods (including the object itself).
+     */
+    private WritableDataStore<ArrayModifiableDBIDs> neighbors;
+
+    /**
+     * Cluster label of each object.
+     */
+    private WritableIntegerDataStore labels;
+
+    /**
+     * Cluster members, by label.
+     */
+    private TIntObjectHashMap<HashSetModifiableDBIDs> clusters = new TIntObjectHashMap<>();
+
+    /**
+     * Next label to assign.
+     */
+    private int nextlabel = NOISE + 1;
+
+    /**
+     * Database the instance listens to, {@code null} when detached.
+     */
+    private Database database;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param rangeQuery Range query
+     * @param epsilon Query radius
+     * @param minpts Minimum number of neighbors of core objects
+     */
+    public Instance(Relation<O> relation, RangeQuery<O> rangeQuery, double epsilon, int minpts) {
+      super("Incremental DBSCAN", "incremental-dbscan");
+      this.relation = relation;
+      this.rangeQuery = rangeQuery;
+      this.epsilon = epsilon;
+      this.minpts = minpts;
+    }
+
+    /**
+     * Compute the initial clustering.
+     */
+    public void initialize() {
+      final DBIDs ids = relation.getDBIDs();
+      neighbors = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT, ArrayModifiableDBIDs.class);
+      labels = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT, NOISE);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Materializing neighborhoods", ids.size(), LOG) : null;
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        neighbors.put(it, query(it));
+        LOG.incrementProcessed(prog);
+      }
+      LOG.ensureCompleted(prog);
+      formClusters(ids);
+    }
+
+    /**
+     * Start listening to updates of the database. The instance is detached
+     * automatically when it is removed from the database result hierarchy.
+     *
+     * @param database Database to listen to
+     */
+    public void attach(Database database) {
+      detach();
+      this.database = database;
+      database.addDataStoreListener(this);
+      database.getHierarchy().addResultListener(this);
+    }
+
+    /**
+     * Stop listening to database updates; the clustering is no longer
+     * maintained afterwards.
+     */
+    public void detach() {
+      if(database != null) {
+        database.removeDataStoreListener(this);
+        database.getHierarchy().removeResultListener(this);
+        database = null;
+      }
+    }
+
+    @Override
+    public void resultAdded(Result child, Result parent) {
+      // Ignore
+    }
+
+    @Override
+    public void resultChanged(Result current) {
+      // Ignore
+    }
+
+    @Override
+    public void resultRemoved(Result child, Result parent) {
+      if(child == this) {
+        detach();
+      }
+    }
+
+    @Override
+    public void contentChanged(DataStoreEvent e) {
+      if(!e.getRemovals().isEmpty()) {
+        remove(e.getRemovals());
+      }
+      if(!e.getUpdates().isEmpty()) {
+        remove(e.getUpdates());
+        insert(e.getUpdates());
+      }
+      if(!e.getInserts().isEmpty()) {
+        insert(e.getInserts());
+      }
+    }
+
+    /**
+     * Process newly inserted objects.
+     *
+     * @param ids New objects
+     */
+    protected void insert(DBIDs ids) {
+      final DBIDs newids = ids.size() > 1 ? DBIDUtil.newHashSet(ids) : ids;
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        neighbors.put(it, query(it));
+      }
+      // Add the new objects to the neighborhoods of existing objects.
+      ArrayModifiableDBIDs newcores = DBIDUtil.newArray();
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        if(isCore(it)) {
+          newcores.add(it);
+        }
+        for(DBIDIter n = neighbors.get(it).iter(); n.valid(); n.advance()) {
+          if(newids.contains(n)) {
+            continue; // Already complete.
+          }
+          ArrayModifiableDBIDs nn = neighbors.get(n);
+          nn.add(it);
+          if(nn.size() == minpts) {
+            newcores.add(n);
+          }
+        }
+      }
+      // Merge the clusters around each new core object.
+      for(DBIDIter it = newcores.iter(); it.valid(); it.advance()) {
+        ArrayModifiableDBIDs nc = neighbors.get(it);
+        int target = labels.intValue(it);
+        for(DBIDIter n = nc.iter(); n.valid(); n.advance()) {
+          final int ln = labels.intValue(n);
+          if(ln != NOISE && ln != target && isCore(n)) {
+            target = target == NOISE ? ln : merge(target, ln);
+          }
+        }
+        if(target == NOISE) {
+          target = nextlabel++;
+          clusters.put(target, DBIDUtil.newHashSet());
+        }
+        HashSetModifiableDBIDs members = clusters.get(target);
+        // Labels may have changed by merging:
+        if(labels.intValue(it) != target) {
+          assign(it, target, members);
+        }
+        for(DBIDIter n = nc.iter(); n.valid(); n.advance()) {
+          if(labels.intValue(n) == NOISE) {
+            assign(n, target, members);
+          }
+        }
+      }
+      // Remaining new objects may be border objects of existing clusters.
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        if(labels.intValue(it) == NOISE) {
+          attachBorder(it);
+        }
+      }
+    }
+
+    /**
+     * Process removed objects. The objects may no longer be available in the
+     * relation, so only the materialized neighborhoods are used.
+     *
+     * @param ids Removed objects
+     */
+    protected void remove(DBIDs ids) {
+      TIntHashSet affected = new TIntHashSet();
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        ArrayModifiableDBIDs nd = neighbors.get(it);
+        if(nd == null) {
+          continue;
+        }
+        final int ld = labels.intValue(it);
+        if(ld != NOISE) {
+          clusters.get(ld).remove(it);
+          if(nd.size() >= minpts) {
+            affected.add(ld);
+          }
+        }
+        for(DBIDIter n = nd.iter(); n.valid(); n.advance()) {
+          ArrayModifiableDBIDs nn = DBIDUtil.equal(n, it) ? null : neighbors.get(n);
+          if(nn == null) {
+            continue;
+          }
+          if(nn.size() == minpts) { // Loses core status
+            final int ln = labels.intValue(n);
+            if(ln != NOISE) {
+              affected.add(ln);
+            }
+          }
+          nn.remove(it);
+        }
+        neighbors.delete(it);
+        labels.delete(it);
+      }
+      // Recompute the affected clusters, which may have split.
+      for(TIntIterator iter = affected.iterator(); iter.hasNext();) {
+        HashSetModifiableDBIDs members = clusters.remove(iter.next());
+        if(members == null) {
+          continue;
+        }
+        for(DBIDIter it = members.iter(); it.valid(); it.advance()) {
+          labels.putInt(it, NOISE);
+        }
+        formClusters(members);
+      }
+    }
+
+    /**
+     * Form clusters from the unlabeled core objects in the candidate set, and
+     * label all remaining candidates as border or noise objects.
+     *
+     * @param candidates Candidate objects
+     */
+    private void formClusters(DBIDs candidates) {
+      ArrayModifiableDBIDs seeds = DBIDUtil.newArray();
+      DBIDVar cur = DBIDUtil.newVar();
+      for(DBIDIter it = candidates.iter(); it.valid(); it.advance()) {
+        if(labels.intValue(it) != NOISE || !isCore(it)) {
+          continue;
+        }
+        final int label = nextlabel++;
+        HashSetModifiableDBIDs members = DBIDUtil.newHashSet();
+        clusters.put(label, members);
+        assign(it, label, members);
+        seeds.add(it);
+        while(!seeds.isEmpty()) {
+          seeds.pop(cur);
+          for(DBIDIter n = neighbors.get(cur).iter(); n.valid(); n.advance()) {
+            if(labels.intValue(n) != NOISE) {
+              continue;
+            }
+            assign(n, label, members);
+            if(isCore(n)) {
+              seeds.add(n);
+            }
+          }
+        }
+      }
+      for(DBIDIter it = candidates.iter(); it.valid(); it.advance()) {
+        if(labels.intValue(it) == NOISE) {
+          attachBorder(it);
+        }
+      }
+    }
+
+    /**
+     * Assign a non-core object to the cluster of a core neighbor, if any.
+     *
+     * @param id Object
+     */
+    private void attachBorder(DBIDRef id) {
+      for(DBIDIter n = neighbors.get(id).iter(); n.valid(); n.advance()) {
+        final int ln = labels.intValue(n);
+        if(ln != NOISE && isCore(n)) {
+          assign(id, ln, clusters.get(ln));
+          return;
+        }
+      }
+    }
+
+    /**
+     * Merge two clusters, relabeling the smaller one.
+     *
+     * @param a First label
+     * @param b Second label
+     * @return Label of the merged cluster
+     */
+    private int merge(int a, int b) {
+      HashSetModifiableDBIDs ma = clusters.get(a), mb = clusters.get(b);
+      if(ma.size() < mb.size()) {
+        return merge(b, a);
+      }
+      for(DBIDIter it = mb.iter(); it.valid(); it.advance()) {
+        labels.putInt(it, a);
+      }
+      ma.addDBIDs(mb);
+      clusters.remove(b);
+      return a;
+    }
+
+    /**
+     * Assign an object to a cluster.
+     *
+     * @param id Object
+     * @param label New label
+     * @param members Members of the new cluster
+     */
+    private void assign(DBIDRef id, int label, HashSetModifiableDBIDs members) {
+      final int old = labels.putInt(id, label);
+      if(old != NOISE && old != label) {
+        clusters.get(old).remove(id);
+      }
+      members.add(id);
+    }
+
+    /**
+     * Retrieve the neighborhood of an object.
+     *
+     * @param id Object
+     * @return Neighbors, including the object itself
+     */
+    private ArrayModifiableDBIDs query(DBIDRef id) {
+      return DBIDUtil.newArray(rangeQuery.getRangeForDBID(id, epsilon));
+    }
+
+    /**
+     * Test whether an object currently is a core object.
+     *
+     * @param id Object
+     * @return {@code true} for core objects
+     */
+    public boolean isCore(DBIDRef id) {
+      ArrayModifiableDBIDs n = neighbors.get(id);
+      return n != null && n.size() >= minpts;
+    }
+
+    /**
+     * Get the current cluster label of an object.
+     *
+     * @param id Object
+     * @return Cluster label, 0 for noise
+     */
+    public int getLabel(DBIDRef id) {
+      return labels.intValue(id);
+    }
+
+    /**
+     * Get the number of clusters (excluding noise).
+     *
+     * @return Number of clusters
+     */
+    public int getNumClusters() {
+      return clusters.size();
+    }
+
+    /**
+     * Build the current clustering.
+     *
+     * @return Clustering
+     */
+    public Clustering<Model> getClustering() {
+      Clustering<Model> result = new Clustering<>("DBSCAN Clustering", "dbscan-clustering");
+      int[] keys = clusters.keys();
+      Arrays.sort(keys);
+      for(int label : keys) {
+        result.addToplevelCluster(new Cluster<Model>(DBIDUtil.newArray(clusters.get(label)), ClusterModel.CLUSTER));
+      }
+      ModifiableDBIDs noise = DBIDUtil.newArray();
+      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+        if(labels.intValue(it) == NOISE) {
+          noise.add(it);
+        }
+      }
+      if(noise.size() > 0) {
+        result.addToplevelCluster(new Cluster<Model>(noise, true, ClusterModel.CLUSTER));
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<O> extends AbstractDistanceBasedAlgorithm.Parameterizer<O> {
+    /**
+     * Holds the epsilon radius threshold.
+     */
+    protected double epsilon;
+
+    /**
+     * Holds the minimum cluster size.
+     */
+    protected int minpts;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      DoubleParameter epsilonP = new DoubleParameter(DBSCAN.Parameterizer.EPSILON_ID) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+      if(config.grab(epsilonP)) {
+        epsilon = epsilonP.getValue();
+      }
+
+      IntParameter minptsP = new IntParameter(DBSCAN.Parameterizer.MINPTS_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(minptsP)) {
+        minpts = minptsP.getValue();
+      }
+    }
+
+    @Override
+    protected IncrementalDBSCAN<O> makeInstance() {
+      return new IncrementalDBSCAN<>(distanceFunction, epsilon, minpts);
+    }
+  }
+}
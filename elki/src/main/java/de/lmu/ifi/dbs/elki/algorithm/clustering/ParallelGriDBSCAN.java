@@ -0,0 +1,523 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.MappedScratchMatrix;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.ClusterModel;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.ProxyView;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.UnionFind;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.UnionFindUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import gnu.trove.iterator.TLongIntIterator;
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+
+/**
+ * Parallel version of {@link GriDBSCAN}.
+ *
+ * The grid cells are clustered concurrently using the
+ * {@link ParallelExecutor}. The local clusters of each cell are merged into a
+ * global union-find structure. Border points of a local cluster are remembered
+ * together with the cluster, and once all cells are processed, those that
+ * turned out to be core points in another cell connect the two clusters, as
+ * in {@link GriDBSCAN}.
+ *
+ * Optionally, the cell contents can be spilled to a memory-mapped temporary
+ * file instead of keeping one object list per cell on the Java heap, which
+ * bounds the memory needed for the redundant cell assignment.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf ParallelInstance
+ * @apiviz.uses UnionFind
+ *
+ * @param <V> the type of vector the algorithm is applied to
+ */
+public class ParallelGriDBSCAN<V extends NumberVector> extends GriDBSCAN<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelGriDBSCAN.class);
+
+  /**
+   * Directory to spill cells to, {@code null} to keep them in memory.
+   */
+  protected File spill;
+
+  /**
+   * Constructor with parameters.
+   *
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts parameter
+   * @param gridwidth Grid width
+   * @param spill Directory to spill cells to, {@code null} to keep them in
+   *        memory
+   */
+  public ParallelGriDBSCAN(DistanceFunction<? super V> distanceFunction, double epsilon, int minpts, double gridwidth, File spill) {
+    super(distanceFunction, epsilon, minpts, gridwidth);
+    this.spill = spill;
+  }
+
+  @Override
+  protected Instance<V> newInstance(double gridwidth) {
+    return new ParallelInstance<V>(getDistanceFunction(), epsilon, minpts, gridwidth, spill);
+  }
+
+  /**
+   * Instance, for a single run.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has MappedScratchMatrix
+   *
+   * @param <V> Vector type
+   */
+  protected static class ParallelInstance<V extends NumberVector> extends Instance<V> {
+    /**
+     * Object state: core point.
+     */
+    private static final int CORE = 1;
+
+    /**
+     * Object state: border point.
+     */
+    private static final int BORDER = 2;
+
+    /**
+     * Directory to spill cells to, may be {@code null}.
+     */
+    private File spilldir;
+
+    /**
+     * Cell sizes, when spilling.
+     */
+    private TLongIntHashMap counts;
+
+    /**
+     * Write positions of the cells, when spilling.
+     */
+    private TLongLongHashMap cursor;
+
+    /**
+     * Spilled cell contents.
+     */
+    private MappedScratchMatrix file;
+
+    /**
+     * Union-find structure to merge clusters.
+     */
+    private UnionFind uf;
+
+    /**
+     * Global object states (core, border, or noise).
+     */
+    private WritableIntegerDataStore state;
+
+    /**
+     * Core point a border point was attached to.
+     */
+    private WritableDBIDDataStore attach;
+
+    /**
+     * Border memberships: points that were not core in some cell.
+     */
+    private ArrayModifiableDBIDs borderids;
+
+    /**
+     * Border memberships: representative of the local cluster.
+     */
+    private ArrayModifiableDBIDs borderreps;
+
+    /**
+     * Cells to process, from memory.
+     */
+    private ModifiableDBIDs[] cellids;
+
+    /**
+     * Cells to process, from the spill file: start and size.
+     */
+    private long[] cellstart;
+
+    /**
+     * Cell sizes, when spilled.
+     */
+    private int[] cellsize;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param epsilon Epsilon
+     * @param minpts MinPts
+     * @param gridwidth Grid width
+     * @param spilldir Directory to spill cells to, may be {@code null}
+     */
+    public ParallelInstance(DistanceFunction<? super V> distanceFunction, double epsilon, int minpts, double gridwidth, File spilldir) {
+      super(distanceFunction, epsilon, minpts, gridwidth);
+      this.spilldir = spilldir;
+    }
+
+    @Override
+    public Clustering<Model> run(final Relation<V> relation) {
+      final DBIDs ids = relation.getDBIDs();
+      final int size = ids.size();
+
+      long numcells = initializeGrid(relation);
+      buildGrid(relation, (int) numcells, offset);
+      final int mincells = collectCells(size, numcells);
+
+      uf = UnionFindUtil.make(DBIDUtil.makeUnmodifiable(ids));
+      state = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP, UNPROCESSED);
+      attach = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_TEMP);
+      borderids = DBIDUtil.newArray();
+      borderreps = DBIDUtil.newArray();
+      try {
+        final FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Processing grid cells", mincells, LOG) : null;
+        // Cells differ in cost, so every cell is a block of its own.
+        ParallelExecutor.run(mincells, 1, new ParallelExecutor.RangeProcessor() {
+          @Override
+          public void process(int start, int end) {
+            for(int i = start; i < end; i++) {
+              processCell(relation, i, cprog);
+            }
+          }
+        });
+        LOG.ensureCompleted(cprog);
+      }
+      finally {
+        if(file != null) {
+          file.close();
+          file = null;
+        }
+      }
+      grid = null;
+      cellids = null;
+      mergeBorders();
+      return buildResult(ids);
+    }
+
+    @Override
+    protected void buildGrid(Relation<V> relation, int numcells, double[] offset) {
+      if(spilldir == null) {
+        super.buildGrid(relation, numcells, offset);
+        return;
+      }
+      // First pass: count the cell sizes.
+      counts = new TLongIntHashMap(numcells >>> 2);
+      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+        insertIntoGrid(it, relation.get(it), 0, 0);
+      }
+      // Assign contiguous ranges in the spill file.
+      cursor = new TLongLongHashMap(counts.size());
+      long total = 0;
+      for(TLongIntIterator it = counts.iterator(); it.hasNext();) {
+        it.advance();
+        cursor.put(it.key(), total);
+        total += it.value();
+      }
+      file = new MappedScratchMatrix(total, spilldir);
+      // Second pass: write the cell contents.
+      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+        insertIntoGrid(it, relation.get(it), 0, 0);
+      }
+    }
+
+    @Override
+    protected void insertIntoCell(int c, DBIDRef id) {
+      if(counts == null) {
+        super.insertIntoCell(c, id);
+      }
+      else if(file == null) {
+        counts.adjustOrPutValue(c, 1, 1);
+      }
+      else {
+        file.setInt(cursor.adjustOrPutValue(c, 1, 1) - 1, DBIDUtil.asInteger(id));
+      }
+    }
+
+    /**
+     * Collect the cells with at least minPts objects.
+     *
+     * @param size Relation size
+     * @param numcells Number of cells
+     * @return Number of cells to process
+     */
+    private int collectCells(int size, long numcells) {
+      if(counts == null) {
+        final int mincells = checkGridCellSizes(size, numcells);
+        cellids = new ModifiableDBIDs[mincells];
+        int i = 0;
+        for(TLongObjectIterator<ModifiableDBIDs> it = grid.iterator(); it.hasNext();) {
+          it.advance();
+          if(it.value().size() >= minpts) {
+            cellids[i++] = it.value();
+          }
+        }
+        return mincells;
+      }
+      int[] sizes = counts.values();
+      final int mincells = checkGridCellSizes(size, numcells, sizes);
+      cellstart = new long[mincells];
+      cellsize = new int[mincells];
+      int i = 0;
+      for(TLongIntIterator it = counts.iterator(); it.hasNext();) {
+        it.advance();
+        if(it.value() >= minpts) {
+          // The cursor now points to the end of the cell.
+          cellsize[i] = it.value();
+          cellstart[i++] = cursor.get(it.key()) - it.value();
+        }
+      }
+      counts = null;
+      cursor = null;
+      return mincells;
+    }
+
+    /**
+     * Read the contents of a cell from the spill file.
+     *
+     * @param start Start position
+     * @param size Number of objects
+     * @return Object IDs
+     */
+    private ArrayModifiableDBIDs readCell(long start, int size) {
+      ArrayModifiableDBIDs ids = DBIDUtil.newArray(size);
+      for(long pos = start, end = start + size; pos < end; pos++) {
+        ids.add(DBIDUtil.importInteger(file.getInt(pos)));
+      }
+      return ids;
+    }
+
+    /**
+     * Run DBSCAN on a single cell, and merge the result.
+     *
+     * @param relation Data relation
+     * @param i Cell number
+     * @param cprog Progress
+     */
+    protected void processCell(Relation<V> relation, int i, FiniteProgress cprog) {
+      final DBIDs cell = cellids != null ? cellids[i] : readCell(cellstart[i], cellsize[i]);
+      WritableIntegerDataStore temporary = DataStoreUtil.makeIntegerStorage(cell, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, UNPROCESSED);
+      ProxyView<V> rel = new ProxyView<>(cell, relation);
+      RangeQuery<V> rq = rel.getRangeQuery(distanceFunction, epsilon);
+      ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList(minpts << 1);
+      ArrayModifiableDBIDs activeSet = DBIDUtil.newArray();
+      int clusterid = NOISE + 1;
+      for(DBIDIter id = cell.iter(); id.valid(); id.advance()) {
+        // Skip already processed ids.
+        if(temporary.intValue(id) != UNPROCESSED) {
+          continue;
+        }
+        neighbors.clear();
+        rq.getRangeForDBID(id, epsilon, neighbors);
+        if(neighbors.size() >= minpts) {
+          expandCluster(id, clusterid, temporary, neighbors, activeSet, rq, null);
+          ++clusterid;
+        }
+        else {
+          temporary.putInt(id, NOISE);
+        }
+      }
+      merge(cell, temporary, clusterid);
+      temporary.destroy();
+      LOG.incrementProcessed(cprog);
+    }
+
+    /**
+     * Merge the local clusters of a cell into the global union-find.
+     *
+     * @param cell Cell contents
+     * @param temporary Local cluster assignment
+     * @param numclusters Number of local cluster ids used
+     */
+    private synchronized void merge(DBIDs cell, WritableIntegerDataStore temporary, int numclusters) {
+      DBIDVar[] reps = new DBIDVar[numclusters];
+      // Connect all core points of the same local cluster.
+      for(DBIDIter id = cell.iter(); id.valid(); id.advance()) {
+        final int c = temporary.intValue(id);
+        if(c > NOISE) {
+          state.putInt(id, CORE);
+          if(reps[c] == null) {
+            reps[c] = DBIDUtil.newVar(id);
+          }
+          else {
+            uf.union(reps[c], id);
+          }
+        }
+      }
+      // Border points, unless they are core elsewhere:
+      for(DBIDIter id = cell.iter(); id.valid(); id.advance()) {
+        final int c = temporary.intValue(id);
+        if(c < 0) {
+          // May still turn out to be core in another cell:
+          borderids.add(id);
+          borderreps.add(reps[-c]);
+          if(state.intValue(id) == UNPROCESSED) {
+            state.putInt(id, BORDER);
+            attach.putDBID(id, reps[-c]);
+          }
+        }
+      }
+    }
+
+    /**
+     * Merge the clusters connected by a point that is border in one cell, but
+     * core in another cell.
+     */
+    private void mergeBorders() {
+      DBIDVar rep = DBIDUtil.newVar();
+      for(DBIDArrayIter it = borderids.iter(); it.valid(); it.advance()) {
+        if(state.intValue(it) == CORE) { // Core and border point, merge!
+          uf.union(borderreps.assignVar(it.getOffset(), rep), it);
+        }
+      }
+      borderids = null;
+      borderreps = null;
+    }
+
+    /**
+     * Build the final clustering from the union-find structure.
+     *
+     * @param ids Object IDs
+     * @return Clustering
+     */
+    private Clustering<Model> buildResult(DBIDs ids) {
+      FiniteProgress pprog = LOG.isVerbose() ? new FiniteProgress("Building final result", ids.size(), LOG) : null;
+      int[] clusterof = new int[ids.size()];
+      ArrayModifiableDBIDs[] clusters = new ArrayModifiableDBIDs[16];
+      int numclusters = 0;
+      ModifiableDBIDs noise = DBIDUtil.newArray();
+      DBIDVar tmp = DBIDUtil.newVar();
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        final int s = state.intValue(it);
+        if(s != CORE && s != BORDER) {
+          noise.add(it);
+          LOG.incrementProcessed(pprog);
+          continue;
+        }
+        final int root = uf.find(s == CORE ? it : attach.assignVar(it, tmp));
+        int c = clusterof[root] - 1;
+        if(c < 0) {
+          if(numclusters == clusters.length) {
+            clusters = Arrays.copyOf(clusters, numclusters << 1);
+          }
+          clusters[c = numclusters++] = DBIDUtil.newArray();
+          clusterof[root] = numclusters;
+        }
+        clusters[c].add(it);
+        LOG.incrementProcessed(pprog);
+      }
+      LOG.ensureCompleted(pprog);
+      state.destroy();
+      attach.destroy();
+      uf = null;
+
+      Clustering<Model> result = new Clustering<>("DBSCAN Clustering", "dbscan-clustering");
+      for(int i = 0; i < numclusters; i++) {
+        result.addToplevelCluster(new Cluster<Model>(clusters[i], ClusterModel.CLUSTER));
+      }
+      if(noise.size() > 0) {
+        result.addToplevelCluster(new Cluster<Model>(noise, true, ClusterModel.CLUSTER));
+      }
+      return result;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Vector type to use
+   */
+  public static class Parameterizer<O extends NumberVector> extends GriDBSCAN.Parameterizer<O> {
+    /**
+     * Directory to spill the grid cells to. If not set, the cells are kept in
+     * memory.
+     * <p>
+     * Key: {@code -gridbscan.spill}
+     * </p>
+     */
+    public static final OptionID SPILL_ID = new OptionID("gridbscan.spill", "Directory for a temporary file to spill the grid cells to. If not set, the cells are kept in memory.");
+
+    /**
+     * Directory to spill cells to.
+     */
+    protected File spill;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      FileParameter spillP = new FileParameter(SPILL_ID, FileParameter.FileType.OUTPUT_DIRECTORY) //
+          .setOptional(true);
+      if(config.grab(spillP)) {
+        spill = spillP.getValue();
+      }
+    }
+
+    @Override
+    protected ParallelGriDBSCAN<O> makeInstance() {
+      return new ParallelGriDBSCAN<>(distanceFunction, epsilon, minpts, gridwidth, spill);
+    }
+  }
+}
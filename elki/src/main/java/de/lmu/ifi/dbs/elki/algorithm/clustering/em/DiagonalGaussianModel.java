@@ -71,6 +71,11 @@ public class DiagonalGaussianModel implements EMClusterModel<EMModel> {
    */
   double norm, normDistrFactor;
 
+  /**
+   * Logarithm of the normalization factor.
+   */
+  double logNormDistrFactor;
+
   /**
    * Weight aggregation sum
    */
@@ -110,6 +115,7 @@ public class DiagonalGaussianModel implements EMClusterModel<EMModel> {
     this.mean = mean;
     this.norm = norm;
     this.normDistrFactor = 1. / FastMath.sqrt(norm); // assume det=1
+    this.logNormDistrFactor = -.5 * FastMath.log(norm);
     this.nmea = new double[dim];
     if(variances == null) {
       variances = new double[dim];
@@ -148,22 +154,47 @@ public class DiagonalGaussianModel implements EMClusterModel<EMModel> {
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public DiagonalGaussianModel newAccumulator() {
+    return new DiagonalGaussianModel(0., new double[mean.length], norm, new double[mean.length]);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<EMModel> other) {
+    DiagonalGaussianModel o = (DiagonalGaussianModel) other;
+    if(!(o.wsum > 0.)) {
+      return;
+    }
+    final double nwsum = wsum + o.wsum;
+    // Pairwise update of means and variances (Chan et al.)
+    final double f = o.wsum / nwsum, g = wsum * f;
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = o.mean[i] - mean[i];
+      variances[i] += o.variances[i] + delta * delta * g;
+      mean[i] += delta * f;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep() {
     if(wsum > 0.) {
       final double s = 1. / wsum;
-      double det = 1.;
+      double det = 1., logdet = 0.;
       for(int i = 0; i < variances.length; i++) {
         double v = variances[i];
         v = v > 0 ? v * s : SINGULARITY_CHEAT;
         variances[i] = v;
         det *= v;
+        logdet += FastMath.log(v);
       }
       normDistrFactor = 1. / FastMath.sqrt(norm * det);
+      logNormDistrFactor = -.5 * (FastMath.log(norm) + logdet);
     }
     else {
       // Degenerate
       normDistrFactor = 1. / FastMath.sqrt(norm);
+      logNormDistrFactor = -.5 * FastMath.log(norm);
     }
   }
 
@@ -193,6 +224,25 @@ public class DiagonalGaussianModel implements EMClusterModel<EMModel> {
     return prob * weight;
   }
 
+  @Override
+  public double estimateLogDensity(NumberVector vec) {
+    return FastMath.log(weight) + logNormDistrFactor - .5 * mahalanobisDistance(vec);
+  }
+
+  @Override
+  public void estimateLogDensity(double[][] block, int n, double[] out) {
+    final double logw = FastMath.log(weight) + logNormDistrFactor;
+    for(int j = 0; j < n; j++) {
+      final double[] vec = block[j];
+      double agg = 0.;
+      for(int i = 0; i < variances.length; i++) {
+        final double diff = vec[i] - mean[i];
+        agg += diff / variances[i] * diff;
+      }
+      out[j] = logw - .5 * agg;
+    }
+  }
+
   @Override
   public double getWeight() {
     return weight;
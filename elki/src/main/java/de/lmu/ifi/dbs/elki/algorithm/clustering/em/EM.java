@@ -96,29 +96,29 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
   /**
    * Number of clusters
    */
-  private int k;
+  protected int k;
 
   /**
    * Delta parameter
    */
-  private double delta;
+  protected double delta;
 
   /**
    * Factory for producing the initial cluster model.
    */
-  private EMClusterModelFactory<V, M> mfactory;
+  protected EMClusterModelFactory<V, M> mfactory;
 
   /**
    * Maximum number of iterations to allow
    */
-  private int maxiter;
+  protected int maxiter;
 
   /**
    * Retain soft assignments.
    */
-  private boolean soft;
+  protected boolean soft;
 
-  private static final double MIN_LOGLIKELIHOOD = -100000;
+  protected static final double MIN_LOGLIKELIHOOD = -100000;
 
   /**
    * Soft assignment result type.
@@ -164,6 +164,17 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
       LOG.verbose("initializing " + k + " models");
     }
     List<? extends EMClusterModel<M>> models = mfactory.buildInitialModels(database, relation, k, SquaredEuclideanDistanceFunction.STATIC);
+    return iterate(relation, models);
+  }
+
+  /**
+   * Run the EM iterations, starting with the given models.
+   * 
+   * @param relation Relation
+   * @param models Initial models
+   * @return Result
+   */
+  protected Clustering<M> iterate(Relation<V> relation, List<? extends EMClusterModel<M>> models) {
     WritableDataStore<double[]> probClusterIGivenX = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_SORTED, double[].class);
     double emNew = assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
 
@@ -193,6 +204,18 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
       LOG.verbose("assigning clusters");
     }
 
+    return makeClustering(relation, models, probClusterIGivenX);
+  }
+
+  /**
+   * Build the final clustering, using the most likely cluster of each object.
+   *
+   * @param relation Data relation
+   * @param models Cluster models
+   * @param probClusterIGivenX Cluster probabilities
+   * @return Clustering result
+   */
+  protected Clustering<M> makeClustering(Relation<V> relation, List<? extends EMClusterModel<M>> models, WritableDataStore<double[]> probClusterIGivenX) {
     // fill result with clusters and models
     List<ModifiableDBIDs> hardClusters = new ArrayList<>(k);
     for(int i = 0; i < k; i++) {
@@ -23,8 +23,10 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.model.MeanModel;
+import net.jafama.FastMath;
 
 /**
  * Models useable in EM clustering.
@@ -59,6 +61,61 @@ public interface EMClusterModel<M extends MeanModel> {
    */
   double estimateDensity(NumberVector vec);
 
+  /**
+   * Estimate the log likelihood of a vector, including the cluster weight.
+   *
+   * Models should override this to avoid the underflow of
+   * {@link #estimateDensity} far away from the cluster.
+   *
+   * @param vec Vector
+   * @return Log likelihood.
+   */
+  default double estimateLogDensity(NumberVector vec) {
+    return FastMath.log(estimateDensity(vec));
+  }
+
+  /**
+   * Estimate the log likelihood of a block of vectors, including the cluster
+   * weight.
+   *
+   * This must not modify the model, as it may be called concurrently.
+   *
+   * @param block Vectors, as arrays
+   * @param n Number of vectors in the block to process
+   * @param out Output array for the log likelihoods
+   */
+  default void estimateLogDensity(double[][] block, int n, double[] out) {
+    for(int j = 0; j < n; j++) {
+      out[j] = estimateLogDensity(DoubleVector.wrap(block[j]));
+    }
+  }
+
+  /**
+   * Create a new, empty model of the same kind, to accumulate the statistics
+   * of a partition of the data in a parallel E step. The result can be
+   * combined using {@link #mergeE}.
+   *
+   * The default implementation returns {@code null}, to indicate that the
+   * model does not support parallel E steps; EM then runs serially.
+   *
+   * @return Empty model, ready for {@link #updateE}, or {@code null}
+   */
+  default EMClusterModel<M> newAccumulator() {
+    return null;
+  }
+
+  /**
+   * Merge the statistics accumulated in another model (obtained via
+   * {@link #newAccumulator}) into this model, before {@link #finalizeEStep}.
+   *
+   * Models that support {@link #newAccumulator} must override this.
+   *
+   * @param other Other model
+   */
+  default void mergeE(EMClusterModel<M> other) {
+    throw new UnsupportedOperationException("Model " + getClass().getName() + " does not support parallel E steps.");
+  }
+
   /**
    * Finalize a cluster model.
    * 
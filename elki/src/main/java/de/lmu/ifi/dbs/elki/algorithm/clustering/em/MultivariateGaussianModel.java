@@ -72,6 +72,11 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
    */
   double norm, normDistrFactor;
 
+  /**
+   * Logarithm of the normalization factor.
+   */
+  double logNormDistrFactor;
+
   /**
    * Weight aggregation sum
    */
@@ -112,6 +117,7 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
     this.mean = mean;
     this.norm = norm;
     this.normDistrFactor = 1. / FastMath.sqrt(norm);
+    this.logNormDistrFactor = -.5 * FastMath.log(norm);
     this.nmea = new double[dim];
     if(covariance == null) {
       covariance = new double[mean.length][mean.length];
@@ -123,6 +129,21 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
     this.wsum = 0.;
   }
 
+  /**
+   * Constructor for an empty accumulator, without matrix inversion.
+   *
+   * @param dim Dimensionality
+   * @param norm Normalization factor.
+   */
+  private MultivariateGaussianModel(int dim, double norm) {
+    this.mean = new double[dim];
+    this.norm = norm;
+    this.normDistrFactor = 1. / FastMath.sqrt(norm);
+    this.logNormDistrFactor = -.5 * FastMath.log(norm);
+    this.nmea = new double[dim];
+    this.covariance = new double[dim][dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -159,6 +180,36 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public MultivariateGaussianModel newAccumulator() {
+    return new MultivariateGaussianModel(mean.length, norm);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<EMModel> other) {
+    MultivariateGaussianModel o = (MultivariateGaussianModel) other;
+    if(!(o.wsum > 0.)) {
+      return;
+    }
+    final double nwsum = wsum + o.wsum;
+    // Pairwise update of mean and scatter matrix (Chan et al.)
+    final double f = o.wsum / nwsum, g = wsum * f;
+    for(int i = 0; i < mean.length; i++) {
+      nmea[i] = o.mean[i] - mean[i];
+    }
+    for(int i = 0; i < mean.length; i++) {
+      final double[] crow = covariance[i], orow = o.covariance[i];
+      final double di = nmea[i] * g;
+      for(int j = 0; j < mean.length; j++) {
+        crow[j] += orow[j] + di * nmea[j];
+      }
+    }
+    for(int i = 0; i < mean.length; i++) {
+      mean[i] += nmea[i] * f;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep() {
     if(wsum > Double.MIN_NORMAL) {
@@ -188,6 +239,7 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
       }
     }
     normDistrFactor = 1. / FastMath.sqrt(norm * det);
+    logNormDistrFactor = -.5 * (FastMath.log(norm) + FastMath.log(det));
     invCovMatr = lu.solve(identity(dim, dim));
   }
 
@@ -202,6 +254,36 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
     return prob * weight;
   }
 
+  @Override
+  public double estimateLogDensity(NumberVector vec) {
+    return FastMath.log(weight) + logNormDistrFactor - .5 * mahalanobisDistance(vec);
+  }
+
+  @Override
+  public void estimateLogDensity(double[][] block, int n, double[] out) {
+    final int dim = mean.length;
+    final double logw = FastMath.log(weight) + logNormDistrFactor;
+    final double[] diff = new double[dim]; // Local, for thread safety
+    for(int j = 0; j < n; j++) {
+      final double[] vec = block[j];
+      for(int i = 0; i < dim; i++) {
+        diff[i] = vec[i] - mean[i];
+      }
+      // Exploit symmetry of the inverse covariance matrix.
+      double agg = 0.;
+      for(int i = 0; i < dim; i++) {
+        final double[] row = invCovMatr[i];
+        final double di = diff[i];
+        double s = 0.;
+        for(int k = 0; k < i; k++) {
+          s += row[k] * diff[k];
+        }
+        agg += di * (2 * s + row[i] * di);
+      }
+      out[j] = logw - .5 * agg;
+    }
+  }
+
   /**
    * Compute the Mahalanobis distance of a vector.
    * 
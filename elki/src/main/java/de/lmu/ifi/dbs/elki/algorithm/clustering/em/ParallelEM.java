@@ -0,0 +1,422 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.MeanModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of EM clustering.
+ *
+ * The objects are partitioned across the worker threads of the
+ * {@link de.lmu.ifi.dbs.elki.parallel.ParallelCore}. In a single pass, each
+ * worker computes the cluster probabilities of its objects, and accumulates
+ * the statistics for the next models in thread-local models, which are merged
+ * afterwards. Densities are evaluated in log space, for blocks of objects at
+ * a time.
+ *
+ * Models that do not support {@link EMClusterModel#newAccumulator} are
+ * processed with the serial {@link EM} algorithm.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has EMProcessor
+ *
+ * @param <V> vector type to analyze
+ * @param <M> model type to produce
+ */
+public class ParallelEM<V extends NumberVector, M extends MeanModel> extends EM<V, M> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelEM.class);
+
+  /**
+   * Constructor.
+   *
+   * @param k k parameter
+   * @param delta delta parameter
+   * @param mfactory EM cluster model factory
+   * @param maxiter Maximum number of iterations
+   * @param soft Include soft assignments
+   */
+  public ParallelEM(int k, double delta, EMClusterModelFactory<V, M> mfactory, int maxiter, boolean soft) {
+    super(k, delta, mfactory, maxiter, soft);
+  }
+
+  @Override
+  public Clustering<M> run(Database database, Relation<V> relation) {
+    if(relation.size() == 0) {
+      throw new IllegalArgumentException("database empty: must contain elements");
+    }
+    DBIDs ids = relation.getDBIDs();
+    // initial models
+    if(LOG.isVerbose()) {
+      LOG.verbose("initializing " + k + " models");
+    }
+    List<? extends EMClusterModel<M>> models = mfactory.buildInitialModels(database, relation, k, SquaredEuclideanDistanceFunction.STATIC);
+    for(EMClusterModel<M> m : models) {
+      if(m.newAccumulator() == null) {
+        LOG.warning("Model " + m.getClass().getName() + " does not support parallel E steps, running EM serially.");
+        return iterate(relation, models);
+      }
+    }
+    WritableDataStore<double[]> probClusterIGivenX = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_SORTED, double[].class);
+    EMProcessor<M> proc = new EMProcessor<>(relation, probClusterIGivenX);
+    proc.nextIteration(models);
+    ParallelExecutor.run(ids, proc);
+    double emNew = proc.getExpectation();
+
+    // iteration unless no change
+    if(LOG.isVerbose()) {
+      LOG.verbose("iterating EM");
+      LOG.verbose("iteration " + 0 + " - expectation value: " + emNew);
+    }
+
+    for(int it = 1; it <= maxiter || maxiter < 0; it++) {
+      final double emOld = emNew;
+      List<EMClusterModel<M>> next = proc.getNextModels();
+      // reassign probabilities, and accumulate the statistics for the next
+      // models at the same time
+      proc.nextIteration(next);
+      ParallelExecutor.run(ids, proc);
+      emNew = proc.getExpectation();
+      models = next;
+
+      if(LOG.isVerbose()) {
+        LOG.verbose("iteration " + it + " - expectation value: " + emNew);
+      }
+      if(Math.abs(emOld - emNew) <= delta || emOld > emNew) {
+        break;
+      }
+    }
+
+    if(LOG.isVerbose()) {
+      LOG.verbose("assigning clusters");
+    }
+    return makeClustering(relation, models, probClusterIGivenX);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Processor to compute the cluster probabilities, and to accumulate the
+   * statistics for the next models.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has Instance
+   *
+   * @param <M> Model type
+   */
+  protected static class EMProcessor<M extends MeanModel> implements Processor {
+    /**
+     * Number of objects to evaluate at once.
+     */
+    private static final int BLOCKSIZE = 64;
+
+    /**
+     * Data relation.
+     */
+    Relation<? extends NumberVector> relation;
+
+    /**
+     * Cluster probabilities.
+     */
+    WritableDataStore<double[]> probClusterIGivenX;
+
+    /**
+     * Current models.
+     */
+    List<? extends EMClusterModel<M>> models;
+
+    /**
+     * Accumulators for the next models.
+     */
+    List<EMClusterModel<M>> next;
+
+    /**
+     * Sum of the cluster probabilities.
+     */
+    double[] wsum;
+
+    /**
+     * Sum of the log likelihoods.
+     */
+    double emSum;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param probClusterIGivenX Storage for the cluster probabilities
+     */
+    public EMProcessor(Relation<? extends NumberVector> relation, WritableDataStore<double[]> probClusterIGivenX) {
+      super();
+      this.relation = relation;
+      this.probClusterIGivenX = probClusterIGivenX;
+    }
+
+    /**
+     * Initialize for a new iteration.
+     *
+     * @param models Current models
+     */
+    public void nextIteration(List<? extends EMClusterModel<M>> models) {
+      this.models = models;
+      this.next = new ArrayList<>(models.size());
+      for(EMClusterModel<M> m : models) {
+        EMClusterModel<M> n = m.newAccumulator();
+        n.beginEStep();
+        next.add(n);
+      }
+      this.wsum = new double[models.size()];
+      this.emSum = 0.;
+    }
+
+    /**
+     * Get the average log likelihood of the last iteration.
+     *
+     * @return Expectation value
+     */
+    public double getExpectation() {
+      return emSum / relation.size();
+    }
+
+    /**
+     * Finalize the models accumulated in the last iteration.
+     *
+     * @return New models
+     */
+    public List<EMClusterModel<M>> getNextModels() {
+      final int size = relation.size();
+      for(int i = 0; i < next.size(); i++) {
+        EMClusterModel<M> m = next.get(i);
+        m.finalizeEStep();
+        m.setWeight(wsum[i] / size);
+      }
+      return next;
+    }
+
+    @Override
+    public Instance<M> instantiate(Executor executor) {
+      return new Instance<>(this);
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      @SuppressWarnings("unchecked")
+      Instance<M> instance = (Instance<M>) inst;
+      instance.flush(); // Process the remainder.
+      synchronized(this) {
+        emSum += instance.emSum;
+        for(int i = 0; i < next.size(); i++) {
+          next.get(i).mergeE(instance.acc.get(i));
+          wsum[i] += instance.wsum[i];
+        }
+      }
+    }
+
+    /**
+     * Instance to process part of the data set, for a single iteration.
+     *
+     * @author Erich Schubert
+     *
+     * @param <M> Model type
+     */
+    protected static class Instance<M extends MeanModel> implements Processor.Instance {
+      /**
+       * Data relation.
+       */
+      private Relation<? extends NumberVector> relation;
+
+      /**
+       * Cluster probabilities.
+       */
+      private WritableDataStore<double[]> probClusterIGivenX;
+
+      /**
+       * Current models, shared.
+       */
+      private List<? extends EMClusterModel<M>> models;
+
+      /**
+       * Thread local accumulators for the next models.
+       */
+      private List<EMClusterModel<M>> acc;
+
+      /**
+       * Sum of the cluster probabilities.
+       */
+      private double[] wsum;
+
+      /**
+       * Sum of the log likelihoods.
+       */
+      private double emSum = 0.;
+
+      /**
+       * Current block of objects.
+       */
+      private ArrayModifiableDBIDs block = DBIDUtil.newArray(BLOCKSIZE);
+
+      /**
+       * Vectors of the current block.
+       */
+      private NumberVector[] vecs = new NumberVector[BLOCKSIZE];
+
+      /**
+       * Vectors of the current block, as arrays.
+       */
+      private double[][] data;
+
+      /**
+       * Log likelihoods of the current block, per model.
+       */
+      private double[][] logp;
+
+      /**
+       * Constructor.
+       *
+       * @param proc Parent processor
+       */
+      protected Instance(EMProcessor<M> proc) {
+        super();
+        this.relation = proc.relation;
+        this.probClusterIGivenX = proc.probClusterIGivenX;
+        this.models = proc.models;
+        final int k = models.size();
+        this.acc = new ArrayList<>(k);
+        for(EMClusterModel<M> m : proc.next) {
+          EMClusterModel<M> a = m.newAccumulator();
+          a.beginEStep();
+          acc.add(a);
+        }
+        this.wsum = new double[k];
+        this.data = new double[BLOCKSIZE][RelationUtil.dimensionality(relation)];
+        this.logp = new double[k][BLOCKSIZE];
+      }
+
+      @Override
+      public void map(DBIDRef id) {
+        final int n = block.size();
+        NumberVector vec = vecs[n] = relation.get(id);
+        final double[] row = data[n];
+        for(int d = 0; d < row.length; d++) {
+          row[d] = vec.doubleValue(d);
+        }
+        block.add(id);
+        if(n + 1 == BLOCKSIZE) {
+          flush();
+        }
+      }
+
+      /**
+       * Process the objects of the current block.
+       */
+      protected void flush() {
+        final int n = block.size(), k = models.size();
+        if(n == 0) {
+          return;
+        }
+        for(int i = 0; i < k; i++) {
+          models.get(i).estimateLogDensity(data, n, logp[i]);
+        }
+        DBIDArrayIter it = block.iter();
+        for(int j = 0; j < n; j++, it.advance()) {
+          double max = Double.NEGATIVE_INFINITY;
+          for(int i = 0; i < k; i++) {
+            final double l = logp[i][j];
+            max = l > max ? l : max;
+          }
+          double[] clusterProbabilities = new double[k];
+          double logP = MIN_LOGLIKELIHOOD;
+          if(max > Double.NEGATIVE_INFINITY) {
+            // Normalize in log space, to avoid underflow.
+            double sum = 0.;
+            for(int i = 0; i < k; i++) {
+              final double l = logp[i][j];
+              sum += clusterProbabilities[i] = l > Double.NEGATIVE_INFINITY ? FastMath.exp(l - max) : 0.;
+            }
+            final double s = 1. / sum;
+            for(int i = 0; i < k; i++) {
+              final double p = clusterProbabilities[i] *= s;
+              if(p > 0.) {
+                acc.get(i).updateE(vecs[j], p);
+                wsum[i] += p;
+              }
+            }
+            logP = Math.max(max + FastMath.log(sum), MIN_LOGLIKELIHOOD);
+          }
+          emSum += (logP == logP) ? logP : 0.; /* avoid NaN */
+          probClusterIGivenX.put(it, clusterProbabilities);
+        }
+        block.clear();
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <V> vector type to analyze
+   * @param <M> model type to produce
+   */
+  public static class Parameterizer<V extends NumberVector, M extends MeanModel> extends EM.Parameterizer<V, M> {
+    @Override
+    protected ParallelEM<V, M> makeInstance() {
+      return new ParallelEM<>(k, delta, initializer, maxiter, false);
+    }
+  }
+}
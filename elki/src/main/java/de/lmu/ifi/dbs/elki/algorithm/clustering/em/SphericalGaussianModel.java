@@ -63,6 +63,11 @@ public class SphericalGaussianModel implements EMClusterModel<EMModel> {
    */
   double norm, normDistrFactor;
 
+  /**
+   * Logarithm of the normalization factor.
+   */
+  double logNormDistrFactor;
+
   /**
    * Weight aggregation sum
    */
@@ -101,6 +106,7 @@ public class SphericalGaussianModel implements EMClusterModel<EMModel> {
     this.mean = mean;
     this.norm = norm;
     this.normDistrFactor = 1. / FastMath.sqrt(norm); // assume det=1
+    this.logNormDistrFactor = -.5 * FastMath.log(norm);
     this.nmea = new double[mean.length];
     this.variance = var;
     this.wsum = 0.;
@@ -134,15 +140,41 @@ public class SphericalGaussianModel implements EMClusterModel<EMModel> {
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public SphericalGaussianModel newAccumulator() {
+    return new SphericalGaussianModel(0., new double[mean.length], norm, 0.);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<EMModel> other) {
+    SphericalGaussianModel o = (SphericalGaussianModel) other;
+    if(!(o.wsum > 0.)) {
+      return;
+    }
+    final double nwsum = wsum + o.wsum;
+    // Pairwise update of means and variance (Chan et al.)
+    final double f = o.wsum / nwsum;
+    double sqdelta = 0.;
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = o.mean[i] - mean[i];
+      sqdelta += delta * delta;
+      mean[i] += delta * f;
+    }
+    variance += o.variance + sqdelta * wsum * f;
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep() {
     if(wsum > 0.) {
       variance = variance / (wsum * mean.length);
       normDistrFactor = 1. / FastMath.sqrt(norm * variance);
+      logNormDistrFactor = -.5 * (FastMath.log(norm) + FastMath.log(variance));
     }
     else {
       // Degenerate
       normDistrFactor = 1. / FastMath.sqrt(norm);
+      logNormDistrFactor = -.5 * FastMath.log(norm);
     }
   }
 
@@ -187,6 +219,26 @@ public class SphericalGaussianModel implements EMClusterModel<EMModel> {
     return prob * weight;
   }
 
+  @Override
+  public double estimateLogDensity(NumberVector vec) {
+    return FastMath.log(weight) + logNormDistrFactor - .5 * mahalanobisDistance(vec);
+  }
+
+  @Override
+  public void estimateLogDensity(double[][] block, int n, double[] out) {
+    final double logw = FastMath.log(weight) + logNormDistrFactor;
+    final double s = -.5 / variance;
+    for(int j = 0; j < n; j++) {
+      final double[] vec = block[j];
+      double agg = 0.;
+      for(int i = 0; i < mean.length; i++) {
+        final double diff = vec[i] - mean[i];
+        agg += diff * diff;
+      }
+      out[j] = logw + s * agg;
+    }
+  }
+
   @Override
   public double getWeight() {
     return weight;
@@ -36,9 +36,9 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
-import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
@@ -90,6 +90,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  *
  * @apiviz.composedOf LinkageMethod
  * @apiviz.composedOf PointerHierarchyRepresentationBuilder
+ * @apiviz.composedOf ScratchMatrix
  *
  * @param <O> Object type
  */
@@ -105,11 +106,21 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    */
   private static final Logging LOG = Logging.getLogger(AGNES.class);
 
+  /**
+   * Number of distances to compute at least per parallel block.
+   */
+  private static final int MIN_BLOCK_DISTANCES = 1 << 16;
+
   /**
    * Current linkage method in use.
    */
   LinkageMethod linkage = WardLinkageMethod.STATIC;
 
+  /**
+   * Storage of the distance matrix.
+   */
+  ScratchMatrix.Factory matrix = DoubleScratchMatrix.Factory.STATIC;
+
   /**
    * Constructor.
    *
@@ -117,8 +128,20 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    * @param linkage Linkage method
    */
   public AGNES(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage) {
+    this(distanceFunction, linkage, DoubleScratchMatrix.Factory.STATIC);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param matrix Storage of the distance matrix
+   */
+  public AGNES(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage, ScratchMatrix.Factory matrix) {
     super(distanceFunction);
     this.linkage = linkage;
+    this.matrix = matrix;
   }
 
   /**
@@ -142,40 +165,36 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
     ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
     final int size = ids.size();
 
-    if(size > 0x10000) {
-      throw new AbortException("This implementation does not scale to data sets larger than " + //
-      0x10000 // = 65535
-      + " instances (~16 GB RAM), at which point the Java maximum array size is reached.");
-    }
     if(SingleLinkageMethod.class.isInstance(linkage)) {
       LOG.verbose("Notice: SLINK is a much faster algorithm for single-linkage clustering!");
     }
 
     // Compute the initial (lower triangular) distance matrix.
-    double[] scratch = new double[triangleSize(size)];
-    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
-    boolean square = WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(getDistanceFunction()));
-    initializeDistanceMatrix(scratch, dq, ix, iy, square);
-
-    // Initialize space for result:
-    PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids);
-
-    // Repeat until everything merged into 1 cluster
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
-    int wsize = size;
-    for(int i = 1; i < size; i++) {
-      int x = findMerge(wsize, scratch, ix, iy, builder);
-      if(x == wsize - 1) {
-        --wsize;
-        for(ix.seek(wsize - 1); builder.isLinked(ix); ix.retract()) {
+    try (ScratchMatrix scratch = matrix.newMatrix(ScratchMatrix.triangleSize(size))) {
+      DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+      boolean square = WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(getDistanceFunction()));
+      initializeDistanceMatrix(scratch, dq, ids, square);
+
+      // Initialize space for result:
+      PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids);
+
+      // Repeat until everything merged into 1 cluster
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
+      int wsize = size;
+      for(int i = 1; i < size; i++) {
+        int x = findMerge(wsize, scratch, ix, iy, builder);
+        if(x == wsize - 1) {
           --wsize;
+          for(ix.seek(wsize - 1); builder.isLinked(ix); ix.retract()) {
+            --wsize;
+          }
         }
+        LOG.incrementProcessed(prog);
       }
-      LOG.incrementProcessed(prog);
-    }
-    LOG.ensureCompleted(prog);
+      LOG.ensureCompleted(prog);
 
-    return builder.complete();
+      return builder.complete();
+    }
   }
 
   /**
@@ -189,25 +208,32 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
   }
 
   /**
-   * Initialize a distance matrix.
+   * Initialize a distance matrix, in parallel.
    *
    * @param scratch Scratch space to be used.
    * @param dq Distance query
-   * @param ix Data iterator
-   * @param iy Data iterator
+   * @param ids Object IDs
    * @param square Flag to use squared distances.
    */
-  protected static <O> void initializeDistanceMatrix(double[] scratch, DistanceQuery<O> dq, DBIDArrayIter ix, DBIDArrayIter iy, boolean square) {
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        double dist = dq.distance(ix, iy);
-        // Ward uses variances -- i.e. squared values
-        dist = square ? (dist * dist) : dist;
-        scratch[pos] = dist;
-        pos++;
+  protected static <O> void initializeDistanceMatrix(final ScratchMatrix scratch, final DistanceQuery<O> dq, final ArrayDBIDs ids, final boolean square) {
+    // Rows differ in length, use blocks of at most MIN_BLOCK_DISTANCES.
+    final int blocksize = Math.max(1, MIN_BLOCK_DISTANCES / Math.max(1, ids.size()));
+    ParallelExecutor.run(ids.size(), blocksize, new ParallelExecutor.RangeProcessor() {
+      @Override
+      public void process(int start, int end) {
+        DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+        long pos = ScratchMatrix.triangleSize(start);
+        for(ix.seek(start); ix.getOffset() < end; ix.advance()) {
+          for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
+            double dist = dq.distance(ix, iy);
+            // Ward uses variances -- i.e. squared values
+            dist = square ? (dist * dist) : dist;
+            scratch.set(pos, dist);
+            pos++;
+          }
+        }
       }
-    }
+    });
   }
 
   /**
@@ -220,24 +246,25 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    * @param builder Pointer representation builder
    * @return x, for shrinking the working set.
    */
-  protected int findMerge(int size, double[] scratch, DBIDArrayIter ix, DBIDArrayIter iy, PointerHierarchyRepresentationBuilder builder) {
+  protected int findMerge(int size, ScratchMatrix scratch, DBIDArrayIter ix, DBIDArrayIter iy, PointerHierarchyRepresentationBuilder builder) {
     double mindist = Double.POSITIVE_INFINITY;
     int x = -1, y = -1;
     // Find minimum:
-    for(int ox = 0, xbase = 0; ox < size; xbase += ox++) {
+    long xbase = 0;
+    for(int ox = 0; ox < size; xbase += ox++) {
       // Skip if object has already joined a cluster:
       if(builder.isLinked(ix.seek(ox))) {
         continue;
       }
-      assert(xbase == triangleSize(ox));
+      assert(xbase == ScratchMatrix.triangleSize(ox));
       for(int oy = 0; oy < ox; oy++) {
         // Skip if object has already joined a cluster:
         if(builder.isLinked(iy.seek(oy))) {
           continue;
         }
-        final int idx = xbase + oy;
-        if(scratch[idx] <= mindist) {
-          mindist = scratch[idx];
+        final double v = scratch.get(xbase + oy);
+        if(v <= mindist) {
+          mindist = v;
           x = ox;
           y = oy;
         }
@@ -260,7 +287,7 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    * @param x First matrix position
    * @param y Second matrix position
    */
-  protected void merge(int size, double[] scratch, DBIDArrayIter ix, DBIDArrayIter iy, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y) {
+  protected void merge(int size, ScratchMatrix scratch, DBIDArrayIter ix, DBIDArrayIter iy, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y) {
     // Avoid allocating memory, by reusing existing iterators:
     ix.seek(x);
     iy.seek(y);
@@ -292,9 +319,9 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    * @param sizex Old size of first cluster
    * @param sizey Old size of second cluster
    */
-  protected void updateMatrix(int size, double[] scratch, DBIDArrayIter ij, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+  protected void updateMatrix(int size, ScratchMatrix scratch, DBIDArrayIter ij, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
     // Update distance matrix. Note: miny < minx
-    final int xbase = triangleSize(x), ybase = triangleSize(y);
+    final long xbase = ScratchMatrix.triangleSize(x), ybase = ScratchMatrix.triangleSize(y);
 
     // Write to (y, j), with j < y
     int j = 0;
@@ -303,19 +330,19 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int yb = ybase + j;
-      scratch[yb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[yb], sizej, mindist);
+      final long yb = ybase + j;
+      scratch.set(yb, linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(yb), sizej, mindist));
     }
     j++; // Skip y
     // Write to (j, y), with y < j < x
-    int jbase = triangleSize(j);
+    long jbase = ScratchMatrix.triangleSize(j);
     for(; j < x; jbase += j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int jb = jbase + y;
-      scratch[jb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[jb], sizej, mindist);
+      final long jb = jbase + y;
+      scratch.set(jb, linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(jb), sizej, mindist));
     }
     jbase += j++; // Skip x
     // Write to (j, y), with y < x < j
@@ -324,7 +351,7 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
         continue;
       }
       final int sizej = builder.getSize(ij);
-      scratch[jbase + y] = linkage.combine(sizex, scratch[jbase + x], sizey, scratch[jbase + y], sizej, mindist);
+      scratch.set(jbase + y, linkage.combine(sizex, scratch.get(jbase + x), sizey, scratch.get(jbase + y), sizej, mindist));
     }
   }
 
@@ -354,11 +381,25 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
      */
     public static final OptionID LINKAGE_ID = new OptionID("hierarchical.linkage", "Linkage method to use (e.g. Ward, Single-Link)");
 
+    /**
+     * Option ID for the storage of the distance matrix.
+     *
+     * <p>
+     * Key: {@code -hierarchical.matrix}
+     * </p>
+     */
+    public static final OptionID MATRIX_ID = new OptionID("hierarchical.matrix", "Storage of the distance matrix (e.g. double precision, float precision, memory mapped).");
+
     /**
      * Current linkage in use.
      */
     protected LinkageMethod linkage;
 
+    /**
+     * Storage of the distance matrix.
+     */
+    protected ScratchMatrix.Factory matrix;
+
     @Override
     protected void makeOptions(Parameterization config) {
       // We don't call super, because we want a different default distance.
@@ -372,11 +413,16 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
       if(config.grab(linkageP)) {
         linkage = linkageP.instantiateClass(config);
       }
+
+      ObjectParameter<ScratchMatrix.Factory> matrixP = new ObjectParameter<>(MATRIX_ID, ScratchMatrix.Factory.class, DoubleScratchMatrix.Factory.class);
+      if(config.grab(matrixP)) {
+        matrix = matrixP.instantiateClass(config);
+      }
     }
 
     @Override
     protected AGNES<O> makeInstance() {
-      return new AGNES<>(distanceFunction, linkage);
+      return new AGNES<>(distanceFunction, linkage, matrix);
     }
   }
 }
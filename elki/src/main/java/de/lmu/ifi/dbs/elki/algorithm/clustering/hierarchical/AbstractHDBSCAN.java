@@ -33,10 +33,10 @@ import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
@@ -44,6 +44,12 @@ import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.math.MathUtil;
 import de.lmu.ifi.dbs.elki.math.geometry.PrimsMinimumSpanningTree;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.KDistanceProcessor;
+import de.lmu.ifi.dbs.elki.parallel.processor.KNNProcessor;
+import de.lmu.ifi.dbs.elki.parallel.processor.WriteDoubleDataStoreProcessor;
+import de.lmu.ifi.dbs.elki.parallel.variables.SharedDouble;
+import de.lmu.ifi.dbs.elki.parallel.variables.SharedObject;
 import de.lmu.ifi.dbs.elki.result.Result;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
@@ -68,7 +74,6 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
  * @author Erich Schubert
  * @since 0.7.0
  *
- * @apiviz.composedOf HDBSCANAdapter
  * @apiviz.composedOf HeapMSTCollector
  *
  * @param <O> Input object type
@@ -98,7 +103,7 @@ public abstract class AbstractHDBSCAN<O, R extends Result> extends AbstractDista
   }
 
   /**
-   * Compute the core distances for all objects.
+   * Compute the core distances for all objects, in parallel.
    *
    * @param ids Objects
    * @param knnQ kNN query
@@ -108,20 +113,46 @@ public abstract class AbstractHDBSCAN<O, R extends Result> extends AbstractDista
   protected WritableDoubleDataStore computeCoreDists(DBIDs ids, KNNQuery<O> knnQ, int minPts) {
     final Logging LOG = getLogger();
     final WritableDoubleDataStore coredists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+    KNNProcessor<O> knnm = new KNNProcessor<>(minPts, knnQ);
+    SharedObject<KNNList> knnv = new SharedObject<>();
+    knnm.connectKNNOutput(knnv);
+    KDistanceProcessor kdistm = new KDistanceProcessor(minPts);
+    SharedDouble kdistv = new SharedDouble();
+    kdistm.connectKNNInput(knnv);
+    kdistm.connectOutput(kdistv);
+    WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(coredists);
+    storem.connectInput(kdistv);
     FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Computing core sizes", ids.size(), LOG) : null;
-    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      coredists.put(iter, knnQ.getKNNForDBID(iter, minPts).getKNNDistance());
-      LOG.incrementProcessed(cprog);
-    }
+    ParallelExecutor.run(ids, cprog, LOG, knnm, kdistm, storem);
     LOG.ensureCompleted(cprog);
     return coredists;
   }
 
+  /**
+   * Copy the core distances into an array, in the order of the IDs.
+   *
+   * @param ids Objects
+   * @param coredists Core distances
+   * @return Core distances, by offset
+   */
+  protected static double[] coreDistanceArray(ArrayDBIDs ids, DoubleDataStore coredists) {
+    double[] core = new double[ids.size()];
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      core[iter.getOffset()] = coredists.doubleValue(iter);
+    }
+    return core;
+  }
+
   /**
    * Class for processing the HDBSCAN G_mpts graph.
    *
    * @author Erich Schubert
+   *
+   * @deprecated HDBSCAN now uses
+   *             {@link ParallelPrimsMinimumSpanningTree}
+   *             with {@link #coreDistanceArray}; kept for subclasses.
    */
+  @Deprecated
   protected static class HDBSCANAdapter implements PrimsMinimumSpanningTree.Adapter<ArrayDBIDs> {
     /**
      * IDs to process.
@@ -229,7 +260,21 @@ public abstract class AbstractHDBSCAN<O, R extends Result> extends AbstractDista
    * @param lambda Distance array
    */
   protected void convertToPointerRepresentation(ArrayDBIDs ids, DoubleLongHeap heap, WritableDBIDDataStore pi, WritableDoubleDataStore lambda) {
-    final Logging LOG = getLogger();
+    convertToPointerRepresentation(ids, heap, pi, lambda, getLogger());
+  }
+
+  /**
+   * Convert spanning tree to a pointer representation.
+   *
+   * Note: the heap must use the correct encoding of indexes.
+   *
+   * @param ids IDs indexed
+   * @param heap Heap
+   * @param pi Parent array
+   * @param lambda Distance array
+   * @param LOG Logger for progress
+   */
+  protected static void convertToPointerRepresentation(ArrayDBIDs ids, DoubleLongHeap heap, WritableDBIDDataStore pi, WritableDoubleDataStore lambda, Logging LOG) {
     // Initialize parent array:
     for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
       pi.put(iter, iter); // Initialize
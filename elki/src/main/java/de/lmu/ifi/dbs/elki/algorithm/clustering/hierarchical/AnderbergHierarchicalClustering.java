@@ -38,8 +38,8 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
-import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -54,6 +54,9 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * however improves from O(n^3) to O(n^2), which yields a considerable
  * improvement in running time.
  *
+ * For large data sets, the nearest neighbor of an object is recomputed in
+ * parallel when its cached value becomes invalid.
+ *
  * This optimization is attributed to M. R. Anderberg.
  *
  * Reference:
@@ -69,6 +72,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  *
  * @apiviz.composedOf LinkageMethod
  * @apiviz.composedOf PointerHierarchyRepresentationBuilder
+ * @apiviz.composedOf ScratchMatrix
  *
  * @param <O> Object type
  */
@@ -86,6 +90,11 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    */
   LinkageMethod linkage = WardLinkageMethod.STATIC;
 
+  /**
+   * Storage of the distance matrix.
+   */
+  ScratchMatrix.Factory matrix = DoubleScratchMatrix.Factory.STATIC;
+
   /**
    * Constructor.
    *
@@ -93,8 +102,20 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param linkage Linkage method
    */
   public AnderbergHierarchicalClustering(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage) {
+    this(distanceFunction, linkage, DoubleScratchMatrix.Factory.STATIC);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param matrix Storage of the distance matrix
+   */
+  public AnderbergHierarchicalClustering(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage, ScratchMatrix.Factory matrix) {
     super(distanceFunction);
     this.linkage = linkage;
+    this.matrix = matrix;
   }
 
   /**
@@ -109,46 +130,42 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
     final int size = ids.size();
 
-    if(size > 0x10000) {
-      throw new AbortException("This implementation does not scale to data sets larger than " + //
-      0x10000 // = 65535
-      + " instances (~16 GB RAM), at which point the Java maximum array size is reached.");
-    }
     if(SingleLinkageMethod.class.isInstance(linkage)) {
       LOG.verbose("Notice: SLINK is a much faster algorithm for single-linkage clustering!");
     }
 
     // Compute the initial (lower triangular) distance matrix.
-    double[] scratch = new double[AGNES.triangleSize(size)];
-    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
-    // Position counter - must agree with computeOffset!
-    final boolean square = WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(dq.getDistanceFunction()));
-    AGNES.initializeDistanceMatrix(scratch, dq, ix, iy, square);
-
-    // Arrays used for caching:
-    double[] bestd = new double[size];
-    int[] besti = new int[size];
-    initializeNNCache(scratch, bestd, besti);
-
-    // Initialize space for result:
-    PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids);
-
-    // Repeat until everything merged into 1 cluster
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
-    int wsize = size;
-    for(int i = 1; i < size; i++) {
-      int x = findMerge(wsize, scratch, ix, iy, bestd, besti, builder);
-      if(x == wsize - 1) {
-        --wsize;
-        for(ix.seek(wsize - 1); builder.isLinked(ix); ix.retract()) {
+    try (ScratchMatrix scratch = matrix.newMatrix(ScratchMatrix.triangleSize(size))) {
+      DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+      // Position counter - must agree with computeOffset!
+      final boolean square = WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(dq.getDistanceFunction()));
+      AGNES.initializeDistanceMatrix(scratch, dq, ids, square);
+
+      // Arrays used for caching:
+      double[] bestd = new double[size];
+      int[] besti = new int[size];
+      initializeNNCache(scratch, bestd, besti);
+
+      // Initialize space for result:
+      PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids);
+
+      // Repeat until everything merged into 1 cluster
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
+      int wsize = size;
+      for(int i = 1; i < size; i++) {
+        int x = findMerge(wsize, scratch, ix, iy, bestd, besti, builder);
+        if(x == wsize - 1) {
           --wsize;
+          for(ix.seek(wsize - 1); builder.isLinked(ix); ix.retract()) {
+            --wsize;
+          }
         }
+        LOG.incrementProcessed(prog);
       }
-      LOG.incrementProcessed(prog);
-    }
-    LOG.ensureCompleted(prog);
+      LOG.ensureCompleted(prog);
 
-    return builder.complete();
+      return builder.complete();
+    }
   }
 
   /**
@@ -158,16 +175,17 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param bestd Best distance
    * @param besti Best index
    */
-  private static void initializeNNCache(double[] scratch, double[] bestd, int[] besti) {
+  private static void initializeNNCache(ScratchMatrix scratch, double[] bestd, int[] besti) {
     final int size = bestd.length;
     Arrays.fill(bestd, Double.POSITIVE_INFINITY);
     Arrays.fill(besti, -1);
-    for(int x = 0, p = 0; x < size; x++) {
-      assert(p == AGNES.triangleSize(x));
+    long p = 0;
+    for(int x = 0; x < size; x++) {
+      assert(p == ScratchMatrix.triangleSize(x));
       double bestdx = Double.POSITIVE_INFINITY;
       int bestix = -1;
       for(int y = 0; y < x; y++, p++) {
-        final double v = scratch[p];
+        final double v = scratch.get(p);
         if(v < bestd[y]) {
           bestd[y] = v;
           besti[y] = x;
@@ -196,7 +214,7 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param builder Hierarchy builder
    * @return x, for shrinking the working set.
    */
-  protected int findMerge(int size, double[] scratch, DBIDArrayIter ix, DBIDArrayIter iy, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder) {
+  protected int findMerge(int size, ScratchMatrix scratch, DBIDArrayIter ix, DBIDArrayIter iy, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder) {
     double mindist = Double.POSITIVE_INFINITY;
     int x = -1, y = -1;
     // Find minimum:
@@ -230,7 +248,7 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param x First matrix position
    * @param y Second matrix position
    */
-  protected void merge(int size, double[] scratch, DBIDArrayIter ix, DBIDArrayIter iy, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y) {
+  protected void merge(int size, ScratchMatrix scratch, DBIDArrayIter ix, DBIDArrayIter iy, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y) {
     // Avoid allocating memory, by reusing existing iterators:
     ix.seek(x);
     iy.seek(y);
@@ -270,9 +288,9 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param sizex Old size of first cluster
    * @param sizey Old size of second cluster
    */
-  protected void updateMatrix(int size, double[] scratch, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+  protected void updateMatrix(int size, ScratchMatrix scratch, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
     // Update distance matrix. Note: miny < minx
-    final int xbase = AGNES.triangleSize(x), ybase = AGNES.triangleSize(y);
+    final long xbase = ScratchMatrix.triangleSize(x), ybase = ScratchMatrix.triangleSize(y);
 
     // Write to (y, j), with j < y
     int j = 0;
@@ -281,20 +299,22 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int yb = ybase + j;
-      final double d = scratch[yb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[yb], sizej, mindist);
+      final long yb = ybase + j;
+      final double d = linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(yb), sizej, mindist);
+      scratch.set(yb, d);
       updateCache(size, scratch, bestd, besti, x, y, j, d);
     }
     j++; // Skip y
     // Write to (j, y), with y < j < x
-    int jbase = AGNES.triangleSize(j);
+    long jbase = ScratchMatrix.triangleSize(j);
     for(; j < x; jbase += j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int jb = jbase + y;
-      final double d = scratch[jb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[jb], sizej, mindist);
+      final long jb = jbase + y;
+      final double d = linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(jb), sizej, mindist);
+      scratch.set(jb, d);
       updateCache(size, scratch, bestd, besti, x, y, j, d);
     }
     jbase += j++; // Skip x
@@ -304,7 +324,8 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final double d = scratch[jbase + y] = linkage.combine(sizex, scratch[jbase + x], sizey, scratch[jbase + y], sizej, mindist);
+      final double d = linkage.combine(sizex, scratch.get(jbase + x), sizey, scratch.get(jbase + y), sizej, mindist);
+      scratch.set(jbase + y, d);
       updateCache(size, scratch, bestd, besti, x, y, j, d);
     }
   }
@@ -321,7 +342,7 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param j Updated value d(y, j)
    * @param d New distance
    */
-  private void updateCache(int size, double[] scratch, double[] bestd, int[] besti, int x, int y, int j, double d) {
+  private void updateCache(int size, ScratchMatrix scratch, double[] bestd, int[] besti, int x, int y, int j, double d) {
     // New best
     if(d <= bestd[j]) {
       bestd[j] = d;
@@ -334,32 +355,132 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     }
   }
 
-  protected void findBest(int size, double[] scratch, double[] bestd, int[] besti, int j) {
-    final int jbase = AGNES.triangleSize(j);
+  /**
+   * Find the nearest neighbor of an object, in parallel for large data sets.
+   *
+   * @param size Working set size
+   * @param scratch Scratch matrix
+   * @param bestd Best distance
+   * @param besti Best index
+   * @param j Object to update
+   */
+  protected void findBest(int size, ScratchMatrix scratch, double[] bestd, int[] besti, int j) {
     // The distance has increased, we may no longer be the best merge.
-    double bestdj = Double.POSITIVE_INFINITY;
-    int bestij = -1;
-    for(int i = 0, o = jbase; i < j; i++, o++) {
-      if(besti[i] < 0) {
-        continue;
+    FindBestProcessor proc = new FindBestProcessor(scratch, besti, j);
+    if(size < FindBestProcessor.MIN_BLOCKSIZE << 1) {
+      proc.process(0, size);
+    }
+    else {
+      ParallelExecutor.run(size, FindBestProcessor.MIN_BLOCKSIZE, proc);
+    }
+    bestd[j] = proc.bestd;
+    besti[j] = proc.besti;
+  }
+
+  /**
+   * Find the nearest neighbor of an object, by scanning ranges of objects.
+   *
+   * @author Erich Schubert
+   */
+  protected static class FindBestProcessor implements ParallelExecutor.RangeProcessor {
+    /**
+     * Number of objects to scan at least per block.
+     */
+    private static final int MIN_BLOCKSIZE = 1 << 14;
+
+    /**
+     * Scratch matrix.
+     */
+    private ScratchMatrix scratch;
+
+    /**
+     * Best index (only read, negative for inactive objects).
+     */
+    private int[] activei;
+
+    /**
+     * Object to find the nearest neighbor for.
+     */
+    private int j;
+
+    /**
+     * Result: best distance.
+     */
+    double bestd = Double.POSITIVE_INFINITY;
+
+    /**
+     * Result: best index.
+     */
+    int besti = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param scratch Scratch matrix
+     * @param activei Best index, negative for inactive objects
+     * @param j Object to find the nearest neighbor for
+     */
+    protected FindBestProcessor(ScratchMatrix scratch, int[] activei, int j) {
+      super();
+      this.scratch = scratch;
+      this.activei = activei;
+      this.j = j;
+    }
+
+    /**
+     * Scan a range sequentially, and merge with the current result.
+     *
+     * @param start First object to scan
+     * @param end End of objects (exclusive)
+     */
+    @Override
+    public void process(int start, int end) {
+      final long jbase = ScratchMatrix.triangleSize(j);
+      double bestdj = Double.POSITIVE_INFINITY;
+      int bestij = -1;
+      final int e1 = end < j ? end : j;
+      long o = jbase + start;
+      for(int i = start; i < e1; i++, o++) {
+        if(activei[i] < 0) {
+          continue;
+        }
+        final double v = scratch.get(o);
+        if(v < bestdj) {
+          bestdj = v;
+          bestij = i;
+        }
       }
-      if(scratch[o] < bestdj) {
-        bestdj = scratch[o];
-        bestij = i;
+      int i = start > j ? start : j + 1;
+      o = ScratchMatrix.triangleSize(i) + j;
+      for(; i < end; o += i, i++) {
+        // assert(o == ScratchMatrix.triangleSize(i) + j);
+        if(activei[i] < 0) {
+          continue;
+        }
+        final double v = scratch.get(o);
+        if(v < bestdj) {
+          bestdj = v;
+          bestij = i;
+        }
       }
-    }
-    for(int i = j + 1, o = jbase + j + j; i < size; o += i, i++) {
-      // assert(o == AGNES.triangleSize(i) + j);
-      if(besti[i] < 0) {
-        continue;
+      if(bestij >= 0) {
+        merge(bestdj, bestij);
       }
-      if(scratch[o] < bestdj) {
-        bestdj = scratch[o];
-        bestij = i;
+    }
+
+    /**
+     * Merge the result of a range. Prefer the lower index on ties, as in a
+     * sequential scan.
+     *
+     * @param d Best distance in the range
+     * @param i Best index in the range
+     */
+    private synchronized void merge(double d, int i) {
+      if(d < bestd || (d == bestd && (besti < 0 || i < besti))) {
+        bestd = d;
+        besti = i;
       }
     }
-    bestd[j] = bestdj;
-    besti[j] = bestij;
   }
 
   @Override
@@ -388,6 +509,11 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
      */
     protected LinkageMethod linkage;
 
+    /**
+     * Storage of the distance matrix.
+     */
+    protected ScratchMatrix.Factory matrix;
+
     @Override
     protected void makeOptions(Parameterization config) {
       // We don't call super, because we want a different default distance.
@@ -401,11 +527,16 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
       if(config.grab(linkageP)) {
         linkage = linkageP.instantiateClass(config);
       }
+
+      ObjectParameter<ScratchMatrix.Factory> matrixP = new ObjectParameter<>(AGNES.Parameterizer.MATRIX_ID, ScratchMatrix.Factory.class, DoubleScratchMatrix.Factory.class);
+      if(config.grab(matrixP)) {
+        matrix = matrixP.instantiateClass(config);
+      }
     }
 
     @Override
     protected AnderbergHierarchicalClustering<O> makeInstance() {
-      return new AnderbergHierarchicalClustering<>(distanceFunction, linkage);
+      return new AnderbergHierarchicalClustering<>(distanceFunction, linkage, matrix);
     }
   }
 }
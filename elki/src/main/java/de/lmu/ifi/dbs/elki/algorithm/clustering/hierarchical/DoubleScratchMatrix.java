@@ -0,0 +1,157 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Scratch matrix stored on the Java heap with double precision.
+ *
+ * Large matrixes are split into multiple arrays, to avoid the Java array size
+ * limit.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class DoubleScratchMatrix implements ScratchMatrix {
+  /**
+   * Bits of the offset within a chunk.
+   */
+  private static final int SHIFT = 27;
+
+  /**
+   * Maximum chunk size.
+   */
+  private static final int CHUNKSIZE = 1 << SHIFT;
+
+  /**
+   * Mask for the offset within a chunk.
+   */
+  private static final int MASK = CHUNKSIZE - 1;
+
+  /**
+   * Data chunks.
+   */
+  private double[][] data;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of entries
+   */
+  public DoubleScratchMatrix(long size) {
+    final int nchunks = (int) ((size + MASK) >>> SHIFT);
+    data = new double[nchunks][];
+    for(int c = 0; c < nchunks; c++) {
+      data[c] = new double[(int) Math.min(size - (((long) c) << SHIFT), CHUNKSIZE)];
+    }
+  }
+
+  @Override
+  public double get(long offset) {
+    return data[(int) (offset >>> SHIFT)][((int) offset) & MASK];
+  }
+
+  @Override
+  public void set(long offset, double value) {
+    data[(int) (offset >>> SHIFT)][((int) offset) & MASK] = value;
+  }
+
+  @Override
+  public void close() {
+    data = null;
+  }
+
+  /**
+   * Matrix small enough for a single array, avoiding the chunk lookup.
+   *
+   * @author Erich Schubert
+   */
+  private static class Single implements ScratchMatrix {
+    /**
+     * Data array.
+     */
+    private double[] data;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of entries
+     */
+    Single(int size) {
+      data = new double[size];
+    }
+
+    @Override
+    public double get(long offset) {
+      return data[(int) offset];
+    }
+
+    @Override
+    public void set(long offset, double value) {
+      data[(int) offset] = value;
+    }
+
+    @Override
+    public void close() {
+      data = null;
+    }
+  }
+
+  /**
+   * Factory for double precision matrixes.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has DoubleScratchMatrix
+   */
+  public static class Factory implements ScratchMatrix.Factory {
+    /**
+     * Static instance.
+     */
+    public static final Factory STATIC = new Factory();
+
+    @Override
+    public ScratchMatrix newMatrix(long size) {
+      return size <= CHUNKSIZE ? new Single((int) size) : new DoubleScratchMatrix(size);
+    }
+
+    /**
+     * Class parameterizer.
+     *
+     * Returns the static instance.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      @Override
+      protected Factory makeInstance() {
+        return STATIC;
+      }
+    }
+  }
+}
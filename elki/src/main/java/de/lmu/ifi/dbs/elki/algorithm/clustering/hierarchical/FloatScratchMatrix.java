@@ -0,0 +1,122 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Scratch matrix stored on the Java heap with float precision, which halves
+ * the memory requirements at the cost of precision.
+ *
+ * Large matrixes are split into multiple arrays, to avoid the Java array size
+ * limit.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class FloatScratchMatrix implements ScratchMatrix {
+  /**
+   * Bits of the offset within a chunk.
+   */
+  private static final int SHIFT = 28;
+
+  /**
+   * Maximum chunk size.
+   */
+  private static final int CHUNKSIZE = 1 << SHIFT;
+
+  /**
+   * Mask for the offset within a chunk.
+   */
+  private static final int MASK = CHUNKSIZE - 1;
+
+  /**
+   * Data chunks.
+   */
+  private float[][] data;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of entries
+   */
+  public FloatScratchMatrix(long size) {
+    final int nchunks = (int) ((size + MASK) >>> SHIFT);
+    data = new float[nchunks][];
+    for(int c = 0; c < nchunks; c++) {
+      data[c] = new float[(int) Math.min(size - (((long) c) << SHIFT), CHUNKSIZE)];
+    }
+  }
+
+  @Override
+  public double get(long offset) {
+    return data[(int) (offset >>> SHIFT)][((int) offset) & MASK];
+  }
+
+  @Override
+  public void set(long offset, double value) {
+    data[(int) (offset >>> SHIFT)][((int) offset) & MASK] = (float) value;
+  }
+
+  @Override
+  public void close() {
+    data = null;
+  }
+
+  /**
+   * Factory for float precision matrixes.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has FloatScratchMatrix
+   */
+  public static class Factory implements ScratchMatrix.Factory {
+    /**
+     * Static instance.
+     */
+    public static final Factory STATIC = new Factory();
+
+    @Override
+    public FloatScratchMatrix newMatrix(long size) {
+      return new FloatScratchMatrix(size);
+    }
+
+    /**
+     * Class parameterizer.
+     *
+     * Returns the static instance.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      @Override
+      protected Factory makeInstance() {
+        return STATIC;
+      }
+    }
+  }
+}
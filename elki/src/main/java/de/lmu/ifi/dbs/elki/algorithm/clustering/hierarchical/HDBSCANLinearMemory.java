@@ -38,7 +38,6 @@ import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
-import de.lmu.ifi.dbs.elki.math.geometry.PrimsMinimumSpanningTree;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongHeap;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
@@ -122,8 +121,7 @@ public class HDBSCANLinearMemory<O> extends AbstractHDBSCAN<O, PointerDensityHie
     DoubleLongHeap heap = new DoubleLongMinHeap(numedges);
     // 2. Build spanning tree.
     FiniteProgress mprog = LOG.isVerbose() ? new FiniteProgress("Computing minimum spanning tree (n-1 edges)", numedges, LOG) : null;
-    PrimsMinimumSpanningTree.processDense(ids, //
-        new HDBSCANAdapter(ids, coredists, distQ), //
+    ParallelPrimsMinimumSpanningTree.processDense(ids, distQ, coreDistanceArray(ids, coredists), //
         new HeapMSTCollector(heap, mprog, LOG));
     LOG.ensureCompleted(mprog);
     // Storage for pointer representation:
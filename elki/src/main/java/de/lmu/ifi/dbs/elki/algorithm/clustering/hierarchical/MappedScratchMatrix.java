@@ -0,0 +1,238 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+
+/**
+ * Scratch matrix stored off-heap in a memory-mapped temporary file, with float
+ * precision. The operating system pages the matrix in and out as needed, so
+ * the matrix may exceed both the Java heap and (slowly) the main memory.
+ *
+ * The file is deleted when the matrix is closed; the mapping itself is
+ * released by the garbage collector.
+ *
+ * Besides distances, the entries can store integers (e.g. object ids), via
+ * {@link #getInt} and {@link #setInt}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class MappedScratchMatrix implements ScratchMatrix {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MappedScratchMatrix.class);
+
+  /**
+   * Bits of the offset within a chunk.
+   */
+  private static final int SHIFT = 28;
+
+  /**
+   * Maximum chunk size (in entries, i.e. 1 GB per mapping).
+   */
+  private static final int CHUNKSIZE = 1 << SHIFT;
+
+  /**
+   * Mask for the offset within a chunk.
+   */
+  private static final int MASK = CHUNKSIZE - 1;
+
+  /**
+   * Backing file.
+   */
+  private File file;
+
+  /**
+   * File access.
+   */
+  private RandomAccessFile raf;
+
+  /**
+   * Mapped chunks.
+   */
+  private MappedByteBuffer[] data;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of entries
+   * @param dir Directory for the temporary file (created if necessary),
+   *        {@code null} for the system default.
+   */
+  public MappedScratchMatrix(long size, File dir) {
+    if(dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+      throw new AbortException("Could not create the directory " + dir + " for the temporary file.");
+    }
+    try {
+      file = File.createTempFile("elki-matrix", ".bin", dir);
+      file.deleteOnExit();
+      raf = new RandomAccessFile(file, "rw");
+      raf.setLength(size << 2);
+      FileChannel channel = raf.getChannel();
+      final int nchunks = (int) ((size + MASK) >>> SHIFT);
+      data = new MappedByteBuffer[nchunks];
+      for(int c = 0; c < nchunks; c++) {
+        final long start = ((long) c) << SHIFT;
+        final long len = Math.min(size - start, CHUNKSIZE);
+        data[c] = channel.map(FileChannel.MapMode.READ_WRITE, start << 2, len << 2);
+        data[c].order(ByteOrder.nativeOrder());
+      }
+    }
+    catch(IOException e) {
+      close();
+      throw new AbortException("Could not map a scratch matrix of " + size + " entries.", e);
+    }
+  }
+
+  @Override
+  public double get(long offset) {
+    return data[(int) (offset >>> SHIFT)].getFloat((((int) offset) & MASK) << 2);
+  }
+
+  @Override
+  public void set(long offset, double value) {
+    data[(int) (offset >>> SHIFT)].putFloat((((int) offset) & MASK) << 2, (float) value);
+  }
+
+  /**
+   * Get an entry stored as integer.
+   *
+   * @param offset Offset
+   * @return Value
+   */
+  public int getInt(long offset) {
+    return data[(int) (offset >>> SHIFT)].getInt((((int) offset) & MASK) << 2);
+  }
+
+  /**
+   * Store an integer entry.
+   *
+   * @param offset Offset
+   * @param value Value
+   */
+  public void setInt(long offset, int value) {
+    data[(int) (offset >>> SHIFT)].putInt((((int) offset) & MASK) << 2, value);
+  }
+
+  @Override
+  public void close() {
+    data = null;
+    if(raf != null) {
+      try {
+        raf.close();
+      }
+      catch(IOException e) {
+        LOG.exception(e);
+      }
+      raf = null;
+    }
+    if(file != null && !file.delete()) {
+      LOG.warning("Could not delete temporary file " + file);
+    }
+    file = null;
+  }
+
+  /**
+   * Factory for memory-mapped matrixes.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has MappedScratchMatrix
+   */
+  public static class Factory implements ScratchMatrix.Factory {
+    /**
+     * Directory for temporary files, may be {@code null}.
+     */
+    private File dir;
+
+    /**
+     * Constructor.
+     *
+     * @param dir Directory for temporary files, {@code null} for the system
+     *        default.
+     */
+    public Factory(File dir) {
+      super();
+      this.dir = dir;
+    }
+
+    @Override
+    public MappedScratchMatrix newMatrix(long size) {
+      return new MappedScratchMatrix(size, dir);
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      /**
+       * Directory for the temporary matrix file.
+       *
+       * <p>
+       * Key: {@code -hierarchical.matrix.dir}
+       * </p>
+       */
+      public static final OptionID DIR_ID = new OptionID("hierarchical.matrix.dir", "Directory for the temporary file of the memory-mapped distance matrix.");
+
+      /**
+       * Directory for temporary files.
+       */
+      protected File dir;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        FileParameter dirP = new FileParameter(DIR_ID, FileParameter.FileType.OUTPUT_DIRECTORY) //
+            .setOptional(true);
+        if(config.grab(dirP)) {
+          dir = dirP.getValue();
+        }
+      }
+
+      @Override
+      protected Factory makeInstance() {
+        return new Factory(dir);
+      }
+    }
+  }
+}
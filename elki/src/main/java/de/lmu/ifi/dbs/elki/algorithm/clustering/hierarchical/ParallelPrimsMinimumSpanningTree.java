@@ -0,0 +1,254 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.math.geometry.PrimsMinimumSpanningTree;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+
+/**
+ * Parallel version of Prim's minimum spanning tree algorithm for a complete
+ * graph given by a distance query.
+ *
+ * After each added vertex, the candidate edges of all remaining vertices are
+ * updated and the next vertex is chosen by a parallel scan over partitions of
+ * the remaining vertices. Ties are resolved towards the smaller index, so the
+ * tree is the same as with the sequential
+ * {@link PrimsMinimumSpanningTree#processDense}.
+ *
+ * Optionally, core distances can be given to build the tree of the mutual
+ * reachability graph of HDBSCAN. Then distances are not computed when the core
+ * distances already rule out an improvement.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public final class ParallelPrimsMinimumSpanningTree {
+  /**
+   * Number of vertices to process at least per block.
+   */
+  private static final int MIN_TASKSIZE = 1 << 11;
+
+  /**
+   * Fake constructor, use static methods.
+   */
+  private ParallelPrimsMinimumSpanningTree() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Compute the minimum spanning tree.
+   *
+   * @param ids Object IDs
+   * @param dq Distance query (must be thread safe)
+   * @param core Core distances, by offset in {@code ids}; may be {@code null}
+   * @param collector Edge collector, invoked from the calling thread only
+   */
+  public static void processDense(ArrayDBIDs ids, DistanceQuery<?> dq, double[] core, PrimsMinimumSpanningTree.Collector collector) {
+    processDense(ids, dq, core, collector, MIN_TASKSIZE);
+  }
+
+  /**
+   * Compute the minimum spanning tree.
+   *
+   * @param ids Object IDs
+   * @param dq Distance query (must be thread safe)
+   * @param core Core distances, by offset in {@code ids}; may be {@code null}
+   * @param collector Edge collector, invoked from the calling thread only
+   * @param tasksize Minimum number of vertices per block
+   */
+  static void processDense(ArrayDBIDs ids, DistanceQuery<?> dq, double[] core, PrimsMinimumSpanningTree.Collector collector, int tasksize) {
+    final int n = ids.size();
+    if(n < 2) {
+      return;
+    }
+    double[] best = new double[n];
+    Arrays.fill(best, Double.POSITIVE_INFINITY);
+    int[] src = new int[n];
+    // Vertices not yet connected, we start at vertex 0.
+    int[] remaining = new int[n - 1];
+    for(int i = 0; i < remaining.length; i++) {
+      remaining[i] = i + 1;
+    }
+    UpdateProcessor proc = new UpdateProcessor(ids, dq, core, best, src, remaining);
+    int current = 0;
+    for(int m = remaining.length; m > 0;) {
+      proc.reset(current);
+      if(m < tasksize << 1) {
+        proc.process(0, m);
+      }
+      else {
+        ParallelExecutor.run(m, tasksize, proc);
+      }
+      final int j = remaining[proc.bestpos];
+      collector.addEdge(best[j], src[j], j);
+      remaining[proc.bestpos] = remaining[--m];
+      current = j;
+    }
+  }
+
+  /**
+   * Update the candidate edges after adding a vertex, and find the next vertex
+   * to add.
+   *
+   * @author Erich Schubert
+   */
+  private static class UpdateProcessor implements ParallelExecutor.RangeProcessor {
+    /**
+     * Object IDs.
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Distance query.
+     */
+    private DistanceQuery<?> dq;
+
+    /**
+     * Core distances, may be {@code null}.
+     */
+    private double[] core;
+
+    /**
+     * Length of the best edge.
+     */
+    private double[] best;
+
+    /**
+     * Source of the best edge.
+     */
+    private int[] src;
+
+    /**
+     * Remaining vertexes.
+     */
+    private int[] remaining;
+
+    /**
+     * Vertex added last.
+     */
+    private int current;
+
+    /**
+     * Result: best edge length.
+     */
+    double bestd;
+
+    /**
+     * Result: best vertex.
+     */
+    int bestj;
+
+    /**
+     * Result: position of the best vertex in {@link #remaining}.
+     */
+    int bestpos;
+
+    /**
+     * Constructor.
+     *
+     * @param ids Object IDs
+     * @param dq Distance query
+     * @param core Core distances, may be {@code null}
+     * @param best Best edge lengths
+     * @param src Best edge sources
+     * @param remaining Remaining vertexes
+     */
+    UpdateProcessor(ArrayDBIDs ids, DistanceQuery<?> dq, double[] core, double[] best, int[] src, int[] remaining) {
+      super();
+      this.ids = ids;
+      this.dq = dq;
+      this.core = core;
+      this.best = best;
+      this.src = src;
+      this.remaining = remaining;
+    }
+
+    /**
+     * Start the next round.
+     *
+     * @param current Vertex added last
+     */
+    void reset(int current) {
+      this.current = current;
+      bestd = Double.POSITIVE_INFINITY;
+      bestj = Integer.MAX_VALUE;
+      bestpos = -1;
+    }
+
+    /**
+     * Process a range of {@link #remaining} sequentially, and merge with the
+     * current result.
+     *
+     * @param start Start in remaining
+     * @param end End in remaining (exclusive)
+     */
+    @Override
+    public void process(int start, int end) {
+      DBIDArrayIter ic = ids.iter().seek(current), ij = ids.iter();
+      final double corec = core != null ? core[current] : 0.;
+      double bd = Double.POSITIVE_INFINITY;
+      int bj = Integer.MAX_VALUE, bp = -1;
+      for(int p = start; p < end; p++) {
+        final int j = remaining[p];
+        double d = best[j];
+        // Lower bound given by the core distances:
+        final double lb = core != null ? Math.max(corec, core[j]) : 0.;
+        if(lb < d) {
+          final double dist = Math.max(lb, dq.distance(ic, ij.seek(j)));
+          if(dist < d) {
+            best[j] = d = dist;
+            src[j] = current;
+          }
+        }
+        if(d < bd || (d == bd && j < bj)) {
+          bd = d;
+          bj = j;
+          bp = p;
+        }
+      }
+      merge(bd, bj, bp);
+    }
+
+    /**
+     * Merge the result of a range, resolving ties towards the smaller index.
+     *
+     * @param d Best edge length in the range
+     * @param j Best vertex in the range
+     * @param p Position of the best vertex
+     */
+    private synchronized void merge(double d, int j, int p) {
+      if(p >= 0 && (d < bestd || (d == bestd && j < bestj))) {
+        bestd = d;
+        bestj = j;
+        bestpos = p;
+      }
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Storage for the lower triangular distance matrix used by agglomerative
+ * hierarchical clustering, addressed by {@code long} offsets so that data sets
+ * with more than 65536 objects can be processed.
+ *
+ * Entry (x, y) with y &lt; x is stored at offset
+ * {@code triangleSize(x) + y}.
+ *
+ * Implementations must allow concurrent reads, and concurrent writes to
+ * different offsets.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public interface ScratchMatrix extends AutoCloseable {
+  /**
+   * Get a value.
+   *
+   * @param offset Offset
+   * @return Value
+   */
+  double get(long offset);
+
+  /**
+   * Set a value.
+   *
+   * @param offset Offset
+   * @param value New value
+   */
+  void set(long offset, double value);
+
+  /**
+   * Release the storage.
+   */
+  @Override
+  void close();
+
+  /**
+   * Compute the size of a complete x by x triangle (minus diagonal)
+   *
+   * @param x Offset
+   * @return Size of complete triangle
+   */
+  static long triangleSize(int x) {
+    return (((long) x) * (x - 1)) >>> 1;
+  }
+
+  /**
+   * Factory to allocate scratch matrixes.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.stereotype factory
+   * @apiviz.has ScratchMatrix
+   */
+  public static interface Factory {
+    /**
+     * Allocate a new matrix.
+     *
+     * @param size Number of entries
+     * @return New matrix
+     */
+    ScratchMatrix newMatrix(long size);
+  }
+}
@@ -0,0 +1,105 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMedoidsInitialization;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * CLARA with the parallel swap phase of {@link FastPAM}: each random sample is
+ * clustered with FastPAM, then all objects are assigned to the nearest medoid.
+ *
+ * Using multiple threads for the swap phase makes larger samples affordable,
+ * which improves the quality of CLARA.
+ *
+ * Reference:
+ * <p>
+ * E. Schubert, P. J. Rousseeuw<br />
+ * Faster k-Medoids Clustering: Improving the PAM, CLARA, and CLARANS
+ * Algorithms<br />
+ * Similarity Search and Applications, SISAP 2019
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <V> Vector type
+ */
+@Reference(authors = "E. Schubert, P. J. Rousseeuw", //
+title = "Faster k-Medoids Clustering: Improving the PAM, CLARA, and CLARANS Algorithms", //
+booktitle = "Similarity Search and Applications, SISAP 2019", //
+url = "https://doi.org/10.1007/978-3-030-32047-8_16")
+public class FastCLARA<V> extends CLARA<V> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(FastCLARA.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = FastCLARA.class.getName();
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param k Number of clusters to produce
+   * @param maxiter Maximum number of iterations
+   * @param initializer Initialization function
+   * @param numsamples Number of samples (sampling iterations)
+   * @param sampling Sampling rate (absolute or relative)
+   * @param random Random generator
+   */
+  public FastCLARA(DistanceFunction<? super V> distanceFunction, int k, int maxiter, KMedoidsInitialization<V> initializer, int numsamples, double sampling, RandomFactory random) {
+    super(distanceFunction, k, maxiter, initializer, numsamples, sampling, random);
+  }
+
+  @Override
+  protected void runPAMOptimization(DistanceQuery<V> distQ, DBIDs ids, ArrayModifiableDBIDs medoids, WritableIntegerDataStore assignment) {
+    FastPAM.runFastPAMOptimization(this, distQ, ids, medoids, assignment, LOG, KEY);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V> extends CLARA.Parameterizer<V> {
+    @Override
+    protected FastCLARA<V> makeInstance() {
+      return new FastCLARA<>(distanceFunction, k, maxiter, initializer, numsamples, sampling, random);
+    }
+  }
+}
@@ -0,0 +1,380 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMedoidsInitialization;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.DoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.IntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * FastPAM: PAM with a parallel swap phase.
+ *
+ * The swap candidates are evaluated in parallel, using the
+ * {@link de.lmu.ifi.dbs.elki.parallel.ParallelCore}; each candidate is
+ * evaluated as in {@link KMedoidsPAM}, in a single pass over the data. The
+ * speedup over {@link KMedoidsPAM} thus comes from the threads only, the
+ * complexity of an iteration is unchanged.
+ *
+ * The result is the same as with {@link KMedoidsPAM}, except for ties and
+ * numerical differences.
+ *
+ * Reference:
+ * <p>
+ * E. Schubert, P. J. Rousseeuw<br />
+ * Faster k-Medoids Clustering: Improving the PAM, CLARA, and CLARANS
+ * Algorithms<br />
+ * Similarity Search and Applications, SISAP 2019
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has SwapProcessor
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "E. Schubert, P. J. Rousseeuw", //
+title = "Faster k-Medoids Clustering: Improving the PAM, CLARA, and CLARANS Algorithms", //
+booktitle = "Similarity Search and Applications, SISAP 2019", //
+url = "https://doi.org/10.1007/978-3-030-32047-8_16")
+public class FastPAM<V> extends KMedoidsPAM<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(FastPAM.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = FastPAM.class.getName();
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Function to generate the initial means
+   */
+  public FastPAM(DistanceFunction<? super V> distanceFunction, int k, int maxiter, KMedoidsInitialization<V> initializer) {
+    super(distanceFunction, k, maxiter, initializer);
+  }
+
+  @Override
+  protected void runPAMOptimization(DistanceQuery<V> distQ, DBIDs ids, ArrayModifiableDBIDs medoids, WritableIntegerDataStore assignment) {
+    runFastPAMOptimization(this, distQ, ids, medoids, assignment, LOG, KEY);
+  }
+
+  /**
+   * Run the FastPAM optimization phase.
+   *
+   * @param pam Algorithm (for parameters and the assignment step)
+   * @param distQ Distance query
+   * @param ids IDs to process
+   * @param medoids Medoids list
+   * @param assignment Cluster assignment
+   * @param log Logger
+   * @param key Key for statistics logging
+   */
+  protected static <V> void runFastPAMOptimization(KMedoidsPAM<V> pam, DistanceQuery<V> distQ, DBIDs ids, ArrayModifiableDBIDs medoids, WritableIntegerDataStore assignment, Logging log, String key) {
+    final int k = pam.k, maxiter = pam.maxiter;
+    WritableDoubleDataStore nearest = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    WritableDoubleDataStore second = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    // Initial assignment to nearest medoids
+    double tc = pam.assignToNearestCluster(medoids, ids, nearest, second, assignment, distQ);
+    if(log.isStatistics()) {
+      log.statistics(new DoubleStatistic(key + ".iteration-" + 0 + ".cost", tc));
+    }
+    // Candidates are processed in array order.
+    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    SwapProcessor<V> proc = new SwapProcessor<>(distQ, aids, medoids, assignment, nearest, second, k);
+
+    IndefiniteProgress prog = log.isVerbose() ? new IndefiniteProgress("FastPAM iteration", log) : null;
+    int iteration = 1;
+    for(; maxiter <= 0 || iteration <= maxiter; iteration++) {
+      log.incrementProcessed(prog);
+      proc.nextIteration();
+      ParallelExecutor.run(aids, proc);
+      if(proc.best >= 0. || proc.bestcluster < 0) {
+        break;
+      }
+      medoids.set(proc.bestcluster, proc.bestid);
+      // Reassign
+      double nc = pam.assignToNearestCluster(medoids, ids, nearest, second, assignment, distQ);
+      if(log.isStatistics()) {
+        log.statistics(new DoubleStatistic(key + ".iteration-" + iteration + ".cost", nc));
+      }
+      if(nc > tc) {
+        if(nc - tc < 1e-7 * tc) {
+          log.warning("PAM failed to converge (numerical instability?)");
+          break;
+        }
+        log.warning("PAM failed to converge: costs increased by: " + (nc - tc) + " exepected a decrease by " + proc.best);
+        break;
+      }
+      tc = nc;
+    }
+    log.setCompleted(prog);
+    if(log.isStatistics()) {
+      log.statistics(new LongStatistic(key + ".iterations", iteration));
+      log.statistics(new DoubleStatistic(key + ".iteration-" + iteration + ".cost", tc));
+    }
+  }
+
+  /**
+   * Processor to find the best swap, evaluating the candidates in parallel.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has Instance
+   *
+   * @param <V> vector datatype
+   */
+  protected static class SwapProcessor<V> implements Processor {
+    /**
+     * Distance query.
+     */
+    DistanceQuery<V> distQ;
+
+    /**
+     * All objects.
+     */
+    ArrayDBIDs ids;
+
+    /**
+     * Current medoids.
+     */
+    ArrayDBIDs medoids;
+
+    /**
+     * Cluster assignment.
+     */
+    IntegerDataStore assignment;
+
+    /**
+     * Distance to the nearest and second nearest medoid.
+     */
+    DoubleDataStore nearest, second;
+
+    /**
+     * Number of medoids.
+     */
+    int k;
+
+    /**
+     * Best change in cost found.
+     */
+    double best;
+
+    /**
+     * Medoid to replace in the best swap.
+     */
+    int bestcluster;
+
+    /**
+     * Candidate of the best swap.
+     */
+    DBIDVar bestid = DBIDUtil.newVar();
+
+    /**
+     * Constructor.
+     *
+     * @param distQ Distance query
+     * @param ids Objects
+     * @param medoids Medoids
+     * @param assignment Cluster assignment
+     * @param nearest Distance to nearest medoid
+     * @param second Distance to second nearest medoid
+     * @param k Number of medoids
+     */
+    public SwapProcessor(DistanceQuery<V> distQ, ArrayDBIDs ids, ArrayDBIDs medoids, IntegerDataStore assignment, DoubleDataStore nearest, DoubleDataStore second, int k) {
+      super();
+      this.distQ = distQ;
+      this.ids = ids;
+      this.medoids = medoids;
+      this.assignment = assignment;
+      this.nearest = nearest;
+      this.second = second;
+      this.k = k;
+    }
+
+    /**
+     * Reset for the next iteration.
+     */
+    public void nextIteration() {
+      best = Double.POSITIVE_INFINITY;
+      bestcluster = -1;
+      bestid.unset();
+    }
+
+    @Override
+    public Instance<V> instantiate(Executor executor) {
+      return new Instance<>(this);
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      @SuppressWarnings("unchecked")
+      Instance<V> instance = (Instance<V>) inst;
+      if(instance.bestcluster < 0) {
+        return;
+      }
+      synchronized(this) {
+        // Break ties by the candidate id, for deterministic results.
+        if(instance.best < best || (instance.best == best && DBIDUtil.compare(instance.bestid, bestid) < 0)) {
+          best = instance.best;
+          bestcluster = instance.bestcluster;
+          bestid.set(instance.bestid);
+        }
+      }
+    }
+
+    /**
+     * Instance to evaluate a part of the candidates.
+     *
+     * @author Erich Schubert
+     *
+     * @param <V> vector datatype
+     */
+    public static class Instance<V> implements Processor.Instance {
+      /**
+       * Distance query.
+       */
+      private DistanceQuery<V> distQ;
+
+      /**
+       * All objects.
+       */
+      private ArrayDBIDs ids;
+
+      /**
+       * Medoid iterator.
+       */
+      private DBIDArrayIter m;
+
+      /**
+       * Cluster assignment.
+       */
+      private IntegerDataStore assignment;
+
+      /**
+       * Distance to the nearest and second nearest medoid.
+       */
+      private DoubleDataStore nearest, second;
+
+      /**
+       * Change in cost for removing each medoid.
+       */
+      private double[] cost;
+
+      /**
+       * Best change in cost found.
+       */
+      private double best = Double.POSITIVE_INFINITY;
+
+      /**
+       * Medoid to replace in the best swap.
+       */
+      private int bestcluster = -1;
+
+      /**
+       * Candidate of the best swap.
+       */
+      private DBIDVar bestid = DBIDUtil.newVar();
+
+      /**
+       * Constructor.
+       *
+       * @param proc Parent processor
+       */
+      protected Instance(SwapProcessor<V> proc) {
+        super();
+        this.distQ = proc.distQ;
+        this.ids = proc.ids;
+        this.m = proc.medoids.iter();
+        this.assignment = proc.assignment;
+        this.nearest = proc.nearest;
+        this.second = proc.second;
+        this.cost = new double[proc.k];
+      }
+
+      @Override
+      public void map(DBIDRef h) {
+        final double hdist = nearest.doubleValue(h); // Current cost of h.
+        // Only consider non-selected items. As in KMedoidsPAM, duplicates of a
+        // medoid (distance 0) are skipped, too: for a metric, replacing any
+        // medoid with such a duplicate cannot decrease the cost.
+        if(hdist <= 0. || DBIDUtil.equal(m.seek(assignment.intValue(h)), h)) {
+          return;
+        }
+        // h is a non-medoid currently in cluster of medoid m.
+        computeSwapCosts(distQ, h, hdist, ids, assignment, nearest, second, cost);
+        for(int pi = 0; pi < cost.length; pi++) {
+          final double c = cost[pi];
+          if(c < best || (c == best && bestcluster >= 0 && DBIDUtil.compare(h, bestid) < 0)) {
+            best = c;
+            bestid.set(h);
+            bestcluster = pi;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V> extends KMedoidsPAM.Parameterizer<V> {
+    @Override
+    protected FastPAM<V> makeInstance() {
+      return new FastPAM<>(distanceFunction, k, maxiter, initializer);
+    }
+  }
+}
@@ -0,0 +1,502 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithmUtil;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.MultipleObjectsBundleDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Mini-batch k-means, which updates the means with a per-cluster learning
+ * rate after each small batch of objects.
+ *
+ * Besides the usual in-memory operation on a {@link Relation}, this class can
+ * consume a {@link BundleStreamSource} (for example a
+ * {@link de.lmu.ifi.dbs.elki.datasource.parser.StreamingParser}) chunk by
+ * chunk: {@link #chooseInitialMeans(BundleStreamSource)} draws a reservoir
+ * sample and runs the configured {@link KMeansInitialization} on it, and
+ * {@link #runPass} then performs one pass of mini-batch updates. Memory use
+ * only depends on the sample and batch sizes, not on the size of the data.
+ *
+ * The number of iterations is the number of passes over the data set; by
+ * default, a single pass is made.
+ *
+ * <p>
+ * Reference:<br />
+ * D. Sculley<br />
+ * Web-scale k-means clustering<br />
+ * Proc. 19th International Conference on World Wide Web, WWW 2010
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has KMeansModel
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "D. Sculley", //
+title = "Web-scale k-means clustering", //
+booktitle = "Proc. 19th International Conference on World Wide Web, WWW 2010", //
+url = "http://dx.doi.org/10.1145/1772690.1772862")
+public class MiniBatchKMeans<V extends NumberVector> extends AbstractKMeans<V, KMeansModel> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(MiniBatchKMeans.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = MiniBatchKMeans.class.getName();
+
+  /**
+   * Number of objects per batch.
+   */
+  int batchsize;
+
+  /**
+   * Size of the reservoir sample used for initialization on streams.
+   */
+  int samplesize;
+
+  /**
+   * Random generator for shuffling and sampling.
+   */
+  RandomFactory random;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Number of passes over the data
+   * @param initializer Initialization method
+   * @param batchsize Number of objects per batch
+   * @param samplesize Reservoir sample size for initialization on streams
+   * @param random Random generator
+   */
+  public MiniBatchKMeans(NumberVectorDistanceFunction<? super V> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer, int batchsize, int samplesize, RandomFactory random) {
+    super(distanceFunction, k, maxiter, initializer);
+    this.batchsize = batchsize;
+    this.samplesize = samplesize;
+    this.random = random;
+  }
+
+  /**
+   * Get the number of passes to perform.
+   *
+   * @return Number of passes
+   */
+  public int getPasses() {
+    return maxiter > 0 ? maxiter : 1;
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Database database, Relation<V> relation) {
+    if(relation.size() <= 0) {
+      return new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new StringStatistic(KEY + ".initialization", initializer.toString()));
+    }
+    double[][] means = initializer.chooseInitialMeans(database, relation, k, getDistanceFunction());
+    long[] weights = new long[k];
+    Random rnd = random.getSingleThreadedRandom();
+    ArrayModifiableDBIDs order = DBIDUtil.newArray(relation.getDBIDs());
+    List<V> batch = new ArrayList<>(batchsize);
+    int[] assign = new int[batchsize];
+
+    final int passes = getPasses();
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Mini-batch k-means passes", passes, LOG) : null;
+    for(int pass = 0; pass < passes; pass++) {
+      DBIDUtil.randomShuffle(order, rnd);
+      for(DBIDIter it = order.iter(); it.valid(); it.advance()) {
+        batch.add(relation.get(it));
+        if(batch.size() == batchsize) {
+          updateBatch(batch, means, weights, assign, null, null);
+          batch.clear();
+        }
+      }
+      if(!batch.isEmpty()) {
+        updateBatch(batch, means, weights, assign, null, null);
+        batch.clear();
+      }
+      LOG.incrementProcessed(prog);
+    }
+    LOG.ensureCompleted(prog);
+
+    // Final assignment to the nearest mean.
+    final NumberVectorDistanceFunction<? super V> df = getDistanceFunction();
+    DBIDs ids = relation.getDBIDs();
+    WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    double[] varsum = new double[k];
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      V fv = relation.get(it);
+      double mindist = Double.POSITIVE_INFINITY;
+      int minIndex = 0;
+      for(int i = 0; i < k; i++) {
+        double dist = df.distance(fv, DoubleVector.wrap(means[i]));
+        if(dist < mindist) {
+          minIndex = i;
+          mindist = dist;
+        }
+      }
+      varsum[minIndex] += mindist;
+      assignment.putInt(it, minIndex);
+    }
+    logVariance(varsum);
+
+    ArrayModifiableDBIDs[] clusters = ClusteringAlgorithmUtil.partitionsFromIntegerLabels(ids, assignment, k);
+    Clustering<KMeansModel> result = new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    for(int i = 0; i < clusters.length; i++) {
+      if(clusters[i].size() == 0) {
+        continue;
+      }
+      result.addToplevelCluster(new Cluster<>(clusters[i], new KMeansModel(means[i], varsum[i])));
+    }
+    return result;
+  }
+
+  /**
+   * Choose the initial means on a stream, by running the initialization method
+   * on a reservoir sample of the stream. Consumes the entire stream.
+   *
+   * @param source Data stream
+   * @return Initial means
+   */
+  public double[][] chooseInitialMeans(BundleStreamSource source) {
+    Random rnd = random.getSingleThreadedRandom();
+    VectorStream stream = new VectorStream(source);
+    List<DoubleVector> sample = new ArrayList<>(samplesize);
+    long seen = 0;
+    for(NumberVector fv = stream.next(); fv != null; fv = stream.next(), ++seen) {
+      if(seen < samplesize) {
+        sample.add(DoubleVector.FACTORY.newNumberVector(fv));
+        continue;
+      }
+      // Reservoir sampling:
+      long r = (long) (rnd.nextDouble() * (seen + 1));
+      if(r < samplesize) {
+        sample.set((int) r, DoubleVector.FACTORY.newNumberVector(fv));
+      }
+    }
+    if(sample.size() < k) {
+      throw new AbortException("Not enough data to choose " + k + " initial means: " + sample.size());
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new StringStatistic(KEY + ".initialization", initializer.toString()));
+      LOG.statistics(new LongStatistic(KEY + ".stream-size", seen));
+    }
+    final int dim = sample.get(0).getDimensionality();
+    MultipleObjectsBundle bundle = MultipleObjectsBundle.makeSimple(new VectorFieldTypeInformation<>(DoubleVector.FACTORY, dim), sample);
+    Database db = new StaticArrayDatabase(new MultipleObjectsBundleDatabaseConnection(bundle), null);
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    // The stream only yields generic number vectors.
+    @SuppressWarnings("unchecked")
+    KMeansInitialization<NumberVector> init = (KMeansInitialization<NumberVector>) initializer;
+    @SuppressWarnings("unchecked")
+    NumberVectorDistanceFunction<? super NumberVector> df = (NumberVectorDistanceFunction<? super NumberVector>) getDistanceFunction();
+    return init.chooseInitialMeans(db, rel, k, df);
+  }
+
+  /**
+   * Perform one pass of mini-batch updates over a stream.
+   *
+   * @param source Data stream
+   * @param means Current means, will be updated
+   * @param weights Number of objects each mean has seen so far, will be updated
+   * @param sizes Output: number of objects assigned to each mean in this
+   *        pass, may be {@code null}
+   * @param varsum Output: sum of distances of objects to their mean in this
+   *        pass, may be {@code null}
+   */
+  public void runPass(BundleStreamSource source, double[][] means, long[] weights, long[] sizes, double[] varsum) {
+    VectorStream stream = new VectorStream(source);
+    List<V> batch = new ArrayList<>(batchsize);
+    int[] assign = new int[batchsize];
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("Mini-batches", LOG) : null;
+    for(NumberVector fv = stream.next(); fv != null; fv = stream.next()) {
+      @SuppressWarnings("unchecked")
+      final V v = (V) fv;
+      batch.add(v);
+      if(batch.size() == batchsize) {
+        updateBatch(batch, means, weights, assign, sizes, varsum);
+        batch.clear();
+        LOG.incrementProcessed(prog);
+      }
+    }
+    if(!batch.isEmpty()) {
+      updateBatch(batch, means, weights, assign, sizes, varsum);
+      LOG.incrementProcessed(prog);
+    }
+    LOG.setCompleted(prog);
+    if(varsum != null) {
+      logVariance(varsum);
+    }
+  }
+
+  /**
+   * Process a single mini-batch: assign all objects to the nearest mean, then
+   * move the means towards their objects with a per-mean learning rate.
+   *
+   * @param batch Batch of objects
+   * @param means Current means
+   * @param weights Number of objects seen by each mean
+   * @param assign Scratch space for the assignment
+   * @param sizes Output cluster sizes, may be {@code null}
+   * @param varsum Output variance sums, may be {@code null}
+   */
+  protected void updateBatch(List<? extends V> batch, double[][] means, long[] weights, int[] assign, long[] sizes, double[] varsum) {
+    final NumberVectorDistanceFunction<? super V> df = getDistanceFunction();
+    final int n = batch.size();
+    // Assign with fixed means first.
+    for(int j = 0; j < n; j++) {
+      V fv = batch.get(j);
+      double mindist = Double.POSITIVE_INFINITY;
+      int minIndex = 0;
+      for(int i = 0; i < k; i++) {
+        double dist = df.distance(fv, DoubleVector.wrap(means[i]));
+        if(dist < mindist) {
+          minIndex = i;
+          mindist = dist;
+        }
+      }
+      assign[j] = minIndex;
+      if(sizes != null) {
+        ++sizes[minIndex];
+      }
+      if(varsum != null) {
+        varsum[minIndex] += mindist;
+      }
+    }
+    // Gradient step, with learning rate 1 / (number of objects seen).
+    for(int j = 0; j < n; j++) {
+      V fv = batch.get(j);
+      final int c = assign[j];
+      final double eta = 1. / ++weights[c];
+      final double[] mean = means[c];
+      for(int d = 0; d < mean.length; d++) {
+        mean[d] += eta * (fv.doubleValue(d) - mean[d]);
+      }
+    }
+  }
+
+  /**
+   * Log the variance sum statistic.
+   *
+   * @param varsum Variance sums
+   */
+  private void logVariance(double[] varsum) {
+    if(LOG.isStatistics()) {
+      double total = 0.;
+      for(double v : varsum) {
+        total += v;
+      }
+      LOG.statistics(new DoubleStatistic(KEY + ".variance-sum", total));
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Read number vectors from a bundle stream, using the first numerical vector
+   * field column.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class VectorStream {
+    /**
+     * Stream source.
+     */
+    private BundleStreamSource source;
+
+    /**
+     * Vector column.
+     */
+    private int column = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param source Stream source
+     */
+    VectorStream(BundleStreamSource source) {
+      this.source = source;
+    }
+
+    /**
+     * Get the next vector.
+     *
+     * @return Vector, or {@code null} at the end of the stream.
+     */
+    NumberVector next() {
+      for(BundleStreamSource.Event ev = source.nextEvent();; ev = source.nextEvent()) {
+        switch(ev){
+        case END_OF_STREAM:
+          return null;
+        case META_CHANGED:
+          if(column < 0) {
+            BundleMeta meta = source.getMeta();
+            for(int i = 0; i < meta.size(); i++) {
+              if(TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(meta.get(i))) {
+                column = i;
+                break;
+              }
+            }
+          }
+          break; // switch
+        case NEXT_OBJECT:
+          if(column < 0) {
+            throw new AbortException("No number vector field found in the input stream.");
+          }
+          return (NumberVector) source.data(column);
+        }
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractKMeans.Parameterizer<V> {
+    /**
+     * Number of objects per batch.
+     * <p>
+     * Key: {@code -kmeans.batchsize}
+     * </p>
+     */
+    public static final OptionID BATCHSIZE_ID = new OptionID("kmeans.batchsize", "Number of objects per mini-batch.");
+
+    /**
+     * Size of the reservoir sample used to initialize on streams.
+     * <p>
+     * Key: {@code -kmeans.reservoir}
+     * </p>
+     */
+    public static final OptionID RESERVOIR_ID = new OptionID("kmeans.reservoir", "Size of the reservoir sample used to choose the initial means when processing a stream.");
+
+    /**
+     * Random source for shuffling and sampling.
+     * <p>
+     * Key: {@code -kmeans.minibatch.random}
+     * </p>
+     */
+    public static final OptionID RANDOM_ID = new OptionID("kmeans.minibatch.random", "Random source for shuffling and reservoir sampling.");
+
+    /**
+     * Number of objects per batch.
+     */
+    int batchsize;
+
+    /**
+     * Reservoir sample size.
+     */
+    int samplesize;
+
+    /**
+     * Random generator.
+     */
+    RandomFactory random;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter batchP = new IntParameter(BATCHSIZE_ID, 1000);
+      batchP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(batchP)) {
+        batchsize = batchP.intValue();
+      }
+      IntParameter sampleP = new IntParameter(RESERVOIR_ID, 10000);
+      sampleP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(sampleP)) {
+        samplesize = sampleP.intValue();
+      }
+      RandomParameter randomP = new RandomParameter(RANDOM_ID);
+      if(config.grab(randomP)) {
+        random = randomP.getValue();
+      }
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected MiniBatchKMeans<V> makeInstance() {
+      return new MiniBatchKMeans<>(distanceFunction, k, maxiter, initializer, batchsize, samplesize, random);
+    }
+  }
+}
@@ -0,0 +1,322 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+import net.jafama.FastMath;
+
+/**
+ * Shared infrastructure for parallel k-means variants that maintain distance
+ * bounds per object (Elkan, Hamerly).
+ *
+ * In contrast to {@link KMeansProcessor}, the cluster sums are maintained
+ * incrementally: each worker only records the changes caused by the objects
+ * it reassigned, and these deltas are merged on cleanup. The bounds
+ * themselves live in data stores indexed by object, so each object is only
+ * ever touched by the worker processing it.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has Instance
+ *
+ * @param <V> Vector type
+ */
+public abstract class AbstractBoundedKMeansProcessor<V extends NumberVector> implements Processor {
+  /**
+   * Data relation.
+   */
+  Relation<V> relation;
+
+  /**
+   * Distance function.
+   */
+  NumberVectorDistanceFunction<? super V> distance;
+
+  /**
+   * Assignment storage.
+   */
+  WritableIntegerDataStore assignment;
+
+  /**
+   * Current mean vectors.
+   */
+  double[][] means;
+
+  /**
+   * Distance each mean moved in the previous iteration, {@code null} in the
+   * first iteration.
+   */
+  double[] move;
+
+  /**
+   * Running sums of the cluster members.
+   */
+  double[][] sums;
+
+  /**
+   * Cluster sizes.
+   */
+  int[] sizes;
+
+  /**
+   * Number of reassigned objects in the current iteration.
+   */
+  int changed;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param assignment Cluster assignment
+   * @param k Number of clusters
+   */
+  public AbstractBoundedKMeansProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, WritableIntegerDataStore assignment, int k) {
+    super();
+    this.relation = relation;
+    this.distance = distance;
+    this.assignment = assignment;
+    this.sizes = new int[k];
+  }
+
+  /**
+   * Initialize for a new iteration.
+   *
+   * @param means Current means
+   * @param move Distance moved by each mean since the last iteration, or
+   *        {@code null} for the initial assignment.
+   */
+  protected void nextIteration(double[][] means, double[] move) {
+    this.means = means;
+    this.move = move;
+    if(sums == null) {
+      sums = new double[means.length][means[0].length];
+    }
+    changed = 0;
+  }
+
+  /**
+   * Get the number of objects reassigned in the last iteration.
+   *
+   * @return Number of reassignments.
+   */
+  public int changed() {
+    return changed;
+  }
+
+  /**
+   * Compute the new means from the running sums.
+   *
+   * @return New means
+   */
+  public double[][] getMeans() {
+    final int k = sums.length, dim = sums[0].length;
+    double[][] newmeans = new double[k][];
+    for(int i = 0; i < k; i++) {
+      if(sizes[i] == 0) {
+        newmeans[i] = means[i]; // Keep old mean.
+        continue;
+      }
+      final double[] sum = sums[i], mean = newmeans[i] = new double[dim];
+      final double s = 1. / sizes[i];
+      for(int d = 0; d < dim; d++) {
+        mean[d] = sum[d] * s;
+      }
+    }
+    return newmeans;
+  }
+
+  /**
+   * Compute the distance each mean moved.
+   *
+   * @param newmeans New means
+   * @param dists Output array for the distances moved
+   * @return Maximum distance moved
+   */
+  public double maxMoved(double[][] newmeans, double[] dists) {
+    final boolean issquared = (distance instanceof SquaredEuclideanDistanceFunction);
+    double max = 0.;
+    for(int i = 0; i < means.length; i++) {
+      double d = distance.distance(DoubleVector.wrap(means[i]), DoubleVector.wrap(newmeans[i]));
+      d = issquared ? FastMath.sqrt(d) : d;
+      dists[i] = d;
+      max = (d > max) ? d : max;
+    }
+    return max;
+  }
+
+  @Override
+  public void cleanup(Processor.Instance inst) {
+    @SuppressWarnings("unchecked")
+    Instance<V> instance = (Instance<V>) inst;
+    if(instance.changed == 0) {
+      return;
+    }
+    synchronized(this) {
+      changed += instance.changed;
+      for(int i = 0; i < sums.length; i++) {
+        if(!instance.touched[i]) {
+          continue;
+        }
+        sizes[i] += instance.sizes[i];
+        final double[] sum = sums[i], delta = instance.sums[i];
+        for(int d = 0; d < sum.length; d++) {
+          sum[d] += delta[d];
+        }
+      }
+    }
+  }
+
+  /**
+   * Instance to process part of the data set, for a single iteration.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  public abstract static class Instance<V extends NumberVector> implements Processor.Instance {
+    /**
+     * Data relation.
+     */
+    protected Relation<V> relation;
+
+    /**
+     * Distance function.
+     */
+    protected NumberVectorDistanceFunction<? super V> distance;
+
+    /**
+     * Cluster assignment storage.
+     */
+    protected WritableIntegerDataStore assignment;
+
+    /**
+     * Current mean vectors.
+     */
+    protected double[][] means;
+
+    /**
+     * Distance each mean moved, may be {@code null}.
+     */
+    protected double[] move;
+
+    /**
+     * Changes to the cluster sums.
+     */
+    private double[][] sums;
+
+    /**
+     * Changes to the cluster sizes.
+     */
+    private int[] sizes;
+
+    /**
+     * Clusters whose sums were modified.
+     */
+    private boolean[] touched;
+
+    /**
+     * Number of reassigned objects.
+     */
+    private int changed = 0;
+
+    /**
+     * Use the square root, to make squared Euclidean a metric.
+     */
+    protected final boolean issquared;
+
+    /**
+     * Constructor.
+     *
+     * @param proc Parent processor
+     */
+    protected Instance(AbstractBoundedKMeansProcessor<V> proc) {
+      super();
+      this.relation = proc.relation;
+      this.distance = proc.distance;
+      this.assignment = proc.assignment;
+      this.move = proc.move;
+      final int k = proc.means.length;
+      this.means = new double[k][];
+      for(int i = 0; i < k; i++) {
+        this.means[i] = proc.means[i].clone(); // Make local copy!
+      }
+      final int dim = this.means[0].length;
+      this.sums = new double[k][dim];
+      this.sizes = new int[k];
+      this.touched = new boolean[k];
+      this.issquared = (distance instanceof SquaredEuclideanDistanceFunction);
+    }
+
+    /**
+     * Compute the distance to a mean, as metric.
+     *
+     * @param fv Vector
+     * @param i Mean number
+     * @return Distance
+     */
+    protected double distance(V fv, int i) {
+      final double d = distance.distance(fv, DoubleVector.wrap(means[i]));
+      return issquared ? FastMath.sqrt(d) : d;
+    }
+
+    /**
+     * Record the (re-) assignment of an object.
+     *
+     * @param fv Vector
+     * @param from Previous cluster, or -1
+     * @param to New cluster
+     */
+    protected void reassign(V fv, int from, int to) {
+      final double[] newsum = sums[to];
+      final int dim = fv.getDimensionality();
+      if(from >= 0) {
+        final double[] oldsum = sums[from];
+        for(int d = 0; d < dim; d++) {
+          final double v = fv.doubleValue(d);
+          newsum[d] += v;
+          oldsum[d] -= v;
+        }
+        --sizes[from];
+        touched[from] = true;
+      }
+      else {
+        for(int d = 0; d < dim; d++) {
+          newsum[d] += fv.doubleValue(d);
+        }
+      }
+      ++sizes[to];
+      touched[to] = true;
+      ++changed;
+    }
+  }
+}
@@ -0,0 +1,208 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+
+/**
+ * Parallel processor for Elkan's k-means.
+ *
+ * The bound updates caused by the moving means are applied lazily, when an
+ * object is visited in the next iteration, so that each iteration needs only
+ * a single parallel pass over the data.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has Instance
+ *
+ * @param <V> Vector type
+ */
+public class KMeansElkanProcessor<V extends NumberVector> extends AbstractBoundedKMeansProcessor<V> {
+  /**
+   * Upper bounds.
+   */
+  WritableDoubleDataStore upper;
+
+  /**
+   * Lower bounds, one per mean.
+   */
+  WritableDataStore<double[]> lower;
+
+  /**
+   * Separation of means (half the distance to the nearest other mean).
+   */
+  double[] sep;
+
+  /**
+   * Half the pairwise distances of the means.
+   */
+  double[][] cdist;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param assignment Cluster assignment
+   * @param upper Upper bounds
+   * @param lower Lower bounds
+   * @param k Number of clusters
+   */
+  public KMeansElkanProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDataStore<double[]> lower, int k) {
+    super(relation, distance, assignment, k);
+    this.upper = upper;
+    this.lower = lower;
+  }
+
+  /**
+   * Initialize for a new iteration.
+   *
+   * @param means Current means
+   * @param sep Separation of means, unused in the first iteration
+   * @param cdist Half the distances of the means, unused in the first
+   *        iteration
+   * @param move Distance moved by each mean, {@code null} in the first
+   *        iteration
+   */
+  public void nextIteration(double[][] means, double[] sep, double[][] cdist, double[] move) {
+    super.nextIteration(means, move);
+    this.sep = sep;
+    this.cdist = cdist;
+  }
+
+  @Override
+  public Instance<V> instantiate(Executor executor) {
+    return new Instance<>(this);
+  }
+
+  /**
+   * Instance to process part of the data set, for a single iteration.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  public static class Instance<V extends NumberVector> extends AbstractBoundedKMeansProcessor.Instance<V> {
+    /**
+     * Upper bounds.
+     */
+    private WritableDoubleDataStore upper;
+
+    /**
+     * Lower bounds.
+     */
+    private WritableDataStore<double[]> lower;
+
+    /**
+     * Separation of means.
+     */
+    private double[] sep;
+
+    /**
+     * Half the pairwise distances of the means.
+     */
+    private double[][] cdist;
+
+    /**
+     * Constructor.
+     *
+     * @param proc Parent processor
+     */
+    protected Instance(KMeansElkanProcessor<V> proc) {
+      super(proc);
+      this.upper = proc.upper;
+      this.lower = proc.lower;
+      this.sep = proc.sep;
+      this.cdist = proc.cdist;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      final int k = means.length;
+      final V fv = relation.get(id);
+      final double[] l = lower.get(id);
+      final int orig = assignment.intValue(id);
+      if(move == null) {
+        // Initial assignment, computing all bounds:
+        double best = Double.POSITIVE_INFINITY;
+        int cur = -1;
+        for(int j = 0; j < k; j++) {
+          final double dist = l[j] = distance(fv, j);
+          if(dist < best) {
+            cur = j;
+            best = dist;
+          }
+        }
+        assignment.putInt(id, cur);
+        upper.putDouble(id, best);
+        reassign(fv, orig, cur);
+        return;
+      }
+      // Apply the bound updates of the previous iteration:
+      double u = upper.doubleValue(id) + move[orig];
+      for(int j = 0; j < k; j++) {
+        l[j] -= move[j];
+      }
+      // Upper bound check (#2):
+      if(u <= sep[orig]) {
+        upper.putDouble(id, u);
+        return;
+      }
+      boolean recompute_u = true; // Elkan's r(x)
+      int cur = orig;
+      for(int j = 0; j < k; j++) {
+        if(orig == j || u <= l[j] || u <= cdist[cur][j]) {
+          continue; // Condition #3 i-iii not satisfied
+        }
+        if(recompute_u) { // Need to update bound? #3a
+          u = distance(fv, cur);
+          recompute_u = false; // Once only
+          if(u <= l[j] || u <= cdist[cur][j]) { // #3b
+            continue;
+          }
+        }
+        final double dist = l[j] = distance(fv, j);
+        if(dist < u) {
+          cur = j;
+          u = dist;
+        }
+      }
+      upper.putDouble(id, u);
+      // Object is to be reassigned.
+      if(cur != orig) {
+        assignment.putInt(id, cur);
+        reassign(fv, orig, cur);
+      }
+    }
+  }
+}
@@ -0,0 +1,198 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import net.jafama.FastMath;
+
+/**
+ * Parallel processor for Hamerly's k-means.
+ *
+ * The bound updates caused by the moving means are applied lazily, when an
+ * object is visited in the next iteration, so that each iteration needs only
+ * a single parallel pass over the data.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has Instance
+ *
+ * @param <V> Vector type
+ */
+public class KMeansHamerlyProcessor<V extends NumberVector> extends AbstractBoundedKMeansProcessor<V> {
+  /**
+   * Upper bounds.
+   */
+  WritableDoubleDataStore upper;
+
+  /**
+   * Lower bounds.
+   */
+  WritableDoubleDataStore lower;
+
+  /**
+   * Separation of means (half the distance to the nearest other mean).
+   */
+  double[] sep;
+
+  /**
+   * Maximum distance moved by any mean.
+   */
+  double delta;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param assignment Cluster assignment
+   * @param upper Upper bounds
+   * @param lower Lower bounds
+   * @param k Number of clusters
+   */
+  public KMeansHamerlyProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDoubleDataStore lower, int k) {
+    super(relation, distance, assignment, k);
+    this.upper = upper;
+    this.lower = lower;
+  }
+
+  /**
+   * Initialize for a new iteration.
+   *
+   * @param means Current means
+   * @param sep Separation of means, unused in the first iteration
+   * @param move Distance moved by each mean, {@code null} in the first
+   *        iteration
+   * @param delta Maximum distance moved
+   */
+  public void nextIteration(double[][] means, double[] sep, double[] move, double delta) {
+    super.nextIteration(means, move);
+    this.sep = sep;
+    this.delta = delta;
+  }
+
+  @Override
+  public Instance<V> instantiate(Executor executor) {
+    return new Instance<>(this);
+  }
+
+  /**
+   * Instance to process part of the data set, for a single iteration.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  public static class Instance<V extends NumberVector> extends AbstractBoundedKMeansProcessor.Instance<V> {
+    /**
+     * Upper bounds.
+     */
+    private WritableDoubleDataStore upper;
+
+    /**
+     * Lower bounds.
+     */
+    private WritableDoubleDataStore lower;
+
+    /**
+     * Separation of means.
+     */
+    private double[] sep;
+
+    /**
+     * Maximum distance moved.
+     */
+    private double delta;
+
+    /**
+     * Constructor.
+     *
+     * @param proc Parent processor
+     */
+    protected Instance(KMeansHamerlyProcessor<V> proc) {
+      super(proc);
+      this.upper = proc.upper;
+      this.lower = proc.lower;
+      this.sep = proc.sep;
+      this.delta = proc.delta;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      final int cur = assignment.intValue(id);
+      final V fv = relation.get(id);
+      double u = upper.doubleValue(id), z = lower.doubleValue(id);
+      if(move != null) {
+        // Apply the bound updates of the previous iteration:
+        u += move[cur];
+        z -= delta;
+        final double sa = sep[cur];
+        if(u <= z || u <= sa) {
+          upper.putDouble(id, u);
+          lower.putDouble(id, z);
+          return;
+        }
+        // Tighten the upper bound
+        u = distance(fv, cur);
+        if(u <= z || u <= sa) {
+          upper.putDouble(id, u);
+          lower.putDouble(id, z);
+          return;
+        }
+      }
+      // Find closest center, and distance to two closest centers
+      double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
+      int minIndex = -1;
+      for(int i = 0; i < means.length; i++) {
+        double dist = distance.distance(fv, DoubleVector.wrap(means[i]));
+        if(dist < min1) {
+          minIndex = i;
+          min2 = min1;
+          min1 = dist;
+        }
+        else if(dist < min2) {
+          min2 = dist;
+        }
+      }
+      if(issquared) {
+        min1 = FastMath.sqrt(min1);
+        min2 = FastMath.sqrt(min2);
+      }
+      if(minIndex != cur) {
+        assignment.putInt(id, minIndex);
+        reassign(fv, cur, minIndex);
+      }
+      upper.putDouble(id, min1);
+      lower.putDouble(id, min2);
+    }
+  }
+}
@@ -0,0 +1,275 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithmUtil;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.AbstractKMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansElkan;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of Elkan's fast k-means.
+ *
+ * The objects are partitioned across the worker threads of the
+ * {@link de.lmu.ifi.dbs.elki.parallel.ParallelCore}; each worker updates the
+ * bounds of its objects in place and accumulates the changes to the cluster
+ * sums, which are merged after each iteration.
+ *
+ * <p>
+ * Reference:<br />
+ * C. Elkan<br/>
+ * Using the triangle inequality to accelerate k-means<br/>
+ * Proc. 20th International Conference on Machine Learning, ICML 2003
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has KMeansElkanProcessor
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "C. Elkan", //
+title = "Using the triangle inequality to accelerate k-means", //
+booktitle = "Proc. 20th International Conference on Machine Learning, ICML 2003", //
+url = "http://www.aaai.org/Library/ICML/2003/icml03-022.php")
+public class ParallelKMeansElkan<V extends NumberVector> extends AbstractKMeans<V, KMeansModel> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelKMeansElkan.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = ParallelKMeansElkan.class.getName();
+
+  /**
+   * Flag whether to compute the final variance statistic.
+   */
+  private boolean varstat = false;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   */
+  public ParallelKMeansElkan(NumberVectorDistanceFunction<? super V> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer, boolean varstat) {
+    super(distanceFunction, k, maxiter, initializer);
+    this.varstat = varstat;
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Database database, Relation<V> relation) {
+    if(relation.size() <= 0) {
+      return new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    }
+    DBIDs ids = relation.getDBIDs();
+    // Choose initial means
+    if(LOG.isStatistics()) {
+      LOG.statistics(new StringStatistic(KEY + ".initialization", initializer.toString()));
+    }
+    double[][] means = initializer.chooseInitialMeans(database, relation, k, getDistanceFunction());
+    WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    // Elkan bounds
+    WritableDoubleDataStore upper = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, Double.POSITIVE_INFINITY);
+    WritableDataStore<double[]> lower = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, double[].class);
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      lower.put(it, new double[k]); // Filled with 0.
+    }
+    KMeansElkanProcessor<V> proc = new KMeansElkanProcessor<>(relation, distanceFunction, assignment, upper, lower, k);
+    // Cluster separation / distance moved.
+    double[] sep = new double[k], move = null;
+    // Cluster distances
+    double[][] cdist = new double[k][k];
+
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("K-Means iteration", LOG) : null;
+    LongStatistic rstat = LOG.isStatistics() ? new LongStatistic(KEY + ".reassignments") : null;
+    int iteration = 0;
+    for(; maxiter <= 0 || iteration < maxiter; iteration++) {
+      LOG.incrementProcessed(prog);
+      if(iteration > 0) {
+        recomputeSeperation(means, sep, cdist);
+      }
+      proc.nextIteration(means, sep, cdist, move);
+      ParallelExecutor.run(ids, proc);
+      int changed = proc.changed();
+      if(rstat != null) {
+        rstat.setLong(changed);
+        LOG.statistics(rstat);
+      }
+      // Stop if no cluster assignment changed.
+      if(changed == 0) {
+        break;
+      }
+      // Recompute means.
+      double[][] newmeans = proc.getMeans();
+      move = move != null ? move : new double[k];
+      proc.maxMoved(newmeans, move);
+      means = newmeans;
+    }
+    LOG.setCompleted(prog);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(KEY + ".iterations", iteration));
+    }
+
+    upper.destroy();
+    lower.destroy();
+
+    // Wrap result
+    ArrayModifiableDBIDs[] clusters = ClusteringAlgorithmUtil.partitionsFromIntegerLabels(ids, assignment, k);
+    double totalvariance = 0.;
+    Clustering<KMeansModel> result = new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    for(int i = 0; i < clusters.length; i++) {
+      DBIDs cids = clusters[i];
+      if(cids.size() == 0) {
+        continue;
+      }
+      double[] mean = means[i];
+      double varsum = 0.;
+      if(varstat) {
+        DoubleVector mvec = DoubleVector.wrap(mean);
+        for(DBIDIter it = cids.iter(); it.valid(); it.advance()) {
+          varsum += distanceFunction.distance(mvec, relation.get(it));
+        }
+        totalvariance += varsum;
+      }
+      KMeansModel model = new KMeansModel(mean, varsum);
+      result.addToplevelCluster(new Cluster<>(cids, model));
+    }
+    if(LOG.isStatistics() && varstat) {
+      LOG.statistics(new DoubleStatistic(KEY + ".variance-sum", totalvariance));
+    }
+    return result;
+  }
+
+  /**
+   * Recompute the separation of cluster means.
+   *
+   * @param means Means
+   * @param sep Output array of separation (half-sqrt scaled)
+   * @param cdist Center-to-Center distances (half-sqrt scaled)
+   */
+  private void recomputeSeperation(double[][] means, double[] sep, double[][] cdist) {
+    final int k = means.length;
+    assert (sep.length == k);
+    boolean issquared = (distanceFunction instanceof SquaredEuclideanDistanceFunction);
+    Arrays.fill(sep, Double.POSITIVE_INFINITY);
+    for(int i = 1; i < k; i++) {
+      DoubleVector mi = DoubleVector.wrap(means[i]);
+      for(int j = 0; j < i; j++) {
+        double d = distanceFunction.distance(mi, DoubleVector.wrap(means[j]));
+        d = issquared ? FastMath.sqrt(d) : d;
+        d *= .5;
+        cdist[i][j] = d;
+        cdist[j][i] = d;
+        sep[i] = (d < sep[i]) ? d : sep[i];
+        sep[j] = (d < sep[j]) ? d : sep[j];
+      }
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractKMeans.Parameterizer<V> {
+    /**
+     * Compute the final variance statisic.
+     */
+    protected boolean varstat = false;
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected void getParameterDistanceFunction(Parameterization config) {
+      super.getParameterDistanceFunction(config);
+      if(distanceFunction instanceof SquaredEuclideanDistanceFunction) {
+        return; // Proper choice.
+      }
+      if(distanceFunction != null && !distanceFunction.isMetric()) {
+        LOG.warning("Elkan k-means requires a metric distance, and k-means should only be used with squared Euclidean distance!");
+      }
+    }
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      Flag varF = new Flag(KMeansElkan.Parameterizer.VARSTAT_ID);
+      if(config.grab(varF)) {
+        varstat = varF.isTrue();
+      }
+    }
+
+    @Override
+    protected ParallelKMeansElkan<V> makeInstance() {
+      return new ParallelKMeansElkan<>(distanceFunction, k, maxiter, initializer, varstat);
+    }
+  }
+}
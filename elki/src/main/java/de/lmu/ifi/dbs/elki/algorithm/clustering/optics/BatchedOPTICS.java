@@ -0,0 +1,535 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.optics;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.BulkRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * The OPTICS algorithm for density-based hierarchical clustering, with
+ * neighborhoods prefetched in batches.
+ *
+ * Whenever the next object of the cluster order has not been queried yet, its
+ * neighborhood is retrieved together with the neighborhoods of the other
+ * candidates in the heap. Each batch is split across the worker threads, and
+ * answered with a {@link BulkRangeQuery} if supported by the range query.
+ * Because every object is processed exactly once, no prefetched neighborhood
+ * is wasted.
+ *
+ * The ordering itself uses a heap on primitive arrays, with the same tie
+ * breaking as {@link OPTICSHeap}, and thus produces the same cluster order.
+ *
+ * Reference:
+ * <p>
+ * M. Ankerst, M. Breunig, H.-P. Kriegel, and J. Sander:<br />
+ * OPTICS: Ordering Points to Identify the Clustering Structure. <br/>
+ * In: Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD '99).
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses BulkRangeQuery
+ *
+ * @param <O> the type of DatabaseObjects handled by the algorithm
+ */
+@Title("OPTICS: Density-Based Hierarchical Clustering")
+@Description("Algorithm to find density-connected sets in a database based on the parameters 'minPts' and 'epsilon' (specifying a volume). Neighborhoods are retrieved in parallel batches.")
+@Reference(authors = "M. Ankerst, M. Breunig, H.-P. Kriegel, and J. Sander", //
+title = "OPTICS: Ordering Points to Identify the Clustering Structure", //
+booktitle = "Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD '99)", //
+url = "http://dx.doi.org/10.1145/304181.304187")
+public class BatchedOPTICS<O> extends AbstractOPTICS<O> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(BatchedOPTICS.class);
+
+  /**
+   * Marker for objects that are not core objects.
+   */
+  private static final DoubleDBIDList NOT_CORE = DBIDUtil.newDistanceDBIDList(0);
+
+  /**
+   * Maximum number of neighborhoods to retrieve at once.
+   */
+  protected int batchsize;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts value
+   * @param batchsize Maximum number of neighborhoods to retrieve at once
+   */
+  public BatchedOPTICS(DistanceFunction<? super O> distanceFunction, double epsilon, int minpts, int batchsize) {
+    super(distanceFunction, epsilon, minpts);
+    this.batchsize = batchsize;
+  }
+
+  @Override
+  public ClusterOrder run(Database db, Relation<O> relation) {
+    return new Instance(db, relation).run();
+  }
+
+  /**
+   * Instance for processing a single data set.
+   *
+   * @author Erich Schubert
+   */
+  private class Instance {
+    /**
+     * IDs, sorted. Objects are referenced by their offset in this array.
+     */
+    private ArrayModifiableDBIDs ids;
+
+    /**
+     * Map from objects to offsets.
+     */
+    private WritableIntegerDataStore offsets;
+
+    /**
+     * Neighborhoods retrieved, but not yet processed, by offset.
+     */
+    private DoubleDBIDList[] neighbors;
+
+    /**
+     * Heap of candidates.
+     */
+    private ReachabilityHeap heap;
+
+    /**
+     * Range query.
+     */
+    private RangeQuery<O> rangeQuery;
+
+    /**
+     * Bulk range query, may be {@code null}.
+     */
+    private BulkRangeQuery<O> bulkQuery;
+
+    /**
+     * Current batch, by offset.
+     */
+    private int[] batch;
+
+    /**
+     * Relation.
+     */
+    private Relation<O> relation;
+
+    /**
+     * Progress for logging.
+     */
+    private FiniteProgress progress;
+
+    /**
+     * Constructor for a single data set.
+     *
+     * @param db Database
+     * @param relation Data relation
+     */
+    public Instance(Database db, Relation<O> relation) {
+      this.relation = relation;
+      ids = DBIDUtil.newArray(relation.getDBIDs());
+      ids.sort();
+      final int size = ids.size();
+      offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+      for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        offsets.putInt(iter, iter.getOffset());
+      }
+      neighbors = new DoubleDBIDList[size];
+      heap = new ReachabilityHeap(size);
+      batch = new int[Math.min(batchsize, size)];
+      DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
+      rangeQuery = db.getRangeQuery(dq, epsilon);
+      bulkQuery = (rangeQuery instanceof BulkRangeQuery) ? (BulkRangeQuery<O>) rangeQuery : null;
+      progress = LOG.isVerbose() ? new FiniteProgress("OPTICS", size, LOG) : null;
+    }
+
+    /**
+     * Process the data set.
+     *
+     * @return Cluster order result.
+     */
+    public ClusterOrder run() {
+      ArrayModifiableDBIDs order = DBIDUtil.newArray(ids.size());
+      WritableDoubleDataStore reachability = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_HOT, Double.POSITIVE_INFINITY);
+      WritableDBIDDataStore predecessor = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT);
+      DBIDArrayIter cur = ids.iter(), pre = ids.iter();
+      for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
+        final int start = offsets.intValue(iditer);
+        if(heap.isProcessed(start)) {
+          continue;
+        }
+        assert (heap.isEmpty());
+        heap.offer(start, Double.POSITIVE_INFINITY, -1);
+        while(!heap.isEmpty()) {
+          final int c = heap.poll();
+          cur.seek(c);
+          order.add(cur);
+          reachability.putDouble(cur, heap.reach[c]);
+          if(heap.pred[c] >= 0) {
+            predecessor.putDBID(cur, pre.seek(heap.pred[c]));
+          }
+          expand(c);
+          LOG.incrementProcessed(progress);
+        }
+      }
+      LOG.ensureCompleted(progress);
+      return new ClusterOrder("OPTICS Clusterorder", "optics-clusterorder", order, reachability, predecessor);
+    }
+
+    /**
+     * Update the heap with the neighbors of an object.
+     *
+     * @param c Object offset
+     */
+    private void expand(int c) {
+      if(neighbors[c] == null) {
+        prefetch(c);
+      }
+      DoubleDBIDList list = neighbors[c];
+      neighbors[c] = null; // Release memory
+      if(list.size() < minpts) {
+        return;
+      }
+      DoubleDBIDListIter neighbor = list.iter();
+      final double coreDistance = neighbor.seek(minpts - 1).doubleValue();
+      for(neighbor.seek(0); neighbor.valid(); neighbor.advance()) {
+        final int j = offsets.intValue(neighbor);
+        if(!heap.isProcessed(j)) {
+          heap.offer(j, Math.max(neighbor.doubleValue(), coreDistance), c);
+        }
+      }
+    }
+
+    /**
+     * Retrieve the neighborhood of an object, along with the neighborhoods of
+     * further candidates in the heap.
+     *
+     * @param c Object offset
+     */
+    private void prefetch(int c) {
+      int len = 0;
+      batch[len++] = c;
+      for(int i = 0; i < heap.size && len < batch.length; i++) {
+        final int j = heap.heap[i];
+        if(neighbors[j] == null) {
+          batch[len++] = j;
+        }
+      }
+      final int parallelism = ParallelCore.getCore().getParallelism();
+      if(parallelism <= 1 || len == 1) {
+        query(0, len);
+        return;
+      }
+      ParallelExecutor.run(len, (len + parallelism - 1) / parallelism, new ParallelExecutor.RangeProcessor() {
+        @Override
+        public void process(int start, int end) {
+          query(start, end);
+        }
+      });
+    }
+
+    /**
+     * Retrieve the neighborhoods of a range of the current batch.
+     *
+     * @param start Start position in batch
+     * @param end End position in batch (exclusive)
+     */
+    protected void query(int start, int end) {
+      final int size = end - start;
+      ArrayModifiableDBIDs qids = DBIDUtil.newArray(size);
+      DBIDArrayIter it = ids.iter();
+      for(int p = start; p < end; p++) {
+        qids.add(it.seek(batch[p]));
+      }
+      ModifiableDoubleDBIDList[] results = new ModifiableDoubleDBIDList[size];
+      for(int i = 0; i < size; i++) {
+        results[i] = DBIDUtil.newDistanceDBIDList();
+      }
+      if(bulkQuery != null && size > 1) {
+        bulkQuery.getRangeForBulkDBIDs(qids, epsilon, results);
+      }
+      else {
+        DBIDArrayIter qit = qids.iter();
+        for(int i = 0; i < size; i++) {
+          rangeQuery.getRangeForDBID(qit.seek(i), epsilon, results[i]);
+        }
+      }
+      for(int i = 0; i < size; i++) {
+        ModifiableDoubleDBIDList result = results[i];
+        if(result.size() >= minpts) {
+          result.sort();
+          neighbors[batch[start + i]] = result;
+        }
+        else {
+          neighbors[batch[start + i]] = NOT_CORE;
+        }
+      }
+    }
+  }
+
+  /**
+   * Updatable min-heap of object offsets, ordered by reachability. Ties are
+   * resolved towards the larger offset, as in {@link OPTICSHeapEntry}.
+   *
+   * @author Erich Schubert
+   */
+  private static class ReachabilityHeap {
+    /**
+     * Position marker: not in the heap.
+     */
+    private static final int NOT_QUEUED = -1;
+
+    /**
+     * Position marker: already processed.
+     */
+    private static final int PROCESSED = -2;
+
+    /**
+     * Current reachability, by offset.
+     */
+    double[] reach;
+
+    /**
+     * Current predecessor offset, or -1.
+     */
+    int[] pred;
+
+    /**
+     * Position in the heap, by offset.
+     */
+    int[] pos;
+
+    /**
+     * Heap array of offsets.
+     */
+    int[] heap;
+
+    /**
+     * Heap size.
+     */
+    int size = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param n Number of objects
+     */
+    ReachabilityHeap(int n) {
+      reach = new double[n];
+      pred = new int[n];
+      pos = new int[n];
+      heap = new int[n];
+      Arrays.fill(pos, NOT_QUEUED);
+    }
+
+    /**
+     * Test if the heap is empty.
+     *
+     * @return {@code true} when empty
+     */
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    /**
+     * Test if an object was already returned by {@link #poll}.
+     *
+     * @param j Object offset
+     * @return {@code true} when processed
+     */
+    boolean isProcessed(int j) {
+      return pos[j] == PROCESSED;
+    }
+
+    /**
+     * Add an object, or update its reachability if it improves.
+     *
+     * @param j Object offset
+     * @param r Reachability
+     * @param p Predecessor offset
+     */
+    void offer(int j, double r, int p) {
+      final int cpos = pos[j];
+      if(cpos == NOT_QUEUED) {
+        reach[j] = r;
+        pred[j] = p;
+        heapifyUp(size++, j);
+      }
+      else if(r < reach[j]) {
+        reach[j] = r;
+        pred[j] = p;
+        heapifyUp(cpos, j);
+      }
+    }
+
+    /**
+     * Remove the object with the smallest reachability.
+     *
+     * @return Object offset
+     */
+    int poll() {
+      final int top = heap[0];
+      pos[top] = PROCESSED;
+      if(--size > 0) {
+        heapifyDown(0, heap[size]);
+      }
+      return top;
+    }
+
+    /**
+     * Heap order.
+     *
+     * @param a First offset
+     * @param b Second offset
+     * @return {@code true} if a comes before b
+     */
+    private boolean before(int a, int b) {
+      return reach[a] < reach[b] || (reach[a] == reach[b] && a > b);
+    }
+
+    /**
+     * Move an element up to its position.
+     *
+     * @param p Starting position
+     * @param j Object offset
+     */
+    private void heapifyUp(int p, int j) {
+      while(p > 0) {
+        final int parent = (p - 1) >>> 1;
+        final int o = heap[parent];
+        if(!before(j, o)) {
+          break;
+        }
+        heap[p] = o;
+        pos[o] = p;
+        p = parent;
+      }
+      heap[p] = j;
+      pos[j] = p;
+    }
+
+    /**
+     * Move an element down to its position.
+     *
+     * @param p Starting position
+     * @param j Object offset
+     */
+    private void heapifyDown(int p, int j) {
+      final int half = size >>> 1;
+      while(p < half) {
+        int c = (p << 1) + 1;
+        int o = heap[c];
+        final int r = c + 1;
+        if(r < size && before(heap[r], o)) {
+          o = heap[c = r];
+        }
+        if(!before(o, j)) {
+          break;
+        }
+        heap[p] = o;
+        pos[o] = p;
+        p = c;
+      }
+      heap[p] = j;
+      pos[j] = p;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<O> extends AbstractOPTICS.Parameterizer<O> {
+    /**
+     * Maximum number of neighborhoods to retrieve at once.
+     * <p>
+     * Key: {@code -optics.batchsize}
+     * </p>
+     */
+    public static final OptionID BATCHSIZE_ID = new OptionID("optics.batchsize", "Maximum number of neighborhoods to retrieve at once.");
+
+    /**
+     * Maximum number of neighborhoods to retrieve at once.
+     */
+    protected int batchsize;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter batchsizeP = new IntParameter(BATCHSIZE_ID, 1000) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(batchsizeP)) {
+        batchsize = batchsizeP.intValue();
+      }
+    }
+
+    @Override
+    protected BatchedOPTICS<O> makeInstance() {
+      return new BatchedOPTICS<>(distanceFunction, epsilon, minpts, batchsize);
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package de.lmu.ifi.dbs.elki.algorithm.itemsetmining;
 
+
 /*
  This file is part of ELKI:
  Environment for Developing KDD-Applications Supported by Index-Structures
@@ -22,6 +23,7 @@ package de.lmu.ifi.dbs.elki.algorithm.itemsetmining;
  You should have received a copy of the GNU Affero General Public License
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -33,38 +35,37 @@ import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.Database;
-import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.HashSetDBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 
 /**
  * Eclat is a depth-first discovery algorithm for mining frequent itemsets.
  * 
  * Eclat discovers frequent itemsets by first transforming the data into a
- * (sparse) column-oriented form, then performing a depth-first traversal of the
- * prefix lattice, stopping traversal when the minimum support is no longer
- * satisfied.
+ * column-oriented form, then performing a depth-first traversal of the prefix
+ * lattice, stopping traversal when the minimum support is no longer satisfied.
  *
- * This implementation is the basic algorithm only, and does not use diffsets.
- * Columns are represented using a sparse representation, which theoretically is
- * beneficial when the density is less than 1/31. This corresponds roughly to a
- * minimum support of 3% for 1-itemsets. When searching for itemsets with a
- * larger minimum support, it may be desirable to use a dense bitset
- * representation instead and/or implement an automatic switching technique!
+ * This implementation stores the columns as dense bitsets of {@code long}
+ * words (see {@link BitsUtil}), and uses diffsets (dEclat) below the first
+ * level: only the transactions that are lost when extending an itemset are
+ * stored, and the support is obtained by subtraction. The bitsets of each
+ * level of the depth-first search are recycled. The prefix classes of the
+ * different 1-itemsets are independent, and are mined in parallel using
+ * {@link ParallelExecutor}.
  *
- * Performance of this implementation is probably surpassed with a low-level C
- * implementation based on SIMD bitset operations as long as support of an
- * itemset is high, which are not easily accessible in Java.
+ * The dense representation needs one bit per transaction and frequent item, so
+ * it is most beneficial when the density is not too low (with a sparse list of
+ * 32 bit identifiers, the break even point is at a density of 1/32).
  *
  * Reference:
  * <p>
@@ -72,6 +73,13 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * M.J. Zaki, S. Parthasarathy, M. Ogihara, and W. Li<br />
  * Proc. 3rd ACM SIGKDD '97 Int. Conf. on Knowledge Discovery and Data Mining
  * </p>
+ *
+ * Diffsets:
+ * <p>
+ * M. J. Zaki, K. Gouda<br />
+ * Fast vertical mining using diffsets<br />
+ * Proc. 9th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining
+ * </p>
  * 
  * @author Erich Schubert
  * @since 0.7.0
@@ -118,106 +126,395 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
 
     LOG.verbose("Build 1-dimensional transaction lists.");
     Duration ctime = LOG.newDuration(STAT + "eclat.transposition.time").begin();
-    DBIDs[] idx = buildIndex(relation, dim, minsupp);
+    final int[] idx = frequentItems(relation, dim, minsupp);
+    final long[][] sets = buildIndex(relation, dim, idx);
     LOG.statistics(ctime.end());
+    LOG.statistics(new LongStatistic(STAT + "frequent-items", idx.length));
+    LOG.statistics(new LongStatistic(STAT + "bitset.memory", idx.length * (long) BitsUtil.zero(relation.size()).length * 8L));
 
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building frequent itemsets", idx.length, LOG) : null;
     Duration etime = LOG.newDuration(STAT + "eclat.extraction.time").begin();
     final List<Itemset> solution = new ArrayList<>();
-    for(int i = 0; i < idx.length; i++) {
-      LOG.incrementProcessed(prog);
-      extractItemsets(idx, i, minsupp, solution);
+    final int parallelism = ParallelCore.getCore().getParallelism();
+    long scratch;
+    if(parallelism <= 1) {
+      Miner miner = new Miner(idx, sets, minsupp, solution);
+      for(int i = 0; i < idx.length; i++) {
+        miner.extractItemsets(i);
+        LOG.incrementProcessed(prog);
+      }
+      scratch = miner.memory();
+    }
+    else {
+      // Interleave items, as the cost decreases with the item position.
+      final int stride = parallelism << 2;
+      MineProcessor proc = new MineProcessor(idx, sets, minsupp, stride, solution, prog);
+      ParallelExecutor.run(stride, 1, proc);
+      scratch = proc.memory;
     }
     LOG.ensureCompleted(prog);
     Collections.sort(solution);
     LOG.statistics(etime.end());
+    LOG.statistics(new LongStatistic(STAT + "eclat.scratch-memory", scratch));
 
     LOG.statistics(new LongStatistic(STAT + "frequent-itemsets", solution.size()));
     return new FrequentItemsetsResult("Eclat", "eclat", solution, meta);
   }
 
-  // TODO: implement diffsets.
-  private void extractItemsets(DBIDs[] idx, int start, int minsupp, List<Itemset> solution) {
-    int[] buf = new int[idx.length];
-    DBIDs iset = idx[start];
-    if(iset == null || iset.size() < minsupp) {
-      return;
+  /**
+   * Find the frequent 1-items.
+   *
+   * @param relation Data
+   * @param dim Dimensionality
+   * @param minsupp Minimum support
+   * @return Frequent items (dimensions)
+   */
+  private int[] frequentItems(Relation<BitVector> relation, int dim, int minsupp) {
+    int[] counts = new int[dim];
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      SparseFeatureVector<?> bv = relation.get(iter);
+      for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
+        counts[bv.iterDim(it)]++;
+      }
     }
-    if(minlength <= 1) {
-      solution.add(new OneItemset(start, iset.size()));
+    int numfreq = 0;
+    for(int i = 0; i < dim; i++) {
+      numfreq += counts[i] >= minsupp ? 1 : 0;
     }
-    if(maxlength > 1) {
-      buf[0] = start;
-      extractItemsets(iset, idx, buf, 1, start + 1, minsupp, solution);
+    int[] idx = new int[numfreq];
+    for(int i = 0, j = 0; i < dim; i++) {
+      if(counts[i] >= minsupp) {
+        idx[j++] = i;
+      }
     }
+    return idx;
   }
 
-  private void extractItemsets(DBIDs iset, DBIDs[] idx, int[] buf, int depth, int start, int minsupp, List<Itemset> solution) {
-    // TODO: reuse arrays.
-    for(int i = start; i < idx.length; i++) {
-      if(idx[i] == null) {
-        continue;
+  /**
+   * Build the transaction bitsets of the frequent items.
+   *
+   * @param relation Data
+   * @param dim Dimensionality
+   * @param idx Frequent items
+   * @return Bitsets, one for each frequent item
+   */
+  private long[][] buildIndex(Relation<BitVector> relation, int dim, int[] idx) {
+    int[] iidx = new int[dim];
+    Arrays.fill(iidx, -1);
+    for(int i = 0; i < idx.length; i++) {
+      iidx[idx[i]] = i;
+    }
+    final int size = relation.size();
+    long[][] sets = new long[idx.length][];
+    for(int i = 0; i < idx.length; i++) {
+      sets[i] = BitsUtil.zero(size);
+    }
+    int t = 0;
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance(), t++) {
+      SparseFeatureVector<?> bv = relation.get(iter);
+      for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
+        final int i = iidx[bv.iterDim(it)];
+        if(i >= 0) {
+          BitsUtil.setI(sets[i], t);
+        }
       }
-      DBIDs ids = mergeJoin(iset, idx[i]);
-      if(ids.size() < minsupp) {
-        continue;
+    }
+    return sets;
+  }
+
+  /**
+   * Depth-first search of the prefix classes, with reusable buffers.
+   *
+   * Instances are not thread safe; use one per thread.
+   *
+   * @author Erich Schubert
+   */
+  private class Miner {
+    /**
+     * Frequent items (dimensions).
+     */
+    private final int[] idx;
+
+    /**
+     * Transaction bitsets of the frequent items.
+     */
+    private final long[][] sets;
+
+    /**
+     * Minimum support.
+     */
+    private final int minsupp;
+
+    /**
+     * Output list.
+     */
+    private final List<Itemset> solution;
+
+    /**
+     * Current prefix.
+     */
+    private final int[] buf;
+
+    /**
+     * Members of the prefix classes on each level: items, supports, diffsets.
+     */
+    private final int[][] items, supps;
+
+    /**
+     * Diffsets of the prefix class members on each level.
+     */
+    private final long[][][] diffs;
+
+    /**
+     * Constructor.
+     *
+     * @param idx Frequent items (dimensions)
+     * @param sets Transaction bitsets
+     * @param minsupp Minimum support
+     * @param solution Output list
+     */
+    Miner(int[] idx, long[][] sets, int minsupp, List<Itemset> solution) {
+      this.idx = idx;
+      this.sets = sets;
+      this.minsupp = minsupp;
+      this.solution = solution;
+      final int depth = Math.max(Math.min(maxlength, idx.length), 1);
+      this.buf = new int[depth];
+      this.items = new int[depth][];
+      this.supps = new int[depth][];
+      this.diffs = new long[depth][][];
+    }
+
+    /**
+     * Extract all itemsets starting with the given item.
+     *
+     * @param start First item
+     */
+    void extractItemsets(int start) {
+      final long[] iset = sets[start];
+      final int support = BitsUtil.cardinality(iset);
+      if(minlength <= 1) {
+        solution.add(new OneItemset(idx[start], support));
       }
-      buf[depth] = i;
-      int[] items = Arrays.copyOf(buf, depth + 1);
-      if(depth >= minlength) {
-        solution.add(new SparseItemset(items, ids.size()));
+      if(maxlength <= 1) {
+        return;
       }
-      if(depth < maxlength) {
-        extractItemsets(ids, idx, buf, depth + 1, i + 1, minsupp, solution);
+      buf[0] = start;
+      // Convert tidsets to diffsets: d(ij) = t(i) \ t(j)
+      final int[] citems = level(0, idx.length - start - 1);
+      final int[] csupps = supps[0];
+      final long[][] cdiffs = diffs[0];
+      int n = 0;
+      for(int j = start + 1; j < idx.length; j++) {
+        final int supp = support - andNot(iset, sets[j], cdiffs[n], support - minsupp);
+        if(supp < minsupp) {
+          continue;
+        }
+        citems[n] = j;
+        csupps[n++] = supp;
+        if(2 >= minlength) {
+          output(supp, 1, j);
+        }
+      }
+      if(n > 1 && maxlength > 2) {
+        extractItemsets(0, n, 1);
       }
     }
-  }
 
-  private DBIDs mergeJoin(DBIDs first, DBIDs second) {
-    assert (!(first instanceof HashSetDBIDs));
-    assert (!(second instanceof HashSetDBIDs));
-    ArrayModifiableDBIDs ids = DBIDUtil.newArray();
+    /**
+     * Extend the members of a prefix class.
+     *
+     * @param l Level of the class members
+     * @param n Number of class members
+     * @param plen Prefix length
+     */
+    private void extractItemsets(int l, int n, int plen) {
+      final int[] pitems = items[l], psupps = supps[l];
+      final long[][] pdiffs = diffs[l];
+      for(int a = 0; a < n - 1; a++) {
+        buf[plen] = pitems[a];
+        final int support = psupps[a];
+        // Diffsets: d(PXY) = d(PY) \ d(PX)
+        final int[] citems = level(l + 1, n - a - 1);
+        final int[] csupps = supps[l + 1];
+        final long[][] cdiffs = diffs[l + 1];
+        int m = 0;
+        for(int b = a + 1; b < n; b++) {
+          final int supp = support - andNot(pdiffs[b], pdiffs[a], cdiffs[m], support - minsupp);
+          if(supp < minsupp) {
+            continue;
+          }
+          citems[m] = pitems[b];
+          csupps[m++] = supp;
+          if(plen + 2 >= minlength) {
+            output(supp, plen + 1, pitems[b]);
+          }
+        }
+        if(m > 1 && plen + 2 < maxlength) {
+          extractItemsets(l + 1, m, plen + 1);
+        }
+      }
+    }
 
-    DBIDIter i1 = first.iter(), i2 = second.iter();
-    while(i1.valid() && i2.valid()) {
-      int c = DBIDUtil.compare(i1, i2);
-      if(c < 0) {
-        i1.advance();
+    /**
+     * Ensure the buffers of a level have the required size.
+     *
+     * @param l Level
+     * @param size Required size
+     * @return Item buffer of the level
+     */
+    private int[] level(int l, int size) {
+      if(items[l] == null || items[l].length < size) {
+        final int prev = items[l] == null ? 0 : items[l].length;
+        items[l] = new int[size];
+        supps[l] = new int[size];
+        diffs[l] = diffs[l] == null ? new long[size][] : Arrays.copyOf(diffs[l], size);
+        final int words = sets.length > 0 ? sets[0].length : 0;
+        for(int i = prev; i < size; i++) {
+          diffs[l][i] = new long[words];
+        }
       }
-      else if(c > 0) {
-        i2.advance();
+      return items[l];
+    }
+
+    /**
+     * Output an itemset.
+     *
+     * @param support Support
+     * @param plen Prefix length
+     * @param last Last item
+     */
+    private void output(int support, int plen, int last) {
+      int[] indices = new int[plen + 1];
+      for(int i = 0; i < plen; i++) {
+        indices[i] = idx[buf[i]];
       }
-      else {
-        ids.add(i1);
-        i1.advance();
-        i2.advance();
+      indices[plen] = idx[last];
+      Arrays.sort(indices);
+      solution.add(new SparseItemset(indices, support));
+    }
+
+    /**
+     * Memory used by the scratch bitsets.
+     *
+     * @return Memory in bytes
+     */
+    long memory() {
+      long mem = 0;
+      for(long[][] level : diffs) {
+        if(level != null) {
+          for(long[] d : level) {
+            mem += d.length * 8L;
+          }
+        }
       }
+      return mem;
     }
-    return ids;
   }
 
-  private DBIDs[] buildIndex(Relation<BitVector> relation, int dim, int minsupp) {
-    ArrayModifiableDBIDs[] idx = new ArrayModifiableDBIDs[dim];
-    for(int i = 0; i < dim; i++) {
-      idx[i] = DBIDUtil.newArray();
-    }
-    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
-      SparseFeatureVector<?> bv = relation.get(iter);
-      // TODO: only count those which satisfy minlength?
-      for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
-        idx[bv.iterDim(it)].add(iter);
+  /**
+   * Compute {@code a & ~b} into an output buffer, and return its cardinality.
+   *
+   * @param a First bitset
+   * @param b Second bitset
+   * @param out Output buffer
+   * @param limit Stop early when the cardinality exceeds this limit
+   * @return Cardinality of the result, or a value larger than the limit
+   */
+  private static int andNot(long[] a, long[] b, long[] out, int limit) {
+    int card = 0;
+    for(int i = 0; i < a.length; i++) {
+      final long v = out[i] = a[i] & ~b[i];
+      card += Long.bitCount(v);
+      if(card > limit) {
+        return card;
       }
     }
-    // Forget non-frequent 1-itemsets.
-    for(int i = 0; i < dim; i++) {
-      if(idx[i].size() < minsupp) {
-        idx[i] = null;
+    return card;
+  }
+
+  /**
+   * Mine the prefix classes of interleaved subsets of items.
+   *
+   * @author Erich Schubert
+   */
+  private class MineProcessor implements ParallelExecutor.RangeProcessor {
+    /**
+     * Frequent items (dimensions).
+     */
+    private int[] idx;
+
+    /**
+     * Transaction bitsets.
+     */
+    private long[][] sets;
+
+    /**
+     * Minimum support.
+     */
+    private int minsupp;
+
+    /**
+     * Stride, i.e. number of interleaved subsets.
+     */
+    private int stride;
+
+    /**
+     * Output list.
+     */
+    private List<Itemset> solution;
+
+    /**
+     * Progress.
+     */
+    private FiniteProgress prog;
+
+    /**
+     * Memory used for scratch bitsets.
+     */
+    long memory;
+
+    /**
+     * Constructor.
+     *
+     * @param idx Frequent items (dimensions)
+     * @param sets Transaction bitsets
+     * @param minsupp Minimum support
+     * @param stride Stride
+     * @param solution Output list
+     * @param prog Progress
+     */
+    MineProcessor(int[] idx, long[][] sets, int minsupp, int stride, List<Itemset> solution, FiniteProgress prog) {
+      super();
+      this.idx = idx;
+      this.sets = sets;
+      this.minsupp = minsupp;
+      this.stride = stride;
+      this.solution = solution;
+      this.prog = prog;
+    }
+
+    /**
+     * Mine the subsets of items with the given first offsets.
+     *
+     * @param start First offset
+     * @param end End offset (exclusive)
+     */
+    @Override
+    public void process(int start, int end) {
+      List<Itemset> local = new ArrayList<>();
+      Miner miner = new Miner(idx, sets, minsupp, local);
+      for(int first = start; first < end; first++) {
+        for(int i = first; i < idx.length; i += stride) {
+          miner.extractItemsets(i);
+          LOG.incrementProcessed(prog);
+        }
       }
-      else {
-        idx[i].sort();
+      synchronized(solution) {
+        solution.addAll(local);
+        memory += miner.memory();
       }
     }
-    return idx;
   }
 
   @Override
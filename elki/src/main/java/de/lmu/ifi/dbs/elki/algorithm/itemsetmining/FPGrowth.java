@@ -1,5 +1,6 @@
 package de.lmu.ifi.dbs.elki.algorithm.itemsetmining;
 
+
 /*
  This file is part of ELKI:
  Environment for Developing KDD-Applications Supported by Index-Structures
@@ -22,6 +23,7 @@ package de.lmu.ifi.dbs.elki.algorithm.itemsetmining;
  You should have received a copy of the GNU Affero General Public License
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -42,6 +44,8 @@ import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerComparator;
@@ -58,8 +62,11 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * using a not too high support threshold, as it only prunes single items, not
  * item combinations.
  *
- * This implementation is in-memory only, and has not yet been carefully
- * optimized.
+ * This implementation is in-memory only. The tree is stored in primitive
+ * parallel arrays instead of node objects, and the conditional trees are
+ * recycled, so that extraction does not allocate memory per node. The
+ * conditional trees of the different items are independent, and are mined in
+ * parallel using {@link ParallelExecutor}.
  *
  * The worst case memory use probably is O(min(n*l,i^l)) where i is the number
  * of items, l the average itemset length, and n the number of items. The worst
@@ -137,14 +144,10 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
     if(LOG.isStatistics()) {
       tree.logStatistics();
     }
-    // Reduce memory usage:
-    tree.reduceMemory();
-    LOG.statistics(ctime.end());
-
     if(LOG.isDebuggingFinest()) {
       StringBuilder buf = new StringBuilder();
       buf.append("FP-tree:\n");
-      tree.appendTo(buf, new FPNode.Translator() {
+      tree.appendTo(buf, new FPTree.Translator() {
         @Override
         public void appendTo(StringBuilder buf, int i) {
           String l = meta.getLabel(idx[i]);
@@ -153,34 +156,39 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
       });
       LOG.debugFinest(buf.toString());
     }
+    // Reduce memory usage:
+    tree.reduceMemory();
+    LOG.statistics(ctime.end());
 
     LOG.verbose("Extracting frequent patterns.");
     Duration etime = LOG.newDuration(STAT + "fp-growth.extraction.time").begin();
     final IndefiniteProgress itemp = LOG.isVerbose() ? new IndefiniteProgress("Frequent itemsets", LOG) : null;
     final List<Itemset> solution = new ArrayList<>();
     // Start extraction with the least frequent items
-    tree.extract(minsupp, minlength, maxlength, true, new FPTree.Collector() {
-      @Override
-      public void collect(int support, int[] data, int start, int plen) {
-        // Always translate the indexes back to the original values via 'idx'!
-        if(plen - start == 1) {
-          solution.add(new OneItemset(idx[data[start]], support));
-          LOG.incrementProcessed(itemp);
-          return;
-        }
-        // Copy from buffer to a permanent storage
-        int[] indices = new int[plen - start];
-        for(int i = start, j = 0; i < plen; i++) {
-          indices[j++] = idx[data[i]]; // Translate to original items
-        }
-        Arrays.sort(indices);
-        solution.add(new SparseItemset(indices, support));
-        LOG.incrementProcessed(itemp);
+    final int stop = (minlength > 1) ? minlength - 1 : 0;
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Extracting itemsets", Math.max(items - stop, 0), LOG) : null;
+    long scratch;
+    final int parallelism = ParallelCore.getCore().getParallelism();
+    if(parallelism <= 1) {
+      Miner miner = new Miner(minsupp, minlength, maxlength, items, new ItemsetCollector(idx, solution, itemp));
+      for(int j = items - 1; j >= stop; --j) {
+        miner.extract(tree, j, 0);
+        LOG.incrementProcessed(prog);
       }
-    });
+      scratch = miner.memory();
+    }
+    else {
+      // Interleave items, as the cost increases with the item position.
+      final int stride = parallelism << 2;
+      MineProcessor proc = new MineProcessor(tree, minsupp, idx, stop, stride, solution, itemp, prog);
+      ParallelExecutor.run(stride, 1, proc);
+      scratch = proc.memory;
+    }
+    LOG.ensureCompleted(prog);
     LOG.setCompleted(itemp);
     Collections.sort(solution);
     LOG.statistics(etime.end());
+    LOG.statistics(new LongStatistic(STAT + "fp-growth.scratch-memory", scratch));
     LOG.statistics(new LongStatistic(STAT + "frequent-itemsets", solution.size()));
 
     return new FrequentItemsetsResult("FP-Growth", "fp-growth", solution, meta);
@@ -279,330 +287,531 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
   }
 
   /**
-   * FP-Tree data structure
+   * Itemset extraction, with reusable buffers and conditional trees.
    *
-   * @author Erich Schubert
+   * Instances are not thread safe; use one per thread.
    *
-   * @apiviz.composedOf FPNode
+   * @author Erich Schubert
    */
-  public static class FPTree extends FPNode {
+  private static class Miner {
     /**
-     * Header table
+     * Minimum support, minimum and maximum length.
      */
-    FPNode[] header;
+    private final int minsupp, minlength, maxlength;
 
     /**
-     * Number of nodes in the tree (statistics only).
+     * Postfix of the current itemset.
      */
-    int nodes = 1;
+    private final int[] postfix;
 
     /**
-     * Constructor.
-     *
-     * @param items Number of items in header table
+     * Scratch buffers.
      */
-    public FPTree(int items) {
-      super(null, -1);
-      header = new FPNode[items];
-    }
+    private final int[] buf2, buf3;
 
     /**
-     * Insert an itemset into the tree.
-     *
-     * @param buf Buffer
-     * @param i Start position in buffer
-     * @param l End position in buffer
-     * @param weight Weight
+     * Conditional trees, by postfix length.
      */
-    public void insert(int[] buf, int i, int l, int weight) {
-      insert(this, buf, i, l, weight);
-    }
+    private final FPTree[] pool;
 
     /**
-     * Create a new node of the FP-tree, linking it into the header table.
-     *
-     * @param parent Parent node
-     * @param label Node label
-     * @return New node
+     * Itemset collector.
      */
-    public FPNode newNode(FPNode parent, int label) {
-      FPNode node = new FPNode(parent, label);
-      // Prepend to linked list - there is no benefit in keeping a particular
-      // order, as far as I can tell.
-      node.sibling = header[label];
-      header[label] = node;
-      ++nodes; // Statistics tracking only
-      return node;
-    }
+    private final FPTree.Collector col;
 
     /**
-     * Extract itemsets ending in the given item.
+     * Constructor.
      *
      * @param minsupp Minimum support
      * @param minlength Minimum length
      * @param maxlength Maximum length
-     * @param destruct Remove nodes
+     * @param items Number of items
      * @param col Itemset collector
      */
-    public void extract(int minsupp, int minlength, int maxlength, boolean destruct, Collector col) {
-      int[] buf = new int[header.length], buf2 = new int[header.length], buf3 = new int[header.length];
-      int stop = (minlength > 1) ? minlength - 1 : 0;
-      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Extracting itemsets", header.length - stop, LOG) : null;
-      for(int j = header.length - 1; j >= stop; --j) {
-        extract(minsupp, minlength, maxlength, j, buf, 0, buf2, buf3, destruct, col);
-        LOG.incrementProcessed(prog);
+    Miner(int minsupp, int minlength, int maxlength, int items, FPTree.Collector col) {
+      this.minsupp = minsupp;
+      this.minlength = minlength;
+      this.maxlength = maxlength;
+      this.postfix = new int[items];
+      this.buf2 = new int[items];
+      this.buf3 = new int[items];
+      this.pool = new FPTree[items + 1];
+      this.col = col;
+    }
+
+    /**
+     * Extract all itemsets from a tree.
+     *
+     * @param tree Tree
+     * @param plen Postfix length
+     */
+    void extractAll(FPTree tree, int plen) {
+      if(tree.linear) {
+        extractLinear(tree, tree.size - 1, Integer.MAX_VALUE, plen);
+        return;
+      }
+      final int stop = Math.max(minlength - plen - 1, 0);
+      for(int j = tree.items - 1; j >= stop; --j) {
+        extract(tree, j, plen);
       }
-      LOG.ensureCompleted(prog);
     }
 
     /**
      * Extract itemsets ending in the given item.
      *
-     * @param minsupp Minimum support
-     * @param minlength Minimum length
-     * @param maxlength Maximum length
+     * @param tree Tree
      * @param item Current item
-     * @param postfix Items to append
      * @param plen Postfix length
-     * @param buf2 Scratch buffer
-     * @param buf3 Scratch buffer
-     * @param destruct Remove nodes
-     * @param col Itemset collector
      */
-    private void extract(int minsupp, int minlength, int maxlength, int item, int[] postfix, int plen, int[] buf2, int[] buf3, boolean destruct, Collector col) {
-      // Skip items that have disappeared from the tree
-      if(header[item] == null) {
-        return;
-      }
-      // No siblings: single path only.
-      if(header[item].sibling == null) {
-        if(header[item].count < minsupp) {
-          return;
-        }
-        extractLinear(header[item].count, minsupp, minlength, maxlength, item, postfix, plen, buf2, col);
-        if(destruct) {
-          Arrays.fill(header, null);
-        }
+    void extract(FPTree tree, int item, int plen) {
+      final int first = tree.header[item];
+      if(first < 0) {
         return;
       }
+      final int[] parent = tree.parent, key = tree.key, count = tree.count;
       // Count total support.
       int support = 0;
-      for(FPNode cur = header[item]; cur != null; cur = cur.sibling) {
-        support += cur.count;
+      for(int cur = first; cur >= 0; cur = tree.sibling[cur]) {
+        support += count[cur];
       }
       if(support < minsupp) {
         return;
       }
+      postfix[plen++] = item;
+      if(plen >= minlength && plen <= maxlength) {
+        col.collect(support, postfix, 0, plen);
+      }
+      if(plen >= maxlength || item == 0) {
+        return;
+      }
       // Check which parent items to keep in the projection.
-      Arrays.fill(buf3, 0);
-      for(FPNode cur = header[item]; cur != null; cur = cur.sibling) {
-        for(FPNode parent = cur.parent; parent.key >= 0; parent = parent.parent) {
-          buf3[parent.key] += cur.count;
+      Arrays.fill(buf3, 0, item, 0);
+      for(int cur = first; cur >= 0; cur = tree.sibling[cur]) {
+        for(int p = parent[cur]; p > 0; p = parent[p]) {
+          buf3[key[p]] += count[cur];
         }
       }
-      // For testing minimum length:
-      final int mminlength = minlength - (plen + 1);
-      if(mminlength > 0) {
-        int fparents = 0;
-        for(int i = 0; i < item; i++) {
-          if(buf3[i] >= minsupp) {
-            fparents += 1;
-          }
-        }
-        if(fparents < mminlength) {
-          return; // Not enough parents that are still frequent.
+      int fparents = 0;
+      for(int i = 0; i < item; i++) {
+        if(buf3[i] >= minsupp) {
+          fparents += 1;
         }
       }
+      // For testing minimum length:
+      final int mminlength = minlength - plen;
+      if(fparents == 0 || fparents < mminlength) {
+        return; // Not enough parents that are still frequent.
+      }
       // Build projected tree:
-      final int last = item - 1;
-      FPTree proj = new FPTree(item);
-      for(FPNode cur = header[item]; cur != null; cur = cur.sibling) {
-        int j = buf2.length;
-        for(FPNode parent = cur.parent; parent.key >= 0; parent = parent.parent) {
-          if(buf3[parent.key] >= minsupp) {
-            buf2[--j] = parent.key;
+      FPTree proj = pool[plen];
+      if(proj == null) {
+        proj = pool[plen] = new FPTree(item);
+      }
+      else {
+        proj.reset(item);
+      }
+      for(int cur = first; cur >= 0; cur = tree.sibling[cur]) {
+        int j = item;
+        for(int p = parent[cur]; p > 0; p = parent[p]) {
+          if(buf3[key[p]] >= minsupp) {
+            buf2[--j] = key[p];
           }
         }
-        if(buf2.length - j >= mminlength) {
-          proj.insert(proj, buf2, j, buf2.length, cur.count);
+        if(item - j >= mminlength) {
+          proj.insert(buf2, j, item, count[cur]);
         }
       }
-      // Release memory:
-      proj.reduceMemory();
-      // TODO: other pruning techniques we should have employed here?
-      postfix[plen++] = item;
-      if(plen >= minlength && plen <= maxlength) {
-        col.collect(support, postfix, 0, plen);
-      }
-      for(int j = last; j >= 0; j--) {
-        proj.extract(minsupp, minlength, maxlength, j, postfix, plen, buf2, buf3, destruct, col);
-      }
-      if(destruct) {
-        header[item] = null;
-      }
+      extractAll(proj, plen);
     }
 
     /**
-     * Extract itemsets from a linear tree.
+     * Extract itemsets from a linear tree, which consists of the nodes
+     * {@code 1..maxnode} only.
      *
+     * @param tree Tree
+     * @param maxnode Last node to use
      * @param supp Current support
-     * @param minsupp Minimum support
-     * @param minlength Minimum length
-     * @param maxlength Maximum length
-     * @param item Current item
-     * @param postfix Postfix for extracted itemsets
      * @param plen Postfix length
-     * @param buf2 Scratch buffer
-     * @param col Output collector
      */
-    private void extractLinear(int supp, int minsupp, int minlength, int maxlength, int item, int[] postfix, int plen, int[] buf2, Collector col) {
-      // For testing minimum length:
-      final int mminlength = minlength - plen;
-      // Without current item:
-      if(item > 0 && item >= mminlength && plen < maxlength) {
-        extractLinear(supp, minsupp, minlength, maxlength, item - 1, postfix, plen, buf2, col);
+    private void extractLinear(FPTree tree, int maxnode, int supp, int plen) {
+      for(int n = maxnode; n > 0 && plen + n >= minlength; --n) {
+        final int csupp = tree.count[n];
+        if(csupp < minsupp) {
+          continue;
+        }
+        final int support = csupp < supp ? csupp : supp;
+        postfix[plen] = tree.key[n];
+        if(plen + 1 >= minlength && plen + 1 <= maxlength) {
+          col.collect(support, postfix, 0, plen + 1);
+        }
+        if(plen + 1 < maxlength) {
+          extractLinear(tree, n - 1, support, plen + 1);
+        }
       }
-      // With current item:
-      if(header[item] == null || item + 1 < mminlength) {
-        return;
+    }
+
+    /**
+     * Memory used by the conditional trees.
+     *
+     * @return Memory in bytes
+     */
+    long memory() {
+      long mem = 0;
+      for(FPTree t : pool) {
+        mem += t != null ? t.memory() : 0;
       }
-      int csupp = header[item].count;
-      if(csupp < minsupp) {
+      return mem;
+    }
+  }
+
+  /**
+   * Collect itemsets, translating the item positions back to dimensions.
+   *
+   * @author Erich Schubert
+   */
+  private static class ItemsetCollector implements FPTree.Collector {
+    /**
+     * Item index.
+     */
+    private final int[] idx;
+
+    /**
+     * Output list.
+     */
+    private final List<Itemset> solution;
+
+    /**
+     * Progress.
+     */
+    private final IndefiniteProgress itemp;
+
+    /**
+     * Constructor.
+     *
+     * @param idx Item index
+     * @param solution Output list
+     * @param itemp Progress
+     */
+    ItemsetCollector(int[] idx, List<Itemset> solution, IndefiniteProgress itemp) {
+      this.idx = idx;
+      this.solution = solution;
+      this.itemp = itemp;
+    }
+
+    @Override
+    public void collect(int support, int[] data, int start, int plen) {
+      // Always translate the indexes back to the original values via 'idx'!
+      if(plen - start == 1) {
+        solution.add(new OneItemset(idx[data[start]], support));
+        LOG.incrementProcessed(itemp);
         return;
       }
-      postfix[plen++] = item;
-      int support = csupp < supp ? csupp : supp;
-      if(plen >= minlength && plen <= maxlength) {
-        col.collect(support, postfix, 0, plen);
-      }
-      if(item > 0 && plen < maxlength) {
-        extractLinear(support, minsupp, minlength, maxlength, item - 1, postfix, plen, buf2, col);
+      // Copy from buffer to a permanent storage
+      int[] indices = new int[plen - start];
+      for(int i = start, j = 0; i < plen; i++) {
+        indices[j++] = idx[data[i]]; // Translate to original items
       }
+      Arrays.sort(indices);
+      solution.add(new SparseItemset(indices, support));
+      LOG.incrementProcessed(itemp);
     }
+  }
 
+  /**
+   * Mine the conditional trees of interleaved subsets of items.
+   *
+   * @author Erich Schubert
+   */
+  private class MineProcessor implements ParallelExecutor.RangeProcessor {
     /**
-     * Interface for collecting frequent itemsets found.
-     *
-     * @author Erich Schubert
+     * FP-tree.
+     */
+    private FPTree tree;
+
+    /**
+     * Minimum support, last item to process.
+     */
+    private int minsupp, stop;
+
+    /**
+     * Item index.
+     */
+    private int[] idx;
+
+    /**
+     * Stride, i.e. number of interleaved subsets.
+     */
+    private int stride;
+
+    /**
+     * Output list.
+     */
+    private List<Itemset> solution;
+
+    /**
+     * Itemset progress.
+     */
+    private IndefiniteProgress itemp;
+
+    /**
+     * Item progress.
+     */
+    private FiniteProgress prog;
+
+    /**
+     * Memory used for conditional trees.
+     */
+    long memory;
+
+    /**
+     * Constructor.
      *
-     * @apiviz.exclude
+     * @param tree FP-tree
+     * @param minsupp Minimum support
+     * @param idx Item index
+     * @param stop Last item to process
+     * @param stride Stride
+     * @param solution Output list
+     * @param itemp Itemset progress
+     * @param prog Item progress
      */
-    public static interface Collector {
-      /**
-       * Collect a single frequent itemset
-       *
-       * @param support Support of the itemset
-       * @param buf Buffer
-       * @param start First valid buffer position
-       * @param end End of valid buffer
-       */
-      public void collect(int support, int[] buf, int start, int end);
+    MineProcessor(FPTree tree, int minsupp, int[] idx, int stop, int stride, List<Itemset> solution, IndefiniteProgress itemp, FiniteProgress prog) {
+      super();
+      this.tree = tree;
+      this.minsupp = minsupp;
+      this.idx = idx;
+      this.stop = stop;
+      this.stride = stride;
+      this.solution = solution;
+      this.itemp = itemp;
+      this.prog = prog;
     }
 
     /**
-     * Output some statistics to logging.
+     * Mine the subsets of items with the given first offsets.
+     *
+     * @param start First offset
+     * @param end End offset (exclusive)
      */
-    public void logStatistics() {
-      LOG.statistics(new LongStatistic(STAT + "items", header.length));
-      LOG.statistics(new LongStatistic(STAT + "nodes", nodes));
-      LOG.statistics(new LongStatistic(STAT + "transactions", count));
+    @Override
+    public void process(int start, int end) {
+      List<Itemset> local = new ArrayList<>();
+      Miner miner = new Miner(minsupp, minlength, maxlength, tree.items, new ItemsetCollector(idx, local, itemp));
+      for(int first = start; first < end; first++) {
+        for(int j = tree.items - 1 - first; j >= stop; j -= stride) {
+          miner.extract(tree, j, 0);
+          LOG.incrementProcessed(prog);
+        }
+      }
+      synchronized(solution) {
+        solution.addAll(local);
+        memory += miner.memory();
+      }
     }
   }
 
   /**
-   * A single node of the FP tree.
+   * FP-Tree data structure, stored in primitive parallel arrays.
+   *
+   * Node 0 is the root; the nodes of each item are chained via the header
+   * table and the sibling array.
    *
    * @author Erich Schubert
    */
-  // FIXME: keep children sorted, and use binary search for faster construction?
-  // Or even use a hashset?
-  public static class FPNode {
+  public static class FPTree {
+    /**
+     * Initial capacity.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
     /**
-     * Parent node and next in sequence.
+     * Node keys (items), counts, parents, and next node of the same item.
      */
-    FPNode parent, sibling;
+    int[] key, count, parent, sibling;
 
     /**
-     * Key, weight, and number of children.
+     * First child and next child, for construction only.
      */
-    int key, count = 0, numchildren = 0;
+    int[] firstchild, nextchild;
 
     /**
-     * Children.
+     * Header table: first node of each item, -1 if none.
      */
-    FPNode[] children = EMPTY_CHILDREN;
+    int[] header;
 
     /**
-     * Constant for leaf nodes.
+     * Number of items in use, and number of nodes (including the root).
      */
-    final static FPNode[] EMPTY_CHILDREN = new FPNode[0];
+    int items, size;
 
     /**
-     * Initial size, after sizes 0 and 1.
+     * Flag, whether the tree consists of a single path only.
      */
-    final int INITIAL_SIZE = 7;
+    boolean linear;
 
     /**
      * Constructor.
      *
-     * @param parent Parent node
-     * @param key Key
+     * @param items Number of items in header table
      */
-    public FPNode(FPNode parent, int key) {
-      super();
-      this.parent = parent;
-      this.key = key;
+    public FPTree(int items) {
+      key = new int[INITIAL_CAPACITY];
+      count = new int[INITIAL_CAPACITY];
+      parent = new int[INITIAL_CAPACITY];
+      sibling = new int[INITIAL_CAPACITY];
+      header = new int[items];
+      reset(items);
+    }
+
+    /**
+     * Clear the tree for reuse, keeping the allocated memory.
+     *
+     * @param items Number of items in header table
+     */
+    public void reset(int items) {
+      if(firstchild == null || firstchild.length < key.length) {
+        firstchild = new int[key.length];
+        nextchild = new int[key.length];
+      }
+      if(header.length < items) {
+        header = new int[items];
+      }
+      Arrays.fill(header, 0, items, -1);
+      this.items = items;
+      this.size = 1;
+      this.linear = true;
+      key[0] = -1;
+      count[0] = 0;
+      parent[0] = -1;
+      firstchild[0] = -1;
     }
 
     /**
      * Insert an itemset into the tree.
      *
-     * @param buf Itemset buffer
-     * @param i Current index
-     * @param l Length
+     * @param buf Buffer
+     * @param i Start position in buffer
+     * @param l End position in buffer
      * @param weight Weight
      */
-    public void insert(FPTree tree, int[] buf, int i, int l, int weight) {
-      count += weight;
-      if(i == l) {
-        return;
-      }
-      final int label = buf[i];
-      for(int j = 0; j < numchildren; j++) {
-        FPNode child = children[j];
-        if(child.key == label) {
-          child.insert(tree, buf, i + 1, l, weight);
-          return;
+    public void insert(int[] buf, int i, int l, int weight) {
+      int node = 0;
+      count[0] += weight;
+      for(; i < l; i++) {
+        final int label = buf[i];
+        int child = firstchild[node];
+        while(child >= 0 && key[child] != label) {
+          child = nextchild[child];
         }
+        if(child < 0) {
+          child = newNode(node, label);
+        }
+        count[child] += weight;
+        node = child;
       }
-      // Make sure we have enough room to insert.
-      if(numchildren == children.length) {
-        ensureSize();
-      }
-      FPNode sub = children[numchildren++] = tree.newNode(this, label);
-      sub.insert(tree, buf, i + 1, l, weight);
     }
 
     /**
-     * Ensure we have enough storage.
+     * Create a new node of the FP-tree, linking it into the header table.
+     *
+     * @param p Parent node
+     * @param label Node label
+     * @return New node
      */
-    private void ensureSize() {
-      if(children == EMPTY_CHILDREN) {
-        children = new FPNode[1];
-        return;
+    private int newNode(int p, int label) {
+      if(size == key.length) {
+        grow();
       }
-      int newsize = children.length == 1 ? INITIAL_SIZE : (children.length << 1);
-      children = Arrays.copyOf(children, newsize);
+      final int node = size++;
+      key[node] = label;
+      count[node] = 0;
+      parent[node] = p;
+      linear &= firstchild[p] < 0;
+      nextchild[node] = firstchild[p];
+      firstchild[p] = node;
+      firstchild[node] = -1;
+      // Prepend to linked list - there is no benefit in keeping a particular
+      // order, as far as I can tell.
+      sibling[node] = header[label];
+      header[label] = node;
+      return node;
+    }
+
+    /**
+     * Grow the node arrays.
+     */
+    private void grow() {
+      final int newsize = key.length + (key.length >>> 1);
+      key = Arrays.copyOf(key, newsize);
+      count = Arrays.copyOf(count, newsize);
+      parent = Arrays.copyOf(parent, newsize);
+      sibling = Arrays.copyOf(sibling, newsize);
+      firstchild = Arrays.copyOf(firstchild, newsize);
+      nextchild = Arrays.copyOf(nextchild, newsize);
+    }
+
+    /**
+     * Release the memory occupied for the parent-to-child navigation, which is
+     * no longer needed after building the tree (only child-to-parent is needed
+     * in extracting itemsets), and trim the arrays.
+     */
+    public void reduceMemory() {
+      firstchild = nextchild = null;
+      key = Arrays.copyOf(key, size);
+      count = Arrays.copyOf(count, size);
+      parent = Arrays.copyOf(parent, size);
+      sibling = Arrays.copyOf(sibling, size);
+    }
+
+    /**
+     * Memory used by the tree arrays.
+     *
+     * @return Memory in bytes
+     */
+    public long memory() {
+      final int arrays = firstchild != null ? 6 : 4;
+      return (arrays * (long) key.length + header.length) * 4L;
+    }
+
+    /**
+     * Interface for collecting frequent itemsets found.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static interface Collector {
+      /**
+       * Collect a single frequent itemset
+       *
+       * @param support Support of the itemset
+       * @param buf Buffer
+       * @param start First valid buffer position
+       * @param end End of valid buffer
+       */
+      public void collect(int support, int[] buf, int start, int end);
+    }
+
+    /**
+     * Output some statistics to logging.
+     */
+    public void logStatistics() {
+      LOG.statistics(new LongStatistic(STAT + "items", items));
+      LOG.statistics(new LongStatistic(STAT + "nodes", size));
+      LOG.statistics(new LongStatistic(STAT + "transactions", count[0]));
+      LOG.statistics(new LongStatistic(STAT + "fp-tree.memory", memory()));
     }
 
     /**
      * Debugging function: build a text representation of the tree.
      *
+     * Only available before {@link #reduceMemory()}.
+     *
      * @param buf Output buffer
      * @param t Translator to user-understandable items
      */
     public void appendTo(StringBuilder buf, Translator t) {
-      appendTo(buf, t, 0);
+      appendTo(buf, t, 0, 0);
     }
 
     /**
@@ -615,35 +824,21 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
      *
      * @param buf Output buffer
      * @param t Translator to user-understandable items
+     * @param node Current node
      * @param depth Current depth
      */
-    private void appendTo(StringBuilder buf, Translator t, int depth) {
-      if(key > 0) {
-        t.appendTo(buf, key);
+    private void appendTo(StringBuilder buf, Translator t, int node, int depth) {
+      if(node > 0) {
+        t.appendTo(buf, key[node]);
         buf.append(": ");
       }
-      buf.append(count).append("\n");
-      for(int i = 0; i < numchildren; i++) {
+      buf.append(count[node]).append("\n");
+      for(int c = firstchild[node]; c >= 0; c = nextchild[c]) {
         for(int j = depth; j > 0; j -= SPACES.length) {
           buf.append(SPACES, 0, Math.min(j, SPACES.length));
         }
-        children[i].appendTo(buf, t, depth + 1);
-      }
-    }
-
-    /**
-     * Release the memory occupied for the parent-to-child navigation, which is
-     * no longer needed after building the tree (only child-to-parent is needed
-     * in extracting itemsets).
-     */
-    public void reduceMemory() {
-      if(children == null) {
-        return;
-      }
-      for(int i = 0; i < numchildren; ++i) {
-        children[i].reduceMemory();
+        appendTo(buf, t, c, depth + 1);
       }
-      children = null;
     }
 
     /**
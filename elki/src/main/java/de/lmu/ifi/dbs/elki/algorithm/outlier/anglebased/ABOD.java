@@ -23,6 +23,8 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier.anglebased;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.Arrays;
+
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.OutlierAlgorithm;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
@@ -31,8 +33,11 @@ import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.IntegerDataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -41,11 +46,14 @@ import de.lmu.ifi.dbs.elki.database.relation.DoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.similarityfunction.SimilarityFunction;
-import de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel.KernelMatrix;
 import de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel.PolynomialKernelFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
 import de.lmu.ifi.dbs.elki.math.MeanVariance;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
 import de.lmu.ifi.dbs.elki.result.outlier.InvertedOutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
@@ -66,6 +74,10 @@ import net.jafama.FastMath;
  * dimensional data sets. Exact version, which has cubic runtime (see also
  * {@link FastABOD} and {@link LBABOD} for faster versions).
  *
+ * This implementation does not materialize the full kernel matrix. Objects are
+ * processed in blocks of bounded memory, and the kernel rows of the other
+ * objects are computed on demand, in parallel using {@link ParallelExecutor}.
+ *
  * Reference:
  * <p>
  * H.-P. Kriegel, M. Schubert, and A. Zimek:<br />
@@ -78,6 +90,9 @@ import net.jafama.FastMath;
  * @author Erich Schubert (ELKIfication)
  * @since 0.2
  *
+ * @apiviz.has RowProcessor
+ * @apiviz.has ABOFProcessor
+ *
  * @param <V> Vector type
  */
 @Title("ABOD: Angle-Based Outlier Detection")
@@ -93,19 +108,42 @@ public class ABOD<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
    */
   private static final Logging LOG = Logging.getLogger(ABOD.class);
 
+  /**
+   * Default maximum number of kernel values to keep in memory for a block of
+   * objects.
+   */
+  public static final int DEFAULT_BLOCK_MEMORY = 1 << 22;
+
   /**
    * Store the configured Kernel version.
    */
   protected SimilarityFunction<? super V> kernelFunction;
 
+  /**
+   * Maximum number of kernel values to keep in memory for a block of objects.
+   */
+  protected int blockMemory;
+
   /**
    * Constructor for Angle-Based Outlier Detection (ABOD).
    *
    * @param kernelFunction kernel function to use
    */
   public ABOD(SimilarityFunction<? super V> kernelFunction) {
+    this(kernelFunction, DEFAULT_BLOCK_MEMORY);
+  }
+
+  /**
+   * Constructor for Angle-Based Outlier Detection (ABOD).
+   *
+   * @param kernelFunction kernel function to use
+   * @param blockMemory Maximum number of kernel values to keep in memory for a
+   *        block of objects
+   */
+  public ABOD(SimilarityFunction<? super V> kernelFunction, int blockMemory) {
     super();
     this.kernelFunction = kernelFunction;
+    this.blockMemory = blockMemory;
   }
 
   /**
@@ -116,19 +154,25 @@ public class ABOD<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
    */
   public OutlierResult run(Database db, Relation<V> relation) {
     ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
-    // Build a kernel matrix, to make O(n^3) slightly less bad.
     SimilarityQuery<V> sq = db.getSimilarityQuery(relation, kernelFunction);
-    KernelMatrix kernelMatrix = new KernelMatrix(sq, relation, ids);
+    final double[] diag = computeDiagonal(sq, ids);
+
+    final int size = ids.size();
+    int[] all = new int[size];
+    for(int i = 0; i < size; i++) {
+      all[i] = i;
+    }
+    WritableIntegerDataStore offsets = makeOffsets(ids);
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Computing ABOF", size, LOG) : null;
+    double[] abof = computeABOF(sq, ids, offsets, diag, all, prog);
+    LOG.ensureCompleted(prog);
+    offsets.destroy();
 
     WritableDoubleDataStore abodvalues = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
     DoubleMinMax minmaxabod = new DoubleMinMax();
-
-    MeanVariance s = new MeanVariance();
-    DBIDArrayIter pA = ids.iter(), pB = ids.iter(), pC = ids.iter();
-    for(; pA.valid(); pA.advance()) {
-      final double abof = computeABOF(kernelMatrix, pA, pB, pC, s);
-      minmaxabod.put(abof);
-      abodvalues.putDouble(pA, abof);
+    for(DBIDArrayIter pA = ids.iter(); pA.valid(); pA.advance()) {
+      minmaxabod.put(abof[pA.getOffset()]);
+      abodvalues.putDouble(pA, abof[pA.getOffset()]);
     }
 
     // Build result representation.
@@ -138,51 +182,316 @@ public class ABOD<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
   }
 
   /**
-   * Compute the exact ABOF value.
+   * Compute the self-similarities of all objects.
+   *
+   * @param sq Similarity query
+   * @param ids Object ids
+   * @return Self-similarities, by offset
+   */
+  protected static double[] computeDiagonal(SimilarityQuery<?> sq, ArrayDBIDs ids) {
+    double[] diag = new double[ids.size()];
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      diag[it.getOffset()] = sq.similarity(it, it);
+    }
+    return diag;
+  }
+
+  /**
+   * Map the object ids to their offsets, for processors that only receive a
+   * {@link DBIDRef}.
+   *
+   * @param ids Object ids
+   * @return Offsets
+   */
+  protected static WritableIntegerDataStore makeOffsets(ArrayDBIDs ids) {
+    WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      offsets.putInt(it, it.getOffset());
+    }
+    return offsets;
+  }
+
+  /**
+   * Compute the exact ABOF values of a set of objects.
+   *
+   * The candidates are processed in blocks of bounded memory. For each block,
+   * the kernel rows of all other objects are computed once each, and shared by
+   * all candidates in the block. The rows are distributed over the available
+   * threads by the {@link ParallelExecutor}.
+   *
+   * @param sq Similarity query
+   * @param ids Object ids
+   * @param offsets Offsets of the object ids
+   * @param diag Self-similarities
+   * @param cands Offsets of the objects to compute the ABOF for
+   * @param prog Progress (may be {@code null})
+   * @return ABOF values, in the order of the candidates
+   */
+  protected double[] computeABOF(SimilarityQuery<?> sq, ArrayDBIDs ids, IntegerDataStore offsets, double[] diag, int[] cands, FiniteProgress prog) {
+    final int size = ids.size();
+    final int bsize = Math.max(1, Math.min(cands.length, blockMemory / Math.max(1, size)));
+    final double[][] rows = new double[size][];
+    RowProcessor rowp = new RowProcessor(sq, ids, offsets, rows);
+    ABOFProcessor abofp = new ABOFProcessor(sq, ids, offsets, diag, rows);
+    DBIDArrayIter it = ids.iter();
+    double[] abof = new double[cands.length];
+    for(int start = 0; start < cands.length; start += bsize) {
+      final int end = Math.min(start + bsize, cands.length);
+      final int[] block = Arrays.copyOfRange(cands, start, end);
+      ArrayModifiableDBIDs blockids = DBIDUtil.newArray(block.length);
+      for(int a = 0; a < block.length; a++) {
+        blockids.add(it.seek(block[a]));
+      }
+      ParallelExecutor.run(blockids, rowp);
+      abofp.setBlock(block);
+      ParallelExecutor.run(ids, abofp);
+      for(int a = 0; a < block.length; a++) {
+        // Sample variance probably would be better here, but the ABOD
+        // publication uses the naive variance.
+        abof[start + a] = abofp.s[a].getNaiveVariance();
+        rows[block[a]] = null;
+      }
+      if(prog != null) {
+        prog.setProcessed(prog.getProcessed() + block.length, getLogger());
+      }
+    }
+    return abof;
+  }
+
+  /**
+   * Processor to compute the kernel rows of a block of objects.
+   *
+   * @author Erich Schubert
+   */
+  protected static class RowProcessor implements Processor {
+    /**
+     * Similarity query.
+     */
+    SimilarityQuery<?> sq;
+
+    /**
+     * Object ids.
+     */
+    ArrayDBIDs ids;
+
+    /**
+     * Offsets of the object ids.
+     */
+    IntegerDataStore offsets;
+
+    /**
+     * Output kernel rows, by offset.
+     */
+    double[][] rows;
+
+    /**
+     * Constructor.
+     *
+     * @param sq Similarity query
+     * @param ids Object ids
+     * @param offsets Offsets of the object ids
+     * @param rows Output kernel rows, by offset
+     */
+    public RowProcessor(SimilarityQuery<?> sq, ArrayDBIDs ids, IntegerDataStore offsets, double[][] rows) {
+      super();
+      this.sq = sq;
+      this.ids = ids;
+      this.offsets = offsets;
+      this.rows = rows;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance();
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      // Nothing to do.
+    }
+
+    /**
+     * Instance to compute a part of the rows.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance implements Processor.Instance {
+      /**
+       * Iterator over all objects.
+       */
+      private DBIDArrayIter pC = ids.iter();
+
+      @Override
+      public void map(DBIDRef pA) {
+        final double[] row = rows[offsets.intValue(pA)] = new double[ids.size()];
+        for(pC.seek(0); pC.valid(); pC.advance()) {
+          row[pC.getOffset()] = sq.similarity(pA, pC);
+        }
+      }
+    }
+  }
+
+  /**
+   * Processor to accumulate the angle statistics of a block of objects. Each
+   * instance processes a subset of the other objects, and the statistics are
+   * combined on cleanup.
    *
-   * @param kernelMatrix Kernel matrix
-   * @param pA Object A to compute ABOF for
-   * @param pB Iterator over objects B
-   * @param pC Iterator over objects C
-   * @param s Statistics tracker
-   * @return ABOF value
+   * @author Erich Schubert
    */
-  protected double computeABOF(KernelMatrix kernelMatrix, DBIDRef pA, DBIDArrayIter pB, DBIDArrayIter pC, MeanVariance s) {
-    s.reset(); // Reused
-    double simAA = kernelMatrix.getSimilarity(pA, pA);
+  protected static class ABOFProcessor implements Processor {
+    /**
+     * Similarity query.
+     */
+    SimilarityQuery<?> sq;
+
+    /**
+     * Object ids.
+     */
+    ArrayDBIDs ids;
+
+    /**
+     * Offsets of the object ids.
+     */
+    IntegerDataStore offsets;
+
+    /**
+     * Self-similarities.
+     */
+    double[] diag;
+
+    /**
+     * Kernel rows of the block objects, by offset.
+     */
+    double[][] rows;
 
-    for(pB.seek(0); pB.valid(); pB.advance()) {
-      if(DBIDUtil.equal(pB, pA)) {
-        continue;
+    /**
+     * Offsets of the block objects.
+     */
+    int[] block;
+
+    /**
+     * Statistics for each block object.
+     */
+    MeanVariance[] s;
+
+    /**
+     * Constructor.
+     *
+     * @param sq Similarity query
+     * @param ids Object ids
+     * @param offsets Offsets of the object ids
+     * @param diag Self-similarities
+     * @param rows Kernel rows of the block objects, by offset
+     */
+    public ABOFProcessor(SimilarityQuery<?> sq, ArrayDBIDs ids, IntegerDataStore offsets, double[] diag, double[][] rows) {
+      super();
+      this.sq = sq;
+      this.ids = ids;
+      this.offsets = offsets;
+      this.diag = diag;
+      this.rows = rows;
+    }
+
+    /**
+     * Reset for the next block.
+     *
+     * @param block Offsets of the block objects
+     */
+    public void setBlock(int[] block) {
+      this.block = block;
+      this.s = newStatistics(block.length);
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance();
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      MeanVariance[] is = ((Instance) inst).stats;
+      synchronized(this) {
+        for(int a = 0; a < is.length; a++) {
+          if(is[a].getCount() > 0) {
+            s[a].put(is[a]);
+          }
+        }
       }
-      double simBB = kernelMatrix.getSimilarity(pB, pB);
-      double simAB = kernelMatrix.getSimilarity(pA, pB);
-      double sqdAB = simAA + simBB - simAB - simAB;
-      if(!(sqdAB > 0.)) {
-        continue;
+    }
+
+    /**
+     * Allocate empty statistics.
+     *
+     * @param n Number of objects
+     * @return Statistics
+     */
+    private static MeanVariance[] newStatistics(int n) {
+      MeanVariance[] s = new MeanVariance[n];
+      for(int i = 0; i < n; i++) {
+        s[i] = new MeanVariance();
       }
-      for(pC.seek(pB.getOffset() + 1); pC.valid(); pC.advance()) {
-        if(DBIDUtil.equal(pC, pA)) {
-          continue;
+      return s;
+    }
+
+    /**
+     * Instance to process a part of the other objects.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance implements Processor.Instance {
+      /**
+       * Iterator over all objects.
+       */
+      private DBIDArrayIter pC = ids.iter();
+
+      /**
+       * Similarities of the current object.
+       */
+      private double[] simB = new double[ids.size()];
+
+      /**
+       * Local statistics for each block object.
+       */
+      private MeanVariance[] stats = newStatistics(block.length);
+
+      @Override
+      public void map(DBIDRef pB) {
+        final int size = ids.size(), b = offsets.intValue(pB);
+        for(pC.seek(b + 1); pC.valid(); pC.advance()) {
+          simB[pC.getOffset()] = sq.similarity(pB, pC);
         }
-        double simCC = kernelMatrix.getSimilarity(pC, pC);
-        double simAC = kernelMatrix.getSimilarity(pA, pC);
-        double sqdAC = simAA + simCC - simAC - simAC;
-        if(!(sqdAC > 0.)) {
-          continue;
+        final double simBB = diag[b];
+        for(int a = 0; a < block.length; a++) {
+          final int ia = block[a];
+          if(ia == b) {
+            continue;
+          }
+          final double[] rowA = rows[ia];
+          final double simAA = diag[ia], simAB = rowA[b];
+          final double sqdAB = simAA + simBB - simAB - simAB;
+          if(!(sqdAB > 0.)) {
+            continue;
+          }
+          final MeanVariance sa = stats[a];
+          for(int c = b + 1; c < size; c++) {
+            if(c == ia) {
+              continue;
+            }
+            final double simCC = diag[c], simAC = rowA[c];
+            final double sqdAC = simAA + simCC - simAC - simAC;
+            if(!(sqdAC > 0.)) {
+              continue;
+            }
+            // Exploit bilinearity of scalar product:
+            // <B-A, C-A> = <B,C-A> - <A,C-A>
+            // = <B,C> - <B,A> - <A,C> + <A,A>
+            final double numerator = simB[c] - simAB - simAC + simAA;
+            final double div = 1. / (sqdAB * sqdAC);
+            sa.put(numerator * div, FastMath.sqrt(div));
+          }
         }
-        // Exploit bilinearity of scalar product:
-        // <B-A, C-A> = <B,C-A> - <A,C-A>
-        // = <B,C> - <B,A> - <A,C> + <A,A>
-        double simBC = kernelMatrix.getSimilarity(pB, pC);
-        double numerator = simBC - simAB - simAC + simAA;
-        double div = 1. / (sqdAB * sqdAC);
-        s.put(numerator * div, FastMath.sqrt(div));
       }
     }
-    // Sample variance probably would be better here, but the ABOD publication
-    // uses the naive variance.
-    return s.getNaiveVariance();
   }
 
   @Override
@@ -29,10 +29,13 @@ import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.IntegerDataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
@@ -41,10 +44,16 @@ import de.lmu.ifi.dbs.elki.database.relation.DoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.similarityfunction.SimilarityFunction;
-import de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel.KernelMatrix;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
 import de.lmu.ifi.dbs.elki.math.MeanVariance;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.AbstractDoubleProcessor;
+import de.lmu.ifi.dbs.elki.parallel.processor.DoubleMinMaxProcessor;
+import de.lmu.ifi.dbs.elki.parallel.processor.WriteDoubleDataStoreProcessor;
+import de.lmu.ifi.dbs.elki.parallel.variables.SharedDouble;
 import de.lmu.ifi.dbs.elki.result.outlier.InvertedOutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
@@ -63,6 +72,10 @@ import net.jafama.FastMath;
  *
  * Fast-ABOD (approximateABOF) version.
  *
+ * The objects are processed in parallel using {@link ParallelExecutor}, and the
+ * kernel values are computed on demand instead of materializing the full kernel
+ * matrix.
+ *
  * Note: the minimum k is 3. The 2 nearest neighbors yields one 1 angle, which
  * implies a constant 0 variance everywhere.
  *
@@ -78,6 +91,8 @@ import net.jafama.FastMath;
  * @author Erich Schubert (ELKIfication)
  * @since 0.6.0
  *
+ * @apiviz.has FastABODProcessor
+ *
  * @param <V> Vector type
  */
 @Title("Approximate ABOD: Angle-Based Outlier Detection")
@@ -117,64 +132,29 @@ public class FastABOD<V extends NumberVector> extends ABOD<V> {
    */
   @Override
   public OutlierResult run(Database db, Relation<V> relation) {
-    DBIDs ids = relation.getDBIDs();
-    // Build a kernel matrix, to make O(n^3) slightly less bad.
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
     SimilarityQuery<V> sq = db.getSimilarityQuery(relation, kernelFunction);
-    KernelMatrix kernelMatrix = new KernelMatrix(sq, relation, ids);
+    final double[] diag = computeDiagonal(sq, ids);
 
+    WritableIntegerDataStore offsets = makeOffsets(ids);
     WritableDoubleDataStore abodvalues = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
-    DoubleMinMax minmaxabod = new DoubleMinMax();
-
-    MeanVariance s = new MeanVariance();
-    KNNHeap nn = DBIDUtil.newHeap(k);
-    for(DBIDIter pA = ids.iter(); pA.valid(); pA.advance()) {
-      final double simAA = kernelMatrix.getSimilarity(pA, pA);
-
-      // Choose the k-min nearest
-      nn.clear();
-      for(DBIDIter nB = relation.iterDBIDs(); nB.valid(); nB.advance()) {
-        if(DBIDUtil.equal(nB, pA)) {
-          continue;
-        }
-        double simBB = kernelMatrix.getSimilarity(nB, nB);
-        double simAB = kernelMatrix.getSimilarity(pA, nB);
-        double sqdAB = simAA + simBB - simAB - simAB;
-        if(!(sqdAB > 0.)) {
-          continue;
-        }
-        nn.insert(sqdAB, nB);
-      }
-      KNNList nl = nn.toKNNList();
-
-      s.reset();
-      DoubleDBIDListIter iB = nl.iter(), iC = nl.iter();
-      for(; iB.valid(); iB.advance()) {
-        double sqdAB = iB.doubleValue();
-        double simAB = kernelMatrix.getSimilarity(pA, iB);
-        if(!(sqdAB > 0.)) {
-          continue;
-        }
-        for(iC.seek(iB.getOffset() + 1); iC.valid(); iC.advance()) {
-          double sqdAC = iC.doubleValue();
-          double simAC = kernelMatrix.getSimilarity(pA, iC);
-          if(!(sqdAC > 0.)) {
-            continue;
-          }
-          // Exploit bilinearity of scalar product:
-          // <B-A, C-A> = <B, C-A> - <A,C-A>
-          // = <B,C> - <B,A> - <A,C> + <A,A>
-          double simBC = kernelMatrix.getSimilarity(iB, iC);
-          double numerator = simBC - simAB - simAC + simAA;
-          double div = 1. / (sqdAB * sqdAC);
-          s.put(numerator * div, FastMath.sqrt(div));
-        }
-      }
-      // Sample variance probably would probably be better, but the ABOD
-      // publication uses the naive variance.
-      final double abof = s.getNaiveVariance();
-      minmaxabod.put(abof);
-      abodvalues.putDouble(pA, abof);
+    DoubleMinMax minmaxabod;
+    {
+      FastABODProcessor abodp = new FastABODProcessor(sq, ids, offsets, diag, k);
+      SharedDouble abodv = new SharedDouble();
+      DoubleMinMaxProcessor mmm = new DoubleMinMaxProcessor();
+      WriteDoubleDataStoreProcessor storeabod = new WriteDoubleDataStoreProcessor(abodvalues);
+
+      abodp.connectOutput(abodv);
+      mmm.connectInput(abodv);
+      storeabod.connectInput(abodv);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Computing Fast-ABOF", ids.size(), LOG) : null;
+      ParallelExecutor.run(ids, prog, LOG, abodp, storeabod, mmm);
+      LOG.ensureCompleted(prog);
+
+      minmaxabod = mmm.getMinMax();
     }
+    offsets.destroy();
 
     // Build result representation.
     DoubleRelation scoreResult = new MaterializedDoubleRelation("Angle-Based Outlier Degree", "abod-outlier", abodvalues, relation.getDBIDs());
@@ -182,6 +162,157 @@ public class FastABOD<V extends NumberVector> extends ABOD<V> {
     return new OutlierResult(scoreMeta, scoreResult);
   }
 
+  /**
+   * Find the k nearest neighbors of an object in kernel space, excluding
+   * duplicates.
+   *
+   * @param sq Similarity query
+   * @param diag Self-similarities
+   * @param pA Object
+   * @param nB Iterator over all objects
+   * @param nn Heap (will be cleared)
+   * @return Nearest neighbors, with squared distances
+   */
+  private static KNNList nearestNeighbors(SimilarityQuery<?> sq, double[] diag, DBIDArrayIter pA, DBIDArrayIter nB, KNNHeap nn) {
+    final int ia = pA.getOffset();
+    final double simAA = diag[ia];
+    nn.clear();
+    for(nB.seek(0); nB.valid(); nB.advance()) {
+      if(nB.getOffset() == ia) {
+        continue;
+      }
+      final double simAB = sq.similarity(pA, nB);
+      final double sqdAB = simAA + diag[nB.getOffset()] - simAB - simAB;
+      if(!(sqdAB > 0.)) {
+        continue;
+      }
+      nn.insert(sqdAB, nB);
+    }
+    return nn.toKNNList();
+  }
+
+  /**
+   * Processor to compute the Fast-ABOF of the objects.
+   *
+   * @author Erich Schubert
+   */
+  protected static class FastABODProcessor extends AbstractDoubleProcessor {
+    /**
+     * Similarity query.
+     */
+    SimilarityQuery<?> sq;
+
+    /**
+     * Object ids.
+     */
+    ArrayDBIDs ids;
+
+    /**
+     * Offsets of the object ids.
+     */
+    IntegerDataStore offsets;
+
+    /**
+     * Self-similarities.
+     */
+    double[] diag;
+
+    /**
+     * Number of nearest neighbors.
+     */
+    int k;
+
+    /**
+     * Constructor.
+     *
+     * @param sq Similarity query
+     * @param ids Object ids
+     * @param offsets Offsets of the object ids
+     * @param diag Self-similarities
+     * @param k Number of nearest neighbors
+     */
+    public FastABODProcessor(SimilarityQuery<?> sq, ArrayDBIDs ids, IntegerDataStore offsets, double[] diag, int k) {
+      super();
+      this.sq = sq;
+      this.ids = ids;
+      this.offsets = offsets;
+      this.diag = diag;
+      this.k = k;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance(executor.getInstance(output));
+    }
+
+    /**
+     * Instance to compute the Fast-ABOF of a part of the objects.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance extends AbstractDoubleProcessor.Instance {
+      /**
+       * Iterators over all objects.
+       */
+      private DBIDArrayIter pA = ids.iter(), nB = ids.iter();
+
+      /**
+       * Statistics of the current object.
+       */
+      private MeanVariance s = new MeanVariance();
+
+      /**
+       * Nearest neighbor heap (will be reused).
+       */
+      private KNNHeap nn = DBIDUtil.newHeap(k);
+
+      /**
+       * Constructor.
+       *
+       * @param output Output variable
+       */
+      protected Instance(SharedDouble.Instance output) {
+        super(output);
+      }
+
+      @Override
+      public void map(DBIDRef id) {
+        final int i = offsets.intValue(id);
+        pA.seek(i);
+        final double simAA = diag[i];
+        // Choose the k-min nearest
+        KNNList nl = nearestNeighbors(sq, diag, pA, nB, nn);
+
+        s.reset();
+        DoubleDBIDListIter iB = nl.iter(), iC = nl.iter();
+        for(; iB.valid(); iB.advance()) {
+          double sqdAB = iB.doubleValue();
+          double simAB = sq.similarity(pA, iB);
+          if(!(sqdAB > 0.)) {
+            continue;
+          }
+          for(iC.seek(iB.getOffset() + 1); iC.valid(); iC.advance()) {
+            double sqdAC = iC.doubleValue();
+            double simAC = sq.similarity(pA, iC);
+            if(!(sqdAC > 0.)) {
+              continue;
+            }
+            // Exploit bilinearity of scalar product:
+            // <B-A, C-A> = <B, C-A> - <A,C-A>
+            // = <B,C> - <B,A> - <A,C> + <A,A>
+            double simBC = sq.similarity(iB, iC);
+            double numerator = simBC - simAB - simAC + simAA;
+            double div = 1. / (sqdAB * sqdAC);
+            s.put(numerator * div, FastMath.sqrt(div));
+          }
+        }
+        // Sample variance probably would probably be better, but the ABOD
+        // publication uses the naive variance.
+        output.set(s.getNaiveVariance());
+      }
+    }
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
@@ -23,37 +23,46 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier.anglebased;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.Arrays;
+
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.IntegerDataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
-import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.similarity.SimilarityQuery;
 import de.lmu.ifi.dbs.elki.database.relation.DoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.similarityfunction.SimilarityFunction;
-import de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel.KernelMatrix;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.Logging.Level;
 import de.lmu.ifi.dbs.elki.logging.LoggingConfiguration;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
-import de.lmu.ifi.dbs.elki.math.MeanVariance;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.AbstractDoubleProcessor;
+import de.lmu.ifi.dbs.elki.parallel.processor.WriteDoubleDataStoreProcessor;
+import de.lmu.ifi.dbs.elki.parallel.variables.SharedDouble;
 import de.lmu.ifi.dbs.elki.result.outlier.InvertedOutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
@@ -70,6 +79,10 @@ import net.jafama.FastMath;
  * LB-ABOD (lower-bound) version. Exact on the top k outliers, approximate on
  * the remaining.
  *
+ * The lower bounds are computed in parallel without materializing the kernel
+ * matrix. The candidates are then refined in batches of one candidate per
+ * thread, using the blocked exact computation of {@link ABOD}.
+ *
  * Outlier detection using variance analysis on angles, especially for high
  * dimensional data sets.
  *
@@ -85,6 +98,8 @@ import net.jafama.FastMath;
  * @author Erich Schubert (ELKIfication)
  * @since 0.6.0
  *
+ * @apiviz.has LowerBoundProcessor
+ *
  * @param <V> Vector type
  */
 @Title("LB-ABOD: Lower Bounded Angle-Based Outlier Detection")
@@ -126,125 +141,231 @@ public class LBABOD<V extends NumberVector> extends FastABOD<V> {
   @Override
   public OutlierResult run(Database db, Relation<V> relation) {
     ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
-    DBIDArrayIter pB = ids.iter(), pC = ids.iter();
     SimilarityQuery<V> sq = db.getSimilarityQuery(relation, kernelFunction);
-    KernelMatrix kernelMatrix = new KernelMatrix(sq, relation, ids);
+    final double[] diag = computeDiagonal(sq, ids);
+    final int size = ids.size();
 
-    // Output storage.
+    // Compute the lower bounds, in parallel.
+    WritableIntegerDataStore offsets = makeOffsets(ids);
     WritableDoubleDataStore abodvalues = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
-    DoubleMinMax minmaxabod = new DoubleMinMax();
-    double max = 0.;
+    {
+      LowerBoundProcessor lbp = new LowerBoundProcessor(sq, ids, offsets, diag, k);
+      SharedDouble lbv = new SharedDouble();
+      WriteDoubleDataStoreProcessor storelb = new WriteDoubleDataStoreProcessor(abodvalues);
 
-    // Storage for squared distances (will be reused!)
-    WritableDoubleDataStore sqDists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT);
-    // Nearest neighbor heap (will be reused!)
-    KNNHeap nn = DBIDUtil.newHeap(k);
-
-    // Priority queue for candidates
-    ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList(relation.size());
-    // get Candidate Ranking
-    for(DBIDIter pA = relation.iterDBIDs(); pA.valid(); pA.advance()) {
-      // Compute nearest neighbors and distances.
-      nn.clear();
-      double simAA = kernelMatrix.getSimilarity(pA, pA);
-      // Sum of 1./(|AB|) and 1./(|AB|^2); for computing R2.
-      double sumid = 0., sumisqd = 0.;
-      for(pB.seek(0); pB.valid(); pB.advance()) {
-        if(DBIDUtil.equal(pB, pA)) {
-          continue;
-        }
-        double simBB = kernelMatrix.getSimilarity(pB, pB);
-        double simAB = kernelMatrix.getSimilarity(pA, pB);
-        double sqdAB = simAA + simBB - simAB - simAB;
-        sqDists.putDouble(pB, sqdAB);
-        final double isqdAB = 1. / sqdAB;
-        sumid += FastMath.sqrt(isqdAB);
-        sumisqd += isqdAB;
-        // Update heap
-        nn.insert(sqdAB, pB);
-      }
+      lbp.connectOutput(lbv);
+      storelb.connectInput(lbv);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Computing LB-ABOF", size, LOG) : null;
+      ParallelExecutor.run(ids, prog, LOG, lbp, storelb);
+      LOG.ensureCompleted(prog);
+    }
 
-      // Compute FastABOD approximation, adjust for lower bound.
-      // LB-ABOF is defined via a numerically unstable formula.
-      // Variance as E(X^2)-E(X)^2 suffers from catastrophic cancellation!
-      // TODO: ensure numerical precision!
-      double nnsum = 0., nnsumsq = 0., nnsumisqd = 0.;
-      KNNList nl = nn.toKNNList();
-      DoubleDBIDListIter iB = nl.iter(), iC = nl.iter();
-      for(; iB.valid(); iB.advance()) {
-        double sqdAB = iB.doubleValue();
-        double simAB = kernelMatrix.getSimilarity(pA, iB);
-        if(!(sqdAB > 0.)) {
-          continue;
-        }
-        for(iC.seek(iB.getOffset() + 1); iC.valid(); iC.advance()) {
-          double sqdAC = iC.doubleValue();
-          double simAC = kernelMatrix.getSimilarity(pA, iC);
-          if(!(sqdAC > 0.)) {
-            continue;
-          }
-          // Exploit bilinearity of scalar product:
-          // <B-A, C-A> = <B, C-A> - <A,C-A>
-          // = <B,C> - <B,A> - <A,C> + <A,A>
-          double simBC = kernelMatrix.getSimilarity(iB, iC);
-          double numerator = simBC - simAB - simAC + simAA;
-          double sqweight = 1. / (sqdAB * sqdAC);
-          double weight = FastMath.sqrt(sqweight);
-          double val = numerator * sqweight;
-          nnsum += val * weight;
-          nnsumsq += val * val * weight;
-          nnsumisqd += sqweight;
-        }
-      }
-      // Remaining weight, term R2:
-      double r2 = sumisqd * sumisqd - 2. * nnsumisqd;
-      double tmp = (2. * nnsum + r2) / (sumid * sumid);
-      double lbabof = 2. * nnsumsq / (sumid * sumid) - tmp * tmp;
-
-      // Track maximum?
-      if(lbabof > max) {
-        max = lbabof;
-      }
-      abodvalues.putDouble(pA, lbabof);
-      candidates.add(lbabof, pA);
+    final double[] scores = new double[size];
+    DoubleMinMax minmaxabod = new DoubleMinMax();
+    double max = 0.;
+    for(DBIDArrayIter pA = ids.iter(); pA.valid(); pA.advance()) {
+      final double score = scores[pA.getOffset()] = abodvalues.doubleValue(pA);
+      max = score > max ? score : max;
     }
     minmaxabod.put(max); // Put maximum from approximate values.
-    candidates.sort();
 
-    // refine Candidates
+    // Candidate ranking
+    double[] bounds = scores.clone();
+    int[] order = new int[size];
+    for(int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    DoubleIntegerArrayQuickSort.sort(bounds, order, size);
+
+    // Refine candidates, in batches. The batches are processed in parallel,
+    // but the stopping condition is checked for every single candidate, so
+    // the result is the same as with sequential refinement. One candidate per
+    // thread keeps all threads busy computing kernel rows, and bounds the work
+    // wasted when refinement stops within a batch.
+    final int parallelism = ParallelCore.getCore().getParallelism();
+    final int batch = Math.max(1, Math.min(parallelism, blockMemory / Math.max(1, size)));
     int refinements = 0;
     DoubleMinHeap topscores = new DoubleMinHeap(l);
-    MeanVariance s = new MeanVariance();
-    for(DoubleDBIDListIter pA = candidates.iter(); pA.valid(); pA.advance()) {
-      // Stop refining
-      if(topscores.size() >= k && pA.doubleValue() > topscores.peek()) {
-        break;
-      }
-      final double abof = computeABOF(kernelMatrix, pA, pB, pC, s);
-      // Store refined score:
-      abodvalues.putDouble(pA, abof);
-      minmaxabod.put(abof);
-      // Update the heap tracking the top scores.
-      if(topscores.size() < k) {
-        topscores.add(abof);
-      }
-      else {
-        if(topscores.peek() > abof) {
-          topscores.replaceTopElement(abof);
+    refine: for(int pos = 0; pos < size;) {
+      int[] cands = Arrays.copyOfRange(order, pos, Math.min(pos + batch, size));
+      double[] abofs = computeABOF(sq, ids, offsets, diag, cands, null);
+      for(int j = 0; j < cands.length; j++, pos++) {
+        // Stop refining
+        if(topscores.size() >= k && bounds[pos] > topscores.peek()) {
+          break refine;
         }
+        final double abof = abofs[j];
+        // Store refined score:
+        scores[cands[j]] = abof;
+        minmaxabod.put(abof);
+        // Update the heap tracking the top scores.
+        if(topscores.size() < k) {
+          topscores.add(abof);
+        }
+        else {
+          if(topscores.peek() > abof) {
+            topscores.replaceTopElement(abof);
+          }
+        }
+        refinements += 1;
       }
-      refinements += 1;
     }
     if(LOG.isStatistics()) {
       LoggingConfiguration.setVerbose(Level.VERYVERBOSE);
       LOG.statistics(new LongStatistic("lb-abod.refinements", refinements));
     }
+    offsets.destroy();
+    for(DBIDArrayIter pA = ids.iter(); pA.valid(); pA.advance()) {
+      abodvalues.putDouble(pA, scores[pA.getOffset()]);
+    }
     // Build result representation.
     DoubleRelation scoreResult = new MaterializedDoubleRelation("Angle-based Outlier Detection", "abod-outlier", abodvalues, ids);
     OutlierScoreMeta scoreMeta = new InvertedOutlierScoreMeta(minmaxabod.getMin(), minmaxabod.getMax(), 0.0, Double.POSITIVE_INFINITY);
     return new OutlierResult(scoreMeta, scoreResult);
   }
 
+  /**
+   * Processor to compute the lower bounds of the objects.
+   *
+   * @author Erich Schubert
+   */
+  protected static class LowerBoundProcessor extends AbstractDoubleProcessor {
+    /**
+     * Similarity query.
+     */
+    SimilarityQuery<?> sq;
+
+    /**
+     * Object ids.
+     */
+    ArrayDBIDs ids;
+
+    /**
+     * Offsets of the object ids.
+     */
+    IntegerDataStore offsets;
+
+    /**
+     * Self-similarities.
+     */
+    double[] diag;
+
+    /**
+     * Number of nearest neighbors.
+     */
+    int k;
+
+    /**
+     * Constructor.
+     *
+     * @param sq Similarity query
+     * @param ids Object ids
+     * @param offsets Offsets of the object ids
+     * @param diag Self-similarities
+     * @param k Number of nearest neighbors
+     */
+    public LowerBoundProcessor(SimilarityQuery<?> sq, ArrayDBIDs ids, IntegerDataStore offsets, double[] diag, int k) {
+      super();
+      this.sq = sq;
+      this.ids = ids;
+      this.offsets = offsets;
+      this.diag = diag;
+      this.k = k;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance(executor.getInstance(output));
+    }
+
+    /**
+     * Instance to compute the lower bounds of a part of the objects.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance extends AbstractDoubleProcessor.Instance {
+      /**
+       * Iterators over all objects.
+       */
+      private DBIDArrayIter pA = ids.iter(), pB = ids.iter();
+
+      /**
+       * Nearest neighbor heap (will be reused).
+       */
+      private KNNHeap nn = DBIDUtil.newHeap(k);
+
+      /**
+       * Constructor.
+       *
+       * @param output Output variable
+       */
+      protected Instance(SharedDouble.Instance output) {
+        super(output);
+      }
+
+      @Override
+      public void map(DBIDRef id) {
+        final int i = offsets.intValue(id);
+        pA.seek(i);
+        final double simAA = diag[i];
+        // Compute nearest neighbors and distances.
+        nn.clear();
+        // Sum of 1./(|AB|) and 1./(|AB|^2); for computing R2.
+        double sumid = 0., sumisqd = 0.;
+        for(pB.seek(0); pB.valid(); pB.advance()) {
+          if(pB.getOffset() == i) {
+            continue;
+          }
+          double simBB = diag[pB.getOffset()];
+          double simAB = sq.similarity(pA, pB);
+          double sqdAB = simAA + simBB - simAB - simAB;
+          final double isqdAB = 1. / sqdAB;
+          sumid += FastMath.sqrt(isqdAB);
+          sumisqd += isqdAB;
+          // Update heap
+          nn.insert(sqdAB, pB);
+        }
+        KNNList nl = nn.toKNNList();
+
+        // Compute FastABOD approximation, adjust for lower bound.
+        // LB-ABOF is defined via a numerically unstable formula.
+        // Variance as E(X^2)-E(X)^2 suffers from catastrophic cancellation!
+        // TODO: ensure numerical precision!
+        double nnsum = 0., nnsumsq = 0., nnsumisqd = 0.;
+        DoubleDBIDListIter iB = nl.iter(), iC = nl.iter();
+        for(; iB.valid(); iB.advance()) {
+          double sqdAB = iB.doubleValue();
+          double simAB = sq.similarity(pA, iB);
+          if(!(sqdAB > 0.)) {
+            continue;
+          }
+          for(iC.seek(iB.getOffset() + 1); iC.valid(); iC.advance()) {
+            double sqdAC = iC.doubleValue();
+            double simAC = sq.similarity(pA, iC);
+            if(!(sqdAC > 0.)) {
+              continue;
+            }
+            // Exploit bilinearity of scalar product:
+            // <B-A, C-A> = <B, C-A> - <A,C-A>
+            // = <B,C> - <B,A> - <A,C> + <A,A>
+            double simBC = sq.similarity(iB, iC);
+            double numerator = simBC - simAB - simAC + simAA;
+            double sqweight = 1. / (sqdAB * sqdAC);
+            double weight = FastMath.sqrt(sqweight);
+            double val = numerator * sqweight;
+            nnsum += val * weight;
+            nnsumsq += val * val * weight;
+            nnsumisqd += sqweight;
+          }
+        }
+        // Remaining weight, term R2:
+        double r2 = sumisqd * sumisqd - 2. * nnsumisqd;
+        double tmp = (2. * nnsum + r2) / (sumid * sumid);
+        output.set(2. * nnsumsq / (sumid * sumid) - tmp * tmp);
+      }
+    }
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
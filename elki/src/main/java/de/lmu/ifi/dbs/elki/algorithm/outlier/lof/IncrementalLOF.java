@@ -0,0 +1,873 @@
+package de.lmu.ifi.dbs.elki.algorithm.outlier.lof;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.outlier.OutlierAlgorithm;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.UpdatableDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreEvent;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreListener;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.rknn.RKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.DoubleRelation;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
+import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.math.MeanVariance;
+import de.lmu.ifi.dbs.elki.math.statistics.distribution.NormalDistribution;
+import de.lmu.ifi.dbs.elki.result.BasicResult;
+import de.lmu.ifi.dbs.elki.result.Result;
+import de.lmu.ifi.dbs.elki.result.ResultListener;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
+import de.lmu.ifi.dbs.elki.result.outlier.ProbabilisticOutlierScore;
+import de.lmu.ifi.dbs.elki.result.outlier.QuotientOutlierScoreMeta;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.EnumParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+import net.jafama.FastMath;
+
+/**
+ * Incremental {@link LOF}, {@link SimplifiedLOF} and {@link LoOP}, which keep
+ * the outlier scores up to date when objects are inserted into or removed from
+ * an {@link UpdatableDatabase}.
+ *
+ * The k nearest neighbors and the reverse k nearest neighbors of all objects
+ * are materialized. On insertion, the new objects are queried with the kNN
+ * query, and the objects that receive a new neighbor are found with the RkNN
+ * query of an index (such as the
+ * {@link de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNAndRKNNPreprocessor}),
+ * if the database has one. Otherwise, a single range query bounded by the
+ * largest k-distance is used, so that an index such as the M-tree can be used;
+ * the bound is only recomputed after many removals. On removal, only the
+ * objects that lost a neighbor are queried again. Densities are only
+ * recomputed for objects whose neighbors or neighbor k-distances changed, and
+ * scores only for their reverse neighbors. Updated objects are handled as a
+ * removal followed by an insertion.
+ *
+ * The processing time of every update is recorded; use
+ * {@link Instance#getLatency()} for the mean and deviation per object, and
+ * enable statistics logging to have them reported after each update.
+ *
+ * The current state is attached to the returned result as child result
+ * ({@link Instance}); use {@link Instance#getResult()} to obtain an up-to-date
+ * outlier result after updates. The instance stops listening to the database
+ * when it is removed from the result hierarchy, or when
+ * {@link Instance#detach()} is called.
+ *
+ * Reference:
+ * <p>
+ * D. Pokrajac, A. Lazarevic, L. J. Latecki:<br />
+ * Incremental Local Outlier Detection for Data Streams.<br />
+ * In Proc. IEEE Symposium on Computational Intelligence and Data Mining (CIDM
+ * 2007).
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has Instance
+ *
+ * @param <O> the type of Object the algorithm is applied to
+ */
+@Reference(authors = "D. Pokrajac, A. Lazarevic, L. J. Latecki", //
+title = "Incremental Local Outlier Detection for Data Streams", //
+booktitle = "Proc. IEEE Symposium on Computational Intelligence and Data Mining (CIDM 2007)", //
+url = "http://dx.doi.org/10.1109/CIDM.2007.368917")
+public class IncrementalLOF<O> extends AbstractDistanceBasedAlgorithm<O, OutlierResult> implements OutlierAlgorithm {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(IncrementalLOF.class);
+
+  /**
+   * Outlier model to maintain.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static enum Variant {
+    /** Local outlier factor, see {@link LOF}. */
+    LOF, //
+    /** Simplified local outlier factor, see {@link SimplifiedLOF}. */
+    SIMPLIFIED_LOF, //
+    /** Local outlier probabilities, see {@link LoOP}. */
+    LOOP, //
+  }
+
+  /**
+   * The number of neighbors to use (excluding the query point).
+   */
+  protected int k;
+
+  /**
+   * Outlier model.
+   */
+  protected Variant variant;
+
+  /**
+   * Number of standard deviations for the LoOP normalization.
+   */
+  protected double lambda;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param k Number of neighbors (excluding the query point)
+   * @param variant Outlier model
+   * @param lambda Number of standard deviations, LoOP only
+   */
+  public IncrementalLOF(DistanceFunction<? super O> distanceFunction, int k, Variant variant, double lambda) {
+    super(distanceFunction);
+    this.k = k;
+    this.variant = variant;
+    this.lambda = lambda;
+  }
+
+  /**
+   * Compute the initial scores, and start listening for database updates.
+   *
+   * @param database Database
+   * @param relation Relation
+   * @return Current outlier result
+   */
+  public OutlierResult run(Database database, Relation<O> relation) {
+    if(!(database instanceof UpdatableDatabase)) {
+      LOG.warning("The database is not updatable, incremental LOF will only compute a static result.");
+    }
+    DistanceQuery<O> dq = database.getDistanceQuery(relation, getDistanceFunction());
+    KNNQuery<O> knnq = database.getKNNQuery(dq, k + 1, DatabaseQuery.HINT_HEAVY_USE);
+    RangeQuery<O> rq = database.getRangeQuery(dq, DatabaseQuery.HINT_HEAVY_USE);
+    // Only use an index, the linear scan is more expensive than the range query.
+    RKNNQuery<O> rknnq = database.getRKNNQuery(dq, k + 1, DatabaseQuery.HINT_HEAVY_USE, DatabaseQuery.HINT_OPTIMIZED_ONLY);
+    Instance<O> instance = new Instance<>(relation, knnq, rq, rknnq, k, variant, lambda);
+    instance.initialize();
+    instance.attach(database);
+    OutlierResult result = instance.getResult();
+    result.addChildResult(instance);
+    return result;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(getDistanceFunction().getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Outlier state of a single run, updated on database changes.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  public static class Instance<O> extends BasicResult implements DataStoreListener, ResultListener {
+    /**
+     * Data relation.
+     */
+    private Relation<O> relation;
+
+    /**
+     * kNN query.
+     */
+    private KNNQuery<O> knnQuery;
+
+    /**
+     * Range query, to find reverse neighbors of new objects.
+     */
+    private RangeQuery<O> rangeQuery;
+
+    /**
+     * RkNN query of an index, to find reverse neighbors of new objects; may be
+     * {@code null}.
+     */
+    private RKNNQuery<O> rknnQuery;
+
+    /**
+     * Database the instance listens to, {@code null} when detached.
+     */
+    private Database database;
+
+    /**
+     * Number of neighbors, including the query point.
+     */
+    private int kplus;
+
+    /**
+     * Outlier model.
+     */
+    private Variant variant;
+
+    /**
+     * Number of standard deviations, LoOP only.
+     */
+    private double lambda;
+
+    /**
+     * Materialized neighbors (including the object itself, with ties), sorted
+     * by distance.
+     */
+    private WritableDataStore<ModifiableDoubleDBIDList> knns;
+
+    /**
+     * Reverse neighbors, i.e. the objects that have an object in their
+     * neighbor list (excluding the object itself).
+     */
+    private WritableDataStore<HashSetModifiableDBIDs> rknns;
+
+    /**
+     * Densities: lrd for LOF and SimplifiedLOF, pdist for LoOP.
+     */
+    private WritableDoubleDataStore dens;
+
+    /**
+     * Scores: LOF, SimplifiedLOF, or PLOF for LoOP.
+     */
+    private WritableDoubleDataStore scores;
+
+    /**
+     * Sum of squared PLOF deviations, for the LoOP normalization.
+     */
+    private double plofsq;
+
+    /**
+     * Upper bound of the k-distances, for finding reverse neighbors.
+     */
+    private double maxkdist;
+
+    /**
+     * Number of objects removed since the k-distance bound was computed.
+     */
+    private int removed;
+
+    /**
+     * Latency per inserted object, in milliseconds.
+     */
+    private MeanVariance latency = new MeanVariance();
+
+    /**
+     * Number of updated scores per inserted object.
+     */
+    private MeanVariance updated = new MeanVariance();
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param knnQuery kNN query, for k+1 neighbors
+     * @param rangeQuery Range query
+     * @param rknnQuery RkNN query of an index, for k+1 neighbors; may be
+     *        {@code null}
+     * @param k Number of neighbors (excluding the query point)
+     * @param variant Outlier model
+     * @param lambda Number of standard deviations, LoOP only
+     */
+    public Instance(Relation<O> relation, KNNQuery<O> knnQuery, RangeQuery<O> rangeQuery, RKNNQuery<O> rknnQuery, int k, Variant variant, double lambda) {
+      super("Incremental LOF", "incremental-lof");
+      this.relation = relation;
+      this.knnQuery = knnQuery;
+      this.rangeQuery = rangeQuery;
+      this.rknnQuery = rknnQuery;
+      this.kplus = k + 1;
+      this.variant = variant;
+      this.lambda = lambda;
+    }
+
+    /**
+     * Compute the initial scores.
+     */
+    public void initialize() {
+      final DBIDs ids = relation.getDBIDs();
+      knns = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT, ModifiableDoubleDBIDList.class);
+      rknns = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT, HashSetModifiableDBIDs.class);
+      dens = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT, Double.NaN);
+      scores = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT, Double.NaN);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Materializing neighborhoods", ids.size(), LOG) : null;
+      maxkdist = 0.;
+      removed = 0;
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        knns.put(it, query(it, DBIDUtil.EMPTYDBIDS));
+        rknns.put(it, DBIDUtil.newHashSet());
+        LOG.incrementProcessed(prog);
+      }
+      LOG.ensureCompleted(prog);
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        for(DBIDIter n = knns.get(it).iter(); n.valid(); n.advance()) {
+          if(!DBIDUtil.equal(n, it)) {
+            rknns.get(n).add(it);
+          }
+        }
+      }
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        dens.putDouble(it, computeDensity(it));
+      }
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        updateScore(it);
+      }
+    }
+
+    /**
+     * Start listening to updates of the database. The instance is detached
+     * automatically when it is removed from the database result hierarchy.
+     *
+     * @param database Database to listen to
+     */
+    public void attach(Database database) {
+      detach();
+      this.database = database;
+      database.addDataStoreListener(this);
+      database.getHierarchy().addResultListener(this);
+    }
+
+    /**
+     * Stop listening to database updates; the scores are no longer maintained
+     * afterwards.
+     */
+    public void detach() {
+      if(database != null) {
+        database.removeDataStoreListener(this);
+        database.getHierarchy().removeResultListener(this);
+        database = null;
+      }
+    }
+
+    @Override
+    public void resultAdded(Result child, Result parent) {
+      // Ignore
+    }
+
+    @Override
+    public void resultChanged(Result current) {
+      // Ignore
+    }
+
+    @Override
+    public void resultRemoved(Result child, Result parent) {
+      if(child == this) {
+        detach();
+      }
+    }
+
+    @Override
+    public void contentChanged(DataStoreEvent e) {
+      if(!e.getRemovals().isEmpty()) {
+        remove(e.getRemovals(), false);
+      }
+      if(!e.getUpdates().isEmpty()) {
+        remove(e.getUpdates(), true);
+        insert(e.getUpdates(), true);
+      }
+      if(!e.getInserts().isEmpty()) {
+        insert(e.getInserts(), false);
+      }
+    }
+
+    /**
+     * Process newly inserted objects.
+     *
+     * @param ids New objects
+     * @param moved {@code true} for updated objects, which an index may not
+     *        have seen at their new location
+     */
+    protected void insert(DBIDs ids, boolean moved) {
+      final long start = System.nanoTime();
+      final DBIDs newids = ids.size() > 1 ? DBIDUtil.newHashSet(ids) : ids;
+      final boolean rknn = rknnQuery != null && !moved;
+      final double radius = rknn ? Double.NaN : getKDistanceBound();
+      // Objects with changed neighbors, and with changed k-distance.
+      HashSetModifiableDBIDs changed = DBIDUtil.newHashSet(ids);
+      HashSetModifiableDBIDs kchanged = DBIDUtil.newHashSet();
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        knns.put(it, query(it, DBIDUtil.EMPTYDBIDS));
+        rknns.put(it, DBIDUtil.newHashSet());
+      }
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        ModifiableDoubleDBIDList nl = knns.get(it);
+        for(DBIDIter n = nl.iter(); n.valid(); n.advance()) {
+          if(!DBIDUtil.equal(n, it)) {
+            rknns.get(n).add(it);
+          }
+        }
+        // Existing objects that get the new object as neighbor:
+        DoubleDBIDList cands = rknn ? rknnQuery.getRKNNForDBID(it, kplus) : rangeQuery.getRangeForDBID(it, radius);
+        for(DoubleDBIDListIter c = cands.iter(); c.valid(); c.advance()) {
+          if(newids.contains(c)) {
+            continue; // Already complete, including the object itself.
+          }
+          ModifiableDoubleDBIDList cl = knns.get(c);
+          if(cl == null || (cl.size() >= kplus && c.doubleValue() > kdist(cl))) {
+            continue;
+          }
+          changed.add(c);
+          if(addNeighbor(c, cl, c.doubleValue(), it)) {
+            kchanged.add(c);
+          }
+        }
+      }
+      final int count = update(changed, kchanged);
+      final int size = ids.size();
+      final double millis = (System.nanoTime() - start) * 1e-6;
+      latency.put(millis / size, size);
+      updated.put(count / (double) size, size);
+      if(LOG.isStatistics()) {
+        final String key = IncrementalLOF.class.getName();
+        LOG.statistics(new LongStatistic(key + ".insert.objects", size));
+        LOG.statistics(new LongStatistic(key + ".insert.updated-scores", count));
+        LOG.statistics(new DoubleStatistic(key + ".insert.latency-ms", millis / size));
+        LOG.statistics(new DoubleStatistic(key + ".insert.latency-ms.mean", latency.getMean()));
+        LOG.statistics(new DoubleStatistic(key + ".insert.latency-ms.stddev", latency.getSampleStddev()));
+      }
+    }
+
+    /**
+     * Process removed objects. The objects may no longer be available in the
+     * relation, so only the materialized neighborhoods are used.
+     *
+     * Updated objects are still in the relation, at their new location, and
+     * are reinserted afterwards: they are excluded from the neighbors found
+     * when objects are queried again.
+     *
+     * @param ids Removed objects
+     * @param moved {@code true} for updated objects, which are reinserted
+     */
+    protected void remove(DBIDs ids, boolean moved) {
+      final DBIDs delids = ids.size() > 1 ? DBIDUtil.newHashSet(ids) : ids;
+      final DBIDs exclude = moved ? delids : DBIDUtil.EMPTYDBIDS;
+      HashSetModifiableDBIDs changed = DBIDUtil.newHashSet();
+      HashSetModifiableDBIDs kchanged = DBIDUtil.newHashSet();
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        ModifiableDoubleDBIDList nl = knns.get(it);
+        if(nl == null) {
+          continue;
+        }
+        for(DBIDIter n = nl.iter(); n.valid(); n.advance()) {
+          HashSetModifiableDBIDs rn = DBIDUtil.equal(n, it) ? null : rknns.get(n);
+          if(rn != null) {
+            rn.remove(it);
+          }
+        }
+        for(DBIDIter r = rknns.get(it).iter(); r.valid(); r.advance()) {
+          if(!delids.contains(r)) {
+            changed.add(r);
+          }
+        }
+        if(variant == Variant.LOOP) {
+          final double plof = scores.doubleValue(it);
+          plofsq -= (plof - 1.) * (plof - 1.);
+        }
+        knns.delete(it);
+        rknns.delete(it);
+        dens.delete(it);
+        scores.delete(it);
+      }
+      // Remove the deleted objects from the neighbor lists:
+      DBIDVar var = DBIDUtil.newVar();
+      for(DBIDIter it = changed.iter(); it.valid(); it.advance()) {
+        ModifiableDoubleDBIDList cl = knns.get(it);
+        for(int i = cl.size() - 1; i >= 0; i--) {
+          if(delids.contains(cl.assignVar(i, var))) {
+            cl.remove(i);
+          }
+        }
+        // Removing from a tie-inclusive list keeps the k-distance, unless too
+        // few neighbors remain.
+        if(cl.size() >= kplus) {
+          continue;
+        }
+        final double old = kdist(cl);
+        for(DBIDIter n = cl.iter(); n.valid(); n.advance()) {
+          if(!DBIDUtil.equal(n, it)) {
+            rknns.get(n).remove(it);
+          }
+        }
+        cl = query(it, exclude);
+        knns.put(it, cl);
+        for(DBIDIter n = cl.iter(); n.valid(); n.advance()) {
+          if(!DBIDUtil.equal(n, it)) {
+            rknns.get(n).add(it);
+          }
+        }
+        if(kdist(cl) != old) {
+          kchanged.add(it);
+        }
+      }
+      removed += ids.size();
+      update(changed, kchanged);
+    }
+
+    /**
+     * Update densities and scores after neighbor lists have changed.
+     *
+     * @param changed Objects with changed neighbor lists
+     * @param kchanged Objects with changed k-distance
+     * @return Number of updated scores
+     */
+    private int update(DBIDs changed, DBIDs kchanged) {
+      // Only the LOF reachability distance uses the neighbors k-distance.
+      HashSetModifiableDBIDs dcands = DBIDUtil.newHashSet(changed);
+      if(variant == Variant.LOF) {
+        for(DBIDIter it = kchanged.iter(); it.valid(); it.advance()) {
+          dcands.addDBIDs(rknns.get(it));
+        }
+      }
+      HashSetModifiableDBIDs scands = DBIDUtil.newHashSet(changed);
+      for(DBIDIter it = dcands.iter(); it.valid(); it.advance()) {
+        final double old = dens.doubleValue(it), lrd = computeDensity(it);
+        if(Double.compare(old, lrd) != 0) {
+          dens.putDouble(it, lrd);
+          scands.add(it);
+          scands.addDBIDs(rknns.get(it));
+        }
+      }
+      for(DBIDIter it = scands.iter(); it.valid(); it.advance()) {
+        updateScore(it);
+      }
+      return scands.size();
+    }
+
+    /**
+     * Add a neighbor to a neighbor list, maintaining the sort order, ties, and
+     * the reverse neighbors.
+     *
+     * @param owner List owner
+     * @param list Neighbor list
+     * @param d Distance
+     * @param id New neighbor
+     * @return {@code true} when the k-distance changed
+     */
+    private boolean addNeighbor(DBIDRef owner, ModifiableDoubleDBIDList list, double d, DBIDRef id) {
+      final double old = kdist(list);
+      list.add(d, id);
+      rknns.get(id).add(owner);
+      DoubleDBIDListIter a = list.iter(), b = list.iter();
+      for(int i = list.size() - 1; i > 0 && a.seek(i - 1).doubleValue() > d; i--) {
+        list.swap(i - 1, i);
+      }
+      if(list.size() > kplus) {
+        final double kd = a.seek(kplus - 1).doubleValue();
+        for(int i = list.size() - 1; b.seek(i).doubleValue() > kd; i--) {
+          rknns.get(b).remove(owner);
+          list.remove(i);
+        }
+      }
+      return kdist(list) != old;
+    }
+
+    /**
+     * Compute the density of an object: the local reachability density for
+     * LOF, the inverse mean distance for SimplifiedLOF, and the probabilistic
+     * distance for LoOP.
+     *
+     * @param id Object
+     * @return Density
+     */
+    private double computeDensity(DBIDRef id) {
+      double sum = 0.;
+      int count = 0;
+      for(DoubleDBIDListIter n = knns.get(id).iter(); n.valid(); n.advance()) {
+        if(DBIDUtil.equal(n, id)) {
+          continue;
+        }
+        final double d = n.doubleValue();
+        switch(variant){
+        case LOF:
+          sum += MathUtil.max(d, kdist(knns.get(n)));
+          break;
+        case SIMPLIFIED_LOF:
+          sum += d;
+          break;
+        case LOOP:
+          sum += d * d;
+          if(++count == kplus - 1) {
+            return FastMath.sqrt(sum / count);
+          }
+          continue;
+        }
+        count++;
+      }
+      if(variant == Variant.LOOP) {
+        return count > 0 ? FastMath.sqrt(sum / count) : 0.;
+      }
+      // Avoid division by 0
+      return (sum > 0) ? (count / sum) : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Recompute the score of an object, from the stored densities.
+     *
+     * @param id Object
+     */
+    private void updateScore(DBIDRef id) {
+      final double dp = dens.doubleValue(id);
+      double sum = 0.;
+      int count = 0;
+      for(DBIDIter n = knns.get(id).iter(); n.valid(); n.advance()) {
+        if(DBIDUtil.equal(n, id)) {
+          continue;
+        }
+        final double val = dens.doubleValue(n);
+        sum += val;
+        count++;
+        if((variant == Variant.SIMPLIFIED_LOF && Double.isInfinite(val)) || (variant == Variant.LOOP && count == kplus - 1)) {
+          break;
+        }
+      }
+      if(variant != Variant.LOOP) {
+        scores.putDouble(id, Double.isInfinite(dp) ? 1. : sum / (dp * count));
+        return;
+      }
+      double plof = MathUtil.max(dp * count / sum, 1.0);
+      if(Double.isNaN(plof) || Double.isInfinite(plof)) {
+        plof = 1.0;
+      }
+      final double old = scores.putDouble(id, plof);
+      if(!Double.isNaN(old)) {
+        plofsq -= (old - 1.) * (old - 1.);
+      }
+      plofsq += (plof - 1.) * (plof - 1.);
+    }
+
+    /**
+     * Get the current outlier score of an object.
+     *
+     * @param id Object
+     * @return Score
+     */
+    public double getScore(DBIDRef id) {
+      final double s = scores.doubleValue(id);
+      return variant == Variant.LOOP ? NormalDistribution.erf((s - 1.) * getLoOPNormalization()) : s;
+    }
+
+    /**
+     * Get the LoOP normalization factor.
+     *
+     * @return Factor to multiply PLOF - 1 with
+     */
+    private double getLoOPNormalization() {
+      final double nplof = lambda * FastMath.sqrt(MathUtil.max(plofsq, 0.) / relation.size());
+      return 1. / ((nplof > 0. ? nplof : 1.) * MathUtil.SQRT2);
+    }
+
+    /**
+     * Build the current outlier result.
+     *
+     * @return Outlier result
+     */
+    public OutlierResult getResult() {
+      ArrayDBIDs ids = DBIDUtil.newArray(relation.getDBIDs());
+      WritableDoubleDataStore out = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC | DataStoreFactory.HINT_DB);
+      DoubleMinMax minmax = new DoubleMinMax();
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        final double s = getScore(it);
+        out.putDouble(it, s);
+        minmax.put(s);
+      }
+      switch(variant){
+      case SIMPLIFIED_LOF: {
+        DoubleRelation scoreResult = new MaterializedDoubleRelation("Simplified Local Outlier Factor", "simplified-lof-outlier", out, ids);
+        return new OutlierResult(new QuotientOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0., Double.POSITIVE_INFINITY, 1.), scoreResult);
+      }
+      case LOOP: {
+        DoubleRelation scoreResult = new MaterializedDoubleRelation("Local Outlier Probabilities", "loop-outlier", out, ids);
+        return new OutlierResult(new ProbabilisticOutlierScore(minmax.getMin(), minmax.getMax(), 0.), scoreResult);
+      }
+      default: {
+        DoubleRelation scoreResult = new MaterializedDoubleRelation("Local Outlier Factor", "lof-outlier", out, ids);
+        OutlierScoreMeta scoreMeta = new QuotientOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0.0, Double.POSITIVE_INFINITY, 1.0);
+        return new OutlierResult(scoreMeta, scoreResult);
+      }
+      }
+    }
+
+    /**
+     * Get the processing time per inserted object, in milliseconds.
+     *
+     * @return Latency statistics
+     */
+    public MeanVariance getLatency() {
+      return latency;
+    }
+
+    /**
+     * Get the number of updated scores per inserted object.
+     *
+     * @return Update statistics
+     */
+    public MeanVariance getUpdatedScores() {
+      return updated;
+    }
+
+    /**
+     * Get an upper bound of the k-distances of all objects.
+     *
+     * Removals can only increase the k-distances of the remaining objects, so
+     * the bound remains valid. It is recomputed once the removed objects amount
+     * to half of the relation, which amortizes the scan.
+     *
+     * @return Bound, infinite if some object has less than k neighbors.
+     */
+    private double getKDistanceBound() {
+      if(removed > relation.size() >> 1) {
+        maxkdist = 0.;
+        for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+          ModifiableDoubleDBIDList nl = knns.get(it);
+          if(nl != null) {
+            maxkdist = MathUtil.max(maxkdist, kdist(nl));
+          }
+        }
+        removed = 0;
+      }
+      return maxkdist;
+    }
+
+    /**
+     * Get the k-distance of a neighbor list.
+     *
+     * @param list Neighbor list
+     * @return k-distance, infinite if the list is incomplete
+     */
+    private double kdist(DoubleDBIDList list) {
+      return list.size() < kplus ? Double.POSITIVE_INFINITY : list.iter().seek(kplus - 1).doubleValue();
+    }
+
+    /**
+     * Retrieve the neighbors of an object, and update the k-distance bound.
+     *
+     * @param id Object
+     * @param exclude Objects to omit from the neighbors, as they will be
+     *        reinserted
+     * @return Neighbors, including the object itself
+     */
+    private ModifiableDoubleDBIDList query(DBIDRef id, DBIDs exclude) {
+      DoubleDBIDList knn = knnQuery.getKNNForDBID(id, kplus);
+      // Bound with all neighbors, the excluded objects are found on reinsertion.
+      maxkdist = MathUtil.max(maxkdist, kdist(knn));
+      ModifiableDoubleDBIDList list = DBIDUtil.newDistanceDBIDList(knn.size());
+      for(DoubleDBIDListIter n = knn.iter(); n.valid(); n.advance()) {
+        if(!exclude.contains(n)) {
+          list.add(n.doubleValue(), n);
+        }
+      }
+      return list;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Object type
+   */
+  public static class Parameterizer<O> extends AbstractDistanceBasedAlgorithm.Parameterizer<O> {
+    /**
+     * Outlier model to maintain.
+     * <p>
+     * Key: {@code -incrementallof.variant}
+     * </p>
+     */
+    public static final OptionID VARIANT_ID = new OptionID("incrementallof.variant", "Outlier model to maintain: LOF, SIMPLIFIED_LOF or LOOP.");
+
+    /**
+     * The neighborhood size to use.
+     */
+    protected int k = 2;
+
+    /**
+     * Outlier model.
+     */
+    protected Variant variant = Variant.LOF;
+
+    /**
+     * Number of standard deviations, LoOP only.
+     */
+    protected double lambda = 2.;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      final IntParameter pK = new IntParameter(LOF.Parameterizer.K_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(pK)) {
+        k = pK.intValue();
+      }
+      EnumParameter<Variant> variantP = new EnumParameter<>(VARIANT_ID, Variant.class, Variant.LOF);
+      if(config.grab(variantP)) {
+        variant = variantP.getValue();
+      }
+      if(variant == Variant.LOOP) {
+        DoubleParameter lambdaP = new DoubleParameter(LoOP.Parameterizer.LAMBDA_ID, 2.0) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+        if(config.grab(lambdaP)) {
+          lambda = lambdaP.doubleValue();
+        }
+      }
+    }
+
+    @Override
+    protected IncrementalLOF<O> makeInstance() {
+      return new IncrementalLOF<>(distanceFunction, k, variant, lambda);
+    }
+  }
+}
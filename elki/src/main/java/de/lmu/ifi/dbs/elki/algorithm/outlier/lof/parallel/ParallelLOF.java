@@ -42,6 +42,7 @@ import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
 import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.parallel.processor.DoubleMinMaxProcessor;
@@ -132,7 +133,9 @@ public class ParallelLOF<O> extends AbstractDistanceBasedAlgorithm<O, OutlierRes
       kdistm.connectOutput(kdistv);
       storem.connectInput(kdistv);
 
-      ParallelExecutor.run(ids, knnm, storek, kdistm, storem);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("k-nearest neighbors", ids.size(), LOG) : null;
+      ParallelExecutor.run(ids, prog, LOG, knnm, storek, kdistm, storem);
+      LOG.ensureCompleted(prog);
     }
 
     // Phase two: lrd
@@ -144,7 +147,9 @@ public class ParallelLOF<O> extends AbstractDistanceBasedAlgorithm<O, OutlierRes
 
       lrdm.connectOutput(lrdv);
       storelrd.connectInput(lrdv);
-      ParallelExecutor.run(ids, lrdm, storelrd);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Local Reachability Densities (LRD)", ids.size(), LOG) : null;
+      ParallelExecutor.run(ids, prog, LOG, lrdm, storelrd);
+      LOG.ensureCompleted(prog);
     }
     kdists.destroy(); // No longer needed.
     kdists = null;
@@ -161,7 +166,9 @@ public class ParallelLOF<O> extends AbstractDistanceBasedAlgorithm<O, OutlierRes
       lofm.connectOutput(lofv);
       mmm.connectInput(lofv);
       storelof.connectInput(lofv);
-      ParallelExecutor.run(ids, lofm, storelof, mmm);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Local Outlier Factor (LOF) scores", ids.size(), LOG) : null;
+      ParallelExecutor.run(ids, prog, LOG, lofm, storelof, mmm);
+      LOG.ensureCompleted(prog);
 
       minmax = mmm.getMinMax();
     }
@@ -42,6 +42,7 @@ import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
 import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.parallel.processor.DoubleMinMaxProcessor;
@@ -123,7 +124,9 @@ public class ParallelSimplifiedLOF<O> extends AbstractDistanceBasedAlgorithm<O,
       knnm.connectKNNOutput(knnv);
       storek.connectInput(knnv);
 
-      ParallelExecutor.run(ids, knnm, storek);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("k-nearest neighbors", ids.size(), LOG) : null;
+      ParallelExecutor.run(ids, prog, LOG, knnm, storek);
+      LOG.ensureCompleted(prog);
     }
 
     // Phase two: simplified-lrd
@@ -135,7 +138,9 @@ public class ParallelSimplifiedLOF<O> extends AbstractDistanceBasedAlgorithm<O,
 
       lrdm.connectOutput(lrdv);
       storelrd.connectInput(lrdv);
-      ParallelExecutor.run(ids, lrdm, storelrd);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Local densities", ids.size(), LOG) : null;
+      ParallelExecutor.run(ids, prog, LOG, lrdm, storelrd);
+      LOG.ensureCompleted(prog);
     }
 
     // Phase three: Simplified-LOF
@@ -150,7 +155,9 @@ public class ParallelSimplifiedLOF<O> extends AbstractDistanceBasedAlgorithm<O,
       lofm.connectOutput(lofv);
       mmm.connectInput(lofv);
       storelof.connectInput(lofv);
-      ParallelExecutor.run(ids, lofm, storelof, mmm);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Simplified LOF scores", ids.size(), LOG) : null;
+      ParallelExecutor.run(ids, prog, LOG, lofm, storelof, mmm);
+      LOG.ensureCompleted(prog);
 
       minmax = mmm.getMinMax();
     }
@@ -27,6 +27,8 @@ import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
@@ -36,8 +38,6 @@ import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.OutlierAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
-import de.lmu.ifi.dbs.elki.data.VectorUtil;
-import de.lmu.ifi.dbs.elki.data.VectorUtil.SortDBIDsBySingleDimension;
 import de.lmu.ifi.dbs.elki.data.projection.NumericalFeatureSelection;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
@@ -45,11 +45,7 @@ import de.lmu.ifi.dbs.elki.database.ProxyDatabase;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
-import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.DoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
@@ -57,14 +53,18 @@ import de.lmu.ifi.dbs.elki.database.relation.ProjectedView;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.AbstractProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
 import de.lmu.ifi.dbs.elki.math.statistics.tests.GoodnessOfFitTest;
 import de.lmu.ifi.dbs.elki.math.statistics.tests.KolmogorovSmirnovTest;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.result.outlier.BasicOutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.Heap;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.TopBoundedHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
@@ -73,11 +73,16 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.TrackParameters;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.TrackedParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Parameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.FastNonThreadsafeRandom;
 import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
 import net.jafama.FastMath;
 
@@ -85,6 +90,14 @@ import net.jafama.FastMath;
  * Algorithm to compute High Contrast Subspaces for Density-Based Outlier
  * Ranking.
  * 
+ * The contrasts of the candidates of each level, and the outlier detection in
+ * the resulting subspaces, are computed in parallel. Every candidate subspace
+ * is evaluated only once, with its own random seed, so results do not depend
+ * on the number of threads. Outlier detection algorithms are not required to
+ * be thread safe: when configured via parameters, a new instance is created
+ * for every subspace; a given algorithm instance is run on one subspace at a
+ * time.
+ * 
  * Reference:
  * <p>
  * F. Keller and E. Müller and K. Böhm:<br />
@@ -130,10 +143,21 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
   private double alpha;
 
   /**
-   * Outlier detection algorithm.
+   * Outlier detection algorithm, shared by all subspaces; {@code null} when a
+   * new instance is created for each subspace.
    */
   private OutlierAlgorithm outlierAlgorithm;
 
+  /**
+   * Outlier detection algorithm class, to instantiate for each subspace.
+   */
+  private Class<?> algorithmClass;
+
+  /**
+   * Parameters of the outlier detection algorithm; only copies are consumed.
+   */
+  private ListParameterization algorithmParameters;
+
   /**
    * Statistical test to use.
    */
@@ -152,6 +176,9 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
   /**
    * Constructor.
    * 
+   * The algorithm instance is shared by all subspaces, so outlier detection is
+   * not run in parallel.
+   * 
    * @param m value of m
    * @param alpha value of alpha
    * @param outlierAlgorithm Inner outlier detection algorithm
@@ -169,6 +196,23 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
     this.rnd = rnd;
   }
 
+  /**
+   * Constructor, creating a new outlier detection algorithm for each subspace.
+   * 
+   * @param m value of m
+   * @param alpha value of alpha
+   * @param algorithmClass Inner outlier detection algorithm class
+   * @param algorithmParameters Parameters of the inner algorithm
+   * @param statTest Test to use
+   * @param cutoff Candidate limit
+   * @param rnd Random generator
+   */
+  public HiCS(int m, double alpha, Class<?> algorithmClass, ListParameterization algorithmParameters, GoodnessOfFitTest statTest, int cutoff, RandomFactory rnd) {
+    this(m, alpha, null, statTest, cutoff, rnd);
+    this.algorithmClass = algorithmClass;
+    this.algorithmParameters = algorithmParameters;
+  }
+
   /**
    * Perform HiCS on a given database.
    * 
@@ -176,33 +220,46 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
    * @return The aggregated resulting scores that were assigned by the given
    *         outlier detection algorithm
    */
-  public OutlierResult run(Relation<V> relation) {
+  public OutlierResult run(final Relation<V> relation) {
     final DBIDs ids = relation.getDBIDs();
 
-    ArrayList<ArrayDBIDs> subspaceIndex = buildOneDimIndexes(relation);
-    Set<HiCSSubspace> subspaces = calculateSubspaces(relation, subspaceIndex, rnd.getSingleThreadedRandom());
+    SortedColumns columns = buildOneDimIndexes(relation);
+    Set<HiCSSubspace> subspaces = calculateSubspaces(columns, rnd.getSingleThreadedRandom());
 
     if(LOG.isVerbose()) {
       LOG.verbose("Number of high-contrast subspaces: " + subspaces.size());
     }
-    List<DoubleRelation> results = new ArrayList<>();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Calculating Outlier scores for high Contrast subspaces", subspaces.size(), LOG) : null;
+    final HiCSSubspace[] dimsets = subspaces.toArray(new HiCSSubspace[subspaces.size()]);
+    final DoubleRelation[] results = new DoubleRelation[dimsets.length];
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Calculating Outlier scores for high Contrast subspaces", subspaces.size(), LOG) : null;
 
     // run outlier detection and collect the result
     // TODO extend so that any outlierAlgorithm can be used (use materialized
     // relation instead of SubspaceEuclideanDistanceFunction?)
-    for(HiCSSubspace dimset : subspaces) {
-      if(LOG.isVerbose()) {
-        LOG.verbose("Performing outlier detection in subspace " + dimset);
+    ParallelExecutor.RangeProcessor proc = new ParallelExecutor.RangeProcessor() {
+      @Override
+      public void process(int start, int end) {
+        for(int i = start; i < end; i++) {
+          if(LOG.isVerbose()) {
+            LOG.verbose("Performing outlier detection in subspace " + dimsets[i]);
+          }
+          ProxyDatabase pdb = new ProxyDatabase(ids);
+          pdb.addRelation(new ProjectedView<>(relation, new NumericalFeatureSelection<V>(dimsets[i])));
+
+          // run LOF and collect the result
+          OutlierAlgorithm algorithm = outlierAlgorithm != null ? outlierAlgorithm : //
+              ClassGenericsUtil.<OutlierAlgorithm> parameterizeOrAbort(algorithmClass, new ListParameterization(algorithmParameters.getRemainingParameters()));
+          results[i] = algorithm.run(pdb).getScores();
+          LOG.incrementProcessed(prog);
+        }
       }
-
-      ProxyDatabase pdb = new ProxyDatabase(ids);
-      pdb.addRelation(new ProjectedView<>(relation, new NumericalFeatureSelection<V>(dimset)));
-
-      // run LOF and collect the result
-      OutlierResult result = outlierAlgorithm.run(pdb);
-      results.add(result.getScores());
-      LOG.incrementProcessed(prog);
+    };
+    // A shared instance may not be thread safe.
+    if(outlierAlgorithm != null) {
+      proc.process(0, dimsets.length);
+    }
+    else {
+      ParallelExecutor.run(dimsets.length, 1, proc);
     }
     LOG.ensureCompleted(prog);
 
@@ -227,57 +284,69 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
   }
 
   /**
-   * Calculates "index structures" for every attribute, i.e. sorts a
-   * ModifiableArray of every DBID in the database for every dimension and
-   * stores them in a list
+   * Calculates "index structures" for every attribute, i.e. sorts the values
+   * of every dimension, and stores the object order and the rank of every
+   * object.
    * 
    * @param relation Relation to index
-   * @return List of sorted objects
+   * @return Sorted columns
    */
-  private ArrayList<ArrayDBIDs> buildOneDimIndexes(Relation<? extends NumberVector> relation) {
+  private SortedColumns buildOneDimIndexes(Relation<? extends NumberVector> relation) {
     final int dim = RelationUtil.dimensionality(relation);
-    ArrayList<ArrayDBIDs> subspaceIndex = new ArrayList<>(dim + 1);
-
-    SortDBIDsBySingleDimension comp = new VectorUtil.SortDBIDsBySingleDimension(relation);
-    for(int i = 0; i < dim; i++) {
-      ArrayModifiableDBIDs amDBIDs = DBIDUtil.newArray(relation.getDBIDs());
-      comp.setDimension(i);
-      amDBIDs.sort(comp);
-      subspaceIndex.add(amDBIDs);
+    final int size = relation.size();
+    SortedColumns columns = new SortedColumns(dim, size);
+    for(int d = 0; d < dim; d++) {
+      final double[] values = columns.values[d];
+      final int[] order = columns.order[d], rank = columns.rank[d];
+      int i = 0;
+      for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance(), i++) {
+        values[i] = relation.get(iditer).doubleValue(d);
+        order[i] = i;
+      }
+      DoubleIntegerArrayQuickSort.sort(values, order, size);
+      for(i = 0; i < size; i++) {
+        rank[order[i]] = i;
+      }
     }
-
-    return subspaceIndex;
+    return columns;
   }
 
   /**
    * Identifies high contrast subspaces in a given full-dimensional database.
    * 
-   * @param relation the relation the HiCS should be evaluated for
-   * @param subspaceIndex Subspace indexes
+   * @param columns Sorted data columns
+   * @param random Random generator
    * @return a set of high contrast subspaces
    */
-  private Set<HiCSSubspace> calculateSubspaces(Relation<? extends NumberVector> relation, ArrayList<ArrayDBIDs> subspaceIndex, Random random) {
-    final int dbdim = RelationUtil.dimensionality(relation);
+  private Set<HiCSSubspace> calculateSubspaces(SortedColumns columns, Random random) {
+    final int dbdim = columns.values.length;
 
     FiniteProgress dprog = LOG.isVerbose() ? new FiniteProgress("Subspace dimensionality", dbdim, LOG) : null;
     if(dprog != null) {
       dprog.setProcessed(2, LOG);
     }
 
+    // Subspaces already evaluated, as the same candidate is generated by
+    // different joins.
+    HashMap<HiCSSubspace, HiCSSubspace> evaluated = new HashMap<>();
     TreeSet<HiCSSubspace> subspaceList = new TreeSet<>(HiCSSubspace.SORT_BY_SUBSPACE);
     TopBoundedHeap<HiCSSubspace> dDimensionalList = new TopBoundedHeap<>(cutoff, HiCSSubspace.SORT_BY_CONTRAST_ASC);
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Generating two-element subsets", (dbdim * (dbdim - 1)) >> 1, LOG) : null;
     // compute two-element sets of subspaces
+    ArrayList<HiCSSubspace> level = new ArrayList<>();
     for(int i = 0; i < dbdim; i++) {
       for(int j = i + 1; j < dbdim; j++) {
         HiCSSubspace ts = new HiCSSubspace();
         ts.set(i);
         ts.set(j);
-        calculateContrast(relation, ts, subspaceIndex, random);
-        dDimensionalList.add(ts);
-        LOG.incrementProcessed(prog);
+        level.add(ts);
       }
     }
+    calculateContrasts(columns, level, random, prog);
+    for(HiCSSubspace ts : level) {
+      evaluated.put(ts, ts);
+      dDimensionalList.add(ts);
+    }
     LOG.ensureCompleted(prog);
 
     IndefiniteProgress qprog = LOG.isVerbose() ? new IndefiniteProgress("Testing subspace candidates", LOG) : null;
@@ -297,6 +366,7 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
       Collections.sort(candidateList, HiCSSubspace.SORT_BY_SUBSPACE);
 
       // TODO: optimize APRIORI style, by not even computing the bit set or?
+      level.clear();
       for(int i = 0; i < candidateList.size() - 1; i++) {
         for(int j = i + 1; j < candidateList.size(); j++) {
           HiCSSubspace set1 = candidateList.get(i);
@@ -305,15 +375,17 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
           HiCSSubspace joinedSet = new HiCSSubspace();
           joinedSet.or(set1);
           joinedSet.or(set2);
-          if(joinedSet.cardinality() != d) {
+          if(joinedSet.cardinality() != d || evaluated.containsKey(joinedSet)) {
             continue;
           }
-
-          calculateContrast(relation, joinedSet, subspaceIndex, random);
-          dDimensionalList.add(joinedSet);
-          LOG.incrementProcessed(qprog);
+          evaluated.put(joinedSet, joinedSet);
+          level.add(joinedSet);
         }
       }
+      calculateContrasts(columns, level, random, qprog);
+      for(HiCSSubspace joinedSet : level) {
+        dDimensionalList.add(joinedSet);
+      }
       // Prune
       for(HiCSSubspace cand : candidateList) {
         for(Heap<HiCSSubspace>.UnorderedIter it = dDimensionalList.unorderedIter(); it.valid(); it.advance()) {
@@ -332,46 +404,87 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
     return subspaceList;
   }
 
+  /**
+   * Calculates the contrast of a list of subspaces, in parallel.
+   * 
+   * Every subspace uses its own random generator, seeded in list order, so
+   * the result does not depend on the number of threads.
+   * 
+   * @param columns Sorted data columns
+   * @param subspaces Subspaces to evaluate
+   * @param random Random generator for seeding
+   * @param prog Progress, may be {@code null}
+   */
+  private void calculateContrasts(final SortedColumns columns, final List<HiCSSubspace> subspaces, Random random, final AbstractProgress prog) {
+    final int n = subspaces.size();
+    if(n == 0) {
+      return;
+    }
+    final long[] seeds = new long[n];
+    for(int i = 0; i < n; i++) {
+      seeds[i] = random.nextLong();
+    }
+    ParallelExecutor.run(n, 1, new ParallelExecutor.RangeProcessor() {
+      @Override
+      public void process(int start, int end) {
+        final int size = columns.order[0].length;
+        int[] cand = new int[size];
+        double[] fullValues = new double[size];
+        for(int i = start; i < end; i++) {
+          calculateContrast(columns, subspaces.get(i), new FastNonThreadsafeRandom(seeds[i]), cand, fullValues);
+          LOG.incrementProcessed(prog);
+        }
+      }
+    });
+  }
+
   /**
    * Calculates the actual contrast of a given subspace.
    * 
-   * @param relation Relation to process
+   * @param columns Sorted data columns
    * @param subspace Subspace
-   * @param subspaceIndex Subspace indexes
+   * @param random Random generator
+   * @param cand Buffer for the conditional sample
+   * @param fullValues Buffer for the full sample
    */
-  private void calculateContrast(Relation<? extends NumberVector> relation, HiCSSubspace subspace, ArrayList<ArrayDBIDs> subspaceIndex, Random random) {
+  private void calculateContrast(SortedColumns columns, HiCSSubspace subspace, Random random, int[] cand, double[] fullValues) {
+    final int size = fullValues.length;
     final int card = subspace.cardinality();
     final double alpha1 = FastMath.pow(alpha, (1.0 / card));
-    final int windowsize = (int) (relation.size() * alpha1);
-    final FiniteProgress prog = LOG.isDebugging() ? new FiniteProgress("Monte-Carlo iterations", m, LOG) : null;
+    final int windowsize = (int) (size * alpha1);
+    final int[] dims = new int[card];
+    for(int j = subspace.nextSetBit(0), l = 0; j >= 0; j = subspace.nextSetBit(j + 1)) {
+      dims[l++] = j;
+    }
 
     int retries = 0;
     double deviationSum = 0.0;
     for(int i = 0; i < m; i++) {
       // Choose a random set bit.
-      int chosen = -1;
-      for(int tmp = random.nextInt(card); tmp >= 0; tmp--) {
-        chosen = subspace.nextSetBit(chosen + 1);
-      }
-      // initialize sample
-      DBIDs conditionalSample = relation.getDBIDs();
-
-      for(int j = subspace.nextSetBit(0); j >= 0; j = subspace.nextSetBit(j + 1)) {
+      final int chosen = dims[random.nextInt(card)];
+      // Intersect the index blocks of all other dimensions, using the ranks.
+      int csize = -1;
+      for(int j : dims) {
         if(j == chosen) {
           continue;
         }
-        ArrayDBIDs sortedIndices = subspaceIndex.get(j);
-        ArrayModifiableDBIDs indexBlock = DBIDUtil.newArray(windowsize);
-        // initialize index block
-        DBIDArrayIter iter = sortedIndices.iter();
-        iter.seek(random.nextInt(relation.size() - windowsize));
-        for(int k = 0; k < windowsize; k++, iter.advance()) {
-          indexBlock.add(iter); // select index block
+        final int start = random.nextInt(size - windowsize), end = start + windowsize;
+        if(csize < 0) {
+          System.arraycopy(columns.order[j], start, cand, 0, windowsize);
+          csize = windowsize;
+          continue;
         }
-
-        conditionalSample = DBIDUtil.intersection(conditionalSample, indexBlock);
+        final int[] rank = columns.rank[j];
+        int l = 0;
+        for(int k = 0; k < csize; k++) {
+          final int r = rank[cand[k]];
+          if(r >= start && r < end) {
+            cand[l++] = cand[k];
+          }
+        }
+        csize = l;
       }
-      if(conditionalSample.size() < 10) {
+      if(csize < 10) {
         retries++;
         if(LOG.isDebugging()) {
           LOG.debug("Sample size very small. Retry no. " + retries);
@@ -385,23 +498,14 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
         }
       }
       // Project conditional set
-      double[] sampleValues = new double[conditionalSample.size()];
-      {
-        int l = 0;
-        for(DBIDIter iter = conditionalSample.iter(); iter.valid(); iter.advance()) {
-          sampleValues[l] = relation.get(iter).doubleValue(chosen);
-          l++;
-        }
-      }
-      // Project full set
-      double[] fullValues = new double[relation.size()];
-      {
-        int l = 0;
-        for(DBIDIter iter = subspaceIndex.get(chosen).iter(); iter.valid(); iter.advance()) {
-          fullValues[l] = relation.get(iter).doubleValue(chosen);
-          l++;
-        }
+      final double[] values = columns.values[chosen];
+      final int[] rank = columns.rank[chosen];
+      double[] sampleValues = new double[csize];
+      for(int l = 0; l < csize; l++) {
+        sampleValues[l] = values[rank[cand[l]]];
       }
+      // Project full set; copied as the tests may sort their input.
+      System.arraycopy(values, 0, fullValues, 0, size);
       double contrast = statTest.deviation(fullValues, sampleValues);
       if(Double.isNaN(contrast)) {
         i--;
@@ -409,9 +513,7 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
         continue;
       }
       deviationSum += contrast;
-      LOG.incrementProcessed(prog);
     }
-    LOG.ensureCompleted(prog);
     subspace.contrast = deviationSum / m;
   }
 
@@ -425,6 +527,42 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
     return LOG;
   }
 
+  /**
+   * Data columns, sorted once for all contrast computations.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class SortedColumns {
+    /**
+     * Sorted values, per dimension.
+     */
+    double[][] values;
+
+    /**
+     * Objects (by position) in sorted order, per dimension.
+     */
+    int[][] order;
+
+    /**
+     * Rank of each object (by position), per dimension.
+     */
+    int[][] rank;
+
+    /**
+     * Constructor.
+     * 
+     * @param dim Dimensionality
+     * @param size Number of objects
+     */
+    SortedColumns(int dim, int size) {
+      values = new double[dim][size];
+      order = new int[dim][size];
+      rank = new int[dim][size];
+    }
+  }
+
   /**
    * BitSet that holds a contrast value as field. Used for the representation of
    * a subspace in HiCS
@@ -566,10 +704,20 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
     private double alpha = 0.1;
 
     /**
-     * Holds the value of {@link #ALGO_ID}.
+     * Holds the value of {@link #ALGO_ID}, if an instance was given.
      */
     private OutlierAlgorithm outlierAlgorithm;
 
+    /**
+     * Class of {@link #ALGO_ID}, to instantiate for each subspace.
+     */
+    private Class<?> algorithmClass;
+
+    /**
+     * Parameters of {@link #ALGO_ID}.
+     */
+    private ListParameterization algorithmParameters;
+
     /**
      * Holds the value of {@link #TEST_ID}.
      */
@@ -602,7 +750,17 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
 
       final ObjectParameter<OutlierAlgorithm> algoP = new ObjectParameter<>(ALGO_ID, OutlierAlgorithm.class, LOF.class);
       if(config.grab(algoP)) {
-        outlierAlgorithm = algoP.instantiateClass(config);
+        if(algoP.getGivenValue() instanceof OutlierAlgorithm) {
+          outlierAlgorithm = algoP.instantiateClass(config);
+        }
+        else {
+          // Record the parameters, to create one instance per subspace.
+          TrackParameters track = new TrackParameters(config);
+          if(algoP.instantiateClass(track) != null) {
+            algorithmClass = algoP.getValue();
+            algorithmParameters = getGivenParameters(track);
+          }
+        }
       }
 
       final ObjectParameter<GoodnessOfFitTest> testP = new ObjectParameter<>(TEST_ID, GoodnessOfFitTest.class, KolmogorovSmirnovTest.class);
@@ -622,8 +780,37 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
       }
     }
 
+    /**
+     * Collect the parameters that were given to an algorithm.
+     * 
+     * Object parameters with own parameters are instantiated again, others
+     * (such as given instances) are reused.
+     * 
+     * @param track Tracked parameterization
+     * @return Parameters
+     */
+    private static ListParameterization getGivenParameters(TrackParameters track) {
+      HashSet<Object> owners = new HashSet<>();
+      for(TrackedParameter p : track.getAllParameters()) {
+        owners.add(p.getOwner());
+      }
+      ListParameterization params = new ListParameterization();
+      for(TrackedParameter tp : track.getAllParameters()) {
+        final Parameter<?> p = tp.getParameter();
+        if(!p.isDefined() || p.tookDefaultValue()) {
+          continue;
+        }
+        final boolean reinstantiate = p instanceof ObjectParameter && owners.contains(p);
+        params.addParameter(p.getOptionID(), reinstantiate ? p.getValue() : p.getGivenValue());
+      }
+      return params;
+    }
+
     @Override
     protected HiCS<V> makeInstance() {
+      if(outlierAlgorithm == null) {
+        return new HiCS<>(m, alpha, algorithmClass, algorithmParameters, statTest, cutoff, rnd);
+      }
       return new HiCS<>(m, alpha, outlierAlgorithm, statTest, cutoff, rnd);
     }
   }
@@ -0,0 +1,254 @@
+package de.lmu.ifi.dbs.elki.application;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.MiniBatchKMeans;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
+import de.lmu.ifi.dbs.elki.datasource.filter.StreamFilter;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.datasource.parser.StreamingParser;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.FileUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.FormatUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Cluster a data file that does not fit into main memory with
+ * {@link MiniBatchKMeans}, by streaming it through a {@link StreamingParser}.
+ *
+ * The file is read once to choose the initial means on a reservoir sample, and
+ * then once for every pass of mini-batch updates. The resulting means are
+ * written to the output file, one per line, each preceded by a comment line
+ * with the cluster size and variance sum of the last pass. The output can be
+ * read again with {@link NumberVectorLabelParser}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf MiniBatchKMeans
+ */
+public class StreamingKMeansApplication extends AbstractApplication {
+  /**
+   * Logging class.
+   */
+  private static final Logging LOG = Logging.getLogger(StreamingKMeansApplication.class);
+
+  /**
+   * Input file.
+   */
+  private File infile;
+
+  /**
+   * Streaming parser.
+   */
+  private StreamingParser parser;
+
+  /**
+   * Stream filters.
+   */
+  private List<StreamFilter> filters;
+
+  /**
+   * k-means algorithm.
+   */
+  private MiniBatchKMeans<NumberVector> kmeans;
+
+  /**
+   * Output filename.
+   */
+  private File outfile;
+
+  /**
+   * Constructor.
+   *
+   * @param infile Input file
+   * @param parser Streaming parser
+   * @param filters Stream filters, may be {@code null}
+   * @param kmeans k-means algorithm
+   * @param outfile Output filename
+   */
+  public StreamingKMeansApplication(File infile, StreamingParser parser, List<StreamFilter> filters, MiniBatchKMeans<NumberVector> kmeans, File outfile) {
+    super();
+    this.infile = infile;
+    this.parser = parser;
+    this.filters = filters;
+    this.kmeans = kmeans;
+    this.outfile = outfile;
+  }
+
+  @Override
+  public void run() {
+    try {
+      if(LOG.isVerbose()) {
+        LOG.verbose("Sampling initial means.");
+      }
+      double[][] means;
+      try {
+        means = kmeans.chooseInitialMeans(stream(open()));
+      }
+      finally {
+        parser.cleanup(); // Closes the input stream.
+      }
+      final int k = means.length;
+      long[] weights = new long[k], sizes = new long[k];
+      double[] varsum = new double[k];
+      final int passes = kmeans.getPasses();
+      for(int pass = 0; pass < passes; pass++) {
+        if(LOG.isVerbose()) {
+          LOG.verbose("Mini-batch pass " + (pass + 1) + " of " + passes);
+        }
+        final boolean last = pass == passes - 1;
+        try {
+          kmeans.runPass(stream(open()), means, weights, last ? sizes : null, last ? varsum : null);
+        }
+        finally {
+          parser.cleanup();
+        }
+      }
+      if(LOG.isVerbose()) {
+        LOG.verbose("Writing means to: " + outfile.toString());
+      }
+      try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(outfile), "UTF-8"))) {
+        for(int i = 0; i < k; i++) {
+          out.append("# Cluster ").append(Integer.toString(i)) //
+              .append(" size=").append(Long.toString(sizes[i])) //
+              .append(" varsum=").append(Double.toString(varsum[i])).append('\n');
+          out.append(FormatUtil.format(means[i], " ")).append('\n');
+        }
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("Streaming k-means failed: " + e.toString(), e);
+    }
+  }
+
+  /**
+   * Open the input file.
+   *
+   * @return Input stream
+   * @throws IOException on errors
+   */
+  private InputStream open() throws IOException {
+    return FileUtil.tryGzipInput(new BufferedInputStream(new FileInputStream(infile)));
+  }
+
+  /**
+   * Set up the parser and filters on a freshly opened input stream.
+   *
+   * @param in Input stream
+   * @return Stream source
+   */
+  private BundleStreamSource stream(InputStream in) {
+    parser.initStream(in);
+    BundleStreamSource source = parser;
+    if(filters != null) {
+      for(StreamFilter filter : filters) {
+        source = filter.init(source);
+      }
+    }
+    return source;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractApplication.Parameterizer {
+    /**
+     * Input file.
+     */
+    private File infile;
+
+    /**
+     * Streaming parser.
+     */
+    private StreamingParser parser;
+
+    /**
+     * Stream filters.
+     */
+    private List<StreamFilter> filters;
+
+    /**
+     * k-means algorithm.
+     */
+    private MiniBatchKMeans<NumberVector> kmeans;
+
+    /**
+     * Output filename.
+     */
+    private File outfile;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      infile = super.getParameterInputFile(config, "Data file to cluster.");
+      ObjectParameter<StreamingParser> parserP = new ObjectParameter<>(AbstractDatabaseConnection.Parameterizer.PARSER_ID, StreamingParser.class, NumberVectorLabelParser.class);
+      if(config.grab(parserP)) {
+        parser = parserP.instantiateClass(config);
+      }
+      ObjectListParameter<StreamFilter> filterP = new ObjectListParameter<>(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, StreamFilter.class, true);
+      if(config.grab(filterP)) {
+        filters = filterP.instantiateClasses(config);
+      }
+      @SuppressWarnings("unchecked")
+      MiniBatchKMeans<NumberVector> km = config.tryInstantiate(MiniBatchKMeans.class);
+      kmeans = km;
+      outfile = super.getParameterOutputFile(config, "File name to write the means to.");
+    }
+
+    @Override
+    protected StreamingKMeansApplication makeInstance() {
+      return new StreamingKMeansApplication(infile, parser, filters, kmeans, outfile);
+    }
+  }
+
+  /**
+   * Run command line application.
+   *
+   * @param args Command line parameters
+   */
+  public static void main(String[] args) {
+    runCLIApplication(StreamingKMeansApplication.class, args);
+  }
+}
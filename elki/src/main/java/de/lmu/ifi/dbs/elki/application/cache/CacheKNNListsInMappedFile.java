@@ -0,0 +1,389 @@
+package de.lmu.ifi.dbs.elki.application.cache;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+
+import de.lmu.ifi.dbs.elki.application.AbstractApplication;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.IntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MappedKNNIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.workflow.InputStep;
+
+/**
+ * Precompute the k nearest neighbors into a file that can be memory-mapped,
+ * for use with {@link MappedKNNIndex}.
+ *
+ * In contrast to {@link CacheDoubleDistanceKNNLists}, the file begins with an
+ * offset table, so that the neighbors of each object can be accessed directly
+ * without parsing the whole file. The file layout is:
+ * <ul>
+ * <li>Header: magic number, flags, number of objects n, and k (4 ints)</li>
+ * <li>n record offsets (longs)</li>
+ * <li>For each object: the number of neighbors m, m neighbors (ints), and m
+ * distances (doubles, or floats if the float flag is set).</li>
+ * </ul>
+ * Objects are identified by their position in the relation, not by their
+ * DBIDs, so the file can be used with any database that loads the same data
+ * in the same order. The neighbors are computed in parallel, in blocks of
+ * objects.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has DistanceFunction
+ * @apiviz.uses MappedKNNIndex
+ *
+ * @param <O> Object type
+ */
+public class CacheKNNListsInMappedFile<O> extends AbstractApplication {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(CacheKNNListsInMappedFile.class);
+
+  /**
+   * Magic number to identify files.
+   *
+   * Note, when performing any incompatible change to the file format, you
+   * should also change this magic ID!
+   */
+  public static final int KNN_MAPPED_MAGIC = 0xCAC43D2C;
+
+  /**
+   * Flag for single precision distances.
+   */
+  public static final int FLAG_FLOAT = 1;
+
+  /**
+   * Size of the file header, in bytes.
+   */
+  public static final int HEADER_SIZE = 16;
+
+  /**
+   * Number of objects to process in one block.
+   */
+  private static final int BLOCKSIZE = 1024;
+
+  /**
+   * Data source to process.
+   */
+  private InputStep input;
+
+  /**
+   * Distance function that is to be cached.
+   */
+  private DistanceFunction<O> distance;
+
+  /**
+   * Number of neighbors to precompute.
+   */
+  private int k;
+
+  /**
+   * Output file.
+   */
+  private File out;
+
+  /**
+   * Store distances with single precision.
+   */
+  private boolean useFloat;
+
+  /**
+   * Constructor.
+   *
+   * @param input Data source
+   * @param distance Distance function
+   * @param k Number of nearest neighbors
+   * @param out Output file
+   * @param useFloat Store distances with single precision
+   */
+  public CacheKNNListsInMappedFile(InputStep input, DistanceFunction<O> distance, int k, File out, boolean useFloat) {
+    super();
+    this.input = input;
+    this.distance = distance;
+    this.k = k;
+    this.out = out;
+    this.useFloat = useFloat;
+  }
+
+  @Override
+  public void run() {
+    Database database = input.getDatabase();
+    Relation<O> relation = database.getRelation(distance.getInputTypeRestriction());
+    DistanceQuery<O> distanceQuery = database.getDistanceQuery(relation, distance);
+    KNNQuery<O> knnQ = database.getKNNQuery(distanceQuery, k, DatabaseQuery.HINT_HEAVY_USE);
+
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    final WritableIntegerDataStore rows = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      rows.putInt(it, it.getOffset());
+    }
+    final long[] offsets = new long[size];
+    final ByteBuffer[] block = new ByteBuffer[Math.min(BLOCKSIZE, size)];
+    final boolean parallel = ParallelCore.getCore().getParallelism() > 1;
+
+    try (RandomAccessFile file = new RandomAccessFile(out, "rw");
+        FileChannel channel = file.getChannel();
+        // and acquire a file write lock
+        FileLock lock = channel.lock()) {
+      file.setLength(0);
+      long pos = HEADER_SIZE + 8L * size;
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Computing kNN", size, LOG) : null;
+      EncodeProcessor proc = new EncodeProcessor(ids, rows, knnQ, block);
+      for(int start = 0; start < size; start += BLOCKSIZE) {
+        final int end = Math.min(start + BLOCKSIZE, size);
+        proc.base = start;
+        if(parallel) {
+          ParallelExecutor.run(end - start, 64, proc);
+        }
+        else {
+          proc.process(0, end - start);
+        }
+        // Write sequentially.
+        for(int i = start; i < end; i++) {
+          ByteBuffer buf = block[i - start];
+          offsets[i] = pos;
+          while(buf.hasRemaining()) {
+            pos += channel.write(buf, pos);
+          }
+          block[i - start] = null;
+          LOG.incrementProcessed(prog);
+        }
+      }
+      LOG.ensureCompleted(prog);
+
+      // Write the header and offset table last.
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 8 * size);
+      header.putInt(KNN_MAPPED_MAGIC).putInt(useFloat ? FLAG_FLOAT : 0);
+      header.putInt(size).putInt(k);
+      for(int i = 0; i < size; i++) {
+        header.putLong(offsets[i]);
+      }
+      header.flip();
+      long hpos = 0;
+      while(header.hasRemaining()) {
+        hpos += channel.write(header, hpos);
+      }
+      lock.release();
+    }
+    catch(IOException e) {
+      throw new AbortException("I/O error writing kNN cache: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Compute and encode the kNN lists of a range of objects.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class EncodeProcessor implements ParallelExecutor.RangeProcessor {
+    /**
+     * Object ids.
+     */
+    private final ArrayDBIDs ids;
+
+    /**
+     * Row number of each object.
+     */
+    private final IntegerDataStore rows;
+
+    /**
+     * kNN query.
+     */
+    private final KNNQuery<O> knnQ;
+
+    /**
+     * Output buffers.
+     */
+    private final ByteBuffer[] block;
+
+    /**
+     * Offset of the output block.
+     */
+    int base;
+
+    /**
+     * Constructor.
+     *
+     * @param ids Object ids
+     * @param rows Row number of each object
+     * @param knnQ kNN query
+     * @param block Output buffers
+     */
+    EncodeProcessor(ArrayDBIDs ids, IntegerDataStore rows, KNNQuery<O> knnQ, ByteBuffer[] block) {
+      super();
+      this.ids = ids;
+      this.rows = rows;
+      this.knnQ = knnQ;
+      this.block = block;
+    }
+
+    /**
+     * Encode a range of the output block.
+     *
+     * @param start First position in the output block
+     * @param end End position (exclusive)
+     */
+    @Override
+    public void process(int start, int end) {
+      DBIDArrayIter it = ids.iter();
+      for(int i = start; i < end; i++) {
+        final KNNList nn = knnQ.getKNNForDBID(it.seek(base + i), k);
+        final int nnsize = nn.size();
+        ByteBuffer buffer = ByteBuffer.allocate(4 + nnsize * (useFloat ? 8 : 12));
+        buffer.putInt(nnsize);
+        for(DoubleDBIDListIter ni = nn.iter(); ni.valid(); ni.advance()) {
+          buffer.putInt(rows.intValue(ni));
+        }
+        for(DoubleDBIDListIter ni = nn.iter(); ni.valid(); ni.advance()) {
+          if(useFloat) {
+            buffer.putFloat((float) ni.doubleValue());
+          }
+          else {
+            buffer.putDouble(ni.doubleValue());
+          }
+        }
+        buffer.flip();
+        block[i] = buffer;
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<O> extends AbstractApplication.Parameterizer {
+    /**
+     * Flag to store distances with single precision.
+     * <p>
+     * Key: {@code -loader.float}
+     * </p>
+     */
+    public static final OptionID FLOAT_ID = new OptionID("loader.float", "Store distances with single precision (float) only.");
+
+    /**
+     * Data source to process.
+     */
+    private InputStep input = null;
+
+    /**
+     * Distance function that is to be cached.
+     */
+    private DistanceFunction<O> distance = null;
+
+    /**
+     * Number of neighbors to precompute.
+     */
+    private int k;
+
+    /**
+     * Output file.
+     */
+    private File out = null;
+
+    /**
+     * Store distances with single precision.
+     */
+    private boolean useFloat = false;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      input = config.tryInstantiate(InputStep.class);
+      // Distance function parameter
+      final ObjectParameter<DistanceFunction<O>> dpar = new ObjectParameter<>(CacheDoubleDistanceKNNLists.Parameterizer.DISTANCE_ID, DistanceFunction.class);
+      if(config.grab(dpar)) {
+        distance = dpar.instantiateClass(config);
+      }
+      final IntParameter kpar = new IntParameter(CacheDoubleDistanceKNNLists.Parameterizer.K_ID);
+      kpar.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(kpar)) {
+        k = kpar.intValue();
+      }
+      // Output file parameter
+      final FileParameter cpar = new FileParameter(CacheDoubleDistanceKNNLists.Parameterizer.CACHE_ID, FileParameter.FileType.OUTPUT_FILE);
+      if(config.grab(cpar)) {
+        out = cpar.getValue();
+      }
+      final Flag floatF = new Flag(FLOAT_ID);
+      if(config.grab(floatF)) {
+        useFloat = floatF.isTrue();
+      }
+    }
+
+    @Override
+    protected CacheKNNListsInMappedFile<O> makeInstance() {
+      return new CacheKNNListsInMappedFile<>(input, distance, k, out, useFloat);
+    }
+  }
+
+  /**
+   * Main method, delegate to super class.
+   *
+   * @param args Command line arguments
+   */
+  public static void main(String[] args) {
+    runCLIApplication(CacheKNNListsInMappedFile.class, args);
+  }
+}
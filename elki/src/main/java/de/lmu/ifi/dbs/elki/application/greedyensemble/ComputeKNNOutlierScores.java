@@ -32,10 +32,6 @@ import java.util.regex.Pattern;
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.DWOF;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.anglebased.FastABOD;
-import de.lmu.ifi.dbs.elki.algorithm.outlier.distance.KNNOutlier;
-import de.lmu.ifi.dbs.elki.algorithm.outlier.distance.KNNWeightOutlier;
-import de.lmu.ifi.dbs.elki.algorithm.outlier.distance.LocalIsolationCoefficient;
-import de.lmu.ifi.dbs.elki.algorithm.outlier.distance.ODIN;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.intrinsic.IDOS;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.intrinsic.IntrinsicDimensionalityOutlier;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.COF;
@@ -43,10 +39,8 @@ import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.INFLO;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.KDEOS;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LDF;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LDOF;
-import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LoOP;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.SimpleKernelDensityLOF;
-import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.SimplifiedLOF;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.VarianceOfVolume;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.trivial.ByLabelOutlier;
 import de.lmu.ifi.dbs.elki.application.AbstractApplication;
@@ -64,6 +58,7 @@ import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel.PolynomialKernelFunction;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.AbstractMaterializeKNNPreprocessor;
 import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNPreprocessor;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
@@ -97,6 +92,10 @@ import net.jafama.FastMath;
  * For methods where k=1 does not make sense, this value will be skipped, and
  * the procedure will commence at 1+stepsize.
  *
+ * The kNN graph is materialized only once, for the maximum k. Detectors that
+ * depend on the neighbor graph only (kNN, kNN weight, LOF, Simplified LOF, ODIN
+ * and LIC) are evaluated for all k from this graph by {@link KNNOutlierSweep}.
+ *
  * Reference:
  * <p>
  * E. Schubert, R. Wojdanowski, A. Zimek, H.-P. Kriegel<br />
@@ -215,6 +214,8 @@ public class ComputeKNNOutlierScores<O extends NumberVector> extends AbstractApp
     }
 
     final DBIDs ids = relation.getDBIDs();
+    // Shared kNN graph, for the detectors that only need the neighbors.
+    final LazySweep sweep = new LazySweep(ids, ((PreprocessorKNNQuery<O>) knnq).getPreprocessor());
 
     final PrintStream fout;
     try {
@@ -242,40 +243,28 @@ public class ComputeKNNOutlierScores<O extends NumberVector> extends AbstractApp
     runForEachK("KNN", startk, stepk, maxk, new AlgRunner() {
       @Override
       public void run(int k, String kstr) {
-        KNNOutlier<O> knn = new KNNOutlier<>(distf, k);
-        OutlierResult result = knn.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
+        writeResult(fout, ids, sweep.get().knn(k), scaling, kstr);
       }
     });
     // KNN Weight
     runForEachK("KNNW", startk, stepk, maxk, new AlgRunner() {
       @Override
       public void run(int k, String kstr) {
-        KNNWeightOutlier<O> knnw = new KNNWeightOutlier<>(distf, k);
-        OutlierResult result = knnw.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
+        writeResult(fout, ids, sweep.get().knnWeight(k), scaling, kstr);
       }
     });
     // Run LOF
     runForEachK("LOF", startk, stepk, maxk, new AlgRunner() {
       @Override
       public void run(int k, String kstr) {
-        LOF<O> lof = new LOF<>(k, distf);
-        OutlierResult result = lof.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
+        writeResult(fout, ids, sweep.get().lof(k), scaling, kstr);
       }
     });
     // Run Simplified-LOF
     runForEachK("SimplifiedLOF", startk, stepk, maxk, new AlgRunner() {
       @Override
       public void run(int k, String kstr) {
-        SimplifiedLOF<O> lof = new SimplifiedLOF<>(k, distf);
-        OutlierResult result = lof.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
+        writeResult(fout, ids, sweep.get().simplifiedLOF(k), scaling, kstr);
       }
     });
     // LoOP
@@ -305,10 +294,7 @@ public class ComputeKNNOutlierScores<O extends NumberVector> extends AbstractApp
     runForEachK("ODIN", startk, stepk, maxk, new AlgRunner() {
       @Override
       public void run(int k, String kstr) {
-        ODIN<O> odin = new ODIN<>(distf, k);
-        OutlierResult result = odin.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
+        writeResult(fout, ids, sweep.get().odin(k), scaling, kstr);
       }
     });
     // Run FastABOD
@@ -414,10 +400,7 @@ public class ComputeKNNOutlierScores<O extends NumberVector> extends AbstractApp
     runForEachK("LIC", startk, stepk, maxk, new AlgRunner() {
       @Override
       public void run(int k, String kstr) {
-        LocalIsolationCoefficient<O> lic = new LocalIsolationCoefficient<>(distf, k);
-        OutlierResult result = lic.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
+        writeResult(fout, ids, sweep.get().localIsolationCoefficient(k), scaling, kstr);
       }
     });
     // Run VOV (requires a vector field).
@@ -438,6 +421,54 @@ public class ComputeKNNOutlierScores<O extends NumberVector> extends AbstractApp
     }
   }
 
+  /**
+   * Sweep over the shared kNN graph, set up on first use only, as all detectors
+   * using it may be disabled.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has KNNOutlierSweep
+   */
+  private static class LazySweep {
+    /**
+     * Object ids.
+     */
+    private DBIDs ids;
+
+    /**
+     * kNN preprocessor.
+     */
+    private AbstractMaterializeKNNPreprocessor<?> preproc;
+
+    /**
+     * Sweep, once used.
+     */
+    private KNNOutlierSweep sweep;
+
+    /**
+     * Constructor.
+     *
+     * @param ids Object ids
+     * @param preproc kNN preprocessor
+     */
+    LazySweep(DBIDs ids, AbstractMaterializeKNNPreprocessor<?> preproc) {
+      this.ids = ids;
+      this.preproc = preproc;
+    }
+
+    /**
+     * Get the sweep.
+     *
+     * @return Sweep over the kNN graph
+     */
+    KNNOutlierSweep get() {
+      if(sweep == null) {
+        sweep = new KNNOutlierSweep(ids, preproc);
+      }
+      return sweep;
+    }
+  }
+
   /**
    * Write a single output line.
    *
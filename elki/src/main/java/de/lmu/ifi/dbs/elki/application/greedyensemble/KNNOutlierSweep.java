@@ -0,0 +1,465 @@
+package de.lmu.ifi.dbs.elki.application.greedyensemble;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.relation.DoubleRelation;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.AbstractMaterializeKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.result.outlier.BasicOutlierScoreMeta;
+import de.lmu.ifi.dbs.elki.result.outlier.InvertedOutlierScoreMeta;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
+import de.lmu.ifi.dbs.elki.result.outlier.QuotientOutlierScoreMeta;
+
+/**
+ * Evaluate multiple kNN-based outlier detectors for many values of k, based on
+ * a single materialized kNN graph.
+ *
+ * The neighbor lists are read directly from a kNN preprocessor for the maximum
+ * k, without copying. The neighborhood for a smaller k is a prefix of these
+ * lists (including ties, as with {@link KNNList}), and the k-distances of all
+ * objects are read from the same lists. Each detector is evaluated with a few
+ * passes over all objects, which are run in parallel using
+ * {@link ParallelExecutor}.
+ *
+ * The scores are the same as produced by
+ * {@link de.lmu.ifi.dbs.elki.algorithm.outlier.distance.KNNOutlier},
+ * {@link de.lmu.ifi.dbs.elki.algorithm.outlier.distance.KNNWeightOutlier},
+ * {@link de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF},
+ * {@link de.lmu.ifi.dbs.elki.algorithm.outlier.lof.SimplifiedLOF},
+ * {@link de.lmu.ifi.dbs.elki.algorithm.outlier.distance.ODIN}, and
+ * {@link de.lmu.ifi.dbs.elki.algorithm.outlier.distance.LocalIsolationCoefficient}
+ * with the same parameter k.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class KNNOutlierSweep {
+  /**
+   * Minimum number of objects per parallel task.
+   */
+  private static final int BLOCKSIZE = 256;
+
+  /**
+   * Object ids.
+   */
+  private final ArrayDBIDs ids;
+
+  /**
+   * Preprocessor holding the neighbors of each object (including the object
+   * itself).
+   */
+  private final AbstractMaterializeKNNPreprocessor<?> preproc;
+
+  /**
+   * DBID range, for mapping neighbors to offsets (if available).
+   */
+  private final DBIDRange range;
+
+  /**
+   * Offsets of the objects, if the DBIDs are not a range.
+   */
+  private final WritableIntegerDataStore offsets;
+
+  /**
+   * Scratch buffer for densities.
+   */
+  private final double[] dens;
+
+  /**
+   * Scratch buffer for k-distances.
+   */
+  private final double[] kdists;
+
+  /**
+   * Constructor.
+   *
+   * @param ids Object ids
+   * @param preproc kNN preprocessor, for the maximum k (including the query
+   *        object)
+   */
+  public KNNOutlierSweep(DBIDs ids, AbstractMaterializeKNNPreprocessor<?> preproc) {
+    this.ids = DBIDUtil.ensureArray(ids);
+    this.preproc = preproc;
+    if(ids instanceof DBIDRange) {
+      this.range = (DBIDRange) ids;
+      this.offsets = null;
+    }
+    else {
+      this.range = null;
+      this.offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT);
+      DBIDArrayIter it = this.ids.iter();
+      for(int i = 0; it.valid(); it.advance(), i++) {
+        offsets.putInt(it, i);
+      }
+    }
+    dens = new double[ids.size()];
+    kdists = new double[ids.size()];
+    // Run the preprocessor (if not yet done) before the parallel passes.
+    if(!ids.isEmpty()) {
+      preproc.get(this.ids.iter());
+    }
+  }
+
+  /**
+   * Offset of an object.
+   *
+   * @param id Object
+   * @return Offset
+   */
+  private int offset(DBIDRef id) {
+    return range != null ? range.getOffset(id) : offsets.intValue(id);
+  }
+
+  /**
+   * Size of the neighborhood for a given k, including ties.
+   *
+   * @param knn Neighbors
+   * @param k Number of neighbors (including the object itself)
+   * @return Size of the neighborhood
+   */
+  private static int prefix(KNNList knn, int k) {
+    final int size = knn.size();
+    if(k >= size) {
+      return size;
+    }
+    DoubleDBIDListIter it = knn.iter().seek(k - 1);
+    final double kdist = it.doubleValue();
+    int s = k;
+    for(it.advance(); it.valid() && it.doubleValue() <= kdist; it.advance()) {
+      ++s;
+    }
+    return s;
+  }
+
+  /**
+   * Get the k-distance of an object.
+   *
+   * @param knn Neighbors
+   * @param k Number of neighbors (including the object itself)
+   * @return k-distance
+   */
+  private static double kdist(KNNList knn, int k) {
+    return k <= knn.size() ? knn.iter().seek(k - 1).doubleValue() : Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * kNN outlier score: distance to the k nearest neighbor, excluding the
+   * object itself.
+   *
+   * @param k Parameter k
+   * @return Outlier result
+   */
+  public OutlierResult knn(final int k) {
+    final double[] scores = new double[ids.size()];
+    new Pass() {
+      @Override
+      void process(int i, KNNList knn) {
+        scores[i] = kdist(knn, k + 1); // + query point
+      }
+    }.run();
+    DoubleMinMax minmax = new DoubleMinMax();
+    minmax.put(scores);
+    OutlierScoreMeta meta = new BasicOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0., Double.POSITIVE_INFINITY, 0.);
+    return new OutlierResult(meta, wrap("kNN Outlier Score", "knn-outlier", scores));
+  }
+
+  /**
+   * kNN weight outlier score: sum of the distances to the k nearest neighbors,
+   * excluding the object itself.
+   *
+   * @param k Parameter k
+   * @return Outlier result
+   */
+  public OutlierResult knnWeight(final int k) {
+    final double[] scores = new double[ids.size()];
+    new Pass() {
+      @Override
+      void process(int i, KNNList knn) {
+        double skn = 0;
+        int c = 0;
+        DoubleDBIDListIter nei = knn.iter();
+        for(int j = 0, end = prefix(knn, k + 1); j < end && c < k; j++, nei.advance()) {
+          if(offset(nei) != i) {
+            skn += nei.doubleValue();
+            ++c;
+          }
+        }
+        scores[i] = c < k ? Double.POSITIVE_INFINITY : skn;
+      }
+    }.run();
+    DoubleMinMax minmax = new DoubleMinMax();
+    minmax.put(scores);
+    OutlierScoreMeta meta = new BasicOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0., Double.POSITIVE_INFINITY, 0.);
+    return new OutlierResult(meta, wrap("kNN weight Outlier Score", "knnw-outlier", scores));
+  }
+
+  /**
+   * Local isolation coefficient: k-distance plus average distance to the k
+   * nearest neighbors.
+   *
+   * @param k Parameter k
+   * @return Outlier result
+   */
+  public OutlierResult localIsolationCoefficient(final int k) {
+    final double[] scores = new double[ids.size()];
+    new Pass() {
+      @Override
+      void process(int i, KNNList knn) {
+        double skn = 0;
+        int c = 0;
+        DoubleDBIDListIter nei = knn.iter();
+        for(int j = 0, end = prefix(knn, k + 1); j < end && c < k; j++, nei.advance()) {
+          if(offset(nei) != i) {
+            skn += nei.doubleValue();
+            ++c;
+          }
+        }
+        scores[i] = kdist(knn, k + 1) + (c > 0 ? skn / c : 0);
+        dens[i] = skn;
+      }
+    }.run();
+    // Note: as in LocalIsolationCoefficient, the value range is of the sums.
+    DoubleMinMax minmax = new DoubleMinMax();
+    minmax.put(dens);
+    OutlierScoreMeta meta = new BasicOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0., Double.POSITIVE_INFINITY, 0.);
+    return new OutlierResult(meta, wrap("Local Isolation Coefficient", "lic-outlier", scores));
+  }
+
+  /**
+   * ODIN: in-degree in the kNN graph.
+   *
+   * @param k Parameter k
+   * @return Outlier result
+   */
+  public OutlierResult odin(int k) {
+    final int size = ids.size();
+    int[] indeg = new int[size];
+    DBIDArrayIter iter = ids.iter();
+    for(int i = 0; i < size; i++) {
+      final KNNList knn = preproc.get(iter.seek(i));
+      DoubleDBIDListIter nei = knn.iter();
+      for(int j = 0, end = prefix(knn, k + 1); j < end; j++, nei.advance()) {
+        final int o = offset(nei);
+        indeg[o] += o != i ? 1 : 0;
+      }
+    }
+    final double inc = 1. / k;
+    double[] scores = new double[size];
+    double min = Double.POSITIVE_INFINITY, max = 0.;
+    for(int i = 0; i < size; i++) {
+      // Repeated addition, for the same rounding as ODIN.
+      double v = 0.;
+      for(int c = indeg[i]; c > 0; c--) {
+        v += inc;
+      }
+      scores[i] = v;
+      if(indeg[i] > 0) {
+        min = inc < min ? inc : min;
+        max = v > max ? v : max;
+      }
+    }
+    OutlierScoreMeta meta = new InvertedOutlierScoreMeta(min, max, 0., inc * (size - 1), 1);
+    return new OutlierResult(meta, wrap("ODIN In-Degree", "odin", scores));
+  }
+
+  /**
+   * Local outlier factor.
+   *
+   * @param k Parameter k
+   * @return Outlier result
+   */
+  public OutlierResult lof(int k) {
+    final int kplus = k + 1; // + query point
+    // k-distances, read once per object instead of once per neighbor:
+    new Pass() {
+      @Override
+      void process(int i, KNNList knn) {
+        kdists[i] = kdist(knn, kplus);
+      }
+    }.run();
+    // Local reachability densities:
+    new Pass() {
+      @Override
+      void process(int i, KNNList knn) {
+        double sum = 0.;
+        int count = 0;
+        DoubleDBIDListIter nei = knn.iter();
+        for(int j = 0, end = prefix(knn, kplus); j < end; j++, nei.advance()) {
+          final int o = offset(nei);
+          if(o != i) {
+            final double d = nei.doubleValue(), kd = kdists[o];
+            sum += d > kd ? d : kd;
+            ++count;
+          }
+        }
+        dens[i] = (sum > 0) ? (count / sum) : Double.POSITIVE_INFINITY;
+      }
+    }.run();
+    final double[] scores = new double[ids.size()];
+    new Pass() {
+      @Override
+      void process(int i, KNNList knn) {
+        final double lrdp = dens[i];
+        if(Double.isInfinite(lrdp)) {
+          scores[i] = 1.;
+          return;
+        }
+        double sum = 0.;
+        int count = 0;
+        DoubleDBIDListIter nei = knn.iter();
+        for(int j = 0, end = prefix(knn, kplus); j < end; j++, nei.advance()) {
+          final int o = offset(nei);
+          if(o != i) {
+            sum += dens[o];
+            ++count;
+          }
+        }
+        scores[i] = sum / (lrdp * count);
+      }
+    }.run();
+    DoubleMinMax minmax = new DoubleMinMax();
+    minmax.put(scores);
+    OutlierScoreMeta meta = new QuotientOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0., Double.POSITIVE_INFINITY, 1.);
+    return new OutlierResult(meta, wrap("Local Outlier Factor", "lof-outlier", scores));
+  }
+
+  /**
+   * Simplified local outlier factor.
+   *
+   * @param k Parameter k
+   * @return Outlier result
+   */
+  public OutlierResult simplifiedLOF(int k) {
+    final int kplus = k + 1; // + query point
+    new Pass() {
+      @Override
+      void process(int i, KNNList knn) {
+        double sum = 0.;
+        int count = 0;
+        DoubleDBIDListIter nei = knn.iter();
+        for(int j = 0, end = prefix(knn, kplus); j < end; j++, nei.advance()) {
+          if(offset(nei) != i) {
+            sum += nei.doubleValue();
+            ++count;
+          }
+        }
+        dens[i] = (sum > 0) ? (count / sum) : Double.POSITIVE_INFINITY;
+      }
+    }.run();
+    final double[] scores = new double[ids.size()];
+    new Pass() {
+      @Override
+      void process(int i, KNNList knn) {
+        final double lrdp = dens[i];
+        if(Double.isInfinite(lrdp)) {
+          scores[i] = 1.;
+          return;
+        }
+        double sum = 0.;
+        int count = 0;
+        DoubleDBIDListIter nei = knn.iter();
+        for(int j = 0, end = prefix(knn, kplus); j < end; j++, nei.advance()) {
+          final int o = offset(nei);
+          if(o != i) {
+            final double val = dens[o];
+            sum += val;
+            ++count;
+            if(Double.isInfinite(val)) {
+              break;
+            }
+          }
+        }
+        scores[i] = sum / (lrdp * count);
+      }
+    }.run();
+    DoubleMinMax minmax = new DoubleMinMax();
+    minmax.put(scores);
+    OutlierScoreMeta meta = new QuotientOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0., Double.POSITIVE_INFINITY, 1.);
+    return new OutlierResult(meta, wrap("Simplified Local Outlier Factor", "simplified-lof-outlier", scores));
+  }
+
+  /**
+   * Wrap a score array as relation.
+   *
+   * @param name Relation name
+   * @param shortname Short name
+   * @param scores Scores, by offset
+   * @return Score relation
+   */
+  private DoubleRelation wrap(String name, String shortname, double[] scores) {
+    WritableDoubleDataStore store = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      store.putDouble(it, scores[i]);
+    }
+    return new MaterializedDoubleRelation(name, shortname, store, ids);
+  }
+
+  /**
+   * A pass over all objects, run in parallel.
+   *
+   * @author Erich Schubert
+   */
+  private abstract class Pass implements ParallelExecutor.RangeProcessor {
+    /**
+     * Process a single object.
+     *
+     * @param i Object offset
+     * @param knn Neighbors of the object
+     */
+    abstract void process(int i, KNNList knn);
+
+    @Override
+    public void process(int start, int end) {
+      DBIDArrayIter iter = ids.iter();
+      for(int i = start; i < end; i++) {
+        process(i, preproc.get(iter.seek(i)));
+      }
+    }
+
+    /**
+     * Process all objects.
+     */
+    void run() {
+      ParallelExecutor.run(ids.size(), BLOCKSIZE, this);
+    }
+  }
+}
@@ -23,28 +23,53 @@ package de.lmu.ifi.dbs.elki.database;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
+import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayStaticDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.DBIDView;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.PackedNumberVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
 import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.SnapshotIndex;
+import de.lmu.ifi.dbs.elki.index.SnapshotUtil;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.persistent.NumberVectorBlock;
+import de.lmu.ifi.dbs.elki.result.Result;
+import de.lmu.ifi.dbs.elki.result.ResultListener;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.EnumParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -83,6 +108,26 @@ public class StaticArrayDatabase extends AbstractDatabase {
    */
   protected DatabaseConnection databaseConnection;
 
+  /**
+   * Storage for packed numerical vectors, {@code null} to store objects.
+   */
+  private NumberVectorBlock.Storage packed;
+
+  /**
+   * Store packed vectors with single precision.
+   */
+  private boolean packedFloat;
+
+  /**
+   * File name for memory-mapped vectors, may be {@code null}.
+   */
+  private File packedFile;
+
+  /**
+   * Directory for index snapshots, may be {@code null}.
+   */
+  private File snapshotDirectory;
+
   /**
    * Constructor.
    *
@@ -90,8 +135,42 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @param indexFactories Indexes to add
    */
   public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories) {
+    this(databaseConnection, indexFactories, null, false, null, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param packed Storage for packed numerical vectors, {@code null} to store
+   *        individual vector objects
+   * @param packedFloat Store packed vectors with single precision
+   * @param packedFile File name for memory-mapped vectors, may be {@code null}
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories, NumberVectorBlock.Storage packed, boolean packedFloat, File packedFile) {
+    this(databaseConnection, indexFactories, packed, packedFloat, packedFile, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param packed Storage for packed numerical vectors, {@code null} to store
+   *        individual vector objects
+   * @param packedFloat Store packed vectors with single precision
+   * @param packedFile File name for memory-mapped vectors, may be {@code null}
+   * @param snapshotDirectory Directory to store and restore index snapshots,
+   *        may be {@code null}
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories, NumberVectorBlock.Storage packed, boolean packedFloat, File packedFile, File snapshotDirectory) {
     super();
     this.databaseConnection = databaseConnection;
+    this.packed = packed;
+    this.packedFloat = packedFloat;
+    this.packedFile = packedFile;
+    this.snapshotDirectory = snapshotDirectory;
     this.ids = null;
     this.idrep = null;
 
@@ -118,54 +197,48 @@ public class StaticArrayDatabase extends AbstractDatabase {
       if(LOG.isDebugging()) {
         LOG.debugFine("Loading data from database connection.");
       }
-      MultipleObjectsBundle bundle = databaseConnection.loadData();
+      // Packed vectors are streamed into their blocks, without materializing
+      // all objects first.
+      List<Relation<?>> loaded = (packed != null) ? loadPacked(databaseConnection.loadStream()) : loadBundle(databaseConnection.loadData());
       // Run at most once.
       databaseConnection = null;
 
-      // Find DBIDs for bundle
-      {
-        DBIDs bids = bundle.getDBIDs();
-        if(bids instanceof ArrayStaticDBIDs) {
-          this.ids = (ArrayStaticDBIDs) bids;
-        }
-        else if(bids == null) {
-          this.ids = DBIDUtil.generateStaticDBIDRange(bundle.dataLength());
-        }
-        else {
-          this.ids = (ArrayStaticDBIDs) DBIDUtil.makeUnmodifiable(bids);
-        }
-      }
       // Replace id representation (it would be nicer if we would not need
       // DBIDView at all)
       this.idrep = new DBIDView(this.ids);
       relations.add(this.idrep);
       getHierarchy().add(this, idrep);
 
-      DBIDArrayIter it = this.ids.iter();
-
-      int numrel = bundle.metaLength();
-      for(int i = 0; i < numrel; i++) {
-        SimpleTypeInformation<?> meta = bundle.meta(i);
-        @SuppressWarnings("unchecked")
-        SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
-        WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
-        for(it.seek(0); it.valid(); it.advance()) {
-          store.put(it, bundle.data(it.getOffset(), i));
-        }
-        Relation<?> relation = new MaterializedRelation<>(ometa, ids, null, store);
+      for(int i = 0; i < loaded.size(); i++) {
+        Relation<?> relation = loaded.get(i);
         relations.add(relation);
         getHierarchy().add(this, relation);
 
         // Try to add indexes where appropriate
+        long fingerprint = 0L;
+        int j = 0;
         for(IndexFactory<?, ?> factory : indexFactories) {
-          if(factory.getInputTypeRestriction().isAssignableFromType(ometa)) {
+          ++j;
+          if(factory.getInputTypeRestriction().isAssignableFromType(relation.getDataTypeInformation())) {
             @SuppressWarnings("unchecked")
             final IndexFactory<Object, ?> ofact = (IndexFactory<Object, ?>) factory;
             @SuppressWarnings("unchecked")
             final Relation<Object> orep = (Relation<Object>) relation;
             final Index index = ofact.instantiate(orep);
             Duration duration = LOG.isStatistics() ? LOG.newDuration(index.getClass().getName() + ".construction").begin() : null;
-            index.initialize();
+            if(snapshotDirectory != null && index instanceof SnapshotIndex && ids instanceof DBIDRange) {
+              if(fingerprint == 0L) {
+                fingerprint = SnapshotUtil.fingerprint(relation);
+              }
+              File file = new File(snapshotDirectory, "index-" + i + "-" + j + "-" + index.getShortName() + ".snapshot");
+              if(!SnapshotUtil.load((SnapshotIndex) index, (DBIDRange) ids, fingerprint, file)) {
+                index.initialize();
+                SnapshotUtil.save((SnapshotIndex) index, (DBIDRange) ids, fingerprint, file);
+              }
+            }
+            else {
+              index.initialize();
+            }
             if(duration != null) {
               LOG.statistics(duration.end());
             }
@@ -173,12 +246,252 @@ public class StaticArrayDatabase extends AbstractDatabase {
           }
         }
       }
+      if(packed != null) {
+        getHierarchy().addResultListener(new PackedRelationReleaser());
+      }
 
       // fire insertion event
       eventManager.fireObjectsInserted(ids);
     }
   }
 
+  /**
+   * Store the columns of a bundle as objects.
+   *
+   * @param bundle Bundle
+   * @return Relations
+   */
+  private List<Relation<?>> loadBundle(MultipleObjectsBundle bundle) {
+    // Find DBIDs for bundle
+    DBIDs bids = bundle.getDBIDs();
+    if(bids instanceof ArrayStaticDBIDs) {
+      this.ids = (ArrayStaticDBIDs) bids;
+    }
+    else if(bids == null) {
+      this.ids = DBIDUtil.generateStaticDBIDRange(bundle.dataLength());
+    }
+    else {
+      this.ids = (ArrayStaticDBIDs) DBIDUtil.makeUnmodifiable(bids);
+    }
+    List<Relation<?>> loaded = new ArrayList<>(bundle.metaLength());
+    for(int i = 0; i < bundle.metaLength(); i++) {
+      loaded.add(materialize(bundle.meta(i), bundle.getColumn(i)));
+    }
+    return loaded;
+  }
+
+  /**
+   * Load a stream, storing numerical vectors in packed blocks as they arrive.
+   *
+   * Columns that do not accept views of a block (see
+   * {@link PackedNumberVectorRelation#acceptsViews}) are stored as objects;
+   * if the dimensionality of a packed column changes within the stream, it
+   * is converted to objects, too.
+   *
+   * @param source Stream source
+   * @return Relations
+   */
+  private List<Relation<?>> loadPacked(BundleStreamSource source) {
+    List<SimpleTypeInformation<?>> metas = new ArrayList<>();
+    List<NumberVectorBlock> blocks = new ArrayList<>();
+    List<List<Object>> columns = new ArrayList<>();
+    DBIDVar var = null;
+    ArrayModifiableDBIDs sids = null;
+    int size = 0, numpacked = 0;
+    try {
+      boolean stop = false;
+      while(!stop) {
+        BundleStreamSource.Event ev = source.nextEvent();
+        switch(ev){
+        case END_OF_STREAM:
+          stop = true;
+          break;
+        case META_CHANGED:
+          BundleMeta smeta = source.getMeta();
+          for(int i = 0; i < smeta.size(); i++) {
+            final SimpleTypeInformation<?> meta = smeta.get(i);
+            if(i == metas.size()) { // New column
+              NumberVectorBlock block = null;
+              if(size == 0 && PackedNumberVectorRelation.acceptsViews(meta)) {
+                block = newBlock(((VectorFieldTypeInformation<?>) meta).getDimensionality(), numpacked++);
+              }
+              else if(TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(meta)) {
+                LOG.warning("Vector type " + meta + " would be copied on every access, storing objects instead.");
+              }
+              metas.add(meta);
+              blocks.add(block);
+              columns.add(block == null ? new ArrayList<>(Collections.nCopies(size, null)) : null);
+              continue;
+            }
+            final NumberVectorBlock block = blocks.get(i);
+            if(block != null && !(PackedNumberVectorRelation.acceptsViews(meta) && ((VectorFieldTypeInformation<?>) meta).getDimensionality() == block.getDimensionality())) {
+              LOG.warning("Vector type changed to " + meta + ", storing objects instead.");
+              columns.set(i, unpack(metas.get(i), block));
+              blocks.set(i, null);
+            }
+            metas.set(i, meta);
+          }
+          if(var == null && source.hasDBIDs()) {
+            var = DBIDUtil.newVar();
+            sids = DBIDUtil.newArray();
+          }
+          continue;
+        case NEXT_OBJECT:
+          if(var != null && source.assignDBID(var)) {
+            sids.add(var);
+          }
+          for(int i = 0; i < metas.size(); i++) {
+            final NumberVectorBlock block = blocks.get(i);
+            if(block != null) {
+              block.append((NumberVector) source.data(i));
+            }
+            else {
+              columns.get(i).add(source.data(i));
+            }
+          }
+          ++size;
+          continue;
+        default:
+          LOG.warning("Unknown event: " + ev);
+          continue;
+        }
+      }
+      if(sids != null && sids.size() != size) {
+        LOG.warning("Not every object had an DBID - discarding DBIDs: " + size + " != " + sids.size());
+        sids = null;
+      }
+      this.ids = (sids != null) ? (ArrayStaticDBIDs) DBIDUtil.makeUnmodifiable(sids) : DBIDUtil.generateStaticDBIDRange(size);
+      List<Relation<?>> loaded = new ArrayList<>(metas.size());
+      for(int i = 0; i < metas.size(); i++) {
+        final NumberVectorBlock block = blocks.get(i);
+        if(block == null) {
+          loaded.add(materialize(metas.get(i), columns.get(i)));
+          continue;
+        }
+        // Type was checked by acceptsViews when the block was created.
+        @SuppressWarnings("unchecked")
+        final VectorFieldTypeInformation<? extends NumberVector> vmeta = (VectorFieldTypeInformation<? extends NumberVector>) metas.get(i);
+        loaded.add(packVectors(vmeta, block));
+      }
+      return loaded;
+    }
+    catch(IOException e) {
+      releaseBlocks(blocks);
+      throw new AbortException("Could not allocate vector storage.", e);
+    }
+    catch(RuntimeException e) {
+      releaseBlocks(blocks);
+      throw e;
+    }
+  }
+
+  /**
+   * Store a column as objects.
+   *
+   * @param meta Column type
+   * @param data Column data
+   * @return Relation
+   */
+  private Relation<?> materialize(SimpleTypeInformation<?> meta, List<?> data) {
+    @SuppressWarnings("unchecked")
+    SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
+    WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      store.put(it, data.get(it.getOffset()));
+    }
+    return new MaterializedRelation<>(ometa, ids, null, store);
+  }
+
+  /**
+   * Allocate a block for packed vectors.
+   *
+   * @param dim Dimensionality
+   * @param num Number of previously packed relations
+   * @return Block
+   * @throws IOException When the file cannot be opened.
+   */
+  private NumberVectorBlock newBlock(int dim, int num) throws IOException {
+    File file = (packedFile == null || num == 0) ? packedFile : new File(packedFile.getPath() + "." + num);
+    return new NumberVectorBlock(dim, packedFloat, packed, file);
+  }
+
+  /**
+   * Wrap a filled block as relation.
+   *
+   * @param meta Vector type
+   * @param block Filled block
+   * @return Relation
+   * @throws IOException on errors releasing the file
+   */
+  private <V extends NumberVector> PackedNumberVectorRelation<V> packVectors(VectorFieldTypeInformation<V> meta, NumberVectorBlock block) throws IOException {
+    block.finish();
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".packed-vector-bytes", block.getAllocatedBytes()));
+    }
+    return new PackedNumberVectorRelation<>(null, meta, ids, block);
+  }
+
+  /**
+   * Convert a partially filled block back to vector objects, and release it.
+   *
+   * @param meta Vector type of the block
+   * @param block Block
+   * @return Vector objects
+   * @throws IOException on errors releasing the block
+   */
+  private static List<Object> unpack(SimpleTypeInformation<?> meta, NumberVectorBlock block) throws IOException {
+    final NumberVector.Factory<?> factory = (NumberVector.Factory<?>) ((VectorFieldTypeInformation<?>) meta).getFactory();
+    List<Object> data = new ArrayList<>(block.size() << 1);
+    for(int j = 0; j < block.size(); j++) {
+      data.add(factory.newNumberVector(block.get(j)));
+    }
+    block.close();
+    return data;
+  }
+
+  /**
+   * Release blocks after an error.
+   *
+   * @param blocks Blocks, may contain {@code null}
+   */
+  private static void releaseBlocks(List<NumberVectorBlock> blocks) {
+    for(NumberVectorBlock block : blocks) {
+      if(block != null) {
+        try {
+          block.close();
+        }
+        catch(IOException e) {
+          LOG.exception(e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Release the storage of packed relations when they are removed from the
+   * result hierarchy.
+   *
+   * @author Erich Schubert
+   */
+  private class PackedRelationReleaser implements ResultListener {
+    @Override
+    public void resultAdded(Result child, Result parent) {
+      // Ignore
+    }
+
+    @Override
+    public void resultChanged(Result current) {
+      // Ignore
+    }
+
+    @Override
+    public void resultRemoved(Result child, Result parent) {
+      if(parent == StaticArrayDatabase.this && child instanceof PackedNumberVectorRelation && relations.remove(child)) {
+        ((PackedNumberVectorRelation<?>) child).close();
+      }
+    }
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -202,6 +515,58 @@ public class StaticArrayDatabase extends AbstractDatabase {
      */
     private Collection<IndexFactory<?, ?>> indexFactories;
 
+    /**
+     * Store numerical vectors in a packed block.
+     * <p>
+     * Key: {@code -db.packed}
+     * </p>
+     */
+    public static final OptionID PACKED_ID = new OptionID("db.packed", "Store numerical vectors of fixed dimensionality in a contiguous block (on heap, off-heap, or memory-mapped) instead of individual objects. Only vector types that accept views of the block, such as NumberVector, are packed.");
+
+    /**
+     * Use single precision for packed vectors.
+     * <p>
+     * Key: {@code -db.packed.float}
+     * </p>
+     */
+    public static final OptionID PACKED_FLOAT_ID = new OptionID("db.packed.float", "Store packed vectors with single precision.");
+
+    /**
+     * File for memory-mapped vectors.
+     * <p>
+     * Key: {@code -db.packed.file}
+     * </p>
+     */
+    public static final OptionID PACKED_FILE_ID = new OptionID("db.packed.file", "File to memory-map packed vectors to (default: temporary file).");
+
+    /**
+     * Directory for index snapshots.
+     * <p>
+     * Key: {@code -db.index.snapshot}
+     * </p>
+     */
+    public static final OptionID INDEX_SNAPSHOT_ID = new OptionID("db.index.snapshot", "Directory to store index snapshots in, and to restore indexes from when the same data is loaded again.");
+
+    /**
+     * Storage for packed vectors.
+     */
+    private NumberVectorBlock.Storage packed = null;
+
+    /**
+     * Use single precision for packed vectors.
+     */
+    private boolean packedFloat = false;
+
+    /**
+     * File for memory-mapped vectors.
+     */
+    private File packedFile = null;
+
+    /**
+     * Directory for index snapshots.
+     */
+    private File snapshotDirectory = null;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -215,11 +580,29 @@ public class StaticArrayDatabase extends AbstractDatabase {
       if(config.grab(indexFactoryP)) {
         indexFactories = indexFactoryP.instantiateClasses(config);
       }
+      final FileParameter snapshotP = new FileParameter(INDEX_SNAPSHOT_ID, FileParameter.FileType.OUTPUT_DIRECTORY, true);
+      if(config.grab(snapshotP)) {
+        snapshotDirectory = snapshotP.getValue();
+      }
+      final EnumParameter<NumberVectorBlock.Storage> packedP = new EnumParameter<>(PACKED_ID, NumberVectorBlock.Storage.class, true);
+      if(config.grab(packedP)) {
+        packed = packedP.getValue();
+        final Flag floatF = new Flag(PACKED_FLOAT_ID);
+        if(config.grab(floatF)) {
+          packedFloat = floatF.isTrue();
+        }
+        if(packed == NumberVectorBlock.Storage.MAPPED) {
+          final FileParameter fileP = new FileParameter(PACKED_FILE_ID, FileParameter.FileType.OUTPUT_FILE, true);
+          if(config.grab(fileP)) {
+            packedFile = fileP.getValue();
+          }
+        }
+      }
     }
 
     @Override
     protected StaticArrayDatabase makeInstance() {
-      return new StaticArrayDatabase(databaseConnection, indexFactories);
+      return new StaticArrayDatabase(databaseConnection, indexFactories, packed, packedFloat, packedFile, snapshotDirectory);
     }
   }
 }
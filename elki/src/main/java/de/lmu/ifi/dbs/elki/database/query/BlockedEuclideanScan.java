@@ -0,0 +1,354 @@
+package de.lmu.ifi.dbs.elki.database.query;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import net.jafama.FastMath;
+
+/**
+ * Blocked, multi-threaded linear scan for batches of Euclidean kNN and range
+ * queries.
+ * <p>
+ * The data set and the queries are copied into dense row-major
+ * {@code double[]} arrays. Queries are processed in tiles (run in parallel),
+ * and each tile is compared to one cache-sized block of data rows at a time.
+ * Distances are first bounded cheaply using the squared norms,
+ * {@code |x-y|^2 = |x|^2 + |y|^2 - 2 x*y}; only candidates that may qualify
+ * are then verified with the exact squared distance, so that the results are
+ * identical to a naive linear scan.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class BlockedEuclideanScan {
+  /**
+   * Number of doubles of a data block, to fit into the L1 cache.
+   */
+  private static final int DATA_BLOCK_DOUBLES = 2048;
+
+  /**
+   * Number of doubles of a query tile, to fit into the L2 cache.
+   */
+  private static final int QUERY_TILE_DOUBLES = 16384;
+
+  /**
+   * Maximum share of the heap to use for the dense data copy.
+   */
+  private static final int MEMORY_FRACTION = 4;
+
+  /**
+   * Data point ids.
+   */
+  private final ArrayDBIDs ids;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Dense data, row major.
+   */
+  private final double[] data;
+
+  /**
+   * Squared norms of the data points.
+   */
+  private final double[] norms;
+
+  /**
+   * Constructor, copying the data from the relation.
+   * 
+   * @param relation Data relation
+   * @param dim Dimensionality
+   */
+  private BlockedEuclideanScan(Relation<? extends NumberVector> relation, int dim) {
+    this.ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    this.dim = dim;
+    final int size = ids.size();
+    this.data = new double[size * dim];
+    this.norms = new double[size];
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      norms[i] = copy(relation.get(it), data, i * dim, dim);
+    }
+  }
+
+  /**
+   * Build a blocked scan for a relation, if the data is vector data of a
+   * fixed dimensionality, and a dense copy fits into memory.
+   * 
+   * @param relation Data relation
+   * @return Blocked scan, or {@code null}
+   */
+  public static BlockedEuclideanScan build(Relation<? extends NumberVector> relation) {
+    final int size = relation.size();
+    if(size == 0) {
+      return null;
+    }
+    final int dim = relation.get(relation.iterDBIDs()).getDimensionality();
+    final long doubles = size * (long) dim;
+    if(dim <= 0 || doubles > Integer.MAX_VALUE - 8 || (doubles << 3) > Runtime.getRuntime().maxMemory() / MEMORY_FRACTION) {
+      return null;
+    }
+    return new BlockedEuclideanScan(relation, dim);
+  }
+
+  /**
+   * Check whether the scan still covers exactly the objects of a relation, in
+   * the same order, i.e. no objects were inserted or removed since it was
+   * built. The vectors themselves are not compared.
+   * 
+   * @param relation Data relation
+   * @return {@code true} if the DBIDs match
+   */
+  public boolean matches(Relation<?> relation) {
+    if(relation.size() != ids.size()) {
+      return false;
+    }
+    DBIDArrayIter it = ids.iter();
+    for(DBIDIter it2 = relation.iterDBIDs(); it2.valid(); it2.advance(), it.advance()) {
+      if(!DBIDUtil.equal(it, it2)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Dimensionality of the data.
+   * 
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return dim;
+  }
+
+  /**
+   * Batch kNN search; the heaps will contain <em>squared</em> distances.
+   * 
+   * @param queries Query objects
+   * @param heaps Output heaps, one per query
+   */
+  public void knn(List<? extends NumberVector> queries, KNNHeap[] heaps) {
+    run(new Queries(queries), heaps, null, 0.);
+  }
+
+  /**
+   * Batch range search. The results are added (unsorted) to the output lists.
+   * 
+   * @param queries Query objects
+   * @param range Query radius
+   * @param results Output lists, one per query
+   */
+  public void range(List<? extends NumberVector> queries, double range, ModifiableDoubleDBIDList[] results) {
+    run(new Queries(queries), null, results, range);
+  }
+
+  /**
+   * Run the tiled scan, in parallel if worthwhile.
+   * 
+   * @param q Queries
+   * @param heaps kNN heaps, or {@code null}
+   * @param results Range results, or {@code null}
+   * @param range Range query radius
+   */
+  private void run(final Queries q, final KNNHeap[] heaps, final ModifiableDoubleDBIDList[] results, final double range) {
+    final int qtile = Math.max(4, QUERY_TILE_DOUBLES / dim);
+    if(q.size <= qtile) {
+      processTile(q, 0, q.size, heaps, results, range);
+      return;
+    }
+    ParallelExecutor.run(q.size, qtile, new ParallelExecutor.RangeProcessor() {
+      @Override
+      public void process(int start, int end) {
+        processTile(q, start, end, heaps, results, range);
+      }
+    });
+  }
+
+  /**
+   * Process one tile of queries against all data blocks.
+   * 
+   * @param q Queries
+   * @param qstart First query
+   * @param qend Query end (exclusive)
+   * @param heaps kNN heaps, or {@code null}
+   * @param results Range results, or {@code null}
+   * @param range Range query radius
+   */
+  private void processTile(Queries q, int qstart, int qend, KNNHeap[] heaps, ModifiableDoubleDBIDList[] results, double range) {
+    final int size = norms.length, dim = this.dim;
+    final int dblock = Math.max(8, DATA_BLOCK_DOUBLES / dim);
+    // Relative error bound of the squared norm trick, conservatively.
+    final double relerr = (dim + 2) * 0x1p-50;
+    // Avoid a loss in numerical precision when using the squared radius:
+    final double upper = range * 1.0000001, sqrange = upper * upper;
+    final double[] qdata = q.data, qnorms = q.norms, data = this.data, norms = this.norms;
+    DBIDArrayIter it = ids.iter();
+    for(int xstart = 0; xstart < size; xstart += dblock) {
+      final int xend = Math.min(xstart + dblock, size);
+      for(int i = qstart; i < qend; i++) {
+        final int qoff = i * dim;
+        final double qn = qnorms[i];
+        final KNNHeap heap = heaps != null ? heaps[i] : null;
+        double threshold = heap != null ? heap.getKNNDistance() : sqrange;
+        for(int j = xstart, xoff = xstart * dim; j < xend; j++, xoff += dim) {
+          final double sum = qn + norms[j];
+          final double bound = sum - 2 * dot(qdata, qoff, data, xoff, dim);
+          if(bound - sum * relerr > threshold) {
+            continue;
+          }
+          final double sqdist = squaredDistance(qdata, qoff, data, xoff, dim);
+          if(sqdist > threshold) {
+            continue;
+          }
+          it.seek(j);
+          if(heap != null) {
+            threshold = heap.insert(sqdist, it);
+          }
+          else {
+            final double dist = FastMath.sqrt(sqdist);
+            if(dist <= range) { // double check, as we increased the radius above
+              results[i].add(dist, it);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Dot product of two rows.
+   * 
+   * @param a First array
+   * @param aoff First offset
+   * @param b Second array
+   * @param boff Second offset
+   * @param dim Dimensionality
+   * @return Dot product
+   */
+  private static double dot(double[] a, int aoff, double[] b, int boff, int dim) {
+    double s0 = 0., s1 = 0., s2 = 0., s3 = 0.;
+    int d = 0;
+    for(final int end = dim & ~3; d < end; d += 4) {
+      s0 += a[aoff + d] * b[boff + d];
+      s1 += a[aoff + d + 1] * b[boff + d + 1];
+      s2 += a[aoff + d + 2] * b[boff + d + 2];
+      s3 += a[aoff + d + 3] * b[boff + d + 3];
+    }
+    for(; d < dim; d++) {
+      s0 += a[aoff + d] * b[boff + d];
+    }
+    return (s0 + s1) + (s2 + s3);
+  }
+
+  /**
+   * Exact squared Euclidean distance of two rows, computed in the same order
+   * as {@link de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction}.
+   * 
+   * @param a First array
+   * @param aoff First offset
+   * @param b Second array
+   * @param boff Second offset
+   * @param dim Dimensionality
+   * @return Squared distance
+   */
+  private static double squaredDistance(double[] a, int aoff, double[] b, int boff, int dim) {
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double delta = a[aoff + d] - b[boff + d];
+      agg += delta * delta;
+    }
+    return agg;
+  }
+
+  /**
+   * Copy a vector into a row, and compute its squared norm.
+   * 
+   * @param v Vector
+   * @param out Output array
+   * @param off Offset
+   * @param dim Dimensionality
+   * @return Squared norm
+   */
+  private static double copy(NumberVector v, double[] out, int off, int dim) {
+    if(v.getDimensionality() != dim) {
+      throw new IllegalArgumentException("Vectors of different dimensionality: " + v.getDimensionality() + " != " + dim);
+    }
+    double norm = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double x = out[off + d] = v.doubleValue(d);
+      norm += x * x;
+    }
+    return norm;
+  }
+
+  /**
+   * Dense copy of the query objects.
+   * 
+   * @author Erich Schubert
+   */
+  private class Queries {
+    /**
+     * Number of queries.
+     */
+    final int size;
+
+    /**
+     * Query data, row major.
+     */
+    final double[] data;
+
+    /**
+     * Squared norms of the queries.
+     */
+    final double[] norms;
+
+    /**
+     * Constructor.
+     * 
+     * @param queries Query objects
+     */
+    Queries(List<? extends NumberVector> queries) {
+      this.size = queries.size();
+      this.data = new double[size * dim];
+      this.norms = new double[size];
+      for(int i = 0; i < size; i++) {
+        norms[i] = copy(queries.get(i), data, i * dim, dim);
+      }
+    }
+  }
+}
@@ -33,6 +33,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.BlockedEuclideanScan;
 import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
@@ -58,6 +59,16 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
    */
   private static final SquaredEuclideanDistanceFunction SQUARED = SquaredEuclideanDistanceFunction.STATIC;
 
+  /**
+   * Blocked scan of the data, built on the first bulk query.
+   */
+  private BlockedEuclideanScan scan;
+
+  /**
+   * Flag, whether the blocked scan has been built.
+   */
+  private boolean scanBuilt = false;
+
   /**
    * Constructor.
    *
@@ -99,6 +110,27 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
     return heap;
   }
 
+  /**
+   * Get the blocked scan of the data. It is built on first use, and reused by
+   * later bulk queries until objects are inserted or removed.
+   *
+   * @return Blocked scan, or {@code null} if the data does not fit into memory
+   *         as a dense array
+   */
+  public synchronized BlockedEuclideanScan getBlockedScan() {
+    if(!scanBuilt || (scan != null && !scan.matches(relation))) {
+      scan = BlockedEuclideanScan.build(relation);
+      scanBuilt = true;
+    }
+    return scan;
+  }
+
+  /**
+   * Bulk kNN search.
+   *
+   * This uses a blocked and multi-threaded scan, unless the data does not fit
+   * into memory as a dense array.
+   */
   @Override
   public List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
     final int size = ids.size();
@@ -108,7 +140,13 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
       heaps.add(DBIDUtil.newHeap(k));
       objs.add(relation.get(iter));
     }
-    linearScanBatchKNN(objs, heaps);
+    BlockedEuclideanScan scan = size > 1 ? getBlockedScan() : null;
+    if(scan != null) {
+      scan.knn(objs, heaps.toArray(new KNNHeap[size]));
+    }
+    else {
+      linearScanBatchKNN(objs, heaps);
+    }
 
     List<KNNList> result = new ArrayList<>(heaps.size());
     for(KNNHeap heap : heaps) {
@@ -23,6 +23,8 @@ package de.lmu.ifi.dbs.elki.database.query.range;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -42,7 +44,7 @@ import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
  * 
  * @param <O> Database object type
  */
-public class LinearScanDistanceRangeQuery<O> extends AbstractDistanceRangeQuery<O> implements LinearScanQuery {
+public class LinearScanDistanceRangeQuery<O> extends AbstractDistanceRangeQuery<O> implements BulkRangeQuery<O>, LinearScanQuery {
   /**
    * Constructor.
    * 
@@ -97,4 +99,19 @@ public class LinearScanDistanceRangeQuery<O> extends AbstractDistanceRangeQuery<
       }
     }
   }
+
+  @Override
+  public void getRangeForBulkDBIDs(ArrayDBIDs ids, double range, ModifiableDoubleDBIDList[] results) {
+    // Single scan over the data, compared to all queries:
+    final int size = ids.size();
+    DBIDArrayIter qiter = ids.iter();
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      for(int i = 0; i < size; i++) {
+        final double currentDistance = distanceQuery.distance(qiter.seek(i), iter);
+        if(currentDistance <= range) {
+          results[i].add(currentDistance, iter);
+        }
+      }
+    }
+  }
 }
\ No newline at end of file
@@ -23,12 +23,17 @@ package de.lmu.ifi.dbs.elki.database.query.range;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
+import java.util.List;
+
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.BlockedEuclideanScan;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
@@ -50,6 +55,16 @@ public class LinearScanEuclideanDistanceRangeQuery<O extends NumberVector> exten
    */
   private static final SquaredEuclideanDistanceFunction SQUARED = SquaredEuclideanDistanceFunction.STATIC;
 
+  /**
+   * Blocked scan of the data, built on the first bulk query.
+   */
+  private BlockedEuclideanScan scan;
+
+  /**
+   * Flag, whether the blocked scan has been built.
+   */
+  private boolean scanBuilt = false;
+
   /**
    * Constructor.
    * 
@@ -87,6 +102,38 @@ public class LinearScanEuclideanDistanceRangeQuery<O extends NumberVector> exten
     linearScan(relation, relation.iterDBIDs(), obj, range, neighbors);
   }
 
+  /**
+   * Get the blocked scan of the data. It is built on first use, and reused by
+   * later bulk queries until objects are inserted or removed.
+   *
+   * @return Blocked scan, or {@code null} if the data does not fit into memory
+   *         as a dense array
+   */
+  public synchronized BlockedEuclideanScan getBlockedScan() {
+    if(!scanBuilt || (scan != null && !scan.matches(relation))) {
+      scan = BlockedEuclideanScan.build(relation);
+      scanBuilt = true;
+    }
+    return scan;
+  }
+
+  @Override
+  public void getRangeForBulkDBIDs(ArrayDBIDs ids, double range, ModifiableDoubleDBIDList[] results) {
+    final int size = ids.size();
+    List<O> objs = new ArrayList<>(size);
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      objs.add(relation.get(iter));
+    }
+    BlockedEuclideanScan scan = size > 1 ? getBlockedScan() : null;
+    if(scan != null) {
+      scan.range(objs, range, results);
+      return;
+    }
+    for(int i = 0; i < size; i++) {
+      linearScan(relation, relation.iterDBIDs(), objs.get(i), range, results[i]);
+    }
+  }
+
   /**
    * Main loop for linear scan,
    * 
@@ -23,6 +23,10 @@ package de.lmu.ifi.dbs.elki.database.query.range;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -45,7 +49,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
  * 
  * @param <O> Database object type
  */
-public class LinearScanPrimitiveDistanceRangeQuery<O> extends AbstractDistanceRangeQuery<O> {
+public class LinearScanPrimitiveDistanceRangeQuery<O> extends AbstractDistanceRangeQuery<O> implements BulkRangeQuery<O> {
   /**
    * Unboxed distance function.
    */
@@ -89,6 +93,25 @@ public class LinearScanPrimitiveDistanceRangeQuery<O> extends AbstractDistanceRa
     linearScan(relation, relation.iterDBIDs(), obj, range, neighbors);
   }
 
+  @Override
+  public void getRangeForBulkDBIDs(ArrayDBIDs ids, double range, ModifiableDoubleDBIDList[] results) {
+    final int size = ids.size();
+    List<O> objs = new ArrayList<>(size);
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      objs.add(relation.get(iter));
+    }
+    // Single scan over the data: retrieve each data object only once.
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      final O cand = relation.get(iter);
+      for(int i = 0; i < size; i++) {
+        final double distance = rawdist.distance(objs.get(i), cand);
+        if(distance <= range) {
+          results[i].add(distance, iter);
+        }
+      }
+    }
+  }
+
   /**
    * Main loop for linear scan,
    * 
@@ -0,0 +1,213 @@
+package de.lmu.ifi.dbs.elki.database.relation;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.StaticDBIDs;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.persistent.NumberVectorBlock;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Static relation of numerical vectors with fixed dimensionality, stored in a
+ * contiguous {@link NumberVectorBlock} instead of one object per vector.
+ * 
+ * The relation keeps the vector type of the original data, and {@link #get}
+ * returns lightweight views of the block without copying. Therefore, only
+ * vector types that accept such views can be packed (see
+ * {@link #acceptsViews}); types such as {@code DoubleVector} would require a
+ * copy on every access.
+ * 
+ * The relation owns the block: {@link #close()} releases its memory and
+ * mappings.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.composedOf NumberVectorBlock
+ * 
+ * @param <V> Vector type
+ */
+public class PackedNumberVectorRelation<V extends NumberVector> extends AbstractRelation<V> implements AutoCloseable {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(PackedNumberVectorRelation.class);
+
+  /**
+   * The type information.
+   */
+  private final VectorFieldTypeInformation<V> type;
+
+  /**
+   * Data storage.
+   */
+  private final NumberVectorBlock block;
+
+  /**
+   * The DBIDs, in the order of the block.
+   */
+  private final StaticDBIDs ids;
+
+  /**
+   * DBID range, for mapping DBIDs to rows (if available).
+   */
+  private final DBIDRange range;
+
+  /**
+   * Mapping of DBIDs to rows, if the DBIDs are not a range.
+   */
+  private final WritableIntegerDataStore rows;
+
+  /**
+   * The relation name.
+   */
+  private String name;
+
+  /**
+   * Constructor.
+   * 
+   * @param name Relation name, may be {@code null}
+   * @param type Vector type of the original data
+   * @param ids DBIDs, in the order of the rows in the block
+   * @param block Data storage
+   */
+  public PackedNumberVectorRelation(String name, VectorFieldTypeInformation<V> type, ArrayDBIDs ids, NumberVectorBlock block) {
+    super();
+    if(ids.size() != block.size()) {
+      throw new IllegalArgumentException("Number of DBIDs does not match the number of vectors.");
+    }
+    if(type.getDimensionality() != block.getDimensionality()) {
+      throw new IllegalArgumentException("Dimensionality of the vector type does not match the block.");
+    }
+    if(!acceptsViews(type)) {
+      throw new IllegalArgumentException("Vector type " + type + " does not accept views of the block.");
+    }
+    this.type = type;
+    this.name = name;
+    this.block = block;
+    this.ids = DBIDUtil.makeUnmodifiable(ids);
+    if(ids instanceof DBIDRange) {
+      this.range = (DBIDRange) ids;
+      this.rows = null;
+    }
+    else {
+      this.range = null;
+      this.rows = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_STATIC, -1);
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        rows.putInt(it, it.getOffset());
+      }
+    }
+  }
+
+  /**
+   * Test if a type is a vector field that accepts views of a block, i.e. whose
+   * restriction class is a super class of {@link NumberVectorBlock.View}.
+   * 
+   * @param type Type information
+   * @return {@code true} when the data can be packed without copying on access
+   */
+  public static boolean acceptsViews(SimpleTypeInformation<?> type) {
+    return TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(type) && type.getRestrictionClass().isAssignableFrom(NumberVectorBlock.View.class);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public V get(DBIDRef id) {
+    // Safe, as the restriction class accepts views (checked in the constructor)
+    return (V) block.get(range != null ? range.getOffset(id) : rows.intValue(id));
+  }
+
+  /**
+   * Get the underlying storage.
+   * 
+   * @return Storage block
+   */
+  public NumberVectorBlock getBlock() {
+    return block;
+  }
+
+  @Override
+  public StaticDBIDs getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public SimpleTypeInformation<V> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public String getLongName() {
+    return (name != null) ? name : type.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return "relation";
+  }
+
+  /**
+   * Release the storage block.
+   */
+  @Override
+  public void close() {
+    try {
+      block.close();
+    }
+    catch(IOException e) {
+      throw new AbortException("Could not release vector storage.", e);
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+}
@@ -26,7 +26,10 @@ package de.lmu.ifi.dbs.elki.datasource;
 import java.io.InputStream;
 import java.util.List;
 
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.filter.AbstractStreamFilter;
 import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
 import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
 import de.lmu.ifi.dbs.elki.datasource.parser.Parser;
@@ -120,6 +123,36 @@ public class InputStreamDatabaseConnection extends AbstractDatabaseConnection {
     }
   }
 
+  @Override
+  public BundleStreamSource loadStream() {
+    if(!(parser instanceof StreamingParser)) {
+      return super.loadStream();
+    }
+    final StreamingParser streamParser = (StreamingParser) parser;
+    streamParser.initStream(in);
+    // Release the parser once the consumer reached the end of the stream.
+    return new AbstractStreamFilter() {
+      @Override
+      public BundleMeta getMeta() {
+        return source.getMeta();
+      }
+
+      @Override
+      public Object data(int rnum) {
+        return source.data(rnum);
+      }
+
+      @Override
+      public Event nextEvent() {
+        final Event ev = source.nextEvent();
+        if(ev == Event.END_OF_STREAM) {
+          streamParser.cleanup();
+        }
+        return ev;
+      }
+    }.init(invokeStreamFilters(streamParser));
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
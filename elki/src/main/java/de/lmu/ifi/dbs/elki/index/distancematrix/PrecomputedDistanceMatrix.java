@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.index.distancematrix;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -48,9 +49,12 @@ import de.lmu.ifi.dbs.elki.index.DistanceIndex;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.index.SnapshotIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.persistent.SnapshotInput;
+import de.lmu.ifi.dbs.elki.persistent.SnapshotOutput;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
@@ -76,7 +80,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  *
  * @param <O> Object type
  */
-public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements DistanceIndex<O>, RangeIndex<O>, KNNIndex<O> {
+public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements DistanceIndex<O>, RangeIndex<O>, KNNIndex<O>, SnapshotIndex {
   /**
    * Class logger.
    */
@@ -124,17 +128,7 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
 
   @Override
   public void initialize() {
-    DBIDs rids = relation.getDBIDs();
-    if(!(rids instanceof DBIDRange)) {
-      throw new AbortException("Distance matrixes are currently only supported for DBID ranges (as used by static databases) for performance reasons (Patches welcome).");
-    }
-    ids = (DBIDRange) rids;
-    size = ids.size();
-    if(size > 65536) {
-      throw new AbortException("Distance matrixes currently have a limit of 65536 objects (~16 GB). After this, the array size exceeds the Java integer range, and a different data structure needs to be used.");
-    }
-
-    distanceQuery = distanceFunction.instantiate(relation);
+    initializeIds();
 
     final int msize = triangleSize(size);
     matrix = new double[msize];
@@ -155,6 +149,54 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
     LOG.ensureCompleted(prog);
   }
 
+  /**
+   * Validate the relation, and initialize the DBID range and distance query.
+   */
+  private void initializeIds() {
+    DBIDs rids = relation.getDBIDs();
+    if(!(rids instanceof DBIDRange)) {
+      throw new AbortException("Distance matrixes are currently only supported for DBID ranges (as used by static databases) for performance reasons (Patches welcome).");
+    }
+    ids = (DBIDRange) rids;
+    size = ids.size();
+    if(size > 65536) {
+      throw new AbortException("Distance matrixes currently have a limit of 65536 objects (~16 GB). After this, the array size exceeds the Java integer range, and a different data structure needs to be used.");
+    }
+
+    distanceQuery = distanceFunction.instantiate(relation);
+  }
+
+  @Override
+  public void writeSnapshot(SnapshotOutput out) throws IOException {
+    out.writeString(distanceFunction.getClass().getName());
+    out.writeInt(size);
+    out.writeDoubles(matrix, 0, matrix.length);
+  }
+
+  @Override
+  public boolean readSnapshot(SnapshotInput in) throws IOException {
+    initializeIds();
+    if(!distanceFunction.getClass().getName().equals(in.readString()) || in.readInt() != size) {
+      return false;
+    }
+    final int msize = triangleSize(size);
+    double[] m = new double[msize];
+    in.readDoubles(m, 0, msize);
+    // Verify a sample of the stored distances, as the distance function
+    // parameters are not part of the snapshot.
+    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    for(int x = 1, step = Math.max(1, size / 100); x < size; x += step) {
+      ix.seek(x);
+      iy.seek(x >>> 1);
+      final double d = distanceQuery.distance(ix, iy), s = m[getOffset(x, x >>> 1)];
+      if(Math.abs(d - s) > 1e-12 * Math.max(1., Math.abs(d))) {
+        return false;
+      }
+    }
+    matrix = m;
+    return true;
+  }
+
   /**
    * Compute the size of a complete x by x triangle (minus diagonal)
    *
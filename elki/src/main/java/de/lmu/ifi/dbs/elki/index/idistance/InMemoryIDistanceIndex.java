@@ -23,11 +23,13 @@ package de.lmu.ifi.dbs.elki.index.idistance;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.IOException;
 import java.util.Arrays;
 
 import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMedoidsInitialization;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -44,10 +46,13 @@ import de.lmu.ifi.dbs.elki.index.AbstractRefiningIndex;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.index.SnapshotIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 import de.lmu.ifi.dbs.elki.math.MeanVarianceMinMax;
+import de.lmu.ifi.dbs.elki.persistent.SnapshotInput;
+import de.lmu.ifi.dbs.elki.persistent.SnapshotOutput;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
@@ -92,7 +97,7 @@ import de.lmu.ifi.dbs.elki.utilities.pairs.DoubleIntPair;
  * @param <O> Object type
  */
 @Reference(authors = "C. Yu, B. C. Ooi, K. L. Tan, H. V. Jagadish", title = "Indexing the distance: An efficient method to knn processing", booktitle = "In Proceedings of the 27th International Conference on Very Large Data Bases", url = "http://www.vldb.org/conf/2001/P421.pdf")
-public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implements RangeIndex<O>, KNNIndex<O> {
+public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implements RangeIndex<O>, KNNIndex<O>, SnapshotIndex {
   /**
    * Class logger.
    */
@@ -179,6 +184,63 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
     }
   }
 
+  @Override
+  public void writeSnapshot(SnapshotOutput out) throws IOException {
+    out.writeString(getDistanceFunction().getClass().getName());
+    out.writeString(initialization.getClass().getName());
+    out.writeInt(numref);
+    out.writeInt(referencepoints.size());
+    for(DBIDIter it = referencepoints.iter(); it.valid(); it.advance()) {
+      out.writeDBID(it);
+    }
+    for(int i = 0; i < index.length; i++) {
+      out.writeInt(index[i].size());
+      for(DoubleDBIDListIter it = index[i].iter(); it.valid(); it.advance()) {
+        out.writeDouble(it.doubleValue());
+        out.writeDBID(it);
+      }
+    }
+  }
+
+  @Override
+  public boolean readSnapshot(SnapshotInput in) throws IOException {
+    if(!getDistanceFunction().getClass().getName().equals(in.readString()) //
+        || !initialization.getClass().getName().equals(in.readString()) || in.readInt() != numref) {
+      return false;
+    }
+    final int k = in.readInt();
+    ArrayModifiableDBIDs refs = DBIDUtil.newArray(k);
+    for(int i = 0; i < k; i++) {
+      refs.add(in.readDBID());
+    }
+    ModifiableDoubleDBIDList[] lists = new ModifiableDoubleDBIDList[k];
+    for(int i = 0; i < k; i++) {
+      final int size = in.readInt();
+      lists[i] = DBIDUtil.newDistanceDBIDList(size);
+      for(int j = 0; j < size; j++) {
+        final double d = in.readDouble();
+        lists[i].add(d, in.readDBID());
+      }
+    }
+    // Verify a sample of the stored distances, as the distance function
+    // parameters are not part of the snapshot.
+    DBIDArrayIter riter = refs.iter();
+    final int perlist = Math.max(1, 100 / Math.max(k, 1));
+    for(int i = 0; i < k; i++) {
+      riter.seek(i);
+      int budget = perlist;
+      for(DoubleDBIDListIter it = lists[i].iter(); it.valid() && budget > 0; it.advance(), --budget) {
+        final double d = distanceQuery.distance(it, riter), s = it.doubleValue();
+        if(Math.abs(d - s) > 1e-12 * Math.max(1., Math.abs(d))) {
+          return false;
+        }
+      }
+    }
+    referencepoints = refs;
+    index = lists;
+    return true;
+  }
+
   @Override
   public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
     // Query on the relation we index
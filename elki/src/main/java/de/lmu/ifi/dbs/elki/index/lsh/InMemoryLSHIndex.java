@@ -27,6 +27,7 @@ import gnu.trove.iterator.TIntObjectIterator;
 import gnu.trove.map.TIntObjectMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
@@ -47,11 +48,14 @@ import de.lmu.ifi.dbs.elki.index.AbstractRefiningIndex;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.index.SnapshotIndex;
 import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.LocalitySensitiveHashFunctionFamily;
 import de.lmu.ifi.dbs.elki.index.lsh.hashfunctions.LocalitySensitiveHashFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.persistent.SnapshotInput;
+import de.lmu.ifi.dbs.elki.persistent.SnapshotOutput;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -122,7 +126,7 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
    *
    * @apiviz.has LocalitySensitiveHashFunction
    */
-  public class Instance extends AbstractRefiningIndex<V> implements KNNIndex<V>, RangeIndex<V> {
+  public class Instance extends AbstractRefiningIndex<V> implements KNNIndex<V>, RangeIndex<V>, SnapshotIndex {
     /**
      * Hash functions to use.
      */
@@ -219,6 +223,72 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
       }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The hash functions themselves are not stored, but regenerated by the
+     * hash function family. Snapshots can therefore only be reused when the
+     * family uses a fixed random seed; this is verified on a sample of the
+     * data.
+     */
+    @Override
+    public void writeSnapshot(SnapshotOutput out) throws IOException {
+      out.writeString(family.getClass().getName());
+      out.writeInt(numberOfBuckets);
+      out.writeInt(hashtables.size());
+      for(TIntObjectMap<DBIDs> table : hashtables) {
+        out.writeInt(table.size());
+        for(TIntObjectIterator<DBIDs> iter = table.iterator(); iter.hasNext();) {
+          iter.advance();
+          out.writeInt(iter.key());
+          out.writeInt(iter.value().size());
+          for(DBIDIter it = iter.value().iter(); it.valid(); it.advance()) {
+            out.writeDBID(it);
+          }
+        }
+      }
+    }
+
+    @Override
+    public boolean readSnapshot(SnapshotInput in) throws IOException {
+      final int numhash = hashfunctions.size();
+      if(!family.getClass().getName().equals(in.readString()) || in.readInt() != numberOfBuckets || in.readInt() != numhash) {
+        return false;
+      }
+      ArrayList<TIntObjectMap<DBIDs>> tables = new ArrayList<>(numhash);
+      for(int i = 0; i < numhash; i++) {
+        final int numbuck = in.readInt();
+        TIntObjectMap<DBIDs> table = new TIntObjectHashMap<DBIDs>(Math.max(numbuck, 1));
+        for(int j = 0; j < numbuck; j++) {
+          final int bucket = in.readInt(), size = in.readInt();
+          if(size == 1) {
+            table.put(bucket, DBIDUtil.deref(in.readDBID()));
+            continue;
+          }
+          ModifiableDBIDs buck = DBIDUtil.newArray(size);
+          for(int k = 0; k < size; k++) {
+            buck.add(in.readDBID());
+          }
+          table.put(bucket, buck);
+        }
+        tables.add(table);
+      }
+      // Verify that the hash functions are the same, on a sample of the data.
+      double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+      int budget = 100;
+      for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid() && budget > 0; iter.advance(), --budget) {
+        V obj = relation.get(iter);
+        for(int i = 0; i < numhash; i++) {
+          DBIDs cur = tables.get(i).get(hashfunctions.get(i).hashObject(obj, buf) % numberOfBuckets);
+          if(cur == null || !cur.contains(iter)) {
+            return false;
+          }
+        }
+      }
+      hashtables = tables;
+      return true;
+    }
+
     @Override
     public Logging getLogger() {
       return LOG;
@@ -0,0 +1,584 @@
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.application.cache.CacheKNNListsInMappedFile;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDPair;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * kNN index serving precomputed neighbors from a memory-mapped file, as
+ * written by {@link CacheKNNListsInMappedFile}.
+ *
+ * The file is mapped read-only, and kNN lists are views of the mapped memory,
+ * so the neighbors are neither parsed nor copied when loading the index. Only
+ * the offset table is read. Objects are stored in the order of the relation,
+ * so the data must be loaded in the same order as when writing the file.
+ * Queries for a smaller k return a prefix of the stored list (including ties).
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has MappedKNNQuery
+ *
+ * @param <O> Object type
+ */
+public class MappedKNNIndex<O> extends AbstractIndex<O> implements KNNIndex<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MappedKNNIndex.class);
+
+  /**
+   * Maximum size of a single mapped segment.
+   */
+  private static final long MAX_SEGMENT = Integer.MAX_VALUE;
+
+  /**
+   * Distance function the neighbors were computed with.
+   */
+  protected final DistanceFunction<? super O> distanceFunction;
+
+  /**
+   * File to map.
+   */
+  private File filename;
+
+  /**
+   * Number of neighbors stored.
+   */
+  private int k;
+
+  /**
+   * Distances are stored with single precision.
+   */
+  private boolean isFloat;
+
+  /**
+   * Mapped segments of the file.
+   */
+  private MappedByteBuffer[] segments;
+
+  /**
+   * Segment of each record.
+   */
+  private int[] segment;
+
+  /**
+   * Position of each record within its segment.
+   */
+  private int[] position;
+
+  /**
+   * Objects, in the order of the records.
+   */
+  private ArrayDBIDs ids;
+
+  /**
+   * Record number of each object.
+   */
+  private WritableIntegerDataStore records;
+
+  /**
+   * Total number of bytes mapped.
+   */
+  private long mapped = 0;
+
+  /**
+   * Warn only once if more neighbors are requested than stored.
+   */
+  private boolean warned = false;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distanceFunction Distance function
+   * @param filename File to map
+   */
+  public MappedKNNIndex(Relation<O> relation, DistanceFunction<? super O> distanceFunction, File filename) {
+    super(relation);
+    this.distanceFunction = distanceFunction;
+    this.filename = filename;
+  }
+
+  @Override
+  public void initialize() {
+    try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+        FileChannel channel = file.getChannel()) {
+      final long length = channel.size();
+      final int hsize = CacheKNNListsInMappedFile.HEADER_SIZE;
+      if(length < hsize) {
+        throw new AbortException("kNN cache file is too short.");
+      }
+      ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, hsize);
+      if(header.getInt() != CacheKNNListsInMappedFile.KNN_MAPPED_MAGIC) {
+        throw new AbortException("Cache magic number does not match.");
+      }
+      isFloat = (header.getInt() & CacheKNNListsInMappedFile.FLAG_FLOAT) != 0;
+      final int size = header.getInt();
+      k = header.getInt();
+      if(size != relation.size()) {
+        throw new AbortException("kNN cache contains " + size + " objects, but the relation has " + relation.size() + ".");
+      }
+      ByteBuffer table = channel.map(MapMode.READ_ONLY, hsize, 8L * size);
+      long[] offsets = new long[size];
+      for(int i = 0; i < size; i++) {
+        offsets[i] = table.getLong();
+      }
+      ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      records = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_HOT, -1);
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        records.putInt(it, it.getOffset());
+      }
+      // Map the records in segments, each less than 2 GB.
+      List<MappedByteBuffer> segs = new ArrayList<>();
+      segment = new int[size];
+      position = new int[size];
+      long segstart = 0, segend = 0;
+      for(int i = 0; i < size; i++) {
+        final long rend = (i + 1 < size) ? offsets[i + 1] : length;
+        if(offsets[i] < segend || rend <= offsets[i]) {
+          throw new AbortException("kNN cache file is corrupt.");
+        }
+        if(i == 0 || rend - segstart > MAX_SEGMENT) {
+          if(i > 0) {
+            segs.add(channel.map(MapMode.READ_ONLY, segstart, segend - segstart));
+          }
+          segstart = offsets[i];
+        }
+        segment[i] = segs.size();
+        position[i] = (int) (offsets[i] - segstart);
+        segend = rend;
+      }
+      if(size > 0) {
+        segs.add(channel.map(MapMode.READ_ONLY, segstart, segend - segstart));
+      }
+      segments = segs.toArray(new MappedByteBuffer[segs.size()]);
+      mapped = segend - (size > 0 ? offsets[0] : 0);
+    }
+    catch(IOException e) {
+      throw new AbortException("I/O error in loading kNN cache: " + e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public void logStatistics() {
+    if(segments != null) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".mapped-bytes", mapped));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".segments", segments.length));
+    }
+  }
+
+  @Override
+  public String getLongName() {
+    return "Memory-mapped kNN index";
+  }
+
+  @Override
+  public String getShortName() {
+    return "mapped-knn";
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    if(!this.distanceFunction.equals(distanceQuery.getDistanceFunction())) {
+      return null;
+    }
+    // k max supported?
+    for(Object hint : hints) {
+      if(hint instanceof Integer) {
+        if(((Integer) hint) > k) {
+          return null;
+        }
+        break;
+      }
+    }
+    return new MappedKNNQuery();
+  }
+
+  /**
+   * kNN query using the mapped file.
+   *
+   * @author Erich Schubert
+   */
+  private class MappedKNNQuery implements KNNQuery<O> {
+    @Override
+    public KNNList getKNNForDBID(DBIDRef id, int k) {
+      if(k > MappedKNNIndex.this.k) {
+        if(!warned) {
+          LOG.warning("Requested more neighbors than precomputed: requested " + k + " precomputed " + MappedKNNIndex.this.k);
+          warned = true;
+        }
+        k = MappedKNNIndex.this.k;
+      }
+      final int rec = records.intValue(id);
+      return new MappedKNNList(segments[segment[rec]], position[rec], k);
+    }
+
+    @Override
+    public List<? extends KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+      List<KNNList> ret = new ArrayList<>(ids.size());
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        ret.add(getKNNForDBID(iter, k));
+      }
+      return ret;
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      throw new AbortException("Mapped kNN index only supports ID queries.");
+    }
+  }
+
+  /**
+   * kNN list backed by the mapped file.
+   *
+   * @author Erich Schubert
+   */
+  private class MappedKNNList implements KNNList {
+    /**
+     * Mapped buffer.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Positions of the neighbor ids and distances.
+     */
+    private final int idpos, distpos;
+
+    /**
+     * Parameter k.
+     */
+    private final int k;
+
+    /**
+     * List size, including ties.
+     */
+    private final int size;
+
+    /**
+     * Number of neighbors stored.
+     */
+    private final int stored;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer Mapped buffer
+     * @param pos Record position
+     * @param k Number of neighbors requested
+     */
+    MappedKNNList(ByteBuffer buffer, int pos, int k) {
+      this.buffer = buffer;
+      this.stored = buffer.getInt(pos);
+      this.idpos = pos + 4;
+      this.distpos = idpos + (stored << 2);
+      this.k = k;
+      if(k < stored) {
+        // Add all values tied:
+        final double kdist = distance(k - 1);
+        int i = k;
+        while(i < stored && distance(i) <= kdist) {
+          i++;
+        }
+        size = i;
+      }
+      else {
+        size = stored;
+      }
+    }
+
+    /**
+     * Get a stored distance.
+     *
+     * @param off Offset
+     * @return Distance
+     */
+    protected double distance(int off) {
+      return isFloat ? buffer.getFloat(distpos + (off << 2)) : buffer.getDouble(distpos + (off << 3));
+    }
+
+    /**
+     * Get a stored neighbor.
+     *
+     * @param off Offset
+     * @return Row number of the neighbor
+     */
+    protected int row(int off) {
+      return buffer.getInt(idpos + (off << 2));
+    }
+
+    @Override
+    public int getK() {
+      return k;
+    }
+
+    @Override
+    public double getKNNDistance() {
+      return k <= stored ? distance(k - 1) : Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public DoubleDBIDPair get(int index) {
+      assert (index < size) : "Access beyond design size of list.";
+      return DBIDUtil.newPair(distance(index), ids.iter().seek(row(index)));
+    }
+
+    @Override
+    public DBIDVar assignVar(int index, DBIDVar var) {
+      assert (index < size) : "Access beyond design size of list.";
+      return ids.assignVar(row(index), var);
+    }
+
+    @Override
+    public Itr iter() {
+      return new Itr();
+    }
+
+    @Override
+    public boolean contains(DBIDRef o) {
+      final int row = records.intValue(o);
+      for(int i = 0; i < size; i++) {
+        if(row(i) == row) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return size == 0;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Iterator for the mapped list.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    private class Itr implements DoubleDBIDListIter {
+      /**
+       * Current position.
+       */
+      private int pos = 0;
+
+      /**
+       * Iterator to resolve neighbors.
+       */
+      private DBIDArrayIter iter = ids.iter();
+
+      @Override
+      public boolean valid() {
+        return pos < size && pos >= 0;
+      }
+
+      @Override
+      public Itr advance() {
+        pos++;
+        return this;
+      }
+
+      @Override
+      public double doubleValue() {
+        return distance(pos);
+      }
+
+      @Override
+      public DoubleDBIDPair getPair() {
+        return get(pos);
+      }
+
+      @Override
+      public int internalGetIndex() {
+        return iter.seek(row(pos)).internalGetIndex();
+      }
+
+      @Override
+      public int getOffset() {
+        return pos;
+      }
+
+      @Override
+      public Itr advance(int count) {
+        pos += count;
+        return this;
+      }
+
+      @Override
+      public Itr retract() {
+        --pos;
+        return this;
+      }
+
+      @Override
+      public Itr seek(int off) {
+        pos = off;
+        return this;
+      }
+    }
+  }
+
+  /**
+   * Factory for the index.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has MappedKNNIndex
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> implements IndexFactory<O, MappedKNNIndex<O>> {
+    /**
+     * Distance function the neighbors were computed with.
+     */
+    final protected DistanceFunction<? super O> distanceFunction;
+
+    /**
+     * File to map.
+     */
+    private File filename;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param filename File to map
+     */
+    public Factory(DistanceFunction<? super O> distanceFunction, File filename) {
+      super();
+      this.distanceFunction = distanceFunction;
+      this.filename = filename;
+    }
+
+    @Override
+    public MappedKNNIndex<O> instantiate(Relation<O> relation) {
+      return new MappedKNNIndex<>(relation, distanceFunction, filename);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return distanceFunction.getInputTypeRestriction();
+    }
+
+    /**
+     * Parameterizer.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     *
+     * @param <O> Object type
+     */
+    public static class Parameterizer<O> extends AbstractParameterizer {
+      /**
+       * Distance function the neighbors were computed with.
+       * <p>
+       * Key: {@code -mappedknn.distance}
+       * </p>
+       */
+      public static final OptionID DISTANCE_ID = new OptionID("mappedknn.distance", "Distance function the cached neighbors were computed with.");
+
+      /**
+       * File with the precomputed neighbors.
+       * <p>
+       * Key: {@code -mappedknn.file}
+       * </p>
+       */
+      public static final OptionID FILE_ID = new OptionID("mappedknn.file", "File with the precomputed k nearest neighbors, as written by " + CacheKNNListsInMappedFile.class.getSimpleName() + ".");
+
+      /**
+       * Distance function the neighbors were computed with.
+       */
+      protected DistanceFunction<? super O> distanceFunction;
+
+      /**
+       * File to map.
+       */
+      protected File filename;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        ObjectParameter<DistanceFunction<? super O>> distanceP = new ObjectParameter<>(DISTANCE_ID, DistanceFunction.class);
+        if(config.grab(distanceP)) {
+          distanceFunction = distanceP.instantiateClass(config);
+        }
+        FileParameter fileP = new FileParameter(FILE_ID, FileParameter.FileType.INPUT_FILE);
+        if(config.grab(fileP)) {
+          filename = fileP.getValue();
+        }
+      }
+
+      @Override
+      protected Factory<O> makeInstance() {
+        return new Factory<>(distanceFunction, filename);
+      }
+    }
+  }
+}
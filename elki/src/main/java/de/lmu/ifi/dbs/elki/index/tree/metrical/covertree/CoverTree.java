@@ -23,8 +23,11 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
@@ -39,14 +42,18 @@ import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.BulkRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.index.SnapshotIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.persistent.SnapshotInput;
+import de.lmu.ifi.dbs.elki.persistent.SnapshotOutput;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 
@@ -79,7 +86,7 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 title = "Cover trees for nearest neighbor", //
 booktitle = "In Proc. 23rd International Conference on Machine Learning (ICML)", //
 url = "http://dx.doi.org/10.1145/1143844.1143857")
-public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>, KNNIndex<O> {
+public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>, KNNIndex<O>, SnapshotIndex {
   /**
    * Class logger.
    */
@@ -170,6 +177,21 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
       this.parentDist = parentDist;
     }
 
+    /**
+     * Constructor for restoring a node.
+     *
+     * @param singletons Objects, starting with the routing object.
+     * @param maxDist Maximum distance to any descendant.
+     * @param parentDist Distance from parent.
+     * @param children Child nodes, may be {@code null}.
+     */
+    private Node(ModifiableDoubleDBIDList singletons, double maxDist, double parentDist, ArrayList<Node> children) {
+      this.singletons = singletons;
+      this.children = children;
+      this.maxDist = maxDist;
+      this.parentDist = parentDist;
+    }
+
     /**
      * True, if the node is a leaf.
      *
@@ -282,6 +304,112 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
     return node;
   }
 
+  @Override
+  public void writeSnapshot(SnapshotOutput out) throws IOException {
+    out.writeDouble(expansion);
+    out.writeInt(truncate);
+    out.writeString(distanceFunction.getClass().getName());
+    out.writeInt(root != null ? 1 : 0);
+    if(root != null) {
+      writeNode(out, root);
+    }
+  }
+
+  /**
+   * Write a subtree to a snapshot.
+   *
+   * @param out Snapshot output
+   * @param cur Current node
+   * @throws IOException on IO errors
+   */
+  private void writeNode(SnapshotOutput out, Node cur) throws IOException {
+    out.writeDouble(cur.maxDist);
+    out.writeDouble(cur.parentDist);
+    out.writeInt(cur.singletons.size());
+    for(DoubleDBIDListIter it = cur.singletons.iter(); it.valid(); it.advance()) {
+      out.writeDouble(it.doubleValue());
+      out.writeDBID(it);
+    }
+    out.writeInt(cur.children != null ? cur.children.size() : -1);
+    if(cur.children != null) {
+      for(Node chi : cur.children) {
+        writeNode(out, chi);
+      }
+    }
+  }
+
+  @Override
+  public boolean readSnapshot(SnapshotInput in) throws IOException {
+    if(in.readDouble() != expansion || in.readInt() != truncate || !distanceFunction.getClass().getName().equals(in.readString())) {
+      return false;
+    }
+    Node node = in.readInt() != 0 ? readNode(in) : null;
+    // Verify a sample of the stored distances, as the distance function
+    // parameters are not part of the snapshot.
+    if(node != null && !checkDistances(node, new int[] { 100 })) {
+      return false;
+    }
+    root = node;
+    return true;
+  }
+
+  /**
+   * Read a subtree from a snapshot.
+   *
+   * @param in Snapshot input
+   * @return Node
+   * @throws IOException on IO errors
+   */
+  private Node readNode(SnapshotInput in) throws IOException {
+    final double maxDist = in.readDouble(), parentDist = in.readDouble();
+    final int size = in.readInt();
+    ModifiableDoubleDBIDList singletons = DBIDUtil.newDistanceDBIDList(size);
+    for(int i = 0; i < size; i++) {
+      final double d = in.readDouble();
+      singletons.add(d, in.readDBID());
+    }
+    final int numc = in.readInt();
+    ArrayList<Node> children = null;
+    if(numc >= 0) {
+      children = new ArrayList<>(numc);
+      for(int i = 0; i < numc; i++) {
+        children.add(readNode(in));
+      }
+    }
+    return new Node(singletons, maxDist, parentDist, children);
+  }
+
+  /**
+   * Verify the stored distances to the routing objects.
+   *
+   * @param cur Current node
+   * @param budget Remaining number of distances to verify
+   * @return {@code false} if a distance does not match
+   */
+  private boolean checkDistances(Node cur, int[] budget) {
+    DoubleDBIDListIter it = cur.singletons.iter(), r = cur.singletons.iter();
+    for(it.advance(); it.valid() && budget[0] > 0; it.advance()) {
+      if(!DBIDUtil.equal(r, it)) {
+        --budget[0];
+        final double d = distance(r, it), s = it.doubleValue();
+        if(Math.abs(d - s) > 1e-12 * Math.max(1., Math.abs(d))) {
+          return false;
+        }
+      }
+    }
+    if(cur.children != null) {
+      for(Node chi : cur.children) {
+        if(budget[0] <= 0) {
+          break;
+        }
+        if(!checkDistances(chi, budget)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
   /**
    * Collect some statistics on the tree.
    *
@@ -344,7 +472,7 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
    *
    * @author Erich Schubert
    */
-  public class CoverTreeRangeQuery extends AbstractDistanceRangeQuery<O>implements RangeQuery<O> {
+  public class CoverTreeRangeQuery extends AbstractDistanceRangeQuery<O>implements BulkRangeQuery<O> {
     /**
      * Constructor.
      *
@@ -394,6 +522,84 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
         }
       }
     }
+
+    @Override
+    public void getRangeForBulkDBIDs(ArrayDBIDs ids, double range, ModifiableDoubleDBIDList[] results) {
+      final int size = ids.size();
+      List<O> queries = new ArrayList<>(size);
+      int[] active = new int[size];
+      int i = 0;
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance(), i++) {
+        queries.add(relation.get(iter));
+        active[i] = i;
+      }
+      if(size > 0) {
+        bulkRangeSearch(root, queries, active, size, range, results);
+      }
+    }
+
+    /**
+     * Range search for many queries at once, visiting every node only once.
+     *
+     * @param cur Current node
+     * @param queries Query objects
+     * @param active Indexes of the queries that need to visit this node
+     * @param nactive Number of active queries
+     * @param range Query radius
+     * @param ret Output lists
+     */
+    private void bulkRangeSearch(Node cur, List<O> queries, int[] active, int nactive, double range, ModifiableDoubleDBIDList[] ret) {
+      final DoubleDBIDListIter it = cur.singletons.iter();
+      // Distances to the routing object, for queries that overlap this node.
+      int[] next = new int[nactive];
+      double[] dists = new double[nactive];
+      int nnext = 0;
+      for(int j = 0; j < nactive; j++) {
+        final double d = distance(queries.get(active[j]), it);
+        // Covered area not in range (metric assumption!):
+        if(d - cur.maxDist <= range) {
+          next[nnext] = active[j];
+          dists[nnext++] = d;
+        }
+      }
+      if(nnext == 0) {
+        return;
+      }
+      if(!cur.isLeaf()) { // Inner node:
+        int[] sub = new int[nnext];
+        for(Node c : cur.children) {
+          int nsub = 0;
+          for(int j = 0; j < nnext; j++) {
+            if(dists[j] - c.maxDist - c.parentDist <= range) {
+              sub[nsub++] = next[j];
+            }
+          }
+          if(nsub > 0) {
+            bulkRangeSearch(c, queries, sub, nsub, range, ret);
+          }
+        }
+      }
+      else { // Leaf node
+        // Consider routing object, too:
+        for(int j = 0; j < nnext; j++) {
+          if(dists[j] <= range) {
+            ret[next[j]].add(dists[j], it);
+          }
+        }
+      }
+      it.advance(); // Skip routing object.
+      // For remaining singletons, compute the distances:
+      for(; it.valid(); it.advance()) {
+        for(int j = 0; j < nnext; j++) {
+          if(dists[j] - it.doubleValue() <= range) {
+            final double d2 = distance(queries.get(next[j]), it);
+            if(d2 <= range) {
+              ret[next[j]].add(d2, it);
+            }
+          }
+        }
+      }
+    }
   }
 
   /**
@@ -23,10 +23,12 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -46,9 +48,12 @@ import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.index.SnapshotIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.persistent.SnapshotInput;
+import de.lmu.ifi.dbs.elki.persistent.SnapshotOutput;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
 
 /**
@@ -76,7 +81,7 @@ import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
  * @apiviz.has CoverTreeRangeQuery
  * @apiviz.has CoverTreeKNNQuery
  */
-public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>, KNNIndex<O> {
+public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>, KNNIndex<O>, SnapshotIndex {
   /**
    * Class logger.
    */
@@ -151,6 +156,19 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
       this.maxDist = maxDist;
     }
 
+    /**
+     * Constructor for restoring a node.
+     *
+     * @param singletons Objects, starting with the routing object.
+     * @param maxDist Maximum distance to any descendant.
+     * @param children Child nodes, may be {@code null}.
+     */
+    private Node(ArrayModifiableDBIDs singletons, double maxDist, ArrayList<Node> children) {
+      this.singletons = singletons;
+      this.children = children;
+      this.maxDist = maxDist;
+    }
+
     /**
      * True, if the node is a leaf.
      *
@@ -263,6 +281,88 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
     return node;
   }
 
+  @Override
+  public void writeSnapshot(SnapshotOutput out) throws IOException {
+    out.writeDouble(expansion);
+    out.writeInt(truncate);
+    out.writeString(distanceFunction.getClass().getName());
+    out.writeInt(root != null ? 1 : 0);
+    if(root != null) {
+      writeNode(out, root);
+    }
+  }
+
+  /**
+   * Write a subtree to a snapshot.
+   *
+   * @param out Snapshot output
+   * @param cur Current node
+   * @throws IOException on IO errors
+   */
+  private void writeNode(SnapshotOutput out, Node cur) throws IOException {
+    out.writeDouble(cur.maxDist);
+    out.writeInt(cur.singletons.size());
+    for(DBIDIter it = cur.singletons.iter(); it.valid(); it.advance()) {
+      out.writeDBID(it);
+    }
+    out.writeInt(cur.children != null ? cur.children.size() : -1);
+    if(cur.children != null) {
+      for(Node chi : cur.children) {
+        writeNode(out, chi);
+      }
+    }
+  }
+
+  @Override
+  public boolean readSnapshot(SnapshotInput in) throws IOException {
+    if(in.readDouble() != expansion || in.readInt() != truncate || !distanceFunction.getClass().getName().equals(in.readString())) {
+      return false;
+    }
+    Node node = in.readInt() != 0 ? readNode(in) : null;
+    // The distance function parameters are not part of the snapshot, so verify
+    // the cover radius of the root, which is the maximum over all objects.
+    if(node != null) {
+      DBIDArrayIter r = node.singletons.iter();
+      double max = 0.;
+      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+        if(!DBIDUtil.equal(r, it)) {
+          final double d = distance(r, it);
+          max = d > max ? d : max;
+        }
+      }
+      if(Math.abs(max - node.maxDist) > 1e-12 * Math.max(1., max)) {
+        return false;
+      }
+    }
+    root = node;
+    return true;
+  }
+
+  /**
+   * Read a subtree from a snapshot.
+   *
+   * @param in Snapshot input
+   * @return Node
+   * @throws IOException on IO errors
+   */
+  private Node readNode(SnapshotInput in) throws IOException {
+    final double maxDist = in.readDouble();
+    final int size = in.readInt();
+    ArrayModifiableDBIDs singletons = DBIDUtil.newArray(size);
+    for(int i = 0; i < size; i++) {
+      singletons.add(in.readDBID());
+    }
+    final int numc = in.readInt();
+    ArrayList<Node> children = null;
+    if(numc >= 0) {
+      children = new ArrayList<>(numc);
+      for(int i = 0; i < numc; i++) {
+        children.add(readNode(in));
+      }
+    }
+    return new Node(singletons, maxDist, children);
+  }
+
   /**
    * Collect some statistics on the tree.
    *
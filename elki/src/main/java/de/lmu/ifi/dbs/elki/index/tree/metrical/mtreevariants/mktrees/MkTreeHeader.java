@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 
 import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
 
 /**
  * Encapsulates the header information for subclasses of
@@ -104,6 +105,27 @@ public class MkTreeHeader extends TreeIndexHeader {
         return k_max;
     }
 
+    /**
+     * Initializes this header from the given byte array. Calls
+     * {@link de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader#readHeader(byte[])
+     * TreeIndexHeader#readHeader(data)} and reads additionally the integer value
+     * of {@link #k_max}.
+     */
+    @Override
+    public void readHeader(byte[] data) {
+        super.readHeader(data);
+        this.k_max = ByteArrayUtil.readInt(data, super.size());
+    }
+
+    @Override
+    public byte[] asByteArray() {
+        byte[] header = new byte[size()];
+        byte[] base = super.asByteArray();
+        System.arraycopy(base, 0, header, 0, base.length);
+        ByteArrayUtil.writeInt(header, base.length, this.k_max);
+        return header;
+    }
+
     /**
      * Returns {@link de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader#size()}
      * plus the value of {@link #SIZE}).
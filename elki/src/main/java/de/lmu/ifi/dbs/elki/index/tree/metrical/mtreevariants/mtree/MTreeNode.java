@@ -23,8 +23,15 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import de.lmu.ifi.dbs.elki.index.tree.Entry;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeNode;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeDirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeEntry;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeLeafEntry;
 
 /**
  * Represents a node in an M-Tree.
@@ -56,4 +63,36 @@ public class MTreeNode<O> extends AbstractMTreeNode<O, MTreeNode<O>, MTreeEntry>
   public MTreeNode(int capacity, boolean isLeaf) {
     super(capacity, isLeaf, MTreeEntry.class);
   }
-}
\ No newline at end of file
+
+  /**
+   * Calls the super method and writes the capacity and the entries of this
+   * node to the specified stream.
+   */
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    super.writeExternal(out);
+    out.writeInt(entries.length);
+    for(int i = 0; i < numEntries; i++) {
+      entries[i].writeExternal(out);
+    }
+  }
+
+  /**
+   * Reads the capacity and the entries of this node from the specified stream.
+   *
+   * @param in the stream to read data from in order to restore the object
+   * @throws java.io.IOException if I/O errors occur
+   * @throws ClassNotFoundException If the class for an object being restored
+   *         cannot be found.
+   */
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    super.readExternal(in);
+    entries = new Entry[in.readInt()];
+    for(int i = 0; i < numEntries; i++) {
+      MTreeEntry e = isLeaf ? new MTreeLeafEntry() : new MTreeDirectoryEntry();
+      e.readExternal(in);
+      entries[i] = e;
+    }
+  }
+}
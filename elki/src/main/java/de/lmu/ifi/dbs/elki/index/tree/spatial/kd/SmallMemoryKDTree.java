@@ -23,9 +23,14 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
@@ -38,6 +43,7 @@ import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.BulkRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
@@ -50,8 +56,11 @@ import de.lmu.ifi.dbs.elki.index.AbstractIndex;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.index.SnapshotIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.persistent.SnapshotInput;
+import de.lmu.ifi.dbs.elki.persistent.SnapshotOutput;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
@@ -90,7 +99,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 title = "Multidimensional binary search trees used for associative searching", //
 booktitle = "Communications of the ACM, Vol. 18 Issue 9, Sept. 1975", //
 url = "http://dx.doi.org/10.1145/361002.361007")
-public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>implements KNNIndex<O>, RangeIndex<O> {
+public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>implements KNNIndex<O>, RangeIndex<O>, SnapshotIndex {
   /**
    * Class logger
    */
@@ -184,6 +193,33 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
     }
   }
 
+  @Override
+  public void writeSnapshot(SnapshotOutput out) throws IOException {
+    out.writeInt(dims);
+    out.writeInt(leafsize);
+    out.writeInt(sorted.size());
+    for(DoubleDBIDListIter it = sorted.iter(); it.valid(); it.advance()) {
+      out.writeDouble(it.doubleValue());
+      out.writeDBID(it);
+    }
+  }
+
+  @Override
+  public boolean readSnapshot(SnapshotInput in) throws IOException {
+    final int size = relation.size();
+    if(in.readInt() != RelationUtil.dimensionality(relation) || in.readInt() != leafsize || in.readInt() != size) {
+      return false;
+    }
+    ModifiableDoubleDBIDList list = DBIDUtil.newDistanceDBIDList(size);
+    for(int i = 0; i < size; i++) {
+      final double v = in.readDouble();
+      list.add(v, in.readDBID());
+    }
+    dims = RelationUtil.dimensionality(relation);
+    sorted = list;
+    return true;
+  }
+
   @Override
   public String getLongName() {
     return "kd-tree";
@@ -390,7 +426,7 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
    *
    * @author Erich Schubert
    */
-  public class KDTreeRangeQuery extends AbstractDistanceRangeQuery<O> {
+  public class KDTreeRangeQuery extends AbstractDistanceRangeQuery<O> implements BulkRangeQuery<O> {
     /**
      * Norm to use.
      */
@@ -465,6 +501,98 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
         kdRangeSearch(middle + 1, right, next, query, res, iter, radius);
       }
     }
+
+    @Override
+    public void getRangeForBulkDBIDs(ArrayDBIDs ids, double range, ModifiableDoubleDBIDList[] results) {
+      final int size = ids.size();
+      List<O> queries = new ArrayList<>(size);
+      int[] active = new int[size];
+      int i = 0;
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance(), i++) {
+        queries.add(relation.get(iter));
+        active[i] = i;
+      }
+      if(size > 0) {
+        kdBulkRangeSearch(0, sorted.size(), 0, queries, active, size, results, sorted.iter(), range);
+      }
+    }
+
+    /**
+     * Perform a range search for many queries at once, visiting every node of
+     * the kd-tree only once and retrieving every object only once.
+     *
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @param axis Current splitting axis
+     * @param queries Query objects
+     * @param active Indexes of the queries that need to visit this subtree.
+     *        This array will be modified!
+     * @param nactive Number of active queries
+     * @param res Output lists
+     * @param iter Iterator variable (reduces memory footprint!)
+     * @param radius Query radius
+     */
+    private void kdBulkRangeSearch(int left, int right, int axis, List<O> queries, int[] active, int nactive, ModifiableDoubleDBIDList[] res, DoubleDBIDListIter iter, double radius) {
+      if(right - left <= leafsize) {
+        for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+          O cand = relation.get(iter);
+          countObjectAccess();
+          for(int j = 0; j < nactive; j++) {
+            final int q = active[j];
+            double dist = norm.distance(queries.get(q), cand);
+            countDistanceComputation();
+            if(dist <= radius) {
+              res[q].add(dist, iter);
+            }
+          }
+        }
+        return;
+      }
+      // Look at current node:
+      final int middle = (left + right) >>> 1;
+      final double split = iter.seek(middle).doubleValue();
+      O splitobj = null;
+
+      // Partition the queries. The right set is written back into "active",
+      // which is safe because it never advances faster than the read position.
+      int[] lefta = new int[nactive];
+      int nleft = 0, nright = 0;
+      for(int j = 0; j < nactive; j++) {
+        final int q = active[j];
+        final O query = queries.get(q);
+        // Distance to axis:
+        final double delta = split - query.doubleValue(axis);
+        final boolean close = (Math.abs(delta) <= radius);
+        // Current object:
+        if(close) {
+          if(splitobj == null) {
+            splitobj = relation.get(iter);
+            countObjectAccess();
+          }
+          double dist = norm.distance(query, splitobj);
+          countDistanceComputation();
+          if(dist <= radius) {
+            assert(iter.getOffset() == middle);
+            res[q].add(dist, iter /* .seek(middle) */);
+          }
+        }
+        if(delta >= 0 || close) {
+          lefta[nleft++] = q;
+        }
+        if(delta <= 0 || close) {
+          active[nright++] = q;
+        }
+      }
+
+      // Next axis:
+      final int next = (axis + 1) % dims;
+      if(left < middle && nleft > 0) {
+        kdBulkRangeSearch(left, middle, next, queries, lefta, nleft, res, iter, radius);
+      }
+      if(middle + 1 < right && nright > 0) {
+        kdBulkRangeSearch(middle + 1, right, next, queries, active, nright, res, iter, radius);
+      }
+    }
   }
 
   /**
@@ -0,0 +1,169 @@
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.RecursiveTask;
+
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialSingleMeanComparator;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import net.jafama.FastMath;
+
+/**
+ * Multi-threaded Sort-Tile-Recursive bulk loading.
+ *
+ * The slab boundaries of each level are selected as in the sequential version,
+ * then the slabs (which are disjoint ranges of the list) are partitioned
+ * concurrently by fork-join tasks of the {@link ParallelCore}. Because the
+ * selection of a slab only depends on the data not yet assigned to earlier
+ * slabs, the resulting partitions - and thus the R-tree built from them - are
+ * identical to {@link SortTileRecursiveBulkSplit}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@Alias({ "pstr", "parallel-str" })
+public class ParallelSortTileRecursiveBulkSplit extends SortTileRecursiveBulkSplit {
+  /**
+   * Static instance.
+   */
+  public static final ParallelSortTileRecursiveBulkSplit STATIC = new ParallelSortTileRecursiveBulkSplit();
+
+  /**
+   * Slabs smaller than this are partitioned sequentially.
+   */
+  private static final int MIN_TASK_SIZE = 1 << 13;
+
+  @Override
+  public <T extends SpatialComparable> List<List<T>> partition(List<T> spatialObjects, int minEntries, int maxEntries) {
+    final int size = spatialObjects.size();
+    if(size < MIN_TASK_SIZE || ParallelCore.getCore().getParallelism() <= 1 || !(spatialObjects instanceof RandomAccess)) {
+      return super.partition(spatialObjects, minEntries, maxEntries);
+    }
+    final int dims = spatialObjects.get(0).getDimensionality();
+    return ParallelCore.getCore().invoke(new STRTask<>(this, spatialObjects, 0, size, 0, dims, maxEntries));
+  }
+
+  /**
+   * Fork-join task to partition one slab.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <T> data type
+   */
+  private static class STRTask<T extends SpatialComparable> extends RecursiveTask<List<List<T>>> {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Sequential partitioning.
+     */
+    private final SortTileRecursiveBulkSplit str;
+
+    /**
+     * Object list.
+     */
+    private final List<T> objs;
+
+    /**
+     * Subinterval, iteration depth, dimensionality, page size.
+     */
+    private final int start, end, depth, dims, maxEntries;
+
+    /**
+     * Constructor.
+     *
+     * @param str Sequential partitioning
+     * @param objs Object list
+     * @param start Subinterval start
+     * @param end Subinterval end
+     * @param depth Iteration depth
+     * @param dims Total number of dimensions
+     * @param maxEntries Maximum page size
+     */
+    STRTask(SortTileRecursiveBulkSplit str, List<T> objs, int start, int end, int depth, int dims, int maxEntries) {
+      this.str = str;
+      this.objs = objs;
+      this.start = start;
+      this.end = end;
+      this.depth = depth;
+      this.dims = dims;
+      this.maxEntries = maxEntries;
+    }
+
+    @Override
+    protected List<List<T>> compute() {
+      final SpatialSingleMeanComparator c = new SpatialSingleMeanComparator(depth);
+      final int p = (int) FastMath.ceil((end - start) / (double) maxEntries);
+      List<List<T>> ret = new ArrayList<>(p);
+      if(end - start < MIN_TASK_SIZE || depth + 1 == dims) {
+        str.strPartition(objs, start, end, depth, dims, maxEntries, c, ret);
+        return ret;
+      }
+      final int s = (int) FastMath.ceil(FastMath.pow(p, 1.0 / (dims - depth)));
+      final double len = end - start; // double intentional!
+      // Select all slab boundaries first, exactly as the sequential version.
+      List<STRTask<T>> tasks = new ArrayList<>(s);
+      for(int i = 0; i < s; i++) {
+        int s2 = start + (int) ((i * len) / s);
+        int e2 = start + (int) (((i + 1) * len) / s);
+        if(e2 < end) {
+          QuickSelect.quickSelect(objs, c, s2, end, e2);
+        }
+        tasks.add(new STRTask<>(str, objs, s2, e2, depth + 1, dims, maxEntries));
+      }
+      // Partition the disjoint slabs concurrently, and concatenate in order.
+      invokeAll(tasks);
+      for(STRTask<T> task : tasks) {
+        ret.addAll(task.join());
+      }
+      return ret;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    @Override
+    protected ParallelSortTileRecursiveBulkSplit makeInstance() {
+      return STATIC;
+    }
+  }
+}
@@ -24,36 +24,83 @@ package de.lmu.ifi.dbs.elki.parallel;
  */
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import de.lmu.ifi.dbs.elki.logging.Logging;
+
 /**
- * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}.
+ * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}
+ * and, for work-stealing execution, {@link ForkJoinPool}.
+ * 
+ * By default, a process-wide core using all available processors is used. The
+ * default level of parallelism can be set with the system property
+ * {@code elki.parallel.processors}. To cap the parallelism of a single task
+ * (e.g. to run multiple tasks side by side in one JVM), create a separate core
+ * and bind it to the thread running the task:
+ * 
+ * <pre>
+ * ParallelCore core = new ParallelCore(4);
+ * ParallelCore prev = ParallelCore.setCore(core);
+ * try {
+ *   // Run algorithms
+ * }
+ * finally {
+ *   ParallelCore.setCore(prev);
+ *   core.shutdown();
+ * }
+ * </pre>
  * 
- * TODO: make configurable how many threads are used.
+ * Worker threads of a core use the same core for nested parallel regions; such
+ * nested regions are executed within the existing pool (with work stealing),
+ * and thus do not oversubscribe the CPUs.
  * 
  * @author Erich Schubert
  * @since 0.7.0
  */
 public class ParallelCore {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelCore.class);
+
   /**
    * The number of CPUs to use.
    */
   public static final int ALL_PROCESSORS = Runtime.getRuntime().availableProcessors();
 
+  /**
+   * System property to configure the default parallelism.
+   */
+  public static final String PARALLELISM_PROPERTY = "elki.parallel.processors";
+
   /**
    * Static core
    */
-  private static final ParallelCore STATIC = new ParallelCore(ALL_PROCESSORS);
+  private static final ParallelCore STATIC = new ParallelCore(defaultParallelism());
+
+  /**
+   * Core bound to the current thread, overriding the static core.
+   */
+  private static final ThreadLocal<ParallelCore> CURRENT = new ThreadLocal<>();
 
   /**
    * Executor service.
    */
   ThreadPoolExecutor executor;
 
+  /**
+   * Fork-join pool, for work-stealing execution.
+   */
+  volatile ForkJoinPool forkjoin;
+
   /**
    * Number of connected submitters.
    */
@@ -66,33 +113,92 @@ public class ParallelCore {
 
   /**
    * Constructor.
+   * 
+   * @param processors Number of threads to use (at least 1)
    */
-  protected ParallelCore(int processors) {
+  public ParallelCore(int processors) {
     super();
+    if(processors < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1.");
+    }
     this.processors = processors;
   }
 
   /**
-   * Get the static core object.
+   * Get the default parallelism, from the system property or the number of
+   * available processors.
+   * 
+   * @return Default parallelism
+   */
+  private static int defaultParallelism() {
+    String val = System.getProperty(PARALLELISM_PROPERTY);
+    if(val != null) {
+      try {
+        int p = Integer.parseInt(val.trim());
+        if(p > 0) {
+          return p;
+        }
+      }
+      catch(NumberFormatException e) {
+        // Fall through to warning below.
+      }
+      LOG.warning("Ignoring invalid value for " + PARALLELISM_PROPERTY + ": " + val);
+    }
+    return ALL_PROCESSORS;
+  }
+
+  /**
+   * Get the core to use for the current thread.
+   * 
+   * This is the core bound via {@link #setCore}, or the core owning the
+   * current worker thread, or else the static default core.
    * 
    * @return Core
    */
   public static ParallelCore getCore() {
+    ParallelCore core = CURRENT.get();
+    if(core != null) {
+      return core;
+    }
+    Thread thread = Thread.currentThread();
+    if(thread instanceof Worker) {
+      return ((Worker) thread).core;
+    }
     return STATIC;
   }
 
+  /**
+   * Bind a core to the current thread.
+   * 
+   * @param core Core to use, {@code null} to use the default core again.
+   * @return Previously bound core (may be {@code null}), to be restored later.
+   */
+  public static ParallelCore setCore(ParallelCore core) {
+    ParallelCore prev = CURRENT.get();
+    if(core != null) {
+      CURRENT.set(core);
+    }
+    else {
+      CURRENT.remove();
+    }
+    return prev;
+  }
+
   /**
    * Get desired level of parallelism
    * 
    * @return Number of threads to run in parallel
    */
   public int getParallelism() {
-    return executor != null ? executor.getMaximumPoolSize() : processors;
+    return processors;
   }
 
   /**
    * Submit a task to the executor core.
    * 
+   * Note: do not wait for the result from within a task of the same core; use
+   * {@link #invoke} for nested parallelism instead.
+   * 
    * @param task Submitted task
    * 
    * @return Future to observe completion
@@ -101,6 +207,35 @@ public class ParallelCore {
     return executor.submit(task);
   }
 
+  /**
+   * Invoke a fork-join task on the work-stealing pool, and wait for its
+   * completion.
+   * 
+   * When called from a worker thread of this core (i.e. a nested parallel
+   * region), the task is run within the current worker, and its subtasks are
+   * shared with the other workers by work stealing.
+   * 
+   * Idle worker threads of the pool terminate automatically, so this does not
+   * require {@link #connect()}.
+   * 
+   * @param task Task to run
+   * @return Task result
+   */
+  public <T> T invoke(ForkJoinTask<T> task) {
+    Thread thread = Thread.currentThread();
+    if(thread instanceof Worker && ((Worker) thread).getPool() == forkjoin) {
+      return task.invoke();
+    }
+    if(forkjoin == null) {
+      synchronized(this) {
+        if(forkjoin == null) {
+          forkjoin = new ForkJoinPool(processors, new WorkerFactory(this), null, false);
+        }
+      }
+    }
+    return forkjoin.invoke(task);
+  }
+
   /**
    * Connect to the executor.
    */
@@ -108,7 +243,7 @@ public class ParallelCore {
     if(executor == null) {
       synchronized(this) {
         if(executor == null) {
-          executor = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+          executor = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new BoundThreadFactory(this));
           executor.allowCoreThreadTimeOut(true);
         }
       }
@@ -132,4 +267,113 @@ public class ParallelCore {
       }
     }
   }
+
+  /**
+   * Shut down the thread pools of this core, once no longer needed.
+   * 
+   * The core can still be used afterwards, new pools will be created on
+   * demand.
+   */
+  public synchronized void shutdown() {
+    if(forkjoin != null) {
+      forkjoin.shutdown();
+      forkjoin = null;
+    }
+    if(executor != null && connected.get() == 0) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+  /**
+   * Fork-join worker thread, which remembers its core.
+   * 
+   * @author Erich Schubert
+   */
+  private static class Worker extends ForkJoinWorkerThread {
+    /**
+     * Core owning this thread.
+     */
+    final ParallelCore core;
+
+    /**
+     * Constructor.
+     * 
+     * @param pool Pool
+     * @param core Core owning this thread
+     */
+    protected Worker(ForkJoinPool pool, ParallelCore core) {
+      super(pool);
+      this.core = core;
+    }
+  }
+
+  /**
+   * Factory for fork-join worker threads.
+   * 
+   * @author Erich Schubert
+   */
+  private static class WorkerFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+    /**
+     * Core owning the threads.
+     */
+    private final ParallelCore core;
+
+    /**
+     * Constructor.
+     * 
+     * @param core Core owning the threads
+     */
+    public WorkerFactory(ParallelCore core) {
+      super();
+      this.core = core;
+    }
+
+    @Override
+    public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+      Worker worker = new Worker(pool, core);
+      worker.setDaemon(true);
+      return worker;
+    }
+  }
+
+  /**
+   * Thread factory for the executor, binding the core to the new threads.
+   * 
+   * @author Erich Schubert
+   */
+  private static class BoundThreadFactory implements ThreadFactory {
+    /**
+     * Core owning the threads.
+     */
+    private final ParallelCore core;
+
+    /**
+     * Thread counter, for naming.
+     */
+    private final AtomicInteger counter = new AtomicInteger(0);
+
+    /**
+     * Constructor.
+     * 
+     * @param core Core owning the threads
+     */
+    public BoundThreadFactory(ParallelCore core) {
+      super();
+      this.core = core;
+    }
+
+    @Override
+    public Thread newThread(final Runnable r) {
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          CURRENT.set(core);
+          r.run();
+        }
+      }, "elki-parallel-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
 }
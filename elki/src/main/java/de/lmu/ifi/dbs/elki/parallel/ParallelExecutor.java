@@ -25,15 +25,15 @@ package de.lmu.ifi.dbs.elki.parallel;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveAction;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
@@ -41,15 +41,39 @@ import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
 /**
  * Class to run processors in parallel, on all available cores.
  *
- * TODO: add progress
+ * The data set is processed by a work-stealing fork-join scheduler: ranges are
+ * split lazily (only while other workers are likely to be idle), so that a
+ * slow part of the data set (e.g. a dense region with expensive queries) gets
+ * redistributed to idle threads instead of stalling the whole job. Processor
+ * instances are created once per worker thread, not once per block.
+ *
+ * The tasks run on the {@link ParallelCore} of the calling thread; nested
+ * invocations from within a processor reuse the worker threads of this core.
  *
  * @author Erich Schubert
  * @since 0.7.0
  *
  * @apiviz.has BlockArrayRunner
+ * @apiviz.has BlockTask
  * @apiviz.uses ParallelCore
+ * @apiviz.uses RangeProcessor
  */
 public class ParallelExecutor {
+  /**
+   * Minimum number of objects to process in one block.
+   */
+  private static final int MIN_BLOCKSIZE = 16;
+
+  /**
+   * Number of blocks per thread that we aim at, at least.
+   */
+  private static final int BLOCKS_PER_THREAD = 8;
+
+  /**
+   * Maximum number of surplus queued tasks before we stop splitting.
+   */
+  private static final int SURPLUS_THRESHOLD = 2;
+
   /**
    * Run a task on all available CPUs.
    *
@@ -57,107 +81,311 @@ public class ParallelExecutor {
    * @param procs Processors to run
    */
   public static final void run(DBIDs ids, Processor... procs) {
-    ParallelCore core = ParallelCore.getCore();
-    core.connect();
-    try {
-      // TODO: try different strategies anyway!
-      ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
-      final int size = aids.size();
-      int numparts = core.getParallelism();
-      // TODO: are there better heuristics for choosing this?
-      numparts = (size > numparts * numparts * 16) ? numparts * Math.max(1, numparts - 1) : numparts;
-
-      final int blocksize = (size + (numparts - 1)) / numparts;
-      List<Future<ArrayDBIDs>> parts = new ArrayList<>(numparts);
-      for(int i = 0; i < numparts; i++) {
-        final int start = i * blocksize;
-        final int end = (start + blocksize < size) ? start + blocksize : size;
-        Callable<ArrayDBIDs> run = new BlockArrayRunner(aids, start, end, procs);
-        parts.add(core.submit(run));
-      }
+    run(ids, null, null, procs);
+  }
 
-      for(Future<ArrayDBIDs> fut : parts) {
-        fut.get();
-      }
-    }
-    catch(ExecutionException e) {
-      throw new RuntimeException("Processor execution failed.", e);
+  /**
+   * Run a task on all available CPUs, with progress reporting.
+   *
+   * @param ids IDs to process
+   * @param prog Progress to update, may be {@code null}
+   * @param logger Logger to report progress to
+   * @param procs Processors to run
+   */
+  public static final void run(DBIDs ids, FiniteProgress prog, Logging logger, Processor... procs) {
+    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    final int size = aids.size();
+    if(size == 0) {
+      return;
     }
-    catch(InterruptedException e) {
-      throw new RuntimeException("Parallel execution interrupted.");
+    ParallelCore core = ParallelCore.getCore();
+    final int parallelism = core.getParallelism();
+    final int blocksize = Math.max(MIN_BLOCKSIZE, size / (parallelism * BLOCKS_PER_THREAD));
+    Job job = new Job(aids, procs, prog, logger);
+    try {
+      core.invoke(new BlockTask(job, 0, size, blocksize));
     }
     finally {
-      core.disconnect();
+      job.cleanup();
+    }
+  }
+
+  /**
+   * Run a task over a range of indexes, on all available CPUs. This is meant
+   * for work that is not mapped over database objects, such as a list of
+   * candidates that are expensive to evaluate.
+   *
+   * @param size Number of indexes
+   * @param blocksize Number of indexes to process in one block
+   * @param proc Range processor
+   */
+  public static final void run(int size, int blocksize, RangeProcessor proc) {
+    if(size == 0) {
+      return;
     }
+    ParallelCore.getCore().invoke(new BlockTask(proc, 0, size, Math.max(1, blocksize)));
+  }
+
+  /**
+   * Processor for ranges of indexes. It may be invoked concurrently for
+   * different ranges, and must not keep state across invocations.
+   *
+   * @author Erich Schubert
+   */
+  public interface RangeProcessor {
+    /**
+     * Process a range of indexes.
+     *
+     * @param start Starting position
+     * @param end End position (exclusive)
+     */
+    void process(int start, int end);
   }
 
   /**
-   * Run for an array part, without step size.
+   * Shared state of a single parallel job.
    *
    * @author Erich Schubert
    *
-   * @apiviz.uses Processor
+   * @apiviz.has BlockArrayRunner
    */
-  protected static class BlockArrayRunner implements Callable<ArrayDBIDs>, Executor {
+  protected static class Job implements RangeProcessor {
     /**
      * Array IDs to process
      */
     private ArrayDBIDs ids;
 
+    /**
+     * The processor masters that own the instances.
+     */
+    private Processor[] procs;
+
+    /**
+     * Progress, may be {@code null}.
+     */
+    private FiniteProgress prog;
+
+    /**
+     * Logger for progress reporting.
+     */
+    private Logging logger;
+
+    /**
+     * Runners, per worker thread. Usually, there is one runner per thread; but
+     * with nested parallelism a thread may start another block while waiting.
+     */
+    private ConcurrentHashMap<Thread, ArrayList<BlockArrayRunner>> runners = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param ids IDs to process
+     * @param procs Processors to run
+     * @param prog Progress, may be {@code null}
+     * @param logger Logger for progress reporting
+     */
+    protected Job(ArrayDBIDs ids, Processor[] procs, FiniteProgress prog, Logging logger) {
+      super();
+      this.ids = ids;
+      this.procs = procs;
+      this.prog = prog;
+      this.logger = logger;
+    }
+
+    /**
+     * Process a block, using the runner of the current thread.
+     *
+     * @param start Starting position
+     * @param end End position (exclusive)
+     */
+    @Override
+    public void process(int start, int end) {
+      final Thread thread = Thread.currentThread();
+      // Only the current thread will use this key, so there is no race here.
+      ArrayList<BlockArrayRunner> local = runners.get(thread);
+      if(local == null) {
+        runners.put(thread, local = new ArrayList<>(1));
+      }
+      BlockArrayRunner runner = null;
+      for(BlockArrayRunner cand : local) {
+        if(!cand.busy) {
+          runner = cand;
+          break;
+        }
+      }
+      if(runner == null) {
+        local.add(runner = new BlockArrayRunner(ids, procs));
+      }
+      runner.process(start, end);
+      if(prog != null) {
+        prog.incrementProcessed(end - start, logger);
+      }
+    }
+
+    /**
+     * Cleanup all processor instances, after all blocks were processed.
+     */
+    protected void cleanup() {
+      for(ArrayList<BlockArrayRunner> local : runners.values()) {
+        for(BlockArrayRunner runner : local) {
+          runner.cleanup();
+        }
+      }
+      runners.clear();
+    }
+  }
+
+  /**
+   * Fork-join task for a range of the array, using lazy binary splitting.
+   *
+   * @author Erich Schubert
+   */
+  protected static class BlockTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Job to process.
+     */
+    private RangeProcessor job;
+
     /**
      * Start position
      */
     private int start;
 
     /**
-     * End position
+     * End position (exclusive)
      */
     private int end;
 
+    /**
+     * Block size.
+     */
+    private int blocksize;
+
+    /**
+     * Constructor.
+     *
+     * @param job Job to process
+     * @param start Starting position
+     * @param end End position (exclusive)
+     * @param blocksize Block size
+     */
+    protected BlockTask(RangeProcessor job, int start, int end, int blocksize) {
+      super();
+      this.job = job;
+      this.start = start;
+      this.end = end;
+      this.blocksize = blocksize;
+    }
+
+    @Override
+    protected void compute() {
+      ArrayList<BlockTask> forked = null;
+      int s = start, e = end;
+      while(s < e) {
+        // Split only while there is not enough work queued for idle threads.
+        while(e - s > blocksize << 1 && getSurplusQueuedTaskCount() <= SURPLUS_THRESHOLD) {
+          final int mid = (s + e) >>> 1;
+          BlockTask right = new BlockTask(job, mid, e, blocksize);
+          right.fork();
+          if(forked == null) {
+            forked = new ArrayList<>();
+          }
+          forked.add(right);
+          e = mid;
+        }
+        final int bend = (s + blocksize < e) ? s + blocksize : e;
+        job.process(s, bend);
+        s = bend;
+      }
+      if(forked != null) {
+        for(int i = forked.size() - 1; i >= 0; i--) {
+          forked.get(i).join();
+        }
+      }
+    }
+  }
+
+  /**
+   * Runner for array parts, owned by a single thread.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.uses Processor
+   */
+  protected static class BlockArrayRunner implements Executor {
+    /**
+     * Array IDs to process
+     */
+    private ArrayDBIDs ids;
+
     /**
      * The processor masters that own the instances.
      */
     private Processor[] procs;
 
+    /**
+     * Processor instances.
+     */
+    private Processor.Instance[] instances;
+
     /**
      * Variables map.
      */
     private HashMap<SharedVariable<?>, SharedVariable.Instance<?>> variables = new HashMap<>();
 
+    /**
+     * Flag to detect reentrant use by nested parallelism.
+     */
+    boolean busy = false;
+
     /**
      * Constructor.
      *
      * @param ids IDs to process
-     * @param start Starting position
-     * @param end End position
      * @param procs Processors to run
      */
-    protected BlockArrayRunner(ArrayDBIDs ids, int start, int end, Processor[] procs) {
+    protected BlockArrayRunner(ArrayDBIDs ids, Processor[] procs) {
       super();
       this.ids = ids;
-      this.start = start;
-      this.end = end;
       this.procs = procs;
-    }
-
-    @Override
-    public ArrayDBIDs call() {
-      Processor.Instance[] instances = new Processor.Instance[procs.length];
+      this.instances = new Processor.Instance[procs.length];
       for(int i = 0; i < procs.length; i++) {
         instances[i] = procs[i].instantiate(this);
       }
+    }
 
-      DBIDArrayIter iter = ids.iter();
-      iter.seek(start);
-      for(int c = end - start; iter.valid() && c >= 0; iter.advance(), c--) {
-        for(int i = 0; i < instances.length; i++) {
-          instances[i].map(iter);
+    /**
+     * Process a range of the array.
+     *
+     * @param start Starting position
+     * @param end End position (exclusive)
+     */
+    protected void process(int start, int end) {
+      busy = true;
+      try {
+        for(DBIDArrayIter iter = ids.iter().seek(start); iter.getOffset() < end; iter.advance()) {
+          for(int i = 0; i < instances.length; i++) {
+            instances[i].map(iter);
+          }
         }
       }
+      finally {
+        busy = false;
+      }
+    }
+
+    /**
+     * Cleanup the processor instances.
+     */
+    protected void cleanup() {
       for(int i = 0; i < instances.length; i++) {
         procs[i].cleanup(instances[i]);
       }
-      return ids;
     }
 
     @Override
@@ -27,6 +27,8 @@ import java.util.HashMap;
 
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
@@ -49,7 +51,19 @@ public class SingleThreadedExecutor {
    * @param procs Processors to run
    */
   public static final void run(DBIDs ids, Processor... procs) {
-    new SingleThreadedRunner(ids, procs).run();
+    new SingleThreadedRunner(ids, procs).run(null, null);
+  }
+
+  /**
+   * Run a task on a single thread, with progress reporting.
+   * 
+   * @param ids IDs to process
+   * @param prog Progress to update, may be {@code null}
+   * @param logger Logger to report progress to
+   * @param procs Processors to run
+   */
+  public static final void run(DBIDs ids, FiniteProgress prog, Logging logger, Processor... procs) {
+    new SingleThreadedRunner(ids, procs).run(prog, logger);
   }
 
   /**
@@ -85,19 +99,32 @@ public class SingleThreadedExecutor {
       this.procs = procs;
     }
 
-    public void run() {
+    /**
+     * Process all objects.
+     * 
+     * @param prog Progress to update, may be {@code null}
+     * @param logger Logger to report progress to
+     */
+    public void run(FiniteProgress prog, Logging logger) {
       Processor.Instance[] instances = new Processor.Instance[procs.length];
       for(int i = 0; i < procs.length; i++) {
         instances[i] = procs[i].instantiate(this);
       }
 
-      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-        for(int i = 0; i < instances.length; i++) {
-          instances[i].map(iter);
+      try {
+        for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+          for(int i = 0; i < instances.length; i++) {
+            instances[i].map(iter);
+          }
+          if(prog != null) {
+            prog.incrementProcessed(logger);
+          }
         }
       }
-      for(int i = 0; i < instances.length; i++) {
-        procs[i].cleanup(instances[i]);
+      finally {
+        for(int i = 0; i < instances.length; i++) {
+          procs[i].cleanup(instances[i]);
+        }
       }
     }
 
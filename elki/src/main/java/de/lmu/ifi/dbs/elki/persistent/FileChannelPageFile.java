@@ -0,0 +1,384 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferObjectInput;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferObjectOutput;
+
+/**
+ * A page file storing pages in a single file with a fixed binary layout, using
+ * positional {@link FileChannel} I/O.
+ * <p>
+ * In contrast to {@link PersistentPageFile}, pages are not encoded with Java
+ * serialization: the {@link ExternalizablePage#writeExternal} and
+ * {@link ExternalizablePage#readExternal} methods are invoked directly on a
+ * single, reused page buffer, via {@link ByteBufferObjectOutput} and
+ * {@link ByteBufferObjectInput}. Thus, pages must only use the primitive
+ * methods of {@link java.io.DataOutput}.
+ * <p>
+ * The file starts with a magic number and a format version, followed by the
+ * page header. Files in a different format (e.g. written by
+ * {@link PersistentPageFile}) are rejected when reopened.
+ * <p>
+ * Each page starts with an integer marker (empty or filled), empty pages are
+ * therefore recovered by scanning the page markers when reopening a file.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.composedOf PageHeader
+ * @apiviz.composedOf FileChannel
+ * 
+ * @param <P> Page type
+ */
+public class FileChannelPageFile<P extends ExternalizablePage> extends AbstractStoringPageFile<P> {
+  /**
+   * Our logger
+   */
+  private static final Logging LOG = Logging.getLogger(FileChannelPageFile.class);
+
+  /**
+   * Magic number at the beginning of the file, "ELKP".
+   */
+  public static final int MAGIC = 0x454C4B50;
+
+  /**
+   * Version of the file format.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * Size of the file prefix (magic and version), before the page header.
+   */
+  private static final int PREFIX_SIZE = 8;
+
+  /**
+   * Indicates an empty page.
+   */
+  private static final int EMPTY_PAGE = 0;
+
+  /**
+   * Indicates a filled page.
+   */
+  private static final int FILLED_PAGE = 1;
+
+  /**
+   * The file storing the pages.
+   */
+  private final RandomAccessFile file;
+
+  /**
+   * The channel of the file.
+   */
+  private final FileChannel channel;
+
+  /**
+   * The header of this page file.
+   */
+  protected PageHeader header;
+
+  /**
+   * The type of pages we use.
+   */
+  protected final Class<P> pageclass;
+
+  /**
+   * Whether we are initializing from an existing file.
+   */
+  private final boolean existed;
+
+  /**
+   * Page buffer, reused for all reads and writes.
+   */
+  private ByteBuffer buffer;
+
+  /**
+   * Input view of the page buffer.
+   */
+  private ByteBufferObjectInput in;
+
+  /**
+   * Output view of the page buffer.
+   */
+  private ByteBufferObjectOutput out;
+
+  /**
+   * Offset of the first page in the file.
+   */
+  private long offset;
+
+  /**
+   * Constructor.
+   * 
+   * @param pageSize the page size
+   * @param fileName the name of the file
+   * @param pageclass the class of pages to be used
+   */
+  public FileChannelPageFile(int pageSize, String fileName, Class<P> pageclass) {
+    super(pageSize);
+    this.pageclass = pageclass;
+    File f = new File(fileName);
+    existed = f.exists();
+    try {
+      file = new RandomAccessFile(f, "rw");
+      channel = file.getChannel();
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error in loading page file.", e);
+    }
+    allocateBuffer();
+  }
+
+  /**
+   * (Re-) allocate the page buffer for the current page size.
+   */
+  private void allocateBuffer() {
+    buffer = ByteBuffer.allocateDirect(pageSize);
+    in = new ByteBufferObjectInput(buffer);
+    out = new ByteBufferObjectOutput(buffer);
+  }
+
+  /**
+   * Compute the file position of a page.
+   * 
+   * @param pageID Page id
+   * @return File position
+   */
+  private long position(int pageID) {
+    return offset + pageID * (long) pageSize;
+  }
+
+  @Override
+  public synchronized P readPage(int pageID) {
+    try {
+      countRead();
+      buffer.clear();
+      readFully(buffer, position(pageID));
+      buffer.flip();
+      if(buffer.remaining() < 4 || buffer.getInt() != FILLED_PAGE) {
+        return null;
+      }
+      P page = pageclass.newInstance();
+      page.readExternal(in);
+      return page;
+    }
+    catch(InstantiationException | IllegalAccessException | ClassNotFoundException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error reading page " + pageID, e);
+    }
+  }
+
+  @Override
+  public synchronized void deletePage(int pageID) {
+    super.deletePage(pageID);
+    try {
+      countWrite();
+      buffer.clear();
+      buffer.putInt(EMPTY_PAGE);
+      buffer.flip();
+      writeFully(buffer, position(pageID));
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error deleting page " + pageID, e);
+    }
+  }
+
+  @Override
+  public synchronized void writePage(int pageID, P page) {
+    try {
+      countWrite();
+      buffer.clear();
+      buffer.putInt(FILLED_PAGE);
+      try {
+        page.writeExternal(out);
+      }
+      catch(IOException e) {
+        throw new IllegalArgumentException("Page " + page + " does not fit into the page size of " + pageSize + " bytes.", e);
+      }
+      buffer.flip();
+      writeFully(buffer, position(pageID));
+      page.setDirty(false);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error writing page " + pageID, e);
+    }
+  }
+
+  /**
+   * Read from the channel until the buffer is full, or the end of file is
+   * reached.
+   * 
+   * @param buf Buffer
+   * @param pos File position
+   * @throws IOException on errors
+   */
+  private void readFully(ByteBuffer buf, long pos) throws IOException {
+    while(buf.hasRemaining()) {
+      int read = channel.read(buf, pos);
+      if(read < 0) {
+        break;
+      }
+      pos += read;
+    }
+  }
+
+  /**
+   * Write the full buffer to the channel.
+   * 
+   * @param buf Buffer
+   * @param pos File position
+   * @throws IOException on errors
+   */
+  private void writeFully(ByteBuffer buf, long pos) throws IOException {
+    while(buf.hasRemaining()) {
+      pos += channel.write(buf, pos);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      super.close();
+      if(header instanceof TreeIndexHeader) {
+        ((TreeIndexHeader) header).setLargestPageID(nextPageID);
+      }
+      writeFully(ByteBuffer.wrap(header.asByteArray()), PREFIX_SIZE);
+      channel.force(false);
+      file.close();
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error closing page file.", e);
+    }
+  }
+
+  @Override
+  public void clear() {
+    try {
+      channel.truncate(offset);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error clearing page file.", e);
+    }
+  }
+
+  /**
+   * Get the header of this page file.
+   * 
+   * @return the header used by this page file
+   */
+  public PageHeader getHeader() {
+    return header;
+  }
+
+  @Override
+  public void setNextPageID(int next_page_id) {
+    this.nextPageID = next_page_id;
+    while(!emptyPages.isEmpty() && emptyPages.peek() >= this.nextPageID) {
+      emptyPages.pop();
+    }
+  }
+
+  /**
+   * Compute the offset of the first page, after the prefix and header.
+   * 
+   * @return File position of the first page
+   */
+  private long firstPageOffset() {
+    long reserved = (PREFIX_SIZE + header.size() + pageSize - 1) / pageSize;
+    return Math.max(reserved, header.getReservedPages()) * pageSize;
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    this.header = header;
+    try {
+      if(existed) {
+        LOG.debug("Initializing from an existing page file.");
+        ByteBuffer pbuf = ByteBuffer.allocate(PREFIX_SIZE);
+        readFully(pbuf, 0L);
+        pbuf.flip();
+        if(pbuf.remaining() < PREFIX_SIZE || pbuf.getInt() != MAGIC) {
+          throw new AbortException("File is not a FileChannelPageFile (wrong magic number).");
+        }
+        int version = pbuf.getInt();
+        if(version != VERSION) {
+          throw new AbortException("Unsupported FileChannelPageFile version " + version + ", expected " + VERSION + ".");
+        }
+        ByteBuffer hbuf = ByteBuffer.allocate(header.size());
+        readFully(hbuf, PREFIX_SIZE);
+        header.readHeader(hbuf.array());
+        if(header.getPageSize() != pageSize) {
+          pageSize = header.getPageSize();
+          allocateBuffer();
+        }
+        offset = firstPageOffset();
+
+        // Scan the page markers for empty pages.
+        ByteBuffer mbuf = ByteBuffer.allocate(4);
+        long numpages = (channel.size() - offset + pageSize - 1) / pageSize;
+        for(int i = 0; i < numpages; i++) {
+          mbuf.clear();
+          readFully(mbuf, position(i));
+          mbuf.flip();
+          if(mbuf.remaining() == 4 && mbuf.getInt() == FILLED_PAGE) {
+            nextPageID = i + 1;
+          }
+          else {
+            emptyPages.push(i);
+          }
+        }
+        setNextPageID(nextPageID);
+      }
+      else {
+        LOG.debug("Initializing with a new page file.");
+        offset = firstPageOffset();
+        ByteBuffer pbuf = ByteBuffer.allocate(PREFIX_SIZE);
+        pbuf.putInt(MAGIC).putInt(VERSION).flip();
+        writeFully(pbuf, 0L);
+        writeFully(ByteBuffer.wrap(header.asByteArray()), PREFIX_SIZE);
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error initializing page file.", e);
+    }
+    return existed;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+}
@@ -0,0 +1,464 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.data.AbstractNumberVector;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+
+/**
+ * Contiguous storage for numerical vectors of fixed dimensionality.
+ * 
+ * Vectors are stored row-wise in large chunks of primitive values (single or
+ * double precision), either on the Java heap, off-heap in direct buffers, or in
+ * a memory-mapped file. This avoids the per-object overhead of
+ * {@link DoubleVector} (object headers, array headers, and pointers), and
+ * allows data sets larger than the Java heap when memory-mapped.
+ * 
+ * Vectors are accessed via lightweight {@link NumberVector} views, which
+ * reference the underlying storage instead of copying the data.
+ * 
+ * The block is filled by appending vectors, and must not be modified while it
+ * is read concurrently.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.has View
+ */
+public class NumberVectorBlock implements AutoCloseable {
+  /**
+   * Storage location of the block.
+   * 
+   * @author Erich Schubert
+   */
+  public static enum Storage {
+    /** Java heap */
+    HEAP,
+    /** Direct, off-heap memory */
+    OFFHEAP,
+    /** Memory-mapped file */
+    MAPPED,
+  }
+
+  /**
+   * Default chunk size in bytes (maximum).
+   */
+  public static final int DEFAULT_CHUNK_BYTES = 1 << 26;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Use single precision.
+   */
+  private final boolean single;
+
+  /**
+   * Storage location.
+   */
+  private final Storage storage;
+
+  /**
+   * Bits to shift to obtain the chunk number from a row number.
+   */
+  private final int shift;
+
+  /**
+   * Mask to obtain the row within a chunk.
+   */
+  private final int mask;
+
+  /**
+   * Bytes per chunk.
+   */
+  private final int chunkbytes;
+
+  /**
+   * Raw chunks.
+   */
+  private ByteBuffer[] raw = new ByteBuffer[0];
+
+  /**
+   * Double precision views of the chunks, if double precision.
+   */
+  private DoubleBuffer[] dchunks = new DoubleBuffer[0];
+
+  /**
+   * Single precision views of the chunks, if single precision.
+   */
+  private FloatBuffer[] fchunks = new FloatBuffer[0];
+
+  /**
+   * Number of vectors stored.
+   */
+  private int size = 0;
+
+  /**
+   * Backing file, when memory-mapped.
+   */
+  private RandomAccessFile file;
+
+  /**
+   * Constructor.
+   * 
+   * @param dim Dimensionality
+   * @param single Use single precision
+   * @param storage Storage location
+   * @param filename File name for memory mapping, may be {@code null} to use a
+   *        temporary file.
+   * @throws IOException When the file cannot be opened.
+   */
+  public NumberVectorBlock(int dim, boolean single, Storage storage, File filename) throws IOException {
+    this(dim, single, storage, filename, DEFAULT_CHUNK_BYTES);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param dim Dimensionality
+   * @param single Use single precision
+   * @param storage Storage location
+   * @param filename File name for memory mapping, may be {@code null} to use a
+   *        temporary file.
+   * @param maxchunkbytes Maximum chunk size in bytes
+   * @throws IOException When the file cannot be opened.
+   */
+  public NumberVectorBlock(int dim, boolean single, Storage storage, File filename, int maxchunkbytes) throws IOException {
+    super();
+    if(dim < 1) {
+      throw new IllegalArgumentException("Dimensionality must be positive.");
+    }
+    this.dim = dim;
+    this.single = single;
+    this.storage = storage;
+    final int rowbytes = dim * (single ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE);
+    // Number of rows per chunk is a power of two, for fast addressing.
+    int rows = Integer.highestOneBit(Math.max(1, maxchunkbytes / rowbytes));
+    this.shift = Integer.numberOfTrailingZeros(rows);
+    this.mask = rows - 1;
+    this.chunkbytes = rows * rowbytes;
+    if(storage == Storage.MAPPED) {
+      if(filename == null) {
+        filename = File.createTempFile("elki-vectors", ".bin");
+        filename.deleteOnExit();
+      }
+      file = new RandomAccessFile(filename, "rw");
+      file.setLength(0);
+    }
+  }
+
+  /**
+   * Allocate the next chunk.
+   * 
+   * @throws IOException on mapping errors
+   */
+  private void allocateChunk() throws IOException {
+    final int c = raw.length;
+    ByteBuffer buf;
+    switch(storage){
+    case HEAP:
+      buf = ByteBuffer.allocate(chunkbytes);
+      break;
+    case OFFHEAP:
+      buf = ByteBuffer.allocateDirect(chunkbytes);
+      break;
+    case MAPPED:
+      if(file == null) {
+        throw new IllegalStateException("Block was finished or closed, no further vectors can be appended.");
+      }
+      buf = file.getChannel().map(MapMode.READ_WRITE, c * (long) chunkbytes, chunkbytes);
+      break;
+    default:
+      throw new IllegalStateException("Unknown storage: " + storage);
+    }
+    buf.order(ByteOrder.nativeOrder());
+    raw = Arrays.copyOf(raw, c + 1);
+    raw[c] = buf;
+    if(single) {
+      fchunks = Arrays.copyOf(fchunks, c + 1);
+      fchunks[c] = buf.asFloatBuffer();
+    }
+    else {
+      dchunks = Arrays.copyOf(dchunks, c + 1);
+      dchunks[c] = buf.asDoubleBuffer();
+    }
+  }
+
+  /**
+   * Append a vector.
+   * 
+   * @param vec Vector to append
+   * @return Row number of the new vector
+   * @throws IOException on mapping errors
+   */
+  public int append(NumberVector vec) throws IOException {
+    if(vec.getDimensionality() != dim) {
+      throw new IllegalArgumentException("Vector dimensionality " + vec.getDimensionality() + " does not match block dimensionality " + dim);
+    }
+    final int row = size;
+    final int c = row >>> shift;
+    if(c == raw.length) {
+      allocateChunk();
+    }
+    final int base = (row & mask) * dim;
+    if(single) {
+      final FloatBuffer buf = fchunks[c];
+      for(int d = 0; d < dim; d++) {
+        buf.put(base + d, vec.floatValue(d));
+      }
+    }
+    else {
+      final DoubleBuffer buf = dchunks[c];
+      for(int d = 0; d < dim; d++) {
+        buf.put(base + d, vec.doubleValue(d));
+      }
+    }
+    ++size;
+    return row;
+  }
+
+  /**
+   * Get a view of a stored vector.
+   * 
+   * @param row Row number
+   * @return Vector view
+   */
+  public NumberVector get(int row) {
+    assert (row >= 0 && row < size) : "Row out of bounds: " + row;
+    final int base = (row & mask) * dim;
+    return single ? new FloatView(fchunks[row >>> shift], base, dim) : new DoubleView(dchunks[row >>> shift], base, dim);
+  }
+
+  /**
+   * Get a single value.
+   * 
+   * @param row Row number
+   * @param d Dimension
+   * @return Value
+   */
+  public double doubleValue(int row, int d) {
+    final int off = (row & mask) * dim + d;
+    return single ? fchunks[row >>> shift].get(off) : dchunks[row >>> shift].get(off);
+  }
+
+  /**
+   * Get the number of stored vectors.
+   * 
+   * @return Size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get the dimensionality.
+   * 
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return dim;
+  }
+
+  /**
+   * Memory used by the stored values, in bytes.
+   * 
+   * @return Memory usage
+   */
+  public long getAllocatedBytes() {
+    return raw.length * (long) chunkbytes;
+  }
+
+  /**
+   * Finish appending, and release the backing file handle. Memory-mapped
+   * chunks remain valid until {@link #close()}, but no further vectors can be
+   * appended.
+   * 
+   * @throws IOException on errors closing the file
+   */
+  public void finish() throws IOException {
+    if(file != null) {
+      file.close();
+      file = null;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    finish();
+    if(storage == Storage.MAPPED) {
+      for(ByteBuffer buf : raw) {
+        ByteArrayUtil.unmapByteBuffer((MappedByteBuffer) buf);
+      }
+    }
+    raw = new ByteBuffer[0];
+    dchunks = new DoubleBuffer[0];
+    fchunks = new FloatBuffer[0];
+    size = 0;
+  }
+
+  /**
+   * Lightweight view of a stored vector.
+   * 
+   * @author Erich Schubert
+   */
+  public abstract static class View extends AbstractNumberVector {
+    /**
+     * Offset of the first value.
+     */
+    protected final int base;
+
+    /**
+     * Dimensionality.
+     */
+    protected final int dim;
+
+    /**
+     * Constructor.
+     * 
+     * @param base Offset of the first value
+     * @param dim Dimensionality
+     */
+    protected View(int base, int dim) {
+      super();
+      this.base = base;
+      this.dim = dim;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dim;
+    }
+
+    @Override
+    @Deprecated
+    public Double getValue(int dimension) {
+      return doubleValue(dimension);
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) doubleValue(dimension);
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] values = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        values[d] = doubleValue(d);
+      }
+      return values;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder featureLine = new StringBuilder();
+      for(int d = 0; d < dim; d++) {
+        if(d > 0) {
+          featureLine.append(ATTRIBUTE_SEPARATOR);
+        }
+        featureLine.append(doubleValue(d));
+      }
+      return featureLine.toString();
+    }
+  }
+
+  /**
+   * View of a double precision vector.
+   * 
+   * @author Erich Schubert
+   */
+  private static class DoubleView extends View {
+    /**
+     * Data buffer.
+     */
+    private final DoubleBuffer buf;
+
+    /**
+     * Constructor.
+     * 
+     * @param buf Data buffer
+     * @param base Offset of the first value
+     * @param dim Dimensionality
+     */
+    protected DoubleView(DoubleBuffer buf, int base, int dim) {
+      super(base, dim);
+      this.buf = buf;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      return buf.get(base + dimension);
+    }
+  }
+
+  /**
+   * View of a single precision vector.
+   * 
+   * @author Erich Schubert
+   */
+  private static class FloatView extends View {
+    /**
+     * Data buffer.
+     */
+    private final FloatBuffer buf;
+
+    /**
+     * Constructor.
+     * 
+     * @param buf Data buffer
+     * @param base Offset of the first value
+     * @param dim Dimensionality
+     */
+    protected FloatView(FloatBuffer buf, int base, int dim) {
+      super(base, dim);
+      this.buf = buf;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      return buf.get(base + dimension);
+    }
+
+    @Override
+    public float floatValue(int dimension) {
+      return buf.get(base + dimension);
+    }
+  }
+}
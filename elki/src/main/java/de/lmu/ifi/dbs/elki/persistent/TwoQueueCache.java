@@ -0,0 +1,613 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.AtomicLongCounter;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * A concurrent, scan-resistant page cache, using the 2Q replacement policy.
+ * <p>
+ * Pages seen only once enter a FIFO queue (A1in), and are evicted from there
+ * without displacing frequently used pages. Only the page ids of pages evicted
+ * from the FIFO are remembered (A1out). When a page is requested again, while
+ * in the FIFO or while its id is remembered, it is promoted into the main LRU
+ * queue (Am). Thus a single sequential scan will not flush the frequently used
+ * pages (such as the upper levels of an index tree) from the cache.
+ * <p>
+ * To allow concurrent queries, the cache is split into independently locked
+ * stripes by page id. The cache capacity in bytes is divided exactly among the
+ * stripes. Accesses to the backing page file are serialized, but performed
+ * without holding a stripe lock: concurrent requests for a page being loaded
+ * wait for the pending load, and evicted pages remain available until they
+ * have been written back.
+ * <p>
+ * Reference:
+ * <p>
+ * T. Johnson, D. Shasha<br />
+ * 2Q: A Low Overhead High Performance Buffer Management Replacement Algorithm<br />
+ * Proc. 20th Int. Conf. on Very Large Data Bases (VLDB 1994)
+ * </p>
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.uses PageFile
+ * 
+ * @param <P> Page type
+ */
+public class TwoQueueCache<P extends Page> extends AbstractPageFile<P> {
+  /**
+   * Our class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(TwoQueueCache.class);
+
+  /**
+   * Minimum number of pages per stripe.
+   */
+  private static final int MIN_STRIPE_PAGES = 16;
+
+  /**
+   * Cache size in bytes.
+   */
+  protected long cacheSizeBytes;
+
+  /**
+   * The maximum number of pages in this cache.
+   */
+  protected long cacheSize;
+
+  /**
+   * Cache stripes.
+   */
+  private Stripe[] stripes;
+
+  /**
+   * Bit mask for choosing a stripe.
+   */
+  private int mask;
+
+  /**
+   * The underlying file of this cache.
+   */
+  protected PageFile<P> file;
+
+  /**
+   * Statistics: page reads and writes, cache hits, misses, evictions and write
+   * backs.
+   */
+  private Counter reads, writes, hits, misses, evictions, writebacks;
+
+  /**
+   * Constructor.
+   * 
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param file the underlying file of this cache, if a page is dropped it is
+   *        written to the file
+   */
+  public TwoQueueCache(long cacheSizeBytes, PageFile<P> file) {
+    super();
+    this.file = file;
+    this.cacheSizeBytes = cacheSizeBytes;
+    if(LOG.isStatistics()) {
+      final String prefix = this.getClass().getName();
+      reads = new AtomicLongCounter(prefix + ".reads");
+      writes = new AtomicLongCounter(prefix + ".writes");
+      hits = new AtomicLongCounter(prefix + ".hits");
+      misses = new AtomicLongCounter(prefix + ".misses");
+      evictions = new AtomicLongCounter(prefix + ".evictions");
+      writebacks = new AtomicLongCounter(prefix + ".writebacks");
+    }
+  }
+
+  /**
+   * Get the stripe responsible for a page.
+   * 
+   * @param pageID Page id
+   * @return Stripe
+   */
+  private Stripe stripe(int pageID) {
+    // Fibonacci hashing, as page ids are usually consecutive.
+    return stripes[((pageID * 0x9E3779B9) >>> 16) & mask];
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    return stripe(pageID).read(pageID);
+  }
+
+  @Override
+  protected void writePage(int pageID, P page) {
+    countWrite();
+    page.setDirty(true);
+    stripe(pageID).write(pageID, page);
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    countWrite();
+    stripe(pageID).remove(pageID);
+    synchronized(file) {
+      file.deletePage(pageID);
+    }
+  }
+
+  @Override
+  protected void countRead() {
+    // Thread-safe counter, pages are read concurrently.
+    if(reads != null) {
+      reads.increment();
+    }
+  }
+
+  @Override
+  protected void countWrite() {
+    // Thread-safe counter, pages are written concurrently.
+    if(writes != null) {
+      writes.increment();
+    }
+  }
+
+  @Override
+  public int setPageID(P page) {
+    synchronized(file) {
+      return file.setPageID(page);
+    }
+  }
+
+  @Override
+  public int getNextPageID() {
+    return file.getNextPageID();
+  }
+
+  @Override
+  public void setNextPageID(int nextPageID) {
+    file.setNextPageID(nextPageID);
+  }
+
+  @Override
+  public int getPageSize() {
+    return file.getPageSize();
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    boolean created = file.initialize(header);
+    this.cacheSize = cacheSizeBytes / header.getPageSize();
+    if(cacheSize <= 0) {
+      throw new AbortException("Invalid cache size: " + cacheSizeBytes + " / " + header.getPageSize() + " = " + cacheSize);
+    }
+    // Number of stripes: a power of two, enough for the available threads,
+    // but each stripe should still hold a reasonable number of pages.
+    int numstripes = 1;
+    final int maxstripes = ParallelCore.getCore().getParallelism() << 2;
+    while(numstripes < maxstripes && (numstripes << 1) * (long) MIN_STRIPE_PAGES <= cacheSize) {
+      numstripes <<= 1;
+    }
+    @SuppressWarnings("unchecked")
+    Stripe[] stripes = (Stripe[]) new TwoQueueCache<?>.Stripe[numstripes];
+    final int base = (int) Math.min(cacheSize / numstripes, Integer.MAX_VALUE);
+    final int rem = (int) (cacheSize - base * (long) numstripes);
+    for(int i = 0; i < numstripes; i++) {
+      stripes[i] = new Stripe(base + (i < rem ? 1 : 0));
+    }
+    this.stripes = stripes;
+    this.mask = numstripes - 1;
+    if(LOG.isDebugging()) {
+      LOG.debug("2Q cache size is " + cacheSize + " pages in " + numstripes + " stripes.");
+    }
+    return created;
+  }
+
+  @Override
+  public void close() {
+    flush();
+    file.close();
+  }
+
+  /**
+   * Flushes this caches by writing any entry to the underlying file.
+   */
+  public void flush() {
+    for(Stripe s : stripes) {
+      s.flush();
+    }
+  }
+
+  /**
+   * Clears this cache.
+   */
+  @Override
+  public void clear() {
+    for(Stripe s : stripes) {
+      s.clear();
+    }
+  }
+
+  @Override
+  public void logStatistics() {
+    if(LOG.isStatistics()) {
+      LOG.statistics(reads);
+      LOG.statistics(writes);
+      LOG.statistics(hits);
+      LOG.statistics(misses);
+      LOG.statistics(evictions);
+      LOG.statistics(writebacks);
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".capacity-bytes", cacheSize * getPageSize()));
+    }
+    file.logStatistics();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * A single, independently locked, 2Q cache stripe.
+   * <p>
+   * The stripe lock is never held during I/O on the backing file.
+   * 
+   * @author Erich Schubert
+   */
+  private class Stripe {
+    /**
+     * Capacity of this stripe, and of its FIFO and ghost queues.
+     */
+    final int capacity, kin, kout;
+
+    /**
+     * FIFO queue of pages seen once.
+     */
+    final LinkedHashMap<Integer, P> a1in;
+
+    /**
+     * LRU queue of frequently used pages.
+     */
+    final LinkedHashMap<Integer, P> am;
+
+    /**
+     * Ids of pages recently evicted from the FIFO queue.
+     */
+    final LinkedHashSet<Integer> a1out;
+
+    /**
+     * Pages currently being loaded from the backing file.
+     */
+    final HashMap<Integer, FutureTask<P>> loading;
+
+    /**
+     * Evicted pages, until they have been written back.
+     */
+    final HashMap<Integer, P> writing;
+
+    /**
+     * Constructor.
+     * 
+     * @param capacity Number of pages
+     */
+    Stripe(int capacity) {
+      this.capacity = capacity;
+      // Recommended parameters from the 2Q publication.
+      this.kin = Math.max(1, capacity >> 2);
+      this.kout = Math.max(1, capacity >> 1);
+      this.a1in = new LinkedHashMap<>();
+      this.am = new LinkedHashMap<>(16, .75f, true);
+      this.a1out = new LinkedHashSet<>();
+      this.loading = new HashMap<>();
+      this.writing = new HashMap<>();
+    }
+
+    /**
+     * Read a page, loading it from the backing file if necessary.
+     * 
+     * @param pageID Page id
+     * @return Page
+     */
+    P read(final int pageID) {
+      final Integer key = pageID;
+      ArrayList<P> evicted = null;
+      FutureTask<P> load = null;
+      boolean owner = false;
+      P page;
+      synchronized(this) {
+        page = am.get(key); // Moves to MRU position
+        if(page == null) {
+          page = a1in.remove(key);
+          if(page != null) { // Second reference: promote
+            am.put(key, page);
+          }
+        }
+        if(page == null) {
+          page = writing.get(key);
+          if(page != null) { // Evicted, but not yet written back
+            evicted = insert(key, page);
+          }
+        }
+        if(page != null) {
+          if(hits != null) {
+            hits.increment();
+          }
+        }
+        else {
+          load = loading.get(key);
+          if(load == null) {
+            if(misses != null) {
+              misses.increment();
+            }
+            load = new FutureTask<>(new Callable<P>() {
+              @Override
+              public P call() {
+                synchronized(file) {
+                  return file.readPage(pageID);
+                }
+              }
+            });
+            loading.put(key, load);
+            owner = true;
+          }
+        }
+      }
+      if(page != null) {
+        writeBack(evicted);
+        return page;
+      }
+      if(!owner) { // Pending load by another thread
+        return await(load, pageID);
+      }
+      load.run(); // Without holding the stripe lock.
+      synchronized(this) {
+        loading.remove(key);
+        page = am.containsKey(key) ? am.get(key) : a1in.get(key);
+        if(page == null) { // Not written meanwhile
+          page = await(load, pageID);
+          if(page != null) {
+            evicted = insert(key, page);
+          }
+        }
+      }
+      writeBack(evicted);
+      return page;
+    }
+
+    /**
+     * Store a page in the cache.
+     * 
+     * @param pageID Page id
+     * @param page Page
+     */
+    void write(int pageID, P page) {
+      final Integer key = pageID;
+      ArrayList<P> evicted = null;
+      synchronized(this) {
+        if(am.containsKey(key)) {
+          am.put(key, page);
+        }
+        else if(a1in.containsKey(key)) {
+          a1in.put(key, page);
+        }
+        else {
+          evicted = insert(key, page);
+        }
+      }
+      writeBack(evicted);
+    }
+
+    /**
+     * Insert a page that is not currently resident.
+     * 
+     * @param key Page id
+     * @param page Page
+     * @return Evicted pages to write back, may be {@code null}
+     */
+    private ArrayList<P> insert(Integer key, P page) {
+      ArrayList<P> evicted = null;
+      if(am.size() + a1in.size() >= capacity) {
+        evicted = reclaim();
+      }
+      if(a1out.remove(key)) {
+        am.put(key, page);
+      }
+      else {
+        a1in.put(key, page);
+      }
+      return evicted;
+    }
+
+    /**
+     * Evict a page, to make room for a new page.
+     * 
+     * @return Evicted pages to write back, may be {@code null}
+     */
+    private ArrayList<P> reclaim() {
+      if(a1in.size() > kin || (am.isEmpty() && !a1in.isEmpty())) {
+        Iterator<Map.Entry<Integer, P>> it = a1in.entrySet().iterator();
+        Map.Entry<Integer, P> eldest = it.next();
+        it.remove();
+        a1out.add(eldest.getKey());
+        if(a1out.size() > kout) {
+          Iterator<Integer> oit = a1out.iterator();
+          oit.next();
+          oit.remove();
+        }
+        return evict(eldest.getKey(), eldest.getValue());
+      }
+      if(!am.isEmpty()) {
+        Iterator<Map.Entry<Integer, P>> it = am.entrySet().iterator();
+        Map.Entry<Integer, P> eldest = it.next();
+        it.remove();
+        return evict(eldest.getKey(), eldest.getValue());
+      }
+      return null;
+    }
+
+    /**
+     * Evict a single page.
+     * 
+     * @param key Page id
+     * @param page Page
+     * @return Evicted pages to write back, may be {@code null}
+     */
+    private ArrayList<P> evict(Integer key, P page) {
+      if(evictions != null) {
+        evictions.increment();
+      }
+      return retain(key, page, null);
+    }
+
+    /**
+     * Keep a modified page available until it has been written back by
+     * {@link #writeBack}.
+     * 
+     * @param key Page id
+     * @param page Page
+     * @param evicted Pages to write back, may be {@code null}
+     * @return Pages to write back, may be {@code null}
+     */
+    private ArrayList<P> retain(Integer key, P page, ArrayList<P> evicted) {
+      if(!page.isDirty()) {
+        return evicted;
+      }
+      writing.put(key, page);
+      evicted = evicted != null ? evicted : new ArrayList<P>();
+      evicted.add(page);
+      return evicted;
+    }
+
+    /**
+     * Write evicted pages back to the underlying file.
+     * <p>
+     * Must not be called while holding the stripe lock.
+     * 
+     * @param evicted Evicted pages, may be {@code null}
+     */
+    private void writeBack(ArrayList<P> evicted) {
+      if(evicted == null) {
+        return;
+      }
+      for(P page : evicted) {
+        final Integer key = page.getPageID();
+        synchronized(file) {
+          synchronized(this) {
+            // Skip if deleted, or superseded by a later eviction.
+            if(writing.get(key) != page) {
+              continue;
+            }
+          }
+          if(writebacks != null) {
+            writebacks.increment();
+          }
+          file.writePage(page);
+        }
+        synchronized(this) {
+          if(writing.get(key) == page) {
+            writing.remove(key);
+          }
+        }
+      }
+    }
+
+    /**
+     * Wait for a pending load.
+     * 
+     * @param load Pending load
+     * @param pageID Page id
+     * @return Loaded page
+     */
+    private P await(FutureTask<P> load, int pageID) {
+      try {
+        return load.get();
+      }
+      catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new AbortException("Interrupted while loading page " + pageID, e);
+      }
+      catch(ExecutionException e) {
+        if(e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new AbortException("Error loading page " + pageID, e.getCause());
+      }
+    }
+
+    /**
+     * Remove a page without writing it back.
+     * 
+     * @param pageID Page id
+     */
+    synchronized void remove(int pageID) {
+      final Integer key = pageID;
+      if(am.remove(key) == null) {
+        a1in.remove(key);
+      }
+      a1out.remove(key);
+      writing.remove(key);
+    }
+
+    /**
+     * Write all pages back, and empty the stripe.
+     */
+    void flush() {
+      ArrayList<P> evicted = null;
+      synchronized(this) {
+        for(Map.Entry<Integer, P> e : a1in.entrySet()) {
+          evicted = retain(e.getKey(), e.getValue(), evicted);
+        }
+        for(Map.Entry<Integer, P> e : am.entrySet()) {
+          evicted = retain(e.getKey(), e.getValue(), evicted);
+        }
+        a1in.clear();
+        am.clear();
+        a1out.clear();
+      }
+      writeBack(evicted);
+    }
+
+    /**
+     * Empty the stripe, without writing back.
+     */
+    synchronized void clear() {
+      a1in.clear();
+      am.clear();
+      a1out.clear();
+      writing.clear();
+    }
+  }
+}
@@ -47,6 +47,7 @@ import de.lmu.ifi.dbs.elki.database.AbstractDatabase;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.datasource.InputStreamDatabaseConnection;
@@ -56,6 +57,7 @@ import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
 import de.lmu.ifi.dbs.elki.evaluation.clustering.ClusterContingencyTable;
 import de.lmu.ifi.dbs.elki.evaluation.outlier.OutlierROCCurve;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.Result;
 import de.lmu.ifi.dbs.elki.result.ResultHierarchy;
 import de.lmu.ifi.dbs.elki.result.ResultUtil;
@@ -260,4 +262,46 @@ public abstract class AbstractSimpleAlgorithmTest {
     double actual = result.getScores().doubleValue(dbid);
     assertEquals("Outlier score of object " + id + " doesn't match.", expected, actual, 0.0001);
   }
+
+  /**
+   * Run an algorithm with a given number of threads. The algorithm is
+   * instantiated for every run, as it may keep state such as a random
+   * generator. The previous parallel core is restored afterwards.
+   *
+   * @param db Database
+   * @param cls Algorithm class
+   * @param params Parameters, not consumed
+   * @param threads Number of threads
+   * @return Result
+   */
+  protected static Result runWithThreads(Database db, Class<?> cls, ListParameterization params, int threads) {
+    ListParameterization config = new ListParameterization(params.getRemainingParameters());
+    Algorithm algorithm = ClassGenericsUtil.parameterizeOrAbort(cls, config);
+    testParameterizationOk(config);
+    ParallelCore prev = ParallelCore.setCore(new ParallelCore(threads));
+    try {
+      return algorithm.run(db);
+    }
+    finally {
+      ParallelCore.setCore(prev).shutdown();
+    }
+  }
+
+  /**
+   * Test that an outlier detection algorithm yields the same scores with a
+   * single thread and with multiple threads.
+   *
+   * @param db Database
+   * @param cls Algorithm class
+   * @param params Parameters, not consumed
+   * @param threads Number of threads of the parallel run
+   */
+  protected void testParallelScores(Database db, Class<?> cls, ListParameterization params, int threads) {
+    OutlierResult serial = (OutlierResult) runWithThreads(db, cls, params, 1);
+    OutlierResult parallel = (OutlierResult) runWithThreads(db, cls, params, threads);
+    for(DBIDIter it = serial.getScores().iterDBIDs(); it.valid(); it.advance()) {
+      final double expected = serial.getScores().doubleValue(it);
+      assertEquals("Parallel score differs.", expected, parallel.getScores().doubleValue(it), 1e-9 * Math.abs(expected));
+    }
+  }
 }
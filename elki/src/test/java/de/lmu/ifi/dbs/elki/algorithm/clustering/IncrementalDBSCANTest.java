@@ -0,0 +1,204 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.VectorUtil;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
+import de.lmu.ifi.dbs.elki.database.UpdatableDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.result.ResultUtil;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * Test the incremental DBSCAN implementation, against static DBSCAN results.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class IncrementalDBSCANTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run incremental DBSCAN with fixed parameters and compare the result to a
+   * golden standard.
+   */
+  @Test
+  public void testIncrementalDBSCANResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 0.04);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 20);
+    IncrementalDBSCAN<DoubleVector> dbscan = ClassGenericsUtil.parameterizeOrAbort(IncrementalDBSCAN.class, params);
+    testParameterizationOk(params);
+
+    Clustering<Model> result = dbscan.run(db);
+    testFMeasure(db, result, 0.996413);
+    testClusterSizes(result, new int[] { 29, 50, 101, 150 });
+  }
+
+  /**
+   * Delete and insert objects, and compare to a fresh DBSCAN run after each
+   * modification.
+   */
+  @Test
+  public void testInsertDelete() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, UNITTEST + "3clusters-and-noise-2d.csv");
+    UpdatableDatabase db = ClassGenericsUtil.parameterizeOrAbort(HashmapDatabase.class, params);
+    testParameterizationOk(params);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+
+    IncrementalDBSCAN<DoubleVector> incremental = new IncrementalDBSCAN<>(EuclideanDistanceFunction.STATIC, 0.04, 20);
+    DBSCAN<DoubleVector> dbscan = new DBSCAN<>(EuclideanDistanceFunction.STATIC, 0.04, 20);
+    Clustering<Model> result = incremental.run(db);
+    List<IncrementalDBSCAN.Instance<DoubleVector>> instances = ResultUtil.filterResults(result.getHierarchy(), result, IncrementalDBSCAN.Instance.class);
+    assertEquals("Instance not attached to result.", 1, instances.size());
+    IncrementalDBSCAN.Instance<DoubleVector> instance = instances.get(0);
+    assertSameClustering(instance, dbscan.run(db));
+
+    // Delete every other object of a dense region, splitting clusters:
+    ArrayModifiableDBIDs del = DBIDUtil.newArray();
+    List<DoubleVector> removed = new ArrayList<>();
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+      if((i & 1) == 0 && i < 200) {
+        del.add(it);
+        removed.add(rel.get(it));
+      }
+    }
+    db.delete(del);
+    assertSameClustering(instance, dbscan.run(db));
+
+    // Reinsert the objects, and some random noise:
+    NumberVector.Factory<DoubleVector> factory = RelationUtil.getNumberVectorFactory(rel);
+    Random random = new Random(0L);
+    for(int j = 0; j < 50; j++) {
+      removed.add(VectorUtil.randomVector(factory, 2, random));
+    }
+    db.insert(MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), removed));
+    assertSameClustering(instance, dbscan.run(db));
+    testClusterSizes(instance.getClustering(), new int[] { 50, 79, 101, 150 });
+  }
+
+  /**
+   * Removing the result from the database hierarchy must stop the updates.
+   */
+  @Test
+  public void testDetach() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, UNITTEST + "3clusters-and-noise-2d.csv");
+    UpdatableDatabase db = ClassGenericsUtil.parameterizeOrAbort(HashmapDatabase.class, params);
+    testParameterizationOk(params);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+
+    IncrementalDBSCAN<DoubleVector> incremental = new IncrementalDBSCAN<>(EuclideanDistanceFunction.STATIC, 0.04, 20);
+    Clustering<Model> result = incremental.run(db);
+    ResultUtil.addChildResult(db, result);
+    IncrementalDBSCAN.Instance<DoubleVector> instance = ResultUtil.filterResults(db.getHierarchy(), result, IncrementalDBSCAN.Instance.class).get(0);
+    ResultUtil.removeRecursive(db.getHierarchy(), result);
+    final int numclusters = instance.getNumClusters();
+
+    ArrayModifiableDBIDs del = DBIDUtil.newArray();
+    TIntArrayList labels = new TIntArrayList();
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid() && i < 200; it.advance(), i++) {
+      if((i & 1) == 0) {
+        del.add(it);
+        labels.add(instance.getLabel(it));
+      }
+    }
+    db.delete(del);
+    i = 0;
+    for(DBIDIter it = del.iter(); it.valid(); it.advance(), i++) {
+      assertEquals("Detached instance was updated.", labels.get(i), instance.getLabel(it));
+    }
+    assertEquals("Detached instance was updated.", numclusters, instance.getNumClusters());
+  }
+
+  /**
+   * Compare the core objects and noise of the incremental state to a static
+   * result.
+   *
+   * @param instance Incremental state
+   * @param expected Static DBSCAN result
+   */
+  private static void assertSameClustering(IncrementalDBSCAN.Instance<?> instance, Clustering<Model> expected) {
+    TIntIntHashMap map = new TIntIntHashMap();
+    int numclusters = 0;
+    for(Cluster<Model> clus : expected.getAllClusters()) {
+      if(clus.isNoise()) {
+        for(DBIDIter it = clus.getIDs().iter(); it.valid(); it.advance()) {
+          assertEquals("Noise object in a cluster.", 0, instance.getLabel(it));
+        }
+        continue;
+      }
+      ++numclusters;
+      int label = 0;
+      for(DBIDIter it = clus.getIDs().iter(); it.valid(); it.advance()) {
+        final int l = instance.getLabel(it);
+        assertTrue("Clustered object labeled as noise.", l != 0);
+        if(!instance.isCore(it)) {
+          continue; // Border objects may be ambiguous.
+        }
+        if(label == 0) {
+          label = l;
+          assertFalse("Clusters were merged.", map.containsKey(l));
+          map.put(l, numclusters);
+        }
+        assertEquals("Cluster was split.", label, l);
+      }
+    }
+    assertEquals("Number of clusters differs.", numclusters, instance.getNumClusters());
+  }
+}
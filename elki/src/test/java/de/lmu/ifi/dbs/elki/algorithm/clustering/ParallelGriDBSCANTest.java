@@ -0,0 +1,145 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the parallel GriDBSCAN, which must produce the same results as
+ * {@link GriDBSCANTest}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelGriDBSCANTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run DBSCAN with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testParallelGriDBSCANResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+
+    // setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 0.04);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 20);
+    params.addParameter(GriDBSCAN.Parameterizer.GRID_ID, 0.08);
+    ParallelGriDBSCAN<DoubleVector> dbscan = ClassGenericsUtil.parameterizeOrAbort(ParallelGriDBSCAN.class, params);
+    testParameterizationOk(params);
+
+    // run DBSCAN on database, with multiple threads
+    ParallelCore prev = ParallelCore.setCore(new ParallelCore(4));
+    try {
+      Clustering<Model> result = dbscan.run(db);
+      testFMeasure(db, result, 0.996413);
+      testClusterSizes(result, new int[] { 29, 50, 101, 150 });
+    }
+    finally {
+      ParallelCore.setCore(prev).shutdown();
+    }
+  }
+
+  /**
+   * Run DBSCAN with the cells spilled to disk, and compare the result to a
+   * golden standard.
+   */
+  @Test
+  public void testParallelGriDBSCANSpill() throws IOException {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    File base = Files.createTempDirectory("elki-grid").toFile();
+    // Does not exist yet, must be created for the spill file.
+    File dir = new File(base, "spill");
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 11.5);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 120);
+    params.addParameter(GriDBSCAN.Parameterizer.GRID_ID, 25.);
+    params.addParameter(ParallelGriDBSCAN.Parameterizer.SPILL_ID, dir);
+    ParallelGriDBSCAN<DoubleVector> dbscan = ClassGenericsUtil.parameterizeOrAbort(ParallelGriDBSCAN.class, params);
+    testParameterizationOk(params);
+
+    // run DBSCAN on database, with multiple threads
+    ParallelCore prev = ParallelCore.setCore(new ParallelCore(4));
+    try {
+      Clustering<Model> result = dbscan.run(db);
+      testFMeasure(db, result, 0.954382);
+      testClusterSizes(result, new int[] { 11, 200, 203, 224 });
+      assertTrue("Spill directory was not created.", dir.isDirectory());
+      assertEquals("Spill file was not removed.", 0, dir.listFiles().length);
+    }
+    finally {
+      ParallelCore.setCore(prev).shutdown();
+      dir.delete();
+      base.delete();
+    }
+  }
+
+  /**
+   * Test a cluster connected only through a point that is a border point in
+   * one cell, but a core point in the neighboring cell.
+   */
+  @Test
+  public void testBorderCoreAcrossCells() {
+    double[][] data = { { 0 }, { 8.6 }, { 8.8 }, { 9.0 }, { 9.5 }, { 10.45 }, { 11.1 }, { 11.2 }, { 11.3 }, { 20 } };
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 1.);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 4);
+    params.addParameter(GriDBSCAN.Parameterizer.GRID_ID, 10.);
+    ParallelGriDBSCAN<DoubleVector> dbscan = ClassGenericsUtil.parameterizeOrAbort(ParallelGriDBSCAN.class, params);
+    testParameterizationOk(params);
+
+    ParallelCore prev = ParallelCore.setCore(new ParallelCore(4));
+    try {
+      Clustering<Model> result = dbscan.run(db);
+      testClusterSizes(result, new int[] { 2, 8 });
+    }
+    finally {
+      ParallelCore.setCore(prev).shutdown();
+    }
+  }
+}
@@ -0,0 +1,264 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.RandomlyChosenInitialMeans;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.EMModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Performs a full parallel EM run, and compares the result with a clustering
+ * derived from the data set labels, and with the sequential EM.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelEMTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run EM with fixed parameters and compare the result to a golden standard.
+   */
+  @Test
+  public void testEMResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 1);
+    params.addParameter(EM.Parameterizer.K_ID, 6);
+    ParallelEM<DoubleVector, ?> em = ClassGenericsUtil.parameterizeOrAbort(ParallelEM.class, params);
+    testParameterizationOk(params);
+
+    // run EM on database
+    Clustering<?> result = em.run(db);
+    testFMeasure(db, result, 0.967410);
+    testClusterSizes(result, new int[] { 3, 5, 91, 98, 200, 313 });
+  }
+
+  /**
+   * Run EM with fixed parameters and compare the result to a golden standard.
+   */
+  @Test
+  public void testEMResultsDiagonal() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 0);
+    params.addParameter(EM.Parameterizer.K_ID, 5);
+    params.addParameter(EM.Parameterizer.INIT_ID, DiagonalGaussianModelFactory.class);
+    ParallelEM<DoubleVector, ?> em = ClassGenericsUtil.parameterizeOrAbort(ParallelEM.class, params);
+    testParameterizationOk(params);
+
+    // run EM on database
+    Clustering<?> result = em.run(db);
+    testFMeasure(db, result, 0.9681384);
+    testClusterSizes(result, new int[] { 7, 91, 99, 200, 313 });
+  }
+
+  /**
+   * Run EM with fixed parameters and compare the result to a golden standard.
+   */
+  @Test
+  public void testEMResultsSpherical() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 1);
+    params.addParameter(EM.Parameterizer.K_ID, 4);
+    params.addParameter(EM.Parameterizer.INIT_ID, SphericalGaussianModelFactory.class);
+    ParallelEM<DoubleVector, ?> em = ClassGenericsUtil.parameterizeOrAbort(ParallelEM.class, params);
+    testParameterizationOk(params);
+
+    // run EM on database
+    Clustering<?> result = em.run(db);
+    testFMeasure(db, result, 0.812082);
+    testClusterSizes(result, new int[] { 87, 143, 163, 317 });
+  }
+
+  /**
+   * Compare the models to the sequential EM.
+   */
+  @Test
+  public void testSameAsSequential() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 2);
+    params.addParameter(EM.Parameterizer.K_ID, 5);
+    EM<DoubleVector, EMModel> seq = ClassGenericsUtil.parameterizeOrAbort(EM.class, params);
+    testParameterizationOk(params);
+    params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 2);
+    params.addParameter(EM.Parameterizer.K_ID, 5);
+    ParallelEM<DoubleVector, EMModel> par = ClassGenericsUtil.parameterizeOrAbort(ParallelEM.class, params);
+    testParameterizationOk(params);
+
+    assertArrayEquals(models(seq.run(db)), models(par.run(db)), 1e-8);
+  }
+
+  /**
+   * Models without support for parallel E steps run with the serial EM.
+   */
+  @Test
+  public void testSerialFallback() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+
+    EM<NumberVector, EMModel> seq = new EM<>(5, 1e-7, new SerialModelFactory(), -1, false);
+    ParallelEM<NumberVector, EMModel> par = new ParallelEM<>(5, 1e-7, new SerialModelFactory(), -1, false);
+    assertArrayEquals(models(seq.run(db)), models(par.run(db)), 0.);
+  }
+
+  /**
+   * Collect the cluster means, covariances and sizes, ordered by the first
+   * coordinate.
+   *
+   * @param result Clustering result
+   * @return Model parameters and sizes
+   */
+  private static double[] models(Clustering<EMModel> result) {
+    List<Cluster<EMModel>> clusters = result.getAllClusters();
+    double[][] rows = new double[clusters.size()][];
+    int i = 0;
+    for(Cluster<EMModel> c : clusters) {
+      double[] mean = c.getModel().getMean();
+      double[][] cov = c.getModel().getCovarianceMatrix();
+      rows[i++] = new double[] { mean[0], mean[1], cov[0][0], cov[0][1], cov[1][1], c.size() };
+    }
+    Arrays.sort(rows, new Comparator<double[]>() {
+      @Override
+      public int compare(double[] o1, double[] o2) {
+        return Double.compare(o1[0], o2[0]);
+      }
+    });
+    double[] all = new double[rows.length * 6];
+    for(i = 0; i < rows.length; i++) {
+      System.arraycopy(rows[i], 0, all, i * 6, 6);
+    }
+    return all;
+  }
+
+  /**
+   * Factory for models that only implement the serial interface.
+   *
+   * @author Erich Schubert
+   */
+  private static class SerialModelFactory implements EMClusterModelFactory<NumberVector, EMModel> {
+    /**
+     * Factory for the wrapped models.
+     */
+    SphericalGaussianModelFactory<NumberVector> inner = new SphericalGaussianModelFactory<>(new RandomlyChosenInitialMeans<>(new RandomFactory(2L)));
+
+    @Override
+    public List<SerialModel> buildInitialModels(Database database, Relation<NumberVector> relation, int k, NumberVectorDistanceFunction<? super NumberVector> df) {
+      List<SerialModel> models = new ArrayList<>(k);
+      for(SphericalGaussianModel m : inner.buildInitialModels(database, relation, k, df)) {
+        models.add(new SerialModel(m));
+      }
+      return models;
+    }
+  }
+
+  /**
+   * Model that does not override {@link EMClusterModel#newAccumulator}.
+   *
+   * @author Erich Schubert
+   */
+  private static class SerialModel implements EMClusterModel<EMModel> {
+    /**
+     * Wrapped model.
+     */
+    SphericalGaussianModel inner;
+
+    /**
+     * Constructor.
+     *
+     * @param inner Wrapped model
+     */
+    SerialModel(SphericalGaussianModel inner) {
+      this.inner = inner;
+    }
+
+    @Override
+    public void beginEStep() {
+      inner.beginEStep();
+    }
+
+    @Override
+    public void updateE(NumberVector vec, double weight) {
+      inner.updateE(vec, weight);
+    }
+
+    @Override
+    public void finalizeEStep() {
+      inner.finalizeEStep();
+    }
+
+    @Override
+    public double estimateDensity(NumberVector vec) {
+      return inner.estimateDensity(vec);
+    }
+
+    @Override
+    public double estimateLogDensity(NumberVector vec) {
+      return inner.estimateLogDensity(vec);
+    }
+
+    @Override
+    public EMModel finalizeCluster() {
+      return inner.finalizeCluster();
+    }
+
+    @Override
+    public double getWeight() {
+      return inner.getWeight();
+    }
+
+    @Override
+    public void setWeight(double weight) {
+      inner.setWeight(weight);
+    }
+  }
+}
@@ -23,6 +23,13 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
@@ -89,6 +96,80 @@ public class AnderbergHierarchicalClusteringTest extends AbstractSimpleAlgorithm
     testClusterSizes(clustering, new int[] { 200, 211, 227 });
   }
 
+  /**
+   * Run agglomerative hierarchical clustering with a float precision matrix,
+   * and compare the result to a golden standard.
+   */
+  @Test
+  public void testWardFloat() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(CutDendrogramByNumberOfClusters.Parameterizer.MINCLUSTERS_ID, 3);
+    params.addParameter(AlgorithmStep.Parameterizer.ALGORITHM_ID, AnderbergHierarchicalClustering.class);
+    params.addParameter(AGNES.Parameterizer.MATRIX_ID, FloatScratchMatrix.Factory.class);
+    CutDendrogramByNumberOfClusters c = ClassGenericsUtil.parameterizeOrAbort(CutDendrogramByNumberOfClusters.class, params);
+    testParameterizationOk(params);
+
+    // run clustering algorithm on database
+    Result result = c.run(db);
+    Clustering<?> clustering = findSingleClustering(result);
+    testFMeasure(db, clustering, 0.93866265);
+    testClusterSizes(clustering, new int[] { 200, 211, 227 });
+  }
+
+  /**
+   * Run agglomerative hierarchical clustering with a memory mapped matrix, and
+   * compare the result to a golden standard.
+   */
+  @Test
+  public void testWardMapped() throws IOException {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    File base = Files.createTempDirectory("elki-matrix").toFile();
+    // Does not exist yet, must be created for the matrix.
+    File dir = new File(base, "matrix");
+    try {
+      // Setup algorithm
+      ListParameterization params = new ListParameterization();
+      params.addParameter(CutDendrogramByNumberOfClusters.Parameterizer.MINCLUSTERS_ID, 3);
+      params.addParameter(AlgorithmStep.Parameterizer.ALGORITHM_ID, AnderbergHierarchicalClustering.class);
+      params.addParameter(AGNES.Parameterizer.MATRIX_ID, MappedScratchMatrix.Factory.class);
+      params.addParameter(MappedScratchMatrix.Factory.Parameterizer.DIR_ID, dir);
+      CutDendrogramByNumberOfClusters c = ClassGenericsUtil.parameterizeOrAbort(CutDendrogramByNumberOfClusters.class, params);
+      testParameterizationOk(params);
+
+      // run clustering algorithm on database
+      Result result = c.run(db);
+      Clustering<?> clustering = findSingleClustering(result);
+      testFMeasure(db, clustering, 0.93866265);
+      testClusterSizes(clustering, new int[] { 200, 211, 227 });
+      assertTrue("Matrix directory was not created.", dir.isDirectory());
+      assertEquals("Temporary matrix file was not removed.", 0, dir.listFiles().length);
+    }
+    finally {
+      dir.delete();
+      base.delete();
+    }
+  }
+
+  /**
+   * A matrix directory must not be an existing file.
+   */
+  @Test
+  public void testMappedDirectoryIsFile() throws IOException {
+    File file = File.createTempFile("elki-matrix", ".tmp");
+    try {
+      ListParameterization params = new ListParameterization();
+      params.addParameter(MappedScratchMatrix.Factory.Parameterizer.DIR_ID, file);
+      params.tryInstantiate(MappedScratchMatrix.Factory.class);
+      assertTrue("File accepted as matrix directory.", params.hasErrors());
+    }
+    finally {
+      file.delete();
+    }
+  }
+
   /**
    * Run agglomerative hierarchical clustering with fixed parameters and compare
    * the result to a golden standard.
@@ -0,0 +1,154 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.math.geometry.PrimsMinimumSpanningTree;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+
+/**
+ * Test the parallel Prim's minimum spanning tree against the sequential one.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelPrimsMinimumSpanningTreeTest {
+  /**
+   * Number of points.
+   */
+  private static final int SIZE = 500;
+
+  @Test
+  public void testSameAsSequential() {
+    runTest(null);
+  }
+
+  @Test
+  public void testSameAsSequentialCore() {
+    Random r = new Random(1L);
+    double[] core = new double[SIZE];
+    for(int i = 0; i < SIZE; i++) {
+      core[i] = r.nextDouble() * .5;
+    }
+    runTest(core);
+  }
+
+  /**
+   * Compare the parallel and the sequential tree.
+   *
+   * @param core Core distances, may be {@code null}
+   */
+  private void runTest(final double[] core) {
+    Random r = new Random(0L);
+    double[][] data = new double[SIZE][3];
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        row[d] = r.nextDouble();
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    final DistanceQuery<NumberVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+
+    EdgeCollector expect = new EdgeCollector();
+    PrimsMinimumSpanningTree.processDense(ids, new PrimsMinimumSpanningTree.Adapter<ArrayDBIDs>() {
+      DBIDArrayIter p = ids.iter(), q = ids.iter();
+
+      @Override
+      public double distance(ArrayDBIDs data, int i, int j) {
+        final double d = dq.distance(p.seek(i), q.seek(j));
+        return core != null ? Math.max(d, Math.max(core[i], core[j])) : d;
+      }
+
+      @Override
+      public int size(ArrayDBIDs data) {
+        return data.size();
+      }
+    }, expect);
+
+    ParallelCore prev = ParallelCore.setCore(new ParallelCore(4));
+    try {
+      // Small tasks, to use the parallel code path.
+      EdgeCollector actual = new EdgeCollector();
+      ParallelPrimsMinimumSpanningTree.processDense(ids, dq, core, actual, 16);
+      assertEquals("Number of edges differs.", SIZE - 1, actual.size);
+      assertArrayEquals("Edge lengths differ.", expect.length, actual.length, 0.);
+      assertArrayEquals("Edge sources differ.", expect.from, actual.from);
+      assertArrayEquals("Edge targets differ.", expect.to, actual.to);
+    }
+    finally {
+      ParallelCore.setCore(prev).shutdown();
+    }
+  }
+
+  /**
+   * Collect the edges in order.
+   *
+   * @author Erich Schubert
+   */
+  private static class EdgeCollector implements PrimsMinimumSpanningTree.Collector {
+    /**
+     * Edge lengths.
+     */
+    double[] length = new double[SIZE - 1];
+
+    /**
+     * Edge endpoints.
+     */
+    int[] from = new int[SIZE - 1], to = new int[SIZE - 1];
+
+    /**
+     * Number of edges.
+     */
+    int size = 0;
+
+    @Override
+    public void addEdge(double len, int i, int j) {
+      length[size] = len;
+      from[size] = i;
+      to[size] = j;
+      size++;
+    }
+  }
+}
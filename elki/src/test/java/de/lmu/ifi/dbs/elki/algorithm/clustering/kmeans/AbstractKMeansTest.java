@@ -0,0 +1,104 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Abstract base class for k-means tests, to compare variants that must yield
+ * the same result.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public abstract class AbstractKMeansTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run two k-means variants with many clusters, and verify that they produce
+   * the same means and cluster sizes.
+   *
+   * @param expected Reference k-means class, e.g. the sequential version
+   * @param actual k-means class to test, e.g. the parallel version
+   */
+  protected void assertSameResult(Class<?> expected, Class<?> actual) {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    assertArrayEquals(means(runKMeans(db, expected)), means(runKMeans(db, actual)), 1e-10);
+  }
+
+  /**
+   * Run a k-means variant with k=25.
+   *
+   * @param db Database
+   * @param cls k-means class
+   * @return Clustering result
+   */
+  private Clustering<KMeansModel> runKMeans(Database db, Class<?> cls) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 25);
+    params.addParameter(KMeans.SEED_ID, 1);
+    AbstractKMeans<DoubleVector, KMeansModel> kmeans = ClassGenericsUtil.parameterizeOrAbort(cls, params);
+    testParameterizationOk(params);
+    return kmeans.run(db);
+  }
+
+  /**
+   * Collect the cluster means and sizes, ordered by the first coordinate.
+   *
+   * @param result Clustering result
+   * @return Means and sizes
+   */
+  private static double[] means(Clustering<KMeansModel> result) {
+    List<Cluster<KMeansModel>> clusters = result.getAllClusters();
+    double[][] rows = new double[clusters.size()][];
+    int i = 0;
+    for(Cluster<KMeansModel> c : clusters) {
+      double[] mean = c.getModel().getMean();
+      rows[i++] = new double[] { mean[0], mean[1], c.size() };
+    }
+    Arrays.sort(rows, new Comparator<double[]>() {
+      @Override
+      public int compare(double[] o1, double[] o2) {
+        return Double.compare(o1[0], o2[0]);
+      }
+    });
+    double[] all = new double[rows.length * 3];
+    for(i = 0; i < rows.length; i++) {
+      System.arraycopy(rows[i], 0, all, i * 3, 3);
+    }
+    return all;
+  }
+}
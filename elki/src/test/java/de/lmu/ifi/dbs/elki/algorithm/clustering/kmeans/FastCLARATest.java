@@ -0,0 +1,66 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.MedoidModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Regression test for FastCLARA.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class FastCLARATest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run FastCLARA with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testFastCLARA() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 5);
+    // These parameters are chosen suboptimal, for better regression testing.
+    params.addParameter(CLARA.Parameterizer.RANDOM_ID, 1);
+    params.addParameter(CLARA.Parameterizer.NUMSAMPLES_ID, 2);
+    params.addParameter(CLARA.Parameterizer.SAMPLESIZE_ID, 50);
+    FastCLARA<DoubleVector> kmedians = ClassGenericsUtil.parameterizeOrAbort(FastCLARA.class, params);
+    testParameterizationOk(params);
+
+    // run KMedians on database
+    Clustering<MedoidModel> result = kmedians.run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+}
\ No newline at end of file
@@ -0,0 +1,138 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.MedoidModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Regression test for FastPAM.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class FastPAMTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run FastPAM with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testFastPAM() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 5);
+    FastPAM<DoubleVector> kmedians = ClassGenericsUtil.parameterizeOrAbort(FastPAM.class, params);
+    testParameterizationOk(params);
+
+    // run KMedians on database
+    Clustering<MedoidModel> result = kmedians.run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  /**
+   * Compare to the original PAM, with more medoids.
+   */
+  @Test
+  public void testSameAsPAM() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 12);
+    KMedoidsPAM<DoubleVector> pam = ClassGenericsUtil.parameterizeOrAbort(KMedoidsPAM.class, params);
+    testParameterizationOk(params);
+    params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 12);
+    FastPAM<DoubleVector> fastpam = ClassGenericsUtil.parameterizeOrAbort(FastPAM.class, params);
+    testParameterizationOk(params);
+
+    DBIDs m1 = medoids(pam.run(db)), m2 = medoids(fastpam.run(db));
+    assertEquals("Number of medoids differs.", m1.size(), m2.size());
+    assertEquals("Medoids differ.", m1.size(), DBIDUtil.intersectionSize(m1, m2));
+  }
+
+  /**
+   * Compare to the original PAM on data with many duplicates, which are
+   * skipped as swap candidates by both.
+   */
+  @Test
+  public void testDuplicatesSameAsPAM() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[600][];
+    for(int i = 0; i < data.length; i += 3) {
+      final double off = (i % 4) * 10.;
+      data[i] = new double[] { off + rnd.nextGaussian(), rnd.nextGaussian() };
+      data[i + 1] = data[i].clone();
+      data[i + 2] = data[i].clone();
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 7);
+    KMedoidsPAM<DoubleVector> pam = ClassGenericsUtil.parameterizeOrAbort(KMedoidsPAM.class, params);
+    testParameterizationOk(params);
+    params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 7);
+    FastPAM<DoubleVector> fastpam = ClassGenericsUtil.parameterizeOrAbort(FastPAM.class, params);
+    testParameterizationOk(params);
+
+    DBIDs m1 = medoids(pam.run(db)), m2 = medoids(fastpam.run(db));
+    assertEquals("Number of medoids differs.", m1.size(), m2.size());
+    assertEquals("Medoids differ.", m1.size(), DBIDUtil.intersectionSize(m1, m2));
+  }
+
+  /**
+   * Collect the medoids of a clustering.
+   *
+   * @param result Clustering
+   * @return Medoids
+   */
+  private static DBIDs medoids(Clustering<MedoidModel> result) {
+    HashSetModifiableDBIDs medoids = DBIDUtil.newHashSet();
+    for(Cluster<MedoidModel> c : result.getAllClusters()) {
+      medoids.add(c.getModel().getMedoid());
+    }
+    return medoids;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,124 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.FileUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Regression test for mini-batch k-means.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class MiniBatchKMeansTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run KMeans with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testMiniBatchKMeans() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 5);
+    params.addParameter(KMeans.SEED_ID, 7);
+    params.addParameter(KMeans.MAXITER_ID, 3);
+    params.addParameter(MiniBatchKMeans.Parameterizer.BATCHSIZE_ID, 100);
+    params.addParameter(MiniBatchKMeans.Parameterizer.RANDOM_ID, 0);
+    AbstractKMeans<DoubleVector, ?> kmeans = ClassGenericsUtil.parameterizeOrAbort(MiniBatchKMeans.class, params);
+    testParameterizationOk(params);
+
+    // run KMeans on database
+    Clustering<?> result = kmeans.run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  /**
+   * Cluster the same data file, streaming.
+   */
+  @Test
+  public void testStreaming() throws IOException {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 5);
+    params.addParameter(KMeans.SEED_ID, 7);
+    params.addParameter(KMeans.MAXITER_ID, 3);
+    params.addParameter(MiniBatchKMeans.Parameterizer.BATCHSIZE_ID, 100);
+    params.addParameter(MiniBatchKMeans.Parameterizer.RESERVOIR_ID, 200);
+    params.addParameter(MiniBatchKMeans.Parameterizer.RANDOM_ID, 0);
+    MiniBatchKMeans<NumberVector> kmeans = ClassGenericsUtil.parameterizeOrAbort(MiniBatchKMeans.class, params);
+    testParameterizationOk(params);
+
+    NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+    double[][] means;
+    try (InputStream in = FileUtil.tryGzipInput(new FileInputStream(UNITTEST + "different-densities-2d-no-noise.ascii"))) {
+      parser.initStream(in);
+      means = kmeans.chooseInitialMeans(parser);
+      parser.cleanup();
+    }
+    assertEquals("Wrong number of means.", 5, means.length);
+    long[] weights = new long[5], sizes = null;
+    double[] varsum = null;
+    for(int pass = 0; pass < 3; pass++) {
+      if(pass == 2) {
+        sizes = new long[5];
+        varsum = new double[5];
+      }
+      try (InputStream in = FileUtil.tryGzipInput(new FileInputStream(UNITTEST + "different-densities-2d-no-noise.ascii"))) {
+        parser.initStream(in);
+        kmeans.runPass(parser, means, weights, sizes, varsum);
+        parser.cleanup();
+      }
+    }
+    long total = 0, totalweight = 0;
+    for(int i = 0; i < 5; i++) {
+      total += sizes[i];
+      totalweight += weights[i];
+    }
+    assertEquals("Not all objects processed.", 1000, total);
+    assertEquals("Not all objects processed.", 3000, totalweight);
+    Arrays.sort(sizes);
+    assertEquals("Unbalanced clustering.", 199, sizes[0], 1);
+    assertEquals("Unbalanced clustering.", 201, sizes[4], 1);
+  }
+}
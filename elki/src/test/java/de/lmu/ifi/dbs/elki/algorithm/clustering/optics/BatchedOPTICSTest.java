@@ -0,0 +1,116 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.optics;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Performs a full OPTICS run with batched neighborhood retrieval, and compares
+ * the result to the golden standard of {@link OPTICSHeapTest} and to the
+ * cluster order of {@link OPTICSHeap}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class BatchedOPTICSTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run OPTICS with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testOPTICSResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(BatchedOPTICS.Parameterizer.MINPTS_ID, 18);
+    params.addParameter(BatchedOPTICS.Parameterizer.BATCHSIZE_ID, 10);
+    params.addParameter(OPTICSXi.Parameterizer.XI_ID, 0.038);
+    params.addParameter(OPTICSXi.Parameterizer.XIALG_ID, BatchedOPTICS.class);
+    OPTICSXi opticsxi = ClassGenericsUtil.parameterizeOrAbort(OPTICSXi.class, params);
+    testParameterizationOk(params);
+
+    // run OPTICS on database
+    Clustering<?> clustering = opticsxi.run(db);
+
+    testFMeasure(db, clustering, 0.8819664);
+    testClusterSizes(clustering, new int[] { 108, 120, 209, 273 });
+  }
+
+  /**
+   * Compare the cluster order to the one of {@link OPTICSHeap}, with an
+   * epsilon small enough to produce several expansions.
+   */
+  @Test
+  public void testSameAsHeap() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(BatchedOPTICS.Parameterizer.MINPTS_ID, 18);
+    params.addParameter(BatchedOPTICS.Parameterizer.EPSILON_ID, 0.03);
+    params.addParameter(BatchedOPTICS.Parameterizer.BATCHSIZE_ID, 50);
+    BatchedOPTICS<NumberVector> batched = ClassGenericsUtil.parameterizeOrAbort(BatchedOPTICS.class, params);
+    testParameterizationOk(params);
+
+    params = new ListParameterization();
+    params.addParameter(OPTICSHeap.Parameterizer.MINPTS_ID, 18);
+    params.addParameter(OPTICSHeap.Parameterizer.EPSILON_ID, 0.03);
+    OPTICSHeap<NumberVector> heap = ClassGenericsUtil.parameterizeOrAbort(OPTICSHeap.class, params);
+    testParameterizationOk(params);
+
+    ClusterOrder expected = heap.run(db, rel);
+    ClusterOrder actual = batched.run(db, rel);
+    assertEquals("Cluster order size", expected.size(), actual.size());
+    DBIDVar p1 = DBIDUtil.newVar(), p2 = DBIDUtil.newVar();
+    int infinite = 0;
+    for(DBIDArrayIter e = expected.iter(), a = actual.iter(); e.valid(); e.advance(), a.advance()) {
+      assertTrue("Cluster order differs at " + e.getOffset(), DBIDUtil.equal(e, a));
+      final double reach = expected.getReachability(e);
+      assertEquals("Reachability differs", reach, actual.getReachability(a), 0.);
+      infinite += reach == Double.POSITIVE_INFINITY ? 1 : 0;
+      expected.getPredecessor(e, p1);
+      actual.getPredecessor(a, p2);
+      assertEquals("Predecessor differs", p1.isSet(), p2.isSet());
+      assertTrue("Predecessor differs", !p1.isSet() || DBIDUtil.equal(p1, p2));
+    }
+    assertTrue("Epsilon too large for this test.", infinite > 1);
+  }
+}
@@ -0,0 +1,149 @@
+package de.lmu.ifi.dbs.elki.algorithm.itemsetmining;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.datasource.InputStreamDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.parser.CSVReaderFormat;
+import de.lmu.ifi.dbs.elki.datasource.parser.SimpleTransactionParser;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
+
+/**
+ * Helper functions and shared regression tests for frequent itemset mining
+ * algorithms, against brute-force counts.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public abstract class AbstractFrequentItemsetAlgorithmTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Instantiate the algorithm to test.
+   *
+   * @param minsupp Minimum support
+   * @param minlength Minimum length
+   * @param maxlength Maximum length
+   * @return Algorithm
+   */
+  protected abstract AbstractFrequentItemsetAlgorithm newAlgorithm(double minsupp, int minlength, int maxlength);
+
+  @Test
+  public void testZutaten() {
+    Database db = loadTransactions(UNITTEST + "itemsets/zutaten.txt.gz", 16401);
+    FrequentItemsetsResult res = newAlgorithm(20, 0, -1).run(db);
+    testItemsets(res, new int[] { 378, 1197, 1241, 490, 56, 1 }, 259954L);
+  }
+
+  @Test
+  public void testLength() {
+    Database db = loadTransactions(UNITTEST + "itemsets/zutaten.txt.gz", 16401);
+    FrequentItemsetsResult res = newAlgorithm(10, 2, 3).run(db);
+    testItemsets(res, new int[] { 0, 2508, 3047 }, 209319L);
+  }
+
+  @Test
+  public void testParallel() {
+    Database db = loadTransactions(UNITTEST + "itemsets/zutaten.txt.gz", 16401);
+    FrequentItemsetsResult expected = newAlgorithm(20, 0, -1).run(db);
+    ParallelCore prev = ParallelCore.setCore(new ParallelCore(4));
+    try {
+      testSameItemsets(expected, newAlgorithm(20, 0, -1).run(db));
+    }
+    finally {
+      ParallelCore.setCore(prev).shutdown();
+    }
+  }
+
+  /**
+   * Load a transaction database.
+   *
+   * @param filename File name
+   * @param expectedSize Expected number of transactions
+   * @return Database
+   */
+  public static Database loadTransactions(String filename, int expectedSize) {
+    try (InputStream is = open(filename)) {
+      InputStreamDatabaseConnection dbc = new InputStreamDatabaseConnection(is, null, new SimpleTransactionParser(CSVReaderFormat.DEFAULT_FORMAT));
+      Database db = new StaticArrayDatabase(dbc, null);
+      db.initialize();
+      assertEquals("Database size does not match.", expectedSize, db.getRelation(TypeUtil.BIT_VECTOR_FIELD).size());
+      return db;
+    }
+    catch(IOException e) {
+      fail("Test data " + filename + " not found.");
+      return null; // Not reached.
+    }
+  }
+
+  /**
+   * Test the number of itemsets found of each length.
+   *
+   * @param res Result
+   * @param expected Expected number of itemsets, by length (starting at 1)
+   * @param supports Expected sum of supports
+   */
+  public static void testItemsets(FrequentItemsetsResult res, int[] expected, long supports) {
+    int[] counts = new int[expected.length];
+    long sum = 0;
+    for(Itemset is : res.getItemsets()) {
+      if(is.length() > counts.length) {
+        fail("Itemset too long: " + is);
+      }
+      counts[is.length() - 1]++;
+      sum += is.getSupport();
+    }
+    for(int i = 0; i < counts.length; i++) {
+      assertEquals("Number of itemsets of length " + (i + 1), expected[i], counts[i]);
+    }
+    assertEquals("Sum of supports", supports, sum);
+  }
+
+  /**
+   * Test that two results are identical.
+   *
+   * @param expected Expected result
+   * @param actual Actual result
+   */
+  public static void testSameItemsets(FrequentItemsetsResult expected, FrequentItemsetsResult actual) {
+    List<Itemset> e = expected.getItemsets(), a = actual.getItemsets();
+    assertEquals("Number of itemsets", e.size(), a.size());
+    for(int i = 0; i < e.size(); i++) {
+      assertEquals("Itemset differs.", 0, e.get(i).compareTo(a.get(i)));
+      assertEquals("Support differs.", e.get(i).getSupport(), a.get(i).getSupport());
+    }
+  }
+}
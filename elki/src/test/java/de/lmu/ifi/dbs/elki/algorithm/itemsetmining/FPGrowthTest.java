@@ -0,0 +1,38 @@
+package de.lmu.ifi.dbs.elki.algorithm.itemsetmining;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Regression test for FPGrowth, against brute-force counts.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class FPGrowthTest extends AbstractFrequentItemsetAlgorithmTest {
+  @Override
+  protected AbstractFrequentItemsetAlgorithm newAlgorithm(double minsupp, int minlength, int maxlength) {
+    return new FPGrowth(minsupp, minlength, maxlength);
+  }
+}
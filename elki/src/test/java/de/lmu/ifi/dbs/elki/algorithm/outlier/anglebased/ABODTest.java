@@ -23,11 +23,16 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier.anglebased;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static org.junit.Assert.assertEquals;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel.PolynomialKernelFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
@@ -58,4 +63,32 @@ public class ABODTest extends AbstractSimpleAlgorithmTest {
     testAUC(db, "Noise", result, 0.9297962962962);
     testSingleScore(result, 945, 2.0897348547799E-5);
   }
+
+  @Test
+  public void testParallelABOD() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    testParallelScores(db, ABOD.class, new ListParameterization(), 4);
+  }
+
+  /**
+   * Processing the objects in several blocks must not change the scores.
+   */
+  @Test
+  public void testBlockedABOD() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    ParallelCore prev = ParallelCore.setCore(new ParallelCore(4));
+    try {
+      PolynomialKernelFunction kernel = new PolynomialKernelFunction(2);
+      OutlierResult single = new ABOD<DoubleVector>(kernel).run(db);
+      // Blocks of 100 objects, the last one partial:
+      OutlierResult blocked = new ABOD<DoubleVector>(kernel, 330 * 100).run(db);
+      for(DBIDIter it = single.getScores().iterDBIDs(); it.valid(); it.advance()) {
+        final double expected = single.getScores().doubleValue(it);
+        assertEquals("Blocked score differs.", expected, blocked.getScores().doubleValue(it), 1e-9 * Math.abs(expected));
+      }
+    }
+    finally {
+      ParallelCore.setCore(prev).shutdown();
+    }
+  }
 }
\ No newline at end of file
@@ -57,4 +57,12 @@ public class FastABODTest extends AbstractSimpleAlgorithmTest {
     testAUC(db, "Noise", result, 0.94626962962);
     testSingleScore(result, 945, 3.28913914467E-4);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testParallelFastABOD() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-3d-3clusters.ascii", 960);
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FastABOD.Parameterizer.K_ID, 5);
+    testParallelScores(db, FastABOD.class, params, 4);
+  }
+}
@@ -60,4 +60,13 @@ public class LBABODTest extends AbstractSimpleAlgorithmTest {
     testAUC(db, "Noise", result, 0.92279629629629);
     testSingleScore(result, 945, 2.0897348547799E-5);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testParallelLBABOD() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-3d-3clusters.ascii", 960);
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FastABOD.Parameterizer.K_ID, 150);
+    params.addParameter(LBABOD.Parameterizer.L_ID, 10);
+    testParallelScores(db, LBABOD.class, params, 4);
+  }
+}
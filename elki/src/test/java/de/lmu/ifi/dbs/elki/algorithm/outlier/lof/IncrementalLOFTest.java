@@ -0,0 +1,284 @@
+package de.lmu.ifi.dbs.elki.algorithm.outlier.lof;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.VectorUtil;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
+import de.lmu.ifi.dbs.elki.database.UpdatableDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreEvent;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.relation.DoubleRelation;
+import de.lmu.ifi.dbs.elki.database.relation.ModifiableRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNAndRKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.result.ResultUtil;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the incremental LOF implementation, against static results.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class IncrementalLOFTest extends AbstractSimpleAlgorithmTest {
+  @Test
+  public void testIncrementalLOFResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(LOF.Parameterizer.K_ID, 10);
+    IncrementalLOF<DoubleVector> lof = ClassGenericsUtil.parameterizeOrAbort(IncrementalLOF.class, params);
+    testParameterizationOk(params);
+
+    OutlierResult result = lof.run(db);
+    testSingleScore(result, 1293, 1.1945314199156365);
+    testAUC(db, "Noise", result, 0.8921680672268908);
+  }
+
+  @Test
+  public void testInsertDeleteLOF() {
+    testInsertDelete(IncrementalLOF.Variant.LOF, false);
+  }
+
+  @Test
+  public void testInsertDeleteSimplifiedLOF() {
+    testInsertDelete(IncrementalLOF.Variant.SIMPLIFIED_LOF, false);
+  }
+
+  @Test
+  public void testInsertDeleteLoOP() {
+    testInsertDelete(IncrementalLOF.Variant.LOOP, false);
+  }
+
+  @Test
+  public void testInsertDeleteRkNNIndex() {
+    testInsertDelete(IncrementalLOF.Variant.LOF, true);
+  }
+
+  /**
+   * Move objects with an update event, and compare to a fresh static run.
+   */
+  @Test
+  public void testUpdate() {
+    final int k = 7;
+    UpdatableDatabase db = makeDatabase(k, false);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    IncrementalLOF.Instance<DoubleVector> instance = runIncremental(db, IncrementalLOF.Variant.LOF, k);
+
+    // Swap pairs of neighboring objects, and move others into a cluster:
+    ArrayModifiableDBIDs upd = DBIDUtil.newArray();
+    List<DoubleVector> moved = new ArrayList<>();
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid() && i < 100; it.advance(), i++) {
+      if(i % 5 < 2) {
+        upd.add(it);
+        moved.add(rel.get(it));
+      }
+    }
+    DoubleVector center = rel.get(upd.iter());
+    ModifiableRelation<DoubleVector> mrel = (ModifiableRelation<DoubleVector>) rel;
+    i = 0;
+    for(DBIDIter it = upd.iter(); it.valid(); it.advance(), i++) {
+      mrel.insert(it, i % 4 == 3 ? center : moved.get(i ^ 1));
+    }
+    instance.contentChanged(DataStoreEvent.updateEvent(upd));
+    assertSameScores(instance, runStatic(db, IncrementalLOF.Variant.LOF, k));
+  }
+
+  /**
+   * Scores of a removed result must no longer be updated.
+   */
+  @Test
+  public void testDetach() {
+    final int k = 7;
+    UpdatableDatabase db = makeDatabase(k, false);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    IncrementalLOF.Instance<DoubleVector> instance = runIncremental(db, IncrementalLOF.Variant.LOF, k);
+    ResultUtil.addChildResult(db, instance);
+    ResultUtil.removeRecursive(db.getHierarchy(), instance);
+
+    ArrayModifiableDBIDs del = DBIDUtil.newArray(), keep = DBIDUtil.newArray();
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid() && i < 200; it.advance(), i++) {
+      ((i & 1) == 0 ? del : keep).add(it);
+    }
+    double[] scores = new double[keep.size()];
+    i = 0;
+    for(DBIDIter it = keep.iter(); it.valid(); it.advance(), i++) {
+      scores[i] = instance.getScore(it);
+    }
+    db.delete(del);
+    i = 0;
+    for(DBIDIter it = keep.iter(); it.valid(); it.advance(), i++) {
+      assertEquals("Detached instance was updated.", scores[i], instance.getScore(it), 0.);
+    }
+  }
+
+  /**
+   * Load the test data into an updatable database.
+   *
+   * @param k Number of neighbors
+   * @param index Add a RkNN index for k neighbors
+   * @return Database
+   */
+  private UpdatableDatabase makeDatabase(int k, boolean index) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, UNITTEST + "3clusters-and-noise-2d.csv");
+    UpdatableDatabase db = ClassGenericsUtil.parameterizeOrAbort(HashmapDatabase.class, params);
+    testParameterizationOk(params);
+    db.initialize();
+    if(index) {
+      // The preprocessor needs the data, it cannot be added via parameters.
+      Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+      MaterializeKNNAndRKNNPreprocessor<DoubleVector> preproc = new MaterializeKNNAndRKNNPreprocessor<>(rel, EuclideanDistanceFunction.STATIC, k + 1);
+      preproc.initialize();
+      db.getHierarchy().add(rel, preproc);
+    }
+    return db;
+  }
+
+  /**
+   * Run the incremental algorithm.
+   *
+   * @param db Database
+   * @param variant Outlier model
+   * @param k Number of neighbors
+   * @return Incremental state
+   */
+  private static IncrementalLOF.Instance<DoubleVector> runIncremental(Database db, IncrementalLOF.Variant variant, int k) {
+    IncrementalLOF<DoubleVector> incremental = new IncrementalLOF<>(EuclideanDistanceFunction.STATIC, k, variant, 2.);
+    OutlierResult result = incremental.run(db);
+    List<IncrementalLOF.Instance<DoubleVector>> instances = ResultUtil.filterResults(result.getHierarchy(), result, IncrementalLOF.Instance.class);
+    assertEquals("Instance not attached to result.", 1, instances.size());
+    IncrementalLOF.Instance<DoubleVector> instance = instances.get(0);
+    assertSameScores(instance, runStatic(db, variant, k));
+    return instance;
+  }
+
+  /**
+   * Delete and insert objects, and compare to a fresh static run after each
+   * modification.
+   *
+   * @param variant Outlier model
+   * @param index Use a RkNN index
+   */
+  private void testInsertDelete(IncrementalLOF.Variant variant, boolean index) {
+    final int k = 7;
+    UpdatableDatabase db = makeDatabase(k, index);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    if(index) {
+      assertNotNull("No RkNN index.", db.getRKNNQuery(db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC), k + 1, DatabaseQuery.HINT_OPTIMIZED_ONLY));
+    }
+    IncrementalLOF.Instance<DoubleVector> instance = runIncremental(db, variant, k);
+
+    // Delete every third object of a dense region:
+    ArrayModifiableDBIDs del = DBIDUtil.newArray();
+    List<DoubleVector> removed = new ArrayList<>();
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+      if(i % 3 == 0 && i < 200) {
+        del.add(it);
+        removed.add(rel.get(it));
+      }
+    }
+    db.delete(del);
+    assertSameScores(instance, runStatic(db, variant, k));
+
+    // Reinsert the objects in one batch, and some random noise one by one:
+    db.insert(MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), removed));
+    assertSameScores(instance, runStatic(db, variant, k));
+    NumberVector.Factory<DoubleVector> factory = RelationUtil.getNumberVectorFactory(rel);
+    Random random = new Random(0L);
+    List<DoubleVector> single = new ArrayList<>(1);
+    for(int j = 0; j < 20; j++) {
+      single.clear();
+      single.add(VectorUtil.randomVector(factory, 2, random));
+      db.insert(MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), single));
+    }
+    assertSameScores(instance, runStatic(db, variant, k));
+    assertEquals("Latency not recorded.", removed.size() + 20, instance.getLatency().getCount(), 0.);
+    assertTrue("Not an incremental update.", instance.getUpdatedScores().getMean() < rel.size() * .5);
+  }
+
+  /**
+   * Run the static algorithm.
+   *
+   * @param db Database
+   * @param variant Outlier model
+   * @param k Number of neighbors
+   * @return Static result
+   */
+  private static OutlierResult runStatic(Database db, IncrementalLOF.Variant variant, int k) {
+    switch(variant){
+    case SIMPLIFIED_LOF:
+      return new SimplifiedLOF<DoubleVector>(k, EuclideanDistanceFunction.STATIC).run(db);
+    case LOOP:
+      return new LoOP<DoubleVector>(k, k, EuclideanDistanceFunction.STATIC, EuclideanDistanceFunction.STATIC, 2.).run(db);
+    default:
+      return new LOF<DoubleVector>(k, EuclideanDistanceFunction.STATIC).run(db);
+    }
+  }
+
+  /**
+   * Compare the incremental scores to a static result.
+   *
+   * @param instance Incremental state
+   * @param expected Static result
+   */
+  private static void assertSameScores(IncrementalLOF.Instance<?> instance, OutlierResult expected) {
+    DoubleRelation scores = expected.getScores();
+    DoubleRelation current = instance.getResult().getScores();
+    assertEquals("Result size differs.", scores.size(), current.size());
+    for(DBIDIter it = scores.iterDBIDs(); it.valid(); it.advance()) {
+      final double exp = scores.doubleValue(it);
+      assertEquals("Score differs for " + DBIDUtil.toString(it), exp, instance.getScore(it), 1e-10 * Math.max(1., Math.abs(exp)));
+      assertEquals("Score differs for " + DBIDUtil.toString(it), exp, current.doubleValue(it), 1e-10 * Math.max(1., Math.abs(exp)));
+    }
+  }
+}
@@ -29,6 +29,7 @@ import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.math.statistics.tests.KolmogorovSmirnovTest;
 import de.lmu.ifi.dbs.elki.math.statistics.tests.WelchTTest;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
@@ -60,8 +61,8 @@ public class HiCSTest extends AbstractSimpleAlgorithmTest {
     // run HiCS on database
     OutlierResult result = fb.run(db);
 
-    testAUC(db, "Noise", result, 0.85340056);
-    testSingleScore(result, 1293, 4.935802);
+    testAUC(db, "Noise", result, 0.89238095);
+    testSingleScore(result, 1293, 4.7886846);
   }
 
   @Test
@@ -85,4 +86,32 @@ public class HiCSTest extends AbstractSimpleAlgorithmTest {
     testAUC(db, "Noise", result, 0.867159);
     testSingleScore(result, 1293, 4.7877822);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testHiCSInstance() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+
+    // A given instance is shared by all subspaces:
+    ListParameterization params = new ListParameterization();
+    params.addParameter(HiCS.Parameterizer.ALGO_ID, new LOF<DoubleVector>(10, EuclideanDistanceFunction.STATIC));
+    params.addParameter(HiCS.Parameterizer.LIMIT_ID, 10);
+    params.addParameter(HiCS.Parameterizer.SEED_ID, 0);
+    params.addParameter(HiCS.Parameterizer.TEST_ID, KolmogorovSmirnovTest.STATIC);
+    HiCS<DoubleVector> fb = ClassGenericsUtil.parameterizeOrAbort(HiCS.class, params);
+    testParameterizationOk(params);
+
+    OutlierResult result = fb.run(db);
+    testAUC(db, "Noise", result, 0.89238095);
+    testSingleScore(result, 1293, 4.7886846);
+  }
+
+  @Test
+  public void testParallelHiCS() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+    ListParameterization params = new ListParameterization();
+    params.addParameter(LOF.Parameterizer.K_ID, 10);
+    params.addParameter(HiCS.Parameterizer.LIMIT_ID, 10);
+    params.addParameter(HiCS.Parameterizer.SEED_ID, 0);
+    testParallelScores(db, HiCS.class, params, 4);
+  }
+}
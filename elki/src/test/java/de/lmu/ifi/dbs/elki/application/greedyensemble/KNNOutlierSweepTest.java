@@ -0,0 +1,109 @@
+package de.lmu.ifi.dbs.elki.application.greedyensemble;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.outlier.distance.KNNOutlier;
+import de.lmu.ifi.dbs.elki.algorithm.outlier.distance.KNNWeightOutlier;
+import de.lmu.ifi.dbs.elki.algorithm.outlier.distance.LocalIsolationCoefficient;
+import de.lmu.ifi.dbs.elki.algorithm.outlier.distance.ODIN;
+import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF;
+import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.SimplifiedLOF;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
+
+/**
+ * Test that the shared kNN graph sweep produces the same scores as the
+ * individual algorithms.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class KNNOutlierSweepTest extends AbstractSimpleAlgorithmTest {
+  @Test
+  public void testSweep() {
+    testSweep(1);
+  }
+
+  @Test
+  public void testParallelSweep() {
+    testSweep(4);
+  }
+
+  private void testSweep(int threads) {
+    ParallelCore prev = ParallelCore.setCore(new ParallelCore(threads));
+    try {
+      Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+      Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+      EuclideanDistanceFunction distf = EuclideanDistanceFunction.STATIC;
+      final int maxk = 20, lim = maxk + 2;
+      MaterializeKNNPreprocessor<NumberVector> preproc = new MaterializeKNNPreprocessor<>(rel, distf, lim);
+      preproc.initialize();
+      rel.getHierarchy().add(rel, preproc);
+      KNNOutlierSweep sweep = new KNNOutlierSweep(rel.getDBIDs(), preproc);
+      for(int k = 2; k <= maxk; k += 6) {
+        assertSameScores(rel, new KNNOutlier<NumberVector>(distf, k).run(db, rel), sweep.knn(k));
+        assertSameScores(rel, new KNNWeightOutlier<NumberVector>(distf, k).run(db, rel), sweep.knnWeight(k));
+        assertSameScores(rel, new LOF<NumberVector>(k, distf).run(db, rel), sweep.lof(k));
+        assertSameScores(rel, new SimplifiedLOF<NumberVector>(k, distf).run(db, rel), sweep.simplifiedLOF(k));
+        assertSameScores(rel, new ODIN<NumberVector>(distf, k).run(db, rel), sweep.odin(k));
+        assertSameScores(rel, new LocalIsolationCoefficient<NumberVector>(distf, k).run(db, rel), sweep.localIsolationCoefficient(k));
+      }
+    }
+    finally {
+      ParallelCore.setCore(prev).shutdown();
+    }
+  }
+
+  /**
+   * Compare two outlier results.
+   *
+   * @param rel Relation
+   * @param expected Expected result
+   * @param actual Actual result
+   */
+  private static void assertSameScores(Relation<?> rel, OutlierResult expected, OutlierResult actual) {
+    final String name = expected.getOutlierMeta().getClass().getSimpleName();
+    assertEquals(name, expected.getOutlierMeta().getClass(), actual.getOutlierMeta().getClass());
+    assertEquals(name, expected.getOutlierMeta().getActualMinimum(), actual.getOutlierMeta().getActualMinimum(), 0.);
+    assertEquals(name, expected.getOutlierMeta().getActualMaximum(), actual.getOutlierMeta().getActualMaximum(), 0.);
+    assertEquals(name, expected.getOutlierMeta().getTheoreticalMaximum(), actual.getOutlierMeta().getTheoreticalMaximum(), 0.);
+    assertEquals(name, expected.getScores().getLongName(), actual.getScores().getLongName());
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      assertEquals(name, expected.getScores().doubleValue(it), actual.getScores().doubleValue(it), 0.);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package de.lmu.ifi.dbs.elki.database.ids;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.ids.generic.KNNSubList;
+import de.lmu.ifi.dbs.elki.database.ids.integer.IntegerDBIDKNNSubList;
+
+/**
+ * Test the kNN sublists, in particular the handling of ties.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class KNNSubListTest {
+  /**
+   * Build a kNN list with ties.
+   *
+   * @return kNN list with distances 1, 2, 2, 3
+   */
+  private static KNNList makeList() {
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(4);
+    double[] dists = { 1., 2., 2., 3. };
+    KNNHeap heap = DBIDUtil.newHeap(dists.length);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      heap.insert(dists[it.getOffset()], it);
+    }
+    return heap.toKNNList();
+  }
+
+  @Test
+  public void testGenericTies() {
+    KNNList list = makeList();
+    assertSubList(new KNNSubList(list, 1), 1, 1, 1.);
+    assertSubList(new KNNSubList(list, 2), 2, 3, 2.);
+    assertSubList(new KNNSubList(list, 3), 3, 3, 2.);
+  }
+
+  @Test
+  public void testIntegerTies() {
+    KNNList list = DBIDUtil.subList(makeList(), 2);
+    assertEquals("Integer sublist expected.", IntegerDBIDKNNSubList.class, list.getClass());
+    assertSubList(list, 2, 3, 2.);
+    assertSubList(DBIDUtil.subList(makeList(), 1), 1, 1, 1.);
+    assertSubList(DBIDUtil.subList(makeList(), 3), 3, 3, 2.);
+  }
+
+  /**
+   * Check a sublist.
+   *
+   * @param list Sublist
+   * @param k Expected k
+   * @param size Expected size, including ties
+   * @param kdist Expected kNN distance
+   */
+  private static void assertSubList(KNNList list, int k, int size, double kdist) {
+    assertEquals("k does not match.", k, list.getK());
+    assertEquals("Size including ties does not match.", size, list.size());
+    assertEquals("kNN distance does not match.", kdist, list.getKNNDistance(), 0.);
+    int i = 0;
+    for(DoubleDBIDListIter it = list.iter(); it.valid(); it.advance(), i++) {
+      assertEquals("Iterator position does not match.", i, it.getOffset());
+    }
+    assertEquals("Iterator length does not match.", size, i);
+  }
+}
@@ -0,0 +1,124 @@
+package de.lmu.ifi.dbs.elki.database.query;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanEuclideanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.BulkRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.LinearScanEuclideanDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+
+/**
+ * Test the blocked linear scan against the plain linear scan.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class BlockedEuclideanScanTest {
+  @Test
+  public void testKNNAndRange() {
+    Random r = new Random(0L);
+    // Enough queries for multiple tiles, and a remainder in the blocks.
+    double[][] data = new double[2011][37];
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        row[d] = (d < 3 ? r.nextInt(3) * 1e3 : 0.) + r.nextGaussian() * 5; // Large norms
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+
+    ParallelCore prev = ParallelCore.setCore(new ParallelCore(4));
+    try {
+      KNNQuery<NumberVector> knnq = db.getKNNQuery(dq, 7);
+      assertTrue(knnq instanceof LinearScanEuclideanDistanceKNNQuery);
+      List<? extends KNNList> knns = knnq.getKNNForBulkDBIDs(ids, 7);
+      RangeQuery<NumberVector> rq = db.getRangeQuery(dq, 40.);
+      assertTrue(rq instanceof LinearScanEuclideanDistanceRangeQuery);
+      List<? extends DoubleDBIDList> ranges = ((BulkRangeQuery<NumberVector>) rq).getRangeForBulkDBIDs(ids, 40.);
+      int i = 0, found = 0;
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance(), i++) {
+        assertSameResult(knnq.getKNNForDBID(it, 7), knns.get(i));
+        assertSameResult(rq.getRangeForDBID(it, 40.), ranges.get(i));
+        found += ranges.get(i).size();
+      }
+      assertTrue("Range query too selective for testing.", found > 2 * ids.size());
+      // The dense copy of the data is built only once per query.
+      BlockedEuclideanScan scan = ((LinearScanEuclideanDistanceKNNQuery<NumberVector>) knnq).getBlockedScan();
+      assertNotNull(scan);
+      assertTrue(scan.matches(rel));
+      knnq.getKNNForBulkDBIDs(ids, 7);
+      assertSame("Blocked scan was rebuilt.", scan, ((LinearScanEuclideanDistanceKNNQuery<NumberVector>) knnq).getBlockedScan());
+      BlockedEuclideanScan rscan = ((LinearScanEuclideanDistanceRangeQuery<NumberVector>) rq).getBlockedScan();
+      ((BulkRangeQuery<NumberVector>) rq).getRangeForBulkDBIDs(ids, 40.);
+      assertSame("Blocked scan was rebuilt.", rscan, ((LinearScanEuclideanDistanceRangeQuery<NumberVector>) rq).getBlockedScan());
+    }
+    finally {
+      ParallelCore.setCore(prev).shutdown();
+    }
+  }
+
+  /**
+   * Compare two result lists.
+   *
+   * @param expect Expected result
+   * @param actual Actual result
+   */
+  private static void assertSameResult(DoubleDBIDList expect, DoubleDBIDList actual) {
+    assertEquals("Result size differs.", expect.size(), actual.size());
+    for(DoubleDBIDListIter e = expect.iter(), a = actual.iter(); e.valid(); e.advance(), a.advance()) {
+      assertEquals("Distance differs.", e.doubleValue(), a.doubleValue(), 0.);
+      assertTrue("Neighbor differs.", DBIDUtil.equal(e, a));
+    }
+  }
+}
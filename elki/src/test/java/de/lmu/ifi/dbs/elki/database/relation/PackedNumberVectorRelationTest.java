@@ -0,0 +1,191 @@
+package de.lmu.ifi.dbs.elki.database.relation;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.datasource.InputStreamDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.persistent.NumberVectorBlock;
+import de.lmu.ifi.dbs.elki.result.ResultUtil;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.ArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.NumberArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test packed storage of number vectors.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class PackedNumberVectorRelationTest {
+  public static final String filename = "data/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testBlockChunks() throws IOException {
+    // Tiny chunks, to test chunk boundaries.
+    try (NumberVectorBlock block = new NumberVectorBlock(3, false, NumberVectorBlock.Storage.OFFHEAP, null, 100)) {
+      for(int i = 0; i < 100; i++) {
+        assertEquals(i, block.append(DoubleVector.wrap(new double[] { i, -i, i * .5 })));
+      }
+      assertEquals(100, block.size());
+      for(int i = 0; i < 100; i++) {
+        NumberVector v = block.get(i);
+        assertEquals(3, v.getDimensionality());
+        assertEquals(i, v.doubleValue(0), 0.);
+        assertEquals(-i, v.doubleValue(1), 0.);
+        assertEquals(i * .5, block.doubleValue(i, 2), 0.);
+      }
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testFinishedMapped() throws IOException {
+    try (NumberVectorBlock block = new NumberVectorBlock(2, false, NumberVectorBlock.Storage.MAPPED, null, 100)) {
+      for(int i = 0; i < 10; i++) {
+        block.append(DoubleVector.wrap(new double[] { i, -i }));
+      }
+      block.finish();
+      // Mapped chunks remain readable after releasing the file:
+      assertEquals(-9., block.doubleValue(9, 1), 0.);
+      // But no new chunk can be allocated:
+      for(int i = 0; i < 100; i++) {
+        block.append(DoubleVector.wrap(new double[] { i, -i }));
+      }
+    }
+  }
+
+  @Test
+  public void testDoubleHeap() throws IOException {
+    testPacked(NumberVectorBlock.Storage.HEAP, false, 0.);
+  }
+
+  @Test
+  public void testFloatMapped() throws IOException {
+    testPacked(NumberVectorBlock.Storage.MAPPED, true, 1e-6);
+  }
+
+  @Test
+  public void testCopyingTypeNotPacked() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.PACKED_ID, "HEAP");
+    Database pdb = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1, params, null);
+    // DoubleVector does not accept views, and would be copied on every access.
+    Relation<DoubleVector> prel = pdb.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    assertFalse("Packed, but copying on access.", prel instanceof PackedNumberVectorRelation);
+  }
+
+  /**
+   * Compare a packed database to the default storage.
+   * 
+   * @param storage Storage type
+   * @param single Use single precision
+   * @param eps Tolerance
+   */
+  private void testPacked(NumberVectorBlock.Storage storage, boolean single, double eps) throws IOException {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1, null, null);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+
+    Database pdb;
+    try (InputStream is = AbstractSimpleAlgorithmTest.open(filename)) {
+      // No filters, so the parser output is streamed into the block.
+      NumberVectorLabelParser<NumberVector> parser = new NumberVectorLabelParser<>(new ViewFactory());
+      pdb = new StaticArrayDatabase(new InputStreamDatabaseConnection(is, null, parser), null, storage, single, null);
+      pdb.initialize();
+    }
+    Relation<NumberVector> prel = pdb.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertTrue("Not packed.", prel instanceof PackedNumberVectorRelation);
+    assertEquals("Size differs.", rel.size(), prel.size());
+
+    final int dim = RelationUtil.dimensionality(rel);
+    assertEquals("Dimensionality differs.", dim, RelationUtil.dimensionality(prel));
+    // Both databases are in file order.
+    for(DBIDIter it = rel.iterDBIDs(), pit = prel.iterDBIDs(); it.valid(); it.advance(), pit.advance()) {
+      NumberVector v = rel.get(it), p = prel.get(pit);
+      assertTrue("Not a view.", p instanceof NumberVectorBlock.View);
+      for(int d = 0; d < dim; d++) {
+        assertEquals("Value differs.", v.doubleValue(d), p.doubleValue(d), eps * Math.abs(v.doubleValue(d)));
+      }
+    }
+    // Removing the relation releases the block.
+    NumberVectorBlock block = ((PackedNumberVectorRelation<?>) prel).getBlock();
+    ResultUtil.removeRecursive(pdb.getHierarchy(), prel);
+    assertEquals("Block not released.", 0, block.size());
+    assertFalse("Relation not removed.", pdb.getRelations().contains(prel));
+  }
+
+  /**
+   * Vector factory accepting views: vectors are {@link DoubleVector}s, but the
+   * restriction class is {@link NumberVector}.
+   * 
+   * @author Erich Schubert
+   */
+  public static class ViewFactory implements NumberVector.Factory<NumberVector> {
+    @Override
+    public <A> NumberVector newFeatureVector(A array, ArrayAdapter<? extends Number, A> adapter) {
+      return DoubleVector.FACTORY.newFeatureVector(array, adapter);
+    }
+
+    @Override
+    public NumberVector newNumberVector(double[] values) {
+      return DoubleVector.FACTORY.newNumberVector(values);
+    }
+
+    @Override
+    public NumberVector newNumberVector(NumberVector values) {
+      return DoubleVector.FACTORY.newNumberVector(values);
+    }
+
+    @Override
+    public <A> NumberVector newNumberVector(A array, NumberArrayAdapter<?, ? super A> adapter) {
+      return DoubleVector.FACTORY.newNumberVector(array, adapter);
+    }
+
+    @Override
+    public ByteBufferSerializer<NumberVector> getDefaultSerializer() {
+      return null;
+    }
+
+    @Override
+    public Class<? super NumberVector> getRestrictionClass() {
+      return NumberVector.class;
+    }
+  }
+}
@@ -26,15 +26,25 @@ package de.lmu.ifi.dbs.elki.index;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.BulkRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.CosineDistanceFunction;
@@ -143,6 +153,7 @@ public abstract class AbstractIndexStructureTest {
       DoubleVector dv = DoubleVector.wrap(querypoint);
       RangeQuery<DoubleVector> rangeq = db.getRangeQuery(dist, eps);
       assertTrue("Returned range query is not of expected class: expected " + expectRangeQuery + " got " + rangeq.getClass(), expectRangeQuery.isAssignableFrom(rangeq.getClass()));
+      testBulkRange(rep, rangeq, eps);
       DoubleDBIDList ids = rangeq.getRangeForObject(dv, eps);
       assertEquals("Result size does not match expectation!", shouldd.length, ids.size(), 1e-15);
 
@@ -159,6 +170,40 @@ public abstract class AbstractIndexStructureTest {
     }
   }
 
+  /**
+   * Test routine for index snapshots: build the index and write a snapshot,
+   * then restore the index from the snapshot and repeat the queries.
+   *
+   * @param inputparams Parameters
+   */
+  protected void testSnapshotEuclidean(ListParameterization inputparams, Class<?> expectKNNQuery, Class<?> expectRangeQuery) throws IOException {
+    File base = Files.createTempDirectory("elki-snapshot").toFile();
+    // Does not exist yet, must be created when the snapshot is written.
+    File dir = new File(base, "snapshots");
+    try {
+      ListParameterization params = new ListParameterization(inputparams.getRemainingParameters());
+      params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_SNAPSHOT_ID, dir);
+      testExactEuclidean(params, expectKNNQuery, expectRangeQuery);
+      File[] files = dir.listFiles();
+      assertEquals("Snapshot was not written.", 1, files.length);
+      // Mark the file, to detect whether it is rewritten.
+      files[0].setLastModified(1000000L);
+      params = new ListParameterization(inputparams.getRemainingParameters());
+      params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_SNAPSHOT_ID, dir);
+      testExactEuclidean(params, expectKNNQuery, expectRangeQuery);
+      assertEquals("Snapshot was not reused.", 1000000L, files[0].lastModified());
+    }
+    finally {
+      if(dir.isDirectory()) {
+        for(File f : dir.listFiles()) {
+          f.delete();
+        }
+        dir.delete();
+      }
+      base.delete();
+    }
+  }
+
   /**
    * Actual test routine, for cosine distance
    *
@@ -193,6 +238,7 @@ public abstract class AbstractIndexStructureTest {
       DoubleVector dv = DoubleVector.wrap(querypoint);
       RangeQuery<DoubleVector> rangeq = db.getRangeQuery(dist, coseps);
       assertTrue("Returned range query is not of expected class: expected " + expectRangeQuery + " got " + rangeq.getClass(), expectRangeQuery.isAssignableFrom(rangeq.getClass()));
+      testBulkRange(rep, rangeq, coseps);
       DoubleDBIDList ids = rangeq.getRangeForObject(dv, coseps);
       assertEquals("Result size does not match expectation!", cosshouldd.length, ids.size());
 
@@ -208,4 +254,29 @@ public abstract class AbstractIndexStructureTest {
       }
     }
   }
+
+  /**
+   * If supported, compare bulk range queries to individual range queries.
+   *
+   * @param rep Data relation
+   * @param rangeq Range query
+   * @param range Query radius
+   */
+  protected void testBulkRange(Relation<DoubleVector> rep, RangeQuery<DoubleVector> rangeq, double range) {
+    if(!(rangeq instanceof BulkRangeQuery)) {
+      return;
+    }
+    ArrayDBIDs qids = DBIDUtil.ensureArray(rep.getDBIDs());
+    List<? extends DoubleDBIDList> bulk = ((BulkRangeQuery<DoubleVector>) rangeq).getRangeForBulkDBIDs(qids, range);
+    assertEquals("Bulk result size does not match.", qids.size(), bulk.size());
+    int i = 0;
+    for(DBIDIter it = qids.iter(); it.valid(); it.advance(), i++) {
+      DoubleDBIDList single = rangeq.getRangeForDBID(it, range);
+      DoubleDBIDList batch = bulk.get(i);
+      assertEquals("Bulk result size does not match single query.", single.size(), batch.size());
+      for(DoubleDBIDListIter s = single.iter(), b = batch.iter(); s.valid(); s.advance(), b.advance()) {
+        assertEquals("Bulk distance does not match single query.", s.doubleValue(), b.doubleValue(), 1e-15);
+      }
+    }
+  }
 }
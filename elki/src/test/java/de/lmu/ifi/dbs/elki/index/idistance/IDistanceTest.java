@@ -23,6 +23,8 @@ package de.lmu.ifi.dbs.elki.index.idistance;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.IOException;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.FarthestPointsInitialMeans;
@@ -50,4 +52,17 @@ public class IDistanceTest extends AbstractIndexStructureTest {
     spatparams.addParameter(InMemoryIDistanceIndex.Factory.Parameterizer.REFERENCE_ID, FarthestPointsInitialMeans.class);
     testExactEuclidean(spatparams, InMemoryIDistanceIndex.IDistanceKNNQuery.class, InMemoryIDistanceIndex.IDistanceRangeQuery.class);
   }
+
+  /**
+   * Test {@link InMemoryIDistanceIndex} snapshots.
+   */
+  @Test
+  public void testIDistanceSnapshot() throws IOException {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, InMemoryIDistanceIndex.Factory.class);
+    spatparams.addParameter(InMemoryIDistanceIndex.Factory.Parameterizer.K_ID, 4);
+    spatparams.addParameter(InMemoryIDistanceIndex.Factory.Parameterizer.DISTANCE_ID, EuclideanDistanceFunction.class);
+    spatparams.addParameter(InMemoryIDistanceIndex.Factory.Parameterizer.REFERENCE_ID, FarthestPointsInitialMeans.class);
+    testSnapshotEuclidean(spatparams, InMemoryIDistanceIndex.IDistanceKNNQuery.class, InMemoryIDistanceIndex.IDistanceRangeQuery.class);
+  }
 }
@@ -0,0 +1,134 @@
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.application.cache.CacheDoubleDistanceKNNLists;
+import de.lmu.ifi.dbs.elki.application.cache.CacheKNNListsInMappedFile;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the memory-mapped kNN index against a linear scan.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class MappedKNNIndexTest {
+  /**
+   * Data set to use.
+   */
+  private static final String DATASET = "data/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testDoubleDistances() throws IOException {
+    testMappedKNN(false, 1, 0.);
+  }
+
+  @Test
+  public void testFloatDistances() throws IOException {
+    testMappedKNN(true, 1, 1e-6);
+  }
+
+  @Test
+  public void testParallelWriter() throws IOException {
+    testMappedKNN(false, 4, 0.);
+  }
+
+  private void testMappedKNN(boolean useFloat, int threads, double delta) throws IOException {
+    final int k = 10;
+    File tmp = File.createTempFile("elki-knn-", ".cache");
+    tmp.deleteOnExit();
+    ParallelCore prev = ParallelCore.setCore(new ParallelCore(threads));
+    try {
+      // Write the cache file.
+      ListParameterization params = new ListParameterization();
+      params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, DATASET);
+      params.addParameter(CacheDoubleDistanceKNNLists.Parameterizer.DISTANCE_ID, EuclideanDistanceFunction.class);
+      params.addParameter(CacheDoubleDistanceKNNLists.Parameterizer.K_ID, k);
+      params.addParameter(CacheDoubleDistanceKNNLists.Parameterizer.CACHE_ID, tmp);
+      if(useFloat) {
+        params.addFlag(CacheKNNListsInMappedFile.Parameterizer.FLOAT_ID);
+      }
+      CacheKNNListsInMappedFile<DoubleVector> writer = ClassGenericsUtil.parameterizeOrAbort(CacheKNNListsInMappedFile.class, params);
+      writer.run();
+
+      // Load a database using the mapped index.
+      params = new ListParameterization();
+      params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MappedKNNIndex.Factory.class);
+      params.addParameter(MappedKNNIndex.Factory.Parameterizer.DISTANCE_ID, EuclideanDistanceFunction.class);
+      params.addParameter(MappedKNNIndex.Factory.Parameterizer.FILE_ID, tmp);
+      Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(DATASET, 600, params, null);
+      Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+      DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+      KNNQuery<DoubleVector> knnq = db.getKNNQuery(dq, k);
+      assertTrue("Mapped index not used: " + knnq.getClass(), knnq.getClass().getName().startsWith(MappedKNNIndex.class.getName()));
+      KNNQuery<DoubleVector> scan = new LinearScanDistanceKNNQuery<>(dq);
+
+      for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+        for(int kk : new int[] { 1, 5, k }) {
+          KNNList exp = scan.getKNNForDBID(it, kk), act = knnq.getKNNForDBID(it, kk);
+          assertEquals("Size does not match.", exp.size(), act.size());
+          assertEquals("k-distance does not match.", exp.getKNNDistance(), act.getKNNDistance(), delta);
+          DoubleDBIDListIter ei = exp.iter(), ai = act.iter();
+          for(; ei.valid(); ei.advance(), ai.advance()) {
+            assertEquals("Distance does not match.", ei.doubleValue(), ai.doubleValue(), delta);
+            if(delta == 0.) {
+              assertTrue("Neighbor does not match.", DBIDUtil.equal(ei, ai));
+            }
+            assertTrue("Neighbor not contained.", act.contains(ai));
+          }
+        }
+      }
+    }
+    finally {
+      ParallelCore.setCore(prev).shutdown();
+      tmp.delete();
+    }
+  }
+}
@@ -23,13 +23,20 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.File;
+import java.io.IOException;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MetricalIndexKNNQuery;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MetricalIndexRangeQuery;
 import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.FileChannelPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.LRUCachePageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.PersistentPageFileFactory;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
@@ -49,4 +56,24 @@ public class MTreeTest extends AbstractIndexStructureTest {
     metparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
     testExactEuclidean(metparams, MetricalIndexKNNQuery.class, MetricalIndexRangeQuery.class);
   }
+
+  /**
+   * Test {@link MTree} stored on disk, with a small page cache.
+   *
+   * @throws IOException on errors creating a temporary file
+   */
+  @Test
+  public void testDiskBacked() throws IOException {
+    File tmp = File.createTempFile("elki-mtree-", ".idx");
+    tmp.delete();
+    tmp.deleteOnExit();
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MTreeFactory.class);
+    params.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, LRUCachePageFileFactory.class);
+    params.addParameter(LRUCachePageFileFactory.Parameterizer.PAGEFILE_ID, FileChannelPageFileFactory.class);
+    params.addParameter(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID, 3000);
+    params.addParameter(PersistentPageFileFactory.Parameterizer.FILE_ID, tmp);
+    params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testExactEuclidean(params, MetricalIndexKNNQuery.class, MetricalIndexRangeQuery.class);
+  }
 }
@@ -23,10 +23,14 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.File;
+import java.io.IOException;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeFactory;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
@@ -35,6 +39,7 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.File
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.MaxExtensionBulkSplit;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.MaxExtensionSortTileRecursiveBulkSplit;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.OneDimSortBulkSplit;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.ParallelSortTileRecursiveBulkSplit;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.SortTileRecursiveBulkSplit;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.SpatialSortBulkSplit;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.insert.ApproximativeLeastOverlapInsertionStrategy;
@@ -47,6 +52,9 @@ import de.lmu.ifi.dbs.elki.math.spacefillingcurves.HilbertSpatialSorter;
 import de.lmu.ifi.dbs.elki.math.spacefillingcurves.PeanoSpatialSorter;
 import de.lmu.ifi.dbs.elki.math.spacefillingcurves.ZCurveSpatialSorter;
 import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.FileChannelPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.LRUCachePageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.PersistentPageFileFactory;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
@@ -322,6 +330,19 @@ public class RStarTreeTest extends AbstractIndexStructureTest {
     testExactCosine(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
   }
 
+  /**
+   * Test {@link RStarTree} bulk loaded using
+   * {@link ParallelSortTileRecursiveBulkSplit}
+   */
+  @Test
+  public void testParallelSortTileRecursiveBulkSplit() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    spatparams.addParameter(RStarTreeFactory.Parameterizer.BULK_SPLIT_ID, ParallelSortTileRecursiveBulkSplit.class);
+    testExactEuclidean(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
   /**
    * Test {@link RStarTree} bulk loaded using
    * {@link MaxExtensionSortTileRecursiveBulkSplit}
@@ -359,4 +380,24 @@ public class RStarTreeTest extends AbstractIndexStructureTest {
     spatparams.addParameter(RStarTreeFactory.Parameterizer.BULK_SPLIT_ID, AdaptiveSortTileRecursiveBulkSplit.class);
     testExactCosine(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
   }
+
+  /**
+   * Test {@link RStarTree} stored on disk, with a small page cache.
+   *
+   * @throws IOException on errors creating a temporary file
+   */
+  @Test
+  public void testDiskBacked() throws IOException {
+    File tmp = File.createTempFile("elki-rstartree-", ".idx");
+    tmp.delete();
+    tmp.deleteOnExit();
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    params.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, LRUCachePageFileFactory.class);
+    params.addParameter(LRUCachePageFileFactory.Parameterizer.PAGEFILE_ID, FileChannelPageFileFactory.class);
+    params.addParameter(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID, 3000);
+    params.addParameter(PersistentPageFileFactory.Parameterizer.FILE_ID, tmp);
+    params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testExactEuclidean(params, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
 }
@@ -0,0 +1,75 @@
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+
+/**
+ * Test that the parallel STR bulk split produces the same partitions as the
+ * sequential version.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelSortTileRecursiveBulkSplitTest {
+  @Test
+  public void testIdenticalPartitions() {
+    Random rnd = new Random(0L);
+    List<DoubleVector> seq = new ArrayList<>();
+    for(int i = 0; i < 100000; i++) {
+      // Few distinct values in the first dimension, to have ties.
+      seq.add(DoubleVector.wrap(new double[] { rnd.nextInt(50), rnd.nextDouble(), rnd.nextGaussian() }));
+    }
+    List<DoubleVector> par = new ArrayList<>(seq);
+
+    List<List<DoubleVector>> expect = SortTileRecursiveBulkSplit.STATIC.partition(seq, 20, 50);
+    List<List<DoubleVector>> result;
+    ParallelCore prev = ParallelCore.setCore(new ParallelCore(4));
+    try {
+      result = ParallelSortTileRecursiveBulkSplit.STATIC.partition(par, 20, 50);
+    }
+    finally {
+      ParallelCore.setCore(prev).shutdown();
+    }
+    assertEquals("Number of partitions differs.", expect.size(), result.size());
+    for(int i = 0; i < expect.size(); i++) {
+      List<DoubleVector> e = expect.get(i), r = result.get(i);
+      assertEquals("Partition size differs.", e.size(), r.size());
+      for(int j = 0; j < e.size(); j++) {
+        assertSame("Partition contents differ.", e.get(j), r.get(j));
+      }
+    }
+  }
+}
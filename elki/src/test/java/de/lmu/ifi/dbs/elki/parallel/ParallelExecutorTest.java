@@ -0,0 +1,213 @@
+package de.lmu.ifi.dbs.elki.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+
+/**
+ * Test the work-stealing parallel executor.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelExecutorTest {
+  @Test
+  public void testEachObjectOnce() {
+    final int size = 100003;
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(size);
+    final WritableIntegerDataStore counts = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP, 0);
+    final int[] total = new int[1];
+    Processor proc = new Processor() {
+      @Override
+      public Instance instantiate(Executor executor) {
+        return new CountingInstance(counts);
+      }
+
+      @Override
+      public synchronized void cleanup(Processor.Instance inst) {
+        total[0] += ((CountingInstance) inst).count;
+      }
+    };
+    ParallelExecutor.run(ids, proc);
+    assertEquals("Not every object was processed exactly once.", size, total[0]);
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      assertEquals("Object processed multiple times.", 1, counts.intValue(iter));
+    }
+  }
+
+  @Test
+  public void testEachIndexOnce() {
+    final int[] counts = new int[1003];
+    ParallelCore prev = ParallelCore.setCore(new ParallelCore(4));
+    try {
+      ParallelExecutor.run(counts.length, 1, new ParallelExecutor.RangeProcessor() {
+        @Override
+        public void process(int start, int end) {
+          for(int i = start; i < end; i++) {
+            synchronized(counts) {
+              counts[i]++;
+            }
+          }
+        }
+      });
+    }
+    finally {
+      ParallelCore.setCore(prev).shutdown();
+    }
+    for(int i = 0; i < counts.length; i++) {
+      assertEquals("Index not processed exactly once.", 1, counts[i]);
+    }
+  }
+
+  @Test
+  public void testNestedWithBoundCore() {
+    final DBIDRange outer = DBIDUtil.generateStaticDBIDRange(1000);
+    final DBIDRange inner = DBIDUtil.generateStaticDBIDRange(100);
+    final WritableIntegerDataStore counts = DataStoreUtil.makeIntegerStorage(inner, DataStoreFactory.HINT_TEMP, 0);
+    final ParallelCore core = new ParallelCore(2);
+    final Processor nested = new Processor() {
+      @Override
+      public Instance instantiate(Executor executor) {
+        return new CountingInstance(counts);
+      }
+
+      @Override
+      public void cleanup(Processor.Instance inst) {
+        // Nothing to do.
+      }
+    };
+    Processor proc = new Processor() {
+      @Override
+      public Instance instantiate(Executor executor) {
+        return new Processor.Instance() {
+          @Override
+          public void map(DBIDRef id) {
+            assertSame("Worker does not use the bound core.", core, ParallelCore.getCore());
+            if(outer.getOffset(id) % 100 == 0) {
+              // Nested parallel region, within the same pool:
+              ParallelExecutor.run(inner, nested);
+            }
+          }
+        };
+      }
+
+      @Override
+      public void cleanup(Processor.Instance inst) {
+        // Nothing to do.
+      }
+    };
+    ParallelCore prev = ParallelCore.setCore(core);
+    try {
+      ParallelExecutor.run(outer, proc);
+    }
+    finally {
+      ParallelCore.setCore(prev);
+      core.shutdown();
+    }
+    for(DBIDIter iter = inner.iter(); iter.valid(); iter.advance()) {
+      assertEquals("Nested region processed incorrectly.", 10, counts.intValue(iter));
+    }
+  }
+
+  @Test
+  public void testCleanupOnException() {
+    final DBIDRange ids = DBIDUtil.generateStaticDBIDRange(10000);
+    final int[] created = new int[1], cleaned = new int[1];
+    Processor proc = new Processor() {
+      @Override
+      public synchronized Instance instantiate(Executor executor) {
+        ++created[0];
+        return new Processor.Instance() {
+          @Override
+          public void map(DBIDRef id) {
+            if(ids.getOffset(id) == 5000) {
+              throw new IllegalStateException("Processor failure.");
+            }
+          }
+        };
+      }
+
+      @Override
+      public synchronized void cleanup(Processor.Instance inst) {
+        ++cleaned[0];
+      }
+    };
+    try {
+      ParallelExecutor.run(ids, proc);
+      fail("Exception was not propagated.");
+    }
+    catch(IllegalStateException e) {
+      // Expected.
+    }
+    assertTrue("No instance was created.", created[0] > 0);
+    assertEquals("Not every instance was cleaned up.", created[0], cleaned[0]);
+  }
+
+  /**
+   * Instance counting the processed objects.
+   * 
+   * @author Erich Schubert
+   */
+  private static class CountingInstance implements Processor.Instance {
+    /**
+     * Per-object counts
+     */
+    WritableIntegerDataStore counts;
+
+    /**
+     * Number of objects processed by this instance.
+     */
+    int count = 0;
+
+    /**
+     * Constructor.
+     * 
+     * @param counts Per-object counts
+     */
+    CountingInstance(WritableIntegerDataStore counts) {
+      this.counts = counts;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      synchronized(counts) {
+        counts.increment(id, 1);
+      }
+      ++count;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Test the file channel page file.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class FileChannelPageFileTest {
+  /**
+   * Page size used for testing.
+   */
+  private static final int PAGESIZE = 64;
+
+  @Test
+  public void testReopen() throws IOException {
+    File tmp = File.createTempFile("elki-pagefile-", ".idx");
+    tmp.delete();
+    tmp.deleteOnExit();
+    FileChannelPageFile<TestPage> file = new FileChannelPageFile<>(PAGESIZE, tmp.getPath(), TestPage.class);
+    assertFalse(file.initialize(new TreeIndexHeader(PAGESIZE, 4, 4, 2, 2)));
+    for(int i = 0; i < 10; i++) {
+      assertEquals(i, file.writePage(new TestPage()));
+    }
+    file.close();
+
+    FileChannelPageFile<TestPage> reopened = new FileChannelPageFile<>(2 * PAGESIZE, tmp.getPath(), TestPage.class);
+    TreeIndexHeader header = new TreeIndexHeader();
+    assertTrue("Page file not recognized.", reopened.initialize(header));
+    assertEquals("Page size not restored.", PAGESIZE, reopened.getPageSize());
+    assertEquals("Header not restored.", 4, header.getDirCapacity());
+    reopened.close();
+  }
+
+  @Test(expected = AbortException.class)
+  public void testRejectPersistentPageFile() throws IOException {
+    File tmp = File.createTempFile("elki-pagefile-", ".idx");
+    tmp.delete();
+    tmp.deleteOnExit();
+    PersistentPageFile<TestPage> file = new PersistentPageFile<>(PAGESIZE, tmp.getPath(), TestPage.class);
+    file.initialize(new TreeIndexHeader(PAGESIZE, 4, 4, 2, 2));
+    file.writePage(new TestPage());
+    file.close();
+
+    FileChannelPageFile<TestPage> reopened = new FileChannelPageFile<>(PAGESIZE, tmp.getPath(), TestPage.class);
+    reopened.initialize(new TreeIndexHeader());
+  }
+
+  /**
+   * Trivial page class.
+   *
+   * @author Erich Schubert
+   */
+  public static class TestPage extends AbstractExternalizablePage {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Public constructor, for deserialization.
+     */
+    public TestPage() {
+      super();
+    }
+  }
+}
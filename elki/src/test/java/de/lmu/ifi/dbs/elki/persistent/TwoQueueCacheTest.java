@@ -0,0 +1,190 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test the 2Q page cache.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class TwoQueueCacheTest {
+  /**
+   * Page size used for testing.
+   */
+  private static final int PAGESIZE = 100;
+
+  @Test
+  public void testWriteBack() {
+    CountingPageFile backing = new CountingPageFile();
+    TwoQueueCache<TestPage> cache = new TwoQueueCache<>(10 * PAGESIZE, backing);
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    TestPage[] pages = new TestPage[100];
+    for(int i = 0; i < pages.length; i++) {
+      assertEquals(i, cache.writePage(pages[i] = new TestPage()));
+    }
+    for(int i = 0; i < pages.length; i++) {
+      assertSame("Page lost.", pages[i], cache.readPage(i));
+    }
+  }
+
+  @Test
+  public void testScanResistance() {
+    CountingPageFile backing = new CountingPageFile();
+    for(int i = 0; i < 100; i++) {
+      backing.writePage(new TestPage());
+    }
+    TwoQueueCache<TestPage> cache = new TwoQueueCache<>(10 * PAGESIZE, backing);
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    // Warm up with a small hot set:
+    for(int r = 0; r < 3; r++) {
+      for(int i = 0; i < 5; i++) {
+        cache.readPage(i);
+      }
+    }
+    // A long scan over cold pages must not flush the hot pages.
+    int before = backing.reads;
+    for(int i = 50; i < 100; i++) {
+      cache.readPage(i);
+    }
+    assertEquals("Scan not read from backing file.", 50, backing.reads - before);
+    before = backing.reads;
+    for(int i = 0; i < 5; i++) {
+      cache.readPage(i);
+    }
+    assertEquals("Hot pages were evicted by the scan.", 0, backing.reads - before);
+  }
+
+  @Test
+  public void testConcurrent() throws InterruptedException {
+    final CountingPageFile backing = new CountingPageFile();
+    for(int i = 0; i < 200; i++) {
+      backing.writePage(new TestPage());
+    }
+    final TwoQueueCache<TestPage> cache = new TwoQueueCache<>(20 * PAGESIZE, backing);
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    final AtomicInteger errors = new AtomicInteger();
+    Thread[] threads = new Thread[4];
+    for(int t = 0; t < threads.length; t++) {
+      final int seed = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          Random rnd = new Random(seed);
+          for(int i = 0; i < 10000; i++) {
+            int id = rnd.nextInt(200);
+            TestPage page = cache.readPage(id);
+            if(page == null || page.getPageID() != id) {
+              errors.incrementAndGet();
+            }
+            else if((i & 7) == 0) {
+              cache.writePage(id, page);
+            }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for(Thread t : threads) {
+      t.join();
+    }
+    assertEquals("Wrong pages returned.", 0, errors.get());
+    cache.flush();
+    for(int i = 0; i < 200; i++) {
+      assertFalse("Page not written back.", backing.readPage(i).isDirty());
+    }
+  }
+
+  /**
+   * Trivial page class.
+   *
+   * @author Erich Schubert
+   */
+  private static class TestPage implements Page {
+    /**
+     * Page id.
+     */
+    int id = -1;
+
+    /**
+     * Dirty flag.
+     */
+    boolean dirty;
+
+    @Override
+    public int getPageID() {
+      return id;
+    }
+
+    @Override
+    public void setPageID(int id) {
+      this.id = id;
+    }
+
+    @Override
+    public boolean isDirty() {
+      return dirty;
+    }
+
+    @Override
+    public void setDirty(boolean dirty) {
+      this.dirty = dirty;
+    }
+  }
+
+  /**
+   * Memory page file, counting the page reads.
+   *
+   * @author Erich Schubert
+   */
+  private static class CountingPageFile extends MemoryPageFile<TestPage> {
+    /**
+     * Number of reads.
+     */
+    int reads = 0;
+
+    /**
+     * Constructor.
+     */
+    public CountingPageFile() {
+      super(PAGESIZE);
+    }
+
+    @Override
+    public synchronized TestPage readPage(int pageID) {
+      ++reads;
+      return super.readPage(pageID);
+    }
+  }
+}